@@ -0,0 +1,88 @@
+package org.nd4j;
+
+import org.deeplearning4j.optimize.solvers.accumulation.IndexedTail;
+import org.deeplearning4j.optimize.solvers.accumulation.UpdatesRingBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One producer puts threshold encoded updates into the tail, while every worker thread drains them into its own
+ * array - the way shared gradients training uses the tail on each worker node.
+ * Score is the time until all workers applied one round of updates.
+ */
+public class UpdatesTailBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SetupState {
+        @Param({"1", "4", "8", "16", "32"})
+        public int workers;
+
+        @Param({"IndexedTail", "UpdatesRingBuffer"})
+        public String tail;
+
+        public int length = 1 << 20;
+        public int updatesPerRound = 64;
+
+        public IndexedTail buffer;
+        public List<INDArray> messages = new ArrayList<>();
+        public List<Thread> threads = new ArrayList<>();
+        public volatile boolean running;
+
+        @Setup(Level.Trial)
+        public void setup() throws InterruptedException {
+            int maxMessageLength = length / 16 + 5;
+            for (int i = 0; i < 16; i++) {
+                INDArray grad = Nd4j.rand(1, length);
+                messages.add(Nd4j.getExecutioner().thresholdEncode(grad, 0.999, maxMessageLength - 4));
+            }
+
+            long[] shape = new long[]{1, length};
+            buffer = "IndexedTail".equals(tail) ? new IndexedTail(workers, true, shape)
+                    : new UpdatesRingBuffer(workers, 32, maxMessageLength, shape);
+
+            running = true;
+            final CountDownLatch registered = new CountDownLatch(workers);
+            for (int i = 0; i < workers; i++) {
+                Thread t = new Thread(() -> {
+                    INDArray target = Nd4j.create(shape);
+                    buffer.hasAnything();
+                    registered.countDown();
+                    while (running) {
+                        if (buffer.hasAnything())
+                            buffer.drainTo(target);
+                        else
+                            Thread.yield();
+                    }
+                });
+                t.setDaemon(true);
+                t.start();
+                threads.add(t);
+            }
+            registered.await();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            running = false;
+            for (Thread t : threads)
+                t.join();
+        }
+    }
+
+    @Benchmark @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void putAndDrain(SetupState state) {
+        for (int i = 0; i < state.updatesPerRound; i++)
+            state.buffer.put(state.messages.get(i % state.messages.size()));
+
+        for (Thread t : state.threads) {
+            while (state.buffer.getDelta(t.getId()) > 0)
+                Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,625 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.commons.io.IOUtils;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataLine;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.split.InputStreamInputSplit;
+import org.datavec.api.split.StringSplit;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.FloatWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A CSV record reader for files that contain only numeric columns, optimized for batch reading.<br>
+ * Unlike {@link CSVRecordReader}, this reader doesn't create a String and a Text writable per value: local files
+ * are memory mapped (other locations are read fully into memory), delimiters are found by scanning the raw bytes, and
+ * values are parsed directly from the bytes. {@link #next(int)} writes parsed values straight into the data buffer
+ * of an [examples, columns] INDArray and returns it as an {@link NDArrayRecordBatch} with one [examples, 1] column
+ * view per CSV column, so RecordReaderDataSetIterator and RecordReaderMultiDataSetIterator use the batched code path
+ * with the same column indexing as {@link CSVRecordReader}.<br>
+ * Notes:
+ * <ul>
+ *     <li>All lines must have the same number of columns. The number of columns may be specified, or is inferred from
+ *     the first line that isn't skipped</li>
+ *     <li>Values may be surrounded by whitespace or by the quote character. Empty values are read as NaN</li>
+ *     <li>Quoted values containing the delimiter and multi-line values are not supported: use CSVRecordReader for
+ *     such files</li>
+ *     <li>Empty lines are skipped. skipNumLines is applied to each file</li>
+ *     <li>{@link #next()} returns FloatWritable or DoubleWritable values, depending on the data type</li>
+ * </ul>
+ */
+public class NumericCSVRecordReader extends BaseRecordReader {
+    /**
+     * Size of each memory mapped region. Regions are remapped as reading progresses, so files larger than 2GB are
+     * supported
+     */
+    public static final int DEFAULT_WINDOW_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_INITIAL_BATCH = 65536;
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+            1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    @Getter
+    protected int skipNumLines;
+    @Getter
+    protected char delimiter;
+    @Getter
+    protected char quote;
+    @Getter
+    protected DataType dataType;
+    protected int numColumns;
+    protected int windowBytes = DEFAULT_WINDOW_BYTES;
+
+    protected Configuration conf;
+    protected boolean initialized;
+    protected URI[] locations;
+    protected int locationIndex;
+    protected int lineIndex;         //Lines read in the current location, including skipped lines
+    private transient Source source;
+    private transient boolean lineReady;
+    private transient boolean exhausted;
+    private transient double[] row;
+
+    public NumericCSVRecordReader() {
+        this(0, CSVRecordReader.DEFAULT_DELIMITER);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file
+     * @param delimiter    Delimiter character
+     */
+    public NumericCSVRecordReader(int skipNumLines, char delimiter) {
+        this(skipNumLines, delimiter, CSVRecordReader.DEFAULT_QUOTE, DataType.FLOAT, -1);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file
+     * @param delimiter    Delimiter character
+     * @param quote        Quote character, stripped from values
+     * @param dataType     Data type of the returned arrays. Must be a floating point type
+     * @param numColumns   Number of columns, or -1 to infer the number of columns from the first line
+     */
+    public NumericCSVRecordReader(int skipNumLines, char delimiter, char quote, @NonNull DataType dataType, int numColumns) {
+        Preconditions.checkArgument(dataType.isFPType(), "Data type must be a floating point type, got %s", dataType);
+        Preconditions.checkArgument(delimiter < 128 && quote < 128, "Delimiter and quote must be ASCII characters");
+        this.skipNumLines = skipNumLines;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.dataType = dataType;
+        this.numColumns = numColumns;
+    }
+
+    /**
+     * @param windowBytes Size of the memory mapped regions, in bytes. Lines longer than this are still supported
+     */
+    public void setWindowBytes(int windowBytes) {
+        Preconditions.checkArgument(windowBytes > 0, "Window size must be positive, got %s", windowBytes);
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * @return Number of columns, or -1 if not yet known
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        super.initialize(split);
+        if (!(split instanceof StringSplit || split instanceof InputStreamInputSplit)) {
+            List<URI> uris = new ArrayList<>();
+            Iterator<URI> iter = split.locationsIterator();
+            while (iter.hasNext()) {
+                uris.add(iter.next());
+            }
+            this.locations = uris.toArray(new URI[0]);
+        } else {
+            this.locations = null;
+        }
+        closeSource();
+        this.locationIndex = 0;
+        this.lineIndex = 0;
+        this.exhausted = false;
+        this.initialized = true;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.conf = conf;
+        this.skipNumLines = conf.getInt(CSVRecordReader.SKIP_NUM_LINES, this.skipNumLines);
+        this.delimiter = conf.getChar(CSVRecordReader.DELIMITER, this.delimiter);
+        this.quote = conf.getChar(CSVRecordReader.QUOTE, this.quote);
+        initialize(split);
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(initialized, "RecordReader has not been initialized before use");
+        if (lineReady)
+            return true;
+        try {
+            lineReady = advance();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading CSV data", e);
+        }
+        return lineReady;
+    }
+
+    @Override
+    public List<List<Writable>> next(int num) {
+        Preconditions.checkArgument(num > 0, "Number of examples must be positive, got %s", num);
+        if (!hasNext())
+            throw new NoSuchElementException("No next element found!");
+
+        INDArray arr = null;
+        DataBuffer buffer = null;
+        int rows = 0;
+        while (rows < num && hasNext()) {
+            parseCurrentLine();
+            if (arr == null) {
+                arr = Nd4j.createUninitialized(dataType, Math.min(num, MAX_INITIAL_BATCH), numColumns);
+                buffer = arr.data();
+            } else if (rows == arr.rows()) {
+                //More rows than initially allocated: grow
+                INDArray larger = Nd4j.createUninitialized(dataType, Math.min(num, 2L * rows), numColumns);
+                larger.get(NDArrayIndex.interval(0, rows), NDArrayIndex.all()).assign(arr);
+                arr = larger;
+                buffer = arr.data();
+            }
+            long offset = (long) rows * numColumns;
+            for (int c = 0; c < numColumns; c++) {
+                buffer.put(offset + c, row[c]);
+            }
+            rows++;
+        }
+
+        if (rows < arr.rows()) {
+            arr = arr.get(NDArrayIndex.interval(0, rows), NDArrayIndex.all()).dup();
+        }
+
+        List<INDArray> columns = new ArrayList<>(numColumns);
+        for (int c = 0; c < numColumns; c++) {
+            columns.add(arr.get(NDArrayIndex.all(), NDArrayIndex.interval(c, c + 1)));
+        }
+        return new NDArrayRecordBatch(columns);
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element found!");
+        parseCurrentLine();
+        return toWritables(row);
+    }
+
+    @Override
+    public Record nextRecord() {
+        List<Writable> next = next();
+        URI uri = (locations == null || locations.length < 1 ? null : locations[locationIndex]);
+        RecordMetaData meta = new RecordMetaDataLine(this.lineIndex - 1, uri, NumericCSVRecordReader.class);
+        return new org.datavec.api.records.impl.Record(next, meta);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        return loadFromMetaData(Collections.singletonList(recordMetaData)).get(0);
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        //Metadata loading is not performance critical: use CSVRecordReader to find the lines
+        CSVRecordReader rr = new CSVRecordReader(skipNumLines, delimiter, quote);
+        try {
+            rr.initialize(inputSplit);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        List<Record> list = rr.loadFromMetaData(recordMetaDatas);
+        for (Record r : list) {
+            List<Writable> in = r.getRecord();
+            double[] values = new double[in.size()];
+            for (int i = 0; i < values.length; i++) {
+                String s = in.get(i).toString();
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                values[i] = parseValue(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+            r.setRecord(toWritables(values));
+        }
+        return list;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        invokeListeners(uri);
+        BufferedReader br = new BufferedReader(new InputStreamReader(dataInputStream, StandardCharsets.UTF_8));
+        for (int i = 0; i < skipNumLines; i++) {
+            br.readLine();
+        }
+        byte[] bytes = br.readLine().getBytes(StandardCharsets.UTF_8);
+        double[] values = new double[countColumns(ByteBuffer.wrap(bytes), 0, bytes.length)];
+        parseLine(ByteBuffer.wrap(bytes), 0, bytes.length, values);
+        return toWritables(values);
+    }
+
+    @Override
+    public void reset() {
+        if (inputSplit == null)
+            throw new UnsupportedOperationException("Cannot reset without first initializing");
+        try {
+            inputSplit.reset();
+            initialize(inputSplit);
+        } catch (Exception e) {
+            throw new RuntimeException("Error during NumericCSVRecordReader reset", e);
+        }
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return inputSplit == null || inputSplit.resetSupported();
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSource();
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    private void closeSource() throws IOException {
+        lineReady = false;
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+    }
+
+    /**
+     * Position the source at the start of the next data line, opening the next location if required
+     *
+     * @return False if there are no more lines
+     */
+    private boolean advance() throws IOException {
+        while (true) {
+            if (source == null) {
+                if (exhausted || !openSource()) {
+                    exhausted = true;
+                    return false;
+                }
+            }
+            while (source.nextLine()) {
+                lineIndex++;
+                if (lineIndex <= skipNumLines || isBlank(source.buffer, source.lineStart, source.lineEnd))
+                    continue;
+                return true;
+            }
+            source.close();
+            source = null;
+            if (locations == null || locationIndex >= locations.length - 1) {
+                exhausted = true;
+                return false;
+            }
+            locationIndex++;
+        }
+    }
+
+    private boolean openSource() throws IOException {
+        lineIndex = 0;
+        if (inputSplit instanceof StringSplit) {
+            source = new Source(((StringSplit) inputSplit).getData().getBytes(StandardCharsets.UTF_8));
+        } else if (inputSplit instanceof InputStreamInputSplit) {
+            InputStream is = ((InputStreamInputSplit) inputSplit).getIs();
+            if (is == null)
+                return false;
+            source = new Source(IOUtils.toByteArray(is));
+        } else {
+            if (locations == null || locationIndex >= locations.length)
+                return false;
+            URI uri = locations[locationIndex];
+            if ("file".equals(uri.getScheme())) {
+                FileChannel channel = FileChannel.open(new File(uri).toPath(), StandardOpenOption.READ);
+                source = new Source(channel, windowBytes);
+            } else {
+                try (InputStream is = streamCreatorFn.apply(uri)) {
+                    source = new Source(IOUtils.toByteArray(is));
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(ByteBuffer b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte c = b.get(i);
+            if (c != ' ' && c != '\t')
+                return false;
+        }
+        return true;
+    }
+
+    private void parseCurrentLine() {
+        ByteBuffer b = source.buffer;
+        if (numColumns < 0) {
+            numColumns = countColumns(b, source.lineStart, source.lineEnd);
+        }
+        if (row == null || row.length != numColumns) {
+            row = new double[numColumns];
+        }
+        if (!listeners.isEmpty()) {
+            byte[] bytes = new byte[source.lineEnd - source.lineStart];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = b.get(source.lineStart + i);
+            }
+            invokeListeners(new String(bytes, StandardCharsets.UTF_8));
+        }
+        try {
+            parseLine(b, source.lineStart, source.lineEnd, row);
+        } catch (NumberFormatException e) {
+            URI uri = (locations == null || locations.length < 1 ? null : locations[locationIndex]);
+            throw new NumberFormatException("Error parsing line " + (lineIndex - 1) + (uri == null ? "" : " of " + uri)
+                    + ": " + e.getMessage());
+        }
+        lineReady = false;
+    }
+
+    private int countColumns(ByteBuffer b, int from, int to) {
+        int count = 1;
+        for (int i = from; i < to; i++) {
+            if (b.get(i) == delimiter)
+                count++;
+        }
+        return count;
+    }
+
+    private void parseLine(ByteBuffer b, int from, int to, double[] out) {
+        int col = 0;
+        int fieldStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || b.get(i) == delimiter) {
+                if (col >= out.length)
+                    throw new NumberFormatException("Expected " + out.length + " columns, got more");
+                out[col++] = parseValue(b, fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        if (col != out.length)
+            throw new NumberFormatException("Expected " + out.length + " columns, got " + col);
+    }
+
+    private double parseValue(ByteBuffer b, int from, int to) {
+        //Trim whitespace and quotes
+        while (from < to && (b.get(from) == ' ' || b.get(from) == '\t' || b.get(from) == quote))
+            from++;
+        while (to > from && (b.get(to - 1) == ' ' || b.get(to - 1) == '\t' || b.get(to - 1) == quote))
+            to--;
+        if (from == to)
+            return Double.NaN;
+        return parseDouble(b, from, to);
+    }
+
+    /**
+     * Parse a decimal number from ASCII bytes. Numbers with at most 18 significant digits and a decimal exponent in
+     * [-22, 22] - almost all numbers in typical CSV files - are parsed directly with correct rounding, as the
+     * conversion only requires a single exactly representable multiplication or division. All other values
+     * (including NaN and Infinity) are parsed with {@link Double#parseDouble(String)}
+     */
+    static double parseDouble(ByteBuffer b, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        byte c = b.get(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean fastPath = true;
+        while (i < to && (c = b.get(i)) >= '0' && c <= '9') {
+            anyDigits = true;
+            if (mantissa != 0 || c != '0') {
+                if (++significant > 18)
+                    fastPath = false;
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            i++;
+        }
+        if (i < to && b.get(i) == '.') {
+            i++;
+            while (i < to && (c = b.get(i)) >= '0' && c <= '9') {
+                anyDigits = true;
+                if (mantissa != 0 || c != '0') {
+                    if (++significant > 18)
+                        fastPath = false;
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                exponent--;
+                i++;
+            }
+        }
+        if (anyDigits && i < to && ((c = b.get(i)) == 'e' || c == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && ((c = b.get(i)) == '-' || c == '+')) {
+                negativeExp = c == '-';
+                i++;
+            }
+            int e = 0;
+            boolean expDigits = false;
+            while (i < to && (c = b.get(i)) >= '0' && c <= '9') {
+                expDigits = true;
+                if (e < 100000)
+                    e = e * 10 + (c - '0');
+                i++;
+            }
+            if (!expDigits)
+                fastPath = false;
+            exponent += negativeExp ? -e : e;
+        }
+
+        if (fastPath && anyDigits && i == to) {
+            if (mantissa == 0)
+                return negative ? -0.0 : 0.0;
+            if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+                double d = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+                return negative ? -d : d;
+            }
+        }
+
+        byte[] bytes = new byte[to - from];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = b.get(from + j);
+        }
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    private List<Writable> toWritables(double[] values) {
+        List<Writable> ret = new ArrayList<>(values.length);
+        for (double d : values) {
+            ret.add(dataType == DataType.DOUBLE ? new DoubleWritable(d) : new FloatWritable((float) d));
+        }
+        return ret;
+    }
+
+    /**
+     * Bytes of one location: either a memory mapped region of a file that is remapped as reading progresses, or an
+     * in-memory array
+     */
+    private static class Source implements Closeable {
+        private final FileChannel channel;
+        private final long length;
+        private int windowBytes;
+        private ByteBuffer buffer;
+        private long bufferStart;
+        private long position;
+        private int lineStart;
+        private int lineEnd;
+
+        private Source(FileChannel channel, int windowBytes) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+            this.windowBytes = windowBytes;
+            this.buffer = ByteBuffer.allocate(0);
+        }
+
+        private Source(byte[] bytes) {
+            this.channel = null;
+            this.length = bytes.length;
+            this.buffer = ByteBuffer.wrap(bytes);
+        }
+
+        private void map(long from) throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(windowBytes, length - from));
+            bufferStart = from;
+        }
+
+        /**
+         * Find the next line, and set lineStart and lineEnd (exclusive, without line terminator) as indices into
+         * the buffer
+         *
+         * @return False at the end of the data
+         */
+        private boolean nextLine() throws IOException {
+            while (true) {
+                if (position >= length)
+                    return false;
+                if (position < bufferStart || position >= bufferStart + buffer.limit())
+                    map(position);
+
+                int start = (int) (position - bufferStart);
+                int limit = buffer.limit();
+                int i = start;
+                while (i < limit && buffer.get(i) != '\n')
+                    i++;
+                if (i == limit && bufferStart + limit < length) {
+                    //Line continues past the end of the mapped region: remap, starting at this line
+                    if (start == 0)
+                        windowBytes = (int) Math.min(Integer.MAX_VALUE - 8, 2L * windowBytes);
+                    map(position);
+                    continue;
+                }
+
+                lineStart = start;
+                lineEnd = (i > start && buffer.get(i - 1) == '\r') ? i - 1 : i;
+                position = bufferStart + i + 1;
+                return true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null)
+                channel.close();
+        }
+    }
+}
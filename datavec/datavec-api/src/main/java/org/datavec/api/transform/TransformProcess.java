@@ -27,6 +27,8 @@ import org.datavec.api.records.reader.RecordReader;
 import org.datavec.api.transform.analysis.DataAnalysis;
 import org.datavec.api.transform.analysis.columns.ColumnAnalysis;
 import org.datavec.api.transform.analysis.columns.NumericalColumnAnalysis;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
 import org.datavec.api.transform.condition.Condition;
 import org.datavec.api.transform.filter.ConditionFilter;
 import org.datavec.api.transform.filter.Filter;
@@ -241,6 +243,65 @@ public class TransformProcess implements Serializable {
         return currValues;
     }
 
+    /**
+     * Whether this TransformProcess can be executed column-at-a-time, via {@link #executeColumnar(ColumnarBatch)}.
+     * This requires non-sequence data, and every step to be a {@link ColumnarTransform}. Filters, reductions and
+     * sequence operations are not supported.
+     *
+     * @return True if columnar execution is supported
+     */
+    public boolean supportsColumnar() {
+        if (initialSchema instanceof SequenceSchema)
+            return false;
+        for (DataAction d : actionList) {
+            if (!(d.getTransform() instanceof ColumnarTransform))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Execute the full sequence of transformations on a batch of examples, column-at-a-time.
+     * See {@link #supportsColumnar()}
+     *
+     * @param input Input batch
+     * @return Output batch
+     */
+    public ColumnarBatch executeColumnar(@NonNull ColumnarBatch input) {
+        if (!supportsColumnar())
+            throw new IllegalStateException("Columnar execution is not supported by this TransformProcess: all steps "
+                    + "must be ColumnarTransforms. Actions: " + actionList);
+        ColumnarBatch curr = input;
+        for (DataAction d : actionList) {
+            curr = ((ColumnarTransform) d.getTransform()).mapColumnar(curr);
+        }
+        return curr;
+    }
+
+    /**
+     * Execute the full sequence of transformations for a batch of examples. Examples that are filtered are not
+     * included in the output.<br>
+     * If {@link #supportsColumnar()} is true, the batch is converted to a {@link ColumnarBatch} and executed
+     * column-at-a-time. Otherwise, each example is executed individually as per {@link #execute(List)}
+     *
+     * @param input Input examples
+     * @return Output examples
+     */
+    public List<List<Writable>> executeBatch(@NonNull List<List<Writable>> input) {
+        if (supportsColumnar()) {
+            ColumnarBatch b = ColumnarBatch.fromRecords(input, initialSchema.numColumns());
+            return executeColumnar(b).toRecords();
+        }
+
+        List<List<Writable>> out = new ArrayList<>(input.size());
+        for (List<Writable> l : input) {
+            List<Writable> o = execute(l);
+            if (o != null)
+                out.add(o);
+        }
+        return out;
+    }
+
     /**
      *
      * @param input
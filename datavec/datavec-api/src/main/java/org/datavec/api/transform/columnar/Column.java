@@ -0,0 +1,122 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.transform.columnar;
+
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.IntWritable;
+import org.datavec.api.writable.LongWritable;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+
+import java.util.List;
+
+/**
+ * A single column of a {@link ColumnarBatch}. Subclasses store values in primitive arrays
+ * ({@link DoubleColumn}, {@link IntColumn}, {@link LongColumn}), as dictionary-encoded strings ({@link StringColumn}),
+ * or as Writable objects for all other types ({@link WritableColumn}).<br>
+ * Columns are immutable: transforms create new columns rather than modifying existing ones, so unchanged columns
+ * can be shared between batches.
+ */
+public abstract class Column {
+
+    /**
+     * @return Number of rows in this column
+     */
+    public abstract int size();
+
+    /**
+     * @return The value at the specified row, as a Writable
+     */
+    public abstract Writable get(int row);
+
+    /**
+     * Get the values of this column as doubles. The returned array must not be modified.
+     * The default implementation converts each value using {@link Writable#toDouble()}
+     */
+    public double[] doubles() {
+        int n = size();
+        double[] out = new double[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = get(i).toDouble();
+        }
+        return out;
+    }
+
+    /**
+     * Get the values of this column as dictionary-encoded strings.
+     * The default implementation converts each value using {@link Writable#toString()}
+     */
+    public StringColumn strings() {
+        int n = size();
+        StringColumn.Builder b = new StringColumn.Builder(n);
+        for (int i = 0; i < n; i++) {
+            b.add(get(i).toString());
+        }
+        return b.build();
+    }
+
+    /**
+     * Create a column from the values at the specified column index of each record. The column type is chosen from
+     * the types of the Writables: a column containing only IntWritables is stored as an {@link IntColumn}, for example
+     */
+    public static Column fromRecords(List<List<Writable>> records, int columnIdx) {
+        int n = records.size();
+        Writable first = n == 0 ? null : records.get(0).get(columnIdx);
+        Class<?> c = first == null ? null : first.getClass();
+        for (int i = 1; i < n && c != null; i++) {
+            if (records.get(i).get(columnIdx).getClass() != c)
+                c = null;
+        }
+
+        if (c == DoubleWritable.class) {
+            double[] d = new double[n];
+            for (int i = 0; i < n; i++) {
+                d[i] = records.get(i).get(columnIdx).toDouble();
+            }
+            return new DoubleColumn(d);
+        } else if (c == IntWritable.class) {
+            int[] d = new int[n];
+            for (int i = 0; i < n; i++) {
+                d[i] = records.get(i).get(columnIdx).toInt();
+            }
+            return new IntColumn(d);
+        } else if (c == LongWritable.class) {
+            long[] d = new long[n];
+            for (int i = 0; i < n; i++) {
+                d[i] = records.get(i).get(columnIdx).toLong();
+            }
+            return new LongColumn(d);
+        } else if (c == Text.class) {
+            StringColumn.Builder b = new StringColumn.Builder(n);
+            for (int i = 0; i < n; i++) {
+                b.add(records.get(i).get(columnIdx).toString());
+            }
+            return b.build();
+        }
+
+        Writable[] w = new Writable[n];
+        for (int i = 0; i < n; i++) {
+            w[i] = records.get(i).get(columnIdx);
+        }
+        return new WritableColumn(w);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.transform.columnar;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.writable.Writable;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of records stored column by column, as used by {@link ColumnarTransform}s.<br>
+ * Numeric columns are stored as primitive arrays and string/categorical columns are dictionary-encoded, so a
+ * transform on one column of N records allocates one array instead of N Writables and N lists.<br>
+ * Batches are immutable: {@link #withColumn(int, Column)}, {@link #withColumns(int, Column...)} and
+ * {@link #removeColumns(int...)} return new batches that share all unchanged columns with this batch.
+ */
+public class ColumnarBatch {
+
+    @Getter
+    private final Column[] columns;
+    @Getter
+    private final int numRows;
+
+    public ColumnarBatch(@NonNull Column[] columns, int numRows) {
+        for (int i = 0; i < columns.length; i++) {
+            Preconditions.checkArgument(columns[i].size() == numRows, "Column %s has %s rows, expected %s rows",
+                    i, columns[i].size(), numRows);
+        }
+        this.columns = columns;
+        this.numRows = numRows;
+    }
+
+    /**
+     * Convert records to a columnar batch
+     *
+     * @param records    Records to convert. All records must have the same number of values
+     * @param numColumns Number of values in each record
+     */
+    public static ColumnarBatch fromRecords(@NonNull List<List<Writable>> records, int numColumns) {
+        for (List<Writable> r : records) {
+            Preconditions.checkArgument(r.size() == numColumns, "Expected records with %s values, got record with %s values: %s",
+                    numColumns, r.size(), r);
+        }
+        Column[] columns = new Column[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            columns[i] = Column.fromRecords(records, i);
+        }
+        return new ColumnarBatch(columns, records.size());
+    }
+
+    /**
+     * Convert this batch back to records
+     */
+    public List<List<Writable>> toRecords() {
+        List<List<Writable>> out = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; i++) {
+            List<Writable> r = new ArrayList<>(columns.length);
+            for (Column c : columns) {
+                r.add(c.get(i));
+            }
+            out.add(r);
+        }
+        return out;
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    public Column getColumn(int idx) {
+        return columns[idx];
+    }
+
+    /**
+     * @return A new batch with the column at the specified index replaced
+     */
+    public ColumnarBatch withColumn(int idx, @NonNull Column column) {
+        return withColumns(idx, column);
+    }
+
+    /**
+     * @return A new batch with the column at the specified index replaced by the specified columns (0 or more)
+     */
+    public ColumnarBatch withColumns(int idx, @NonNull Column... replacement) {
+        Column[] out = new Column[columns.length - 1 + replacement.length];
+        System.arraycopy(columns, 0, out, 0, idx);
+        System.arraycopy(replacement, 0, out, idx, replacement.length);
+        System.arraycopy(columns, idx + 1, out, idx + replacement.length, columns.length - idx - 1);
+        return new ColumnarBatch(out, numRows);
+    }
+
+    /**
+     * @return A new batch without the columns at the specified indices
+     */
+    public ColumnarBatch removeColumns(@NonNull int... indices) {
+        boolean[] remove = new boolean[columns.length];
+        for (int i : indices) {
+            remove[i] = true;
+        }
+        List<Column> out = new ArrayList<>(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            if (!remove[i])
+                out.add(columns[i]);
+        }
+        return new ColumnarBatch(out.toArray(new Column[0]), numRows);
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarBatch(numRows=" + numRows + ",numColumns=" + columns.length + ")";
+    }
+}
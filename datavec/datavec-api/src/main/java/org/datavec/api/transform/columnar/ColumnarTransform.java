@@ -0,0 +1,42 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.transform.columnar;
+
+import org.datavec.api.transform.Transform;
+
+/**
+ * A {@link Transform} that can also be applied to a whole {@link ColumnarBatch} at once.<br>
+ * The output of {@link #mapColumnar(ColumnarBatch)} must be equivalent to applying {@link Transform#map(java.util.List)}
+ * to each record of the batch. When every step of a TransformProcess supports columnar execution, the whole process can
+ * be executed column-at-a-time: see {@link org.datavec.api.transform.TransformProcess#executeBatch(java.util.List)}
+ */
+public interface ColumnarTransform extends Transform {
+
+    /**
+     * Transform a batch of records
+     *
+     * @param batch Input batch. Must match the input schema of this transform
+     * @return The transformed batch
+     */
+    ColumnarBatch mapColumnar(ColumnarBatch batch);
+
+}
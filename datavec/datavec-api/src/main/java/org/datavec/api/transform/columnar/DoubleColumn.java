@@ -0,0 +1,55 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.transform.columnar;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.Writable;
+
+/**
+ * A column of double values, written as {@link DoubleWritable}s
+ */
+public class DoubleColumn extends Column {
+
+    @Getter
+    private final double[] values;
+
+    public DoubleColumn(@NonNull double[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Writable get(int row) {
+        return new DoubleWritable(values[row]);
+    }
+
+    @Override
+    public double[] doubles() {
+        return values;
+    }
+}
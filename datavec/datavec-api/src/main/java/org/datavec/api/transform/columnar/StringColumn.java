@@ -0,0 +1,126 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.transform.columnar;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary-encoded column of String values, written as {@link Text}s.<br>
+ * Each distinct value is stored once in the dictionary, and each row stores the index of its value. Operations on
+ * strings (parsing, category lookup) can then be done once per distinct value instead of once per row.
+ */
+public class StringColumn extends Column {
+
+    @Getter
+    private final int[] codes;
+    @Getter
+    private final List<String> dictionary;
+
+    public StringColumn(@NonNull int[] codes, @NonNull List<String> dictionary) {
+        this.codes = codes;
+        this.dictionary = Collections.unmodifiableList(dictionary);
+    }
+
+    @Override
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * @return The String value at the specified row
+     */
+    public String getString(int row) {
+        return dictionary.get(codes[row]);
+    }
+
+    @Override
+    public Writable get(int row) {
+        //Text is mutable, so each row gets its own instance
+        return new Text(getString(row));
+    }
+
+    @Override
+    public double[] doubles() {
+        double[] dict = new double[dictionary.size()];
+        for (int i = 0; i < dict.length; i++) {
+            dict[i] = Double.parseDouble(dictionary.get(i));
+        }
+        double[] out = new double[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            out[i] = dict[codes[i]];
+        }
+        return out;
+    }
+
+    @Override
+    public StringColumn strings() {
+        return this;
+    }
+
+    /**
+     * Builds a StringColumn, one value at a time
+     */
+    public static class Builder {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private int[] codes;
+        private int size;
+
+        public Builder(int expectedSize) {
+            this.codes = new int[Math.max(expectedSize, 1)];
+        }
+
+        public Builder add(@NonNull String value) {
+            Integer code = index.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                index.put(value, code);
+            }
+            if (size == codes.length) {
+                int[] tmp = new int[codes.length * 2];
+                System.arraycopy(codes, 0, tmp, 0, size);
+                codes = tmp;
+            }
+            codes[size++] = code;
+            return this;
+        }
+
+        public StringColumn build() {
+            int[] c = codes;
+            if (c.length != size) {
+                c = new int[size];
+                System.arraycopy(codes, 0, c, 0, size);
+            }
+            return new StringColumn(c, dictionary);
+        }
+    }
+}
@@ -21,6 +21,10 @@
 package org.datavec.api.transform.transform.categorical;
 
 import lombok.Data;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.IntColumn;
+import org.datavec.api.transform.columnar.StringColumn;
 import org.datavec.api.transform.metadata.CategoricalMetaData;
 import org.datavec.api.transform.metadata.ColumnMetaData;
 import org.datavec.api.transform.metadata.IntegerMetaData;
@@ -35,7 +39,7 @@ import java.util.*;
 
 @Data
 @JsonIgnoreProperties({"inputSchema", "columnIdx", "stateNames", "statesMap"})
-public class CategoricalToIntegerTransform extends BaseTransform {
+public class CategoricalToIntegerTransform extends BaseTransform implements ColumnarTransform {
 
     private String columnName;
     private int columnIdx = -1;
@@ -122,6 +126,33 @@ public class CategoricalToIntegerTransform extends BaseTransform {
         return out;
     }
 
+    /**
+     * Columnar version of {@link #map(List)}: each distinct category in the column dictionary is looked up once, and
+     * the column is then converted by mapping the dictionary codes to category indices
+     */
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        StringColumn in = batch.getColumn(columnIdx).strings();
+        //Look up each distinct value once
+        List<String> dictionary = in.getDictionary();
+        int[] classIdxs = new int[dictionary.size()];
+        for (int i = 0; i < classIdxs.length; i++) {
+            Integer classIdx = statesMap.get(dictionary.get(i));
+            if (classIdx == null) {
+                throw new IllegalStateException("Cannot convert categorical value to integer value: input value (\"" + dictionary.get(i)
+                        + "\") is not in the list of known categories (state names/categories: " + stateNames + ")");
+            }
+            classIdxs[i] = classIdx;
+        }
+
+        int[] codes = in.getCodes();
+        int[] out = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            out[i] = classIdxs[codes[i]];
+        }
+        return batch.withColumn(columnIdx, new IntColumn(out));
+    }
+
     /**
      * Transform an object
      * in to another object
@@ -21,6 +21,10 @@
 package org.datavec.api.transform.transform.categorical;
 
 import lombok.Data;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.IntColumn;
+import org.datavec.api.transform.columnar.StringColumn;
 import org.datavec.api.transform.metadata.CategoricalMetaData;
 import org.datavec.api.transform.metadata.ColumnMetaData;
 import org.datavec.api.transform.metadata.IntegerMetaData;
@@ -35,7 +39,7 @@ import java.util.*;
 
 @Data
 @JsonIgnoreProperties({"inputSchema", "columnIdx", "stateNames", "statesMap"})
-public class CategoricalToOneHotTransform extends BaseTransform {
+public class CategoricalToOneHotTransform extends BaseTransform implements ColumnarTransform {
 
     private String columnName;
     private int columnIdx = -1;
@@ -155,6 +159,37 @@ public class CategoricalToOneHotTransform extends BaseTransform {
         return out;
     }
 
+    /**
+     * Columnar version of {@link #map(List)}: each distinct category in the column dictionary is looked up once, and
+     * the one-hot columns are then filled in from the dictionary codes
+     */
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        StringColumn in = batch.getColumn(columnIdx).strings();
+        //Look up each distinct value once
+        List<String> dictionary = in.getDictionary();
+        int[] classIdxs = new int[dictionary.size()];
+        for (int i = 0; i < classIdxs.length; i++) {
+            Integer classIdx = statesMap.get(dictionary.get(i));
+            if (classIdx == null) {
+                throw new IllegalStateException("Cannot convert categorical value to one-hot: input value (\"" + dictionary.get(i)
+                        + "\") is not in the list of known categories (state names/categories: " + stateNames + ")");
+            }
+            classIdxs[i] = classIdx;
+        }
+
+        int[] codes = in.getCodes();
+        int[][] out = new int[stateNames.size()][codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            out[classIdxs[codes[i]]][i] = 1;
+        }
+        IntColumn[] columns = new IntColumn[out.length];
+        for (int j = 0; j < out.length; j++) {
+            columns[j] = new IntColumn(out[j]);
+        }
+        return batch.withColumns(columnIdx, columns);
+    }
+
     /**
      * Transform an object
      * in to another object
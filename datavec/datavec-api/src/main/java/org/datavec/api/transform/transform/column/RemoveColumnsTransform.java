@@ -23,6 +23,8 @@ package org.datavec.api.transform.transform.column;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.datavec.api.transform.ColumnOp;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
 import org.datavec.api.transform.metadata.ColumnMetaData;
 import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.transform.transform.BaseTransform;
@@ -34,7 +36,7 @@ import java.util.*;
 
 @JsonIgnoreProperties({"inputSchema", "columnsToRemoveIdx", "indicesToRemove"})
 @Data
-public class RemoveColumnsTransform extends BaseTransform implements ColumnOp {
+public class RemoveColumnsTransform extends BaseTransform implements ColumnOp, ColumnarTransform {
 
     private int[] columnsToRemoveIdx;
     private String[] columnsToRemove;
@@ -137,6 +139,11 @@ public class RemoveColumnsTransform extends BaseTransform implements ColumnOp {
         return outList;
     }
 
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        return batch.removeColumns(columnsToRemoveIdx);
+    }
+
     /**
      * Transform an object
      * in to another object
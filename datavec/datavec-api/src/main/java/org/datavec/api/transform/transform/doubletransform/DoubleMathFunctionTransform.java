@@ -22,12 +22,17 @@ package org.datavec.api.transform.transform.doubletransform;
 
 import lombok.Data;
 import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.DoubleColumn;
 import org.datavec.api.writable.DoubleWritable;
 import org.datavec.api.writable.Writable;
 import org.nd4j.shade.jackson.annotation.JsonProperty;
 
+import java.util.function.DoubleUnaryOperator;
+
 @Data
-public class DoubleMathFunctionTransform extends BaseDoubleTransform {
+public class DoubleMathFunctionTransform extends BaseDoubleTransform implements ColumnarTransform {
 
     private MathFunction mathFunction;
 
@@ -39,84 +44,61 @@ public class DoubleMathFunctionTransform extends BaseDoubleTransform {
 
     @Override
     public Writable map(Writable w) {
-        switch (mathFunction) {
-            case ABS:
-                return new DoubleWritable(Math.abs(w.toDouble()));
-            case ACOS:
-                return new DoubleWritable(Math.acos(w.toDouble()));
-            case ASIN:
-                return new DoubleWritable(Math.asin(w.toDouble()));
-            case ATAN:
-                return new DoubleWritable(Math.atan(w.toDouble()));
-            case CEIL:
-                return new DoubleWritable(Math.ceil(w.toDouble()));
-            case COS:
-                return new DoubleWritable(Math.cos(w.toDouble()));
-            case COSH:
-                return new DoubleWritable(Math.cosh(w.toDouble()));
-            case EXP:
-                return new DoubleWritable(Math.exp(w.toDouble()));
-            case FLOOR:
-                return new DoubleWritable(Math.floor(w.toDouble()));
-            case LOG:
-                return new DoubleWritable(Math.log(w.toDouble()));
-            case LOG10:
-                return new DoubleWritable(Math.log10(w.toDouble()));
-            case SIGNUM:
-                return new DoubleWritable(Math.signum(w.toDouble()));
-            case SIN:
-                return new DoubleWritable(Math.sin(w.toDouble()));
-            case SINH:
-                return new DoubleWritable(Math.sinh(w.toDouble()));
-            case SQRT:
-                return new DoubleWritable(Math.sqrt(w.toDouble()));
-            case TAN:
-                return new DoubleWritable(Math.tan(w.toDouble()));
-            case TANH:
-                return new DoubleWritable(Math.tanh(w.toDouble()));
-            default:
-                throw new RuntimeException("Unknown function: " + mathFunction);
+        return new DoubleWritable(operator().applyAsDouble(w.toDouble()));
+    }
+
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        DoubleUnaryOperator f = operator();
+        double[] in = batch.getColumn(columnNumber).doubles();
+        double[] out = new double[in.length];
+        for (int i = 0; i < in.length; i++) {
+            out[i] = f.applyAsDouble(in[i]);
         }
+        return batch.withColumn(columnNumber, new DoubleColumn(out));
     }
 
     @Override
     public Object map(Object input) {
-        double d = ((Number) input).doubleValue();
+        return operator().applyAsDouble(((Number) input).doubleValue());
+    }
+
+    private DoubleUnaryOperator operator() {
         switch (mathFunction) {
             case ABS:
-                return Math.abs(d);
+                return Math::abs;
             case ACOS:
-                return Math.acos(d);
+                return Math::acos;
             case ASIN:
-                return Math.asin(d);
+                return Math::asin;
             case ATAN:
-                return Math.atan(d);
+                return Math::atan;
             case CEIL:
-                return Math.ceil(d);
+                return Math::ceil;
             case COS:
-                return Math.cos(d);
+                return Math::cos;
             case COSH:
-                return Math.cosh(d);
+                return Math::cosh;
             case EXP:
-                return Math.exp(d);
+                return Math::exp;
             case FLOOR:
-                return Math.floor(d);
+                return Math::floor;
             case LOG:
-                return Math.log(d);
+                return Math::log;
             case LOG10:
-                return Math.log10(d);
+                return Math::log10;
             case SIGNUM:
-                return Math.signum(d);
+                return Math::signum;
             case SIN:
-                return Math.sin(d);
+                return Math::sin;
             case SINH:
-                return Math.sinh(d);
+                return Math::sinh;
             case SQRT:
-                return Math.sqrt(d);
+                return Math::sqrt;
             case TAN:
-                return Math.tan(d);
+                return Math::tan;
             case TANH:
-                return Math.tanh(d);
+                return Math::tanh;
             default:
                 throw new RuntimeException("Unknown function: " + mathFunction);
         }
@@ -22,6 +22,9 @@ package org.datavec.api.transform.transform.doubletransform;
 
 import lombok.Data;
 import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.DoubleColumn;
 import org.datavec.api.transform.metadata.ColumnMetaData;
 import org.datavec.api.transform.metadata.DoubleMetaData;
 import org.datavec.api.transform.transform.BaseColumnTransform;
@@ -33,7 +36,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Data
-public class DoubleMathOpTransform extends BaseColumnTransform {
+public class DoubleMathOpTransform extends BaseColumnTransform implements ColumnarTransform {
 
     private final MathOp mathOp;
     private final double scalar;
@@ -97,6 +100,43 @@ public class DoubleMathOpTransform extends BaseColumnTransform {
         return new DoubleWritable(doOp(columnWritable.toDouble()));
     }
 
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        double[] in = batch.getColumn(columnNumber).doubles();
+        double[] out = new double[in.length];
+        //Switch outside of the loops, so each loop is simple enough to be vectorized by the JIT
+        switch (mathOp) {
+            case Add:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = in[i] + scalar;
+                break;
+            case Subtract:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = in[i] - scalar;
+                break;
+            case Multiply:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = in[i] * scalar;
+                break;
+            case Divide:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = in[i] / scalar;
+                break;
+            case ReverseSubtract:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = scalar - in[i];
+                break;
+            case ReverseDivide:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = scalar / in[i];
+                break;
+            default:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = doOp(in[i]);
+        }
+        return batch.withColumn(columnNumber, new DoubleColumn(out));
+    }
+
     @Override
     public String toString() {
         return "DoubleMathOpTransform(mathOp=" + mathOp + ",scalar=" + scalar + ")";
@@ -21,6 +21,9 @@
 package org.datavec.api.transform.transform.doubletransform;
 
 import lombok.Data;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.DoubleColumn;
 import org.datavec.api.transform.metadata.ColumnMetaData;
 import org.datavec.api.transform.metadata.DoubleMetaData;
 import org.datavec.api.writable.DoubleWritable;
@@ -28,7 +31,7 @@ import org.datavec.api.writable.Writable;
 import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 @Data
-public class Log2Normalizer extends BaseDoubleTransform {
+public class Log2Normalizer extends BaseDoubleTransform implements ColumnarTransform {
 
     protected static final double log2 = Math.log(2);
     protected final double columnMean;
@@ -66,6 +69,17 @@ public class Log2Normalizer extends BaseDoubleTransform {
         return new DoubleMetaData(newColumnName, 0.0, null);
     }
 
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        double[] in = batch.getColumn(columnNumber).doubles();
+        double[] out = new double[in.length];
+        for (int i = 0; i < in.length; i++) {
+            double val = in[i];
+            out[i] = Double.isNaN(val) ? 0 : normMean(val);
+        }
+        return batch.withColumn(columnNumber, new DoubleColumn(out));
+    }
+
     @Override
     public String toString() {
         return "Log2Normalizer(columnMean=" + columnMean + ",columnMin=" + columnMin + ",scalingFactor=" + scalingFactor
@@ -21,6 +21,9 @@
 package org.datavec.api.transform.transform.doubletransform;
 
 import lombok.Data;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.DoubleColumn;
 import org.datavec.api.transform.metadata.ColumnMetaData;
 import org.datavec.api.transform.metadata.DoubleMetaData;
 import org.datavec.api.writable.DoubleWritable;
@@ -30,7 +33,7 @@ import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 @Data
 @JsonIgnoreProperties({"ratio", "inputSchema", "columnNumber"})
-public class MinMaxNormalizer extends BaseDoubleTransform {
+public class MinMaxNormalizer extends BaseDoubleTransform implements ColumnarTransform {
 
     protected final double min;
     protected final double max;
@@ -66,6 +69,17 @@ public class MinMaxNormalizer extends BaseDoubleTransform {
         return new DoubleMetaData(newColumnName, newMin, newMax);
     }
 
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        double[] in = batch.getColumn(columnNumber).doubles();
+        double[] out = new double[in.length];
+        for (int i = 0; i < in.length; i++) {
+            double val = in[i];
+            out[i] = Double.isNaN(val) ? 0 : ratio * (val - min) + newMin;
+        }
+        return batch.withColumn(columnNumber, new DoubleColumn(out));
+    }
+
     @Override
     public String toString() {
         return "MinMaxNormalizer(min=" + min + ",max=" + max + ",newMin=" + newMin + ",newMax=" + newMax + ")";
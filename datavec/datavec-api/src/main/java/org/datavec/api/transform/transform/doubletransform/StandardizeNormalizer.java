@@ -21,12 +21,15 @@
 package org.datavec.api.transform.transform.doubletransform;
 
 import lombok.Data;
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.DoubleColumn;
 import org.datavec.api.writable.DoubleWritable;
 import org.datavec.api.writable.Writable;
 import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 @Data
-public class StandardizeNormalizer extends BaseDoubleTransform {
+public class StandardizeNormalizer extends BaseDoubleTransform implements ColumnarTransform {
 
     protected final double mean;
     protected final double stdev;
@@ -45,6 +48,16 @@ public class StandardizeNormalizer extends BaseDoubleTransform {
         return new DoubleWritable((val - mean) / stdev);
     }
 
+    @Override
+    public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+        double[] in = batch.getColumn(columnNumber).doubles();
+        double[] out = new double[in.length];
+        for (int i = 0; i < in.length; i++) {
+            out[i] = (in[i] - mean) / stdev;
+        }
+        return batch.withColumn(columnNumber, new DoubleColumn(out));
+    }
+
     @Override
     public String toString() {
         return "StandardizeNormalizer(mean=" + mean + ",stdev=" + stdev + ")";
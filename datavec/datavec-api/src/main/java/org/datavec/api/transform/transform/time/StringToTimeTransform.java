@@ -29,10 +29,15 @@ import java.util.Locale;
 import java.util.TimeZone;
 import java.util.regex.Pattern;
 
+import org.datavec.api.transform.columnar.ColumnarBatch;
+import org.datavec.api.transform.columnar.ColumnarTransform;
+import org.datavec.api.transform.columnar.LongColumn;
+import org.datavec.api.transform.columnar.StringColumn;
 import org.datavec.api.transform.metadata.ColumnMetaData;
 import org.datavec.api.transform.metadata.TimeMetaData;
 import org.datavec.api.transform.transform.BaseColumnTransform;
 import org.datavec.api.writable.LongWritable;
+import org.datavec.api.writable.Text;
 import org.datavec.api.writable.Writable;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
@@ -46,7 +51,7 @@ import lombok.EqualsAndHashCode;
 @Data
 @EqualsAndHashCode(exclude = { "formatter", "formatters" })
 @JsonIgnoreProperties({ "formatters", "formatter" })
-public class StringToTimeTransform extends BaseColumnTransform {
+public class StringToTimeTransform extends BaseColumnTransform implements ColumnarTransform {
 
 	private final String timeFormat;
 	private final DateTimeZone timeZone;
@@ -243,6 +248,24 @@ public class StringToTimeTransform extends BaseColumnTransform {
 
 	}
 
+	@Override
+	public ColumnarBatch mapColumnar(ColumnarBatch batch) {
+		StringColumn in = batch.getColumn(columnNumber).strings();
+		//Parse each distinct value once
+		List<String> dictionary = in.getDictionary();
+		long[] times = new long[dictionary.size()];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = map(new Text(dictionary.get(i))).toLong();
+		}
+
+		int[] codes = in.getCodes();
+		long[] out = new long[codes.length];
+		for (int i = 0; i < codes.length; i++) {
+			out[i] = times[codes[i]];
+		}
+		return batch.withColumn(columnNumber, new LongColumn(out));
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
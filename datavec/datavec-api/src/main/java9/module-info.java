@@ -66,6 +66,7 @@ open module datavec.api {
     exports org.datavec.api.transform.analysis.quality.string;
     exports org.datavec.api.transform.analysis.quality.time;
     exports org.datavec.api.transform.analysis.sequence;
+    exports org.datavec.api.transform.columnar;
     exports org.datavec.api.transform.condition;
     exports org.datavec.api.transform.condition.column;
     exports org.datavec.api.transform.condition.sequence;
@@ -0,0 +1,191 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.NumericCSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.StringSplit;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.io.ClassPathResource;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Numeric Csv Record Reader Test")
+@Tag(TagNames.JAVA_ONLY)
+@Tag(TagNames.FILE_IO)
+class NumericCSVRecordReaderTest extends BaseND4JTest {
+
+    @Test
+    @DisplayName("Test Same As CSV Record Reader")
+    void testSameAsCSVRecordReader() throws Exception {
+        File f = new ClassPathResource("datavec-api/iris.dat").getFile();
+        CSVRecordReader expRR = new CSVRecordReader();
+        expRR.initialize(new FileSplit(f));
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(0, ',', '"', DataType.DOUBLE, -1);
+        rr.initialize(new FileSplit(f));
+
+        int count = 0;
+        while (expRR.hasNext()) {
+            assertTrue(rr.hasNext());
+            List<Writable> exp = expRR.next();
+            List<Writable> act = rr.next();
+            assertEquals(exp.size(), act.size());
+            for (int i = 0; i < exp.size(); i++) {
+                assertEquals(exp.get(i).toDouble(), act.get(i).toDouble(), 0.0);
+            }
+            count++;
+        }
+        assertFalse(rr.hasNext());
+        assertEquals(150, count);
+        assertEquals(5, rr.getNumColumns());
+
+        rr.reset();
+        assertTrue(rr.hasNext());
+        assertEquals(5.1, rr.next().get(0).toDouble(), 0.0);
+    }
+
+    @Test
+    @DisplayName("Test Parsing")
+    void testParsing() throws Exception {
+        String data = "a,b,c\n 1.5 ,\"-2\",3e2\r\n\n0.1,,-1.25E-3\n123456789012345678901234,1e400,NaN";
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(1, ',', '"', DataType.DOUBLE, -1);
+        rr.initialize(new StringSplit(data));
+
+        List<List<Double>> out = new ArrayList<>();
+        while (rr.hasNext()) {
+            List<Double> l = new ArrayList<>();
+            for (Writable w : rr.next()) {
+                l.add(w.toDouble());
+            }
+            out.add(l);
+        }
+        assertEquals(3, out.size());
+        assertEquals(Arrays.asList(1.5, -2.0, 300.0), out.get(0));
+        assertEquals(0.1, out.get(1).get(0), 0.0);
+        assertTrue(Double.isNaN(out.get(1).get(1)));
+        assertEquals(-1.25e-3, out.get(1).get(2), 0.0);
+        assertEquals(123456789012345678901234.0, out.get(2).get(0), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, out.get(2).get(1), 0.0);
+        assertTrue(Double.isNaN(out.get(2).get(2)));
+
+        //Inconsistent number of columns
+        NumericCSVRecordReader rr2 = new NumericCSVRecordReader();
+        rr2.initialize(new StringSplit("1,2,3\n4,5"));
+        rr2.next();
+        assertThrows(NumberFormatException.class, rr2::next);
+    }
+
+    @Test
+    @DisplayName("Test Multiple Files And Small Window")
+    void testMultipleFilesSmallWindow(@TempDir Path testDir) throws Exception {
+        File dir = testDir.toFile();
+        StringBuilder expected = new StringBuilder();
+        for (int f = 0; f < 3; f++) {
+            StringBuilder sb = new StringBuilder("x,y\n");
+            for (int i = 0; i < 100; i++) {
+                sb.append(f).append(",").append(i * 0.5).append("\n");
+            }
+            FileUtils.writeStringToFile(new File(dir, "file_" + f + ".csv"), sb.toString(), StandardCharsets.UTF_8);
+        }
+
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(1, ',');
+        //Tiny mapped regions: lines span region boundaries
+        rr.setWindowBytes(7);
+        rr.initialize(new FileSplit(dir));
+        int count = 0;
+        while (rr.hasNext()) {
+            Record r = rr.nextRecord();
+            List<Writable> l = r.getRecord();
+            assertEquals((count % 100) * 0.5, l.get(1).toDouble(), 0.0);
+            assertEquals(count % 100 + 1, ((org.datavec.api.records.metadata.RecordMetaDataLine) r.getMetaData()).getLineNumber());
+            count++;
+        }
+        assertEquals(300, count);
+    }
+
+    @Test
+    @DisplayName("Test Batch")
+    void testBatch() throws Exception {
+        File f = new ClassPathResource("datavec-api/iris.dat").getFile();
+        CSVRecordReader expRR = new CSVRecordReader();
+        expRR.initialize(new FileSplit(f));
+        NumericCSVRecordReader rr = new NumericCSVRecordReader();
+        rr.initialize(new FileSplit(f));
+        assertTrue(rr.batchesSupported());
+
+        int count = 0;
+        while (rr.hasNext()) {
+            List<List<Writable>> batch = rr.next(32);
+            assertTrue(batch instanceof NDArrayRecordBatch);
+            List<INDArray> arrays = ((NDArrayRecordBatch) batch).getArrays();
+            assertEquals(5, arrays.size());
+            for (int i = 0; i < batch.size(); i++) {
+                List<Writable> exp = expRR.next();
+                for (int j = 0; j < 5; j++) {
+                    assertEquals(DataType.FLOAT, arrays.get(j).dataType());
+                    assertEquals(exp.get(j).toFloat(), arrays.get(j).getFloat(i, 0), 0.0f);
+                }
+            }
+            count += batch.size();
+        }
+        assertEquals(150, count);
+    }
+
+    @Test
+    @DisplayName("Test Load From Meta Data")
+    void testLoadFromMetaData() throws Exception {
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(0, ',', '"', DataType.DOUBLE, -1);
+        rr.initialize(new FileSplit(new ClassPathResource("datavec-api/iris.dat").getFile()));
+        List<Record> records = new ArrayList<>();
+        List<RecordMetaData> meta = new ArrayList<>();
+        while (rr.hasNext()) {
+            Record r = rr.nextRecord();
+            records.add(r);
+            meta.add(r.getMetaData());
+        }
+        List<Record> fromMeta = rr.loadFromMetaData(meta);
+        assertEquals(records.size(), fromMeta.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i).getRecord(), fromMeta.get(i).getRecord());
+        }
+    }
+}
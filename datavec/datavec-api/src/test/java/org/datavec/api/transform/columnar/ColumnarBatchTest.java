@@ -0,0 +1,175 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.api.transform.columnar;
+
+import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.doubletransform.Log2Normalizer;
+import org.datavec.api.transform.transform.doubletransform.MinMaxNormalizer;
+import org.datavec.api.transform.transform.doubletransform.StandardizeNormalizer;
+import org.datavec.api.transform.transform.doubletransform.SubtractMeanNormalizer;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.FloatWritable;
+import org.datavec.api.writable.IntWritable;
+import org.datavec.api.writable.LongWritable;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.JAVA_ONLY)
+@Tag(TagNames.FILE_IO)
+public class ColumnarBatchTest extends BaseND4JTest {
+
+    private static List<List<Writable>> data(int n) {
+        String[] cat = {"a", "b", "c"};
+        List<List<Writable>> data = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            data.add(Arrays.<Writable>asList(new IntWritable(i), new Text(cat[i % 3]), new DoubleWritable(i / 4.0),
+                    new Text("2020-01-0" + (1 + i % 5) + " 12:00:00"), new Text(String.valueOf(i % 7)),
+                    new FloatWritable(i)));
+        }
+        return data;
+    }
+
+    private static Schema schema() {
+        return new Schema.Builder()
+                .addColumnInteger("id")
+                .addColumnCategorical("cat", "a", "b", "c")
+                .addColumnDouble("value")
+                .addColumnString("time")
+                .addColumnDouble("parsed")
+                .addColumnFloat("float")
+                .build();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<List<Writable>> data = data(10);
+        ColumnarBatch b = ColumnarBatch.fromRecords(data, 6);
+        assertEquals(10, b.getNumRows());
+        assertTrue(b.getColumn(0) instanceof IntColumn);
+        assertTrue(b.getColumn(1) instanceof StringColumn);
+        assertTrue(b.getColumn(2) instanceof DoubleColumn);
+        assertTrue(b.getColumn(5) instanceof WritableColumn);
+        assertEquals(Arrays.asList("a", "b", "c"), ((StringColumn) b.getColumn(1)).getDictionary());
+        assertEquals(7, ((StringColumn) b.getColumn(4)).getDictionary().size());
+        assertEquals(data, b.toRecords());
+
+        ColumnarBatch removed = b.removeColumns(1, 3);
+        assertEquals(4, removed.numColumns());
+        assertSame(b.getColumn(2), removed.getColumn(1));
+    }
+
+    @Test
+    public void testColumnarMatchesPerRecord() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("value", MathOp.Multiply, 3.0)
+                .doubleMathOp("value", MathOp.ReverseSubtract, 1.0)
+                .doubleMathOp("value", MathOp.Modulus, 2.0)
+                .doubleMathFunction("value", MathFunction.ABS)
+                .transform(new MinMaxNormalizer("value", 0, 2))
+                .transform(new StandardizeNormalizer("parsed", 3, 2))
+                .transform(new SubtractMeanNormalizer("parsed", 1))
+                .transform(new Log2Normalizer("id", 50, 0, 0.5))
+                .stringToTimeTransform("time", "YYYY-MM-dd HH:mm:ss", DateTimeZone.UTC)
+                .categoricalToOneHot("cat")
+                .duplicateColumn("float", "float2")
+                .removeColumns("float2")
+                .build();
+        //Duplicate column transform is not columnar
+        assertFalse(tp.supportsColumnar());
+
+        tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("value", MathOp.Multiply, 3.0)
+                .doubleMathOp("value", MathOp.ReverseSubtract, 1.0)
+                .doubleMathOp("value", MathOp.Modulus, 2.0)
+                .doubleMathFunction("value", MathFunction.ABS)
+                .transform(new MinMaxNormalizer("value", 0, 2))
+                .transform(new StandardizeNormalizer("parsed", 3, 2))
+                .transform(new SubtractMeanNormalizer("parsed", 1))
+                .transform(new Log2Normalizer("id", 50, 0, 0.5))
+                .stringToTimeTransform("time", "YYYY-MM-dd HH:mm:ss", DateTimeZone.UTC)
+                .categoricalToOneHot("cat")
+                .removeColumns("float")
+                .build();
+        assertTrue(tp.supportsColumnar());
+
+        List<List<Writable>> data = data(100);
+        List<List<Writable>> expected = new ArrayList<>();
+        for (List<Writable> l : data) {
+            expected.add(tp.execute(l));
+        }
+        List<List<Writable>> out = tp.executeBatch(data);
+        assertEquals(expected, out);
+        assertEquals(tp.getFinalSchema().numColumns(), out.get(0).size());
+        assertTrue(out.get(0).get(5) instanceof LongWritable);
+    }
+
+    @Test
+    public void testCategoricalToInteger() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .categoricalToInteger("cat")
+                .build();
+        List<List<Writable>> data = data(10);
+        ColumnarBatch out = tp.executeColumnar(ColumnarBatch.fromRecords(data, 6));
+        int[] values = ((IntColumn) out.getColumn(1)).getValues();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i % 3, values[i]);
+        }
+
+        data.get(3).set(1, new Text("d"));
+        try {
+            tp.executeBatch(data);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("\"d\""), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFallbackToPerRecord() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("value", MathOp.Add, 1.0)
+                .filter(new DoubleColumnCondition("value", ConditionOp.LessThan, 2.0))
+                .build();
+        assertFalse(tp.supportsColumnar());
+        assertThrows(IllegalStateException.class, () -> tp.executeColumnar(ColumnarBatch.fromRecords(data(5), 6)));
+
+        List<List<Writable>> out = tp.executeBatch(data(10));
+        assertEquals(6, out.size());
+        assertEquals(4, out.get(0).get(0).toInt());
+    }
+}
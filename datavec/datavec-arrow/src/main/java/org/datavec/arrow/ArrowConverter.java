@@ -25,6 +25,7 @@ import lombok.val;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
 import org.apache.arrow.vector.dictionary.Dictionary;
 import org.apache.arrow.vector.dictionary.DictionaryProvider;
 import org.apache.arrow.vector.ipc.ArrowFileReader;
@@ -46,9 +47,11 @@ import org.datavec.api.util.ndarray.RecordConverter;
 import org.datavec.api.writable.*;
 import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
 import org.datavec.arrow.recordreader.ArrowWritableRecordTimeSeriesBatch;
+import org.bytedeco.javacpp.Pointer;
 import org.nd4j.common.primitives.Pair;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.pointers.PagedPointer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.exception.ND4JIllegalArgumentException;
 import org.nd4j.linalg.factory.Nd4j;
@@ -192,6 +195,80 @@ public class ArrowConverter {
         return Nd4j.create(buffer,new int[] {cols,1});
     }
 
+    /**
+     * Wrap the values of a fixed width numeric column as an {@link INDArray}, without copying.<br>
+     * Scalar columns (for example {@link Float4Vector} or {@link IntVector}) are returned with shape [rows, 1].
+     * {@link FixedSizeListVector} columns of a fixed width numeric type are returned with shape [rows, listSize],
+     * as the values of consecutive rows are contiguous in Arrow memory.<br>
+     * The returned array is a view of the vector's data buffer: it is only valid for as long as the vector's
+     * buffers are, and must not be used after the vector is closed or reloaded (for example, by
+     * {@link org.apache.arrow.vector.ipc.ArrowReader#loadNextBatch()}).
+     *
+     * @param fieldVector the column to wrap
+     * @return a view of the column's values
+     * @throws IllegalStateException if the column contains nulls
+     */
+    public static INDArray toArrayView(FieldVector fieldVector) {
+        FieldVector values = fieldVector;
+        int width = 1;
+        if(fieldVector instanceof FixedSizeListVector) {
+            FixedSizeListVector listVector = (FixedSizeListVector) fieldVector;
+            values = listVector.getDataVector();
+            width = listVector.getListSize();
+        }
+
+        if(fieldVector.getNullCount() > 0 || values.getNullCount() > 0) {
+            throw new IllegalStateException("Unable to convert column " + fieldVector.getName() + ": column contains null values");
+        }
+
+        DataType dataType = dataTypeFor(values);
+        long rows = fieldVector.getValueCount();
+        long length = rows * width;
+        if(length == 0) {
+            return Nd4j.create(dataType, rows, width);
+        }
+
+        //Wrap the buffer's address directly: unlike a ByteBuffer, a pointer can address more than Integer.MAX_VALUE bytes
+        long byteLength = length * dataType.width();
+        Pointer pointer = new PagedPointer(values.getDataBuffer().memoryAddress()).capacity(byteLength);
+        DataBuffer buffer = Nd4j.createBuffer(pointer, length, dataType);
+        return Nd4j.create(buffer, new long[] {rows, width}, new long[] {width, 1}, 0, 'c', dataType);
+    }
+
+    /**
+     * Get the ND4J data type of a fixed width numeric column
+     * @param fieldVector the column
+     * @return the equivalent data type
+     * @throws IllegalArgumentException if the column is not a fixed width numeric column
+     */
+    public static DataType dataTypeFor(FieldVector fieldVector) {
+        switch(fieldVector.getMinorType()) {
+            case FLOAT4:
+                return DataType.FLOAT;
+            case FLOAT8:
+                return DataType.DOUBLE;
+            case TINYINT:
+                return DataType.BYTE;
+            case SMALLINT:
+                return DataType.SHORT;
+            case INT:
+                return DataType.INT;
+            case BIGINT:
+                return DataType.LONG;
+            case UINT1:
+                return DataType.UBYTE;
+            case UINT2:
+                return DataType.UINT16;
+            case UINT4:
+                return DataType.UINT32;
+            case UINT8:
+                return DataType.UINT64;
+            default:
+                throw new IllegalArgumentException("Column " + fieldVector.getName() + " of type " + fieldVector.getMinorType()
+                        + " is not a fixed width numeric column");
+        }
+    }
+
 
     /**
      * Convert an {@link INDArray}
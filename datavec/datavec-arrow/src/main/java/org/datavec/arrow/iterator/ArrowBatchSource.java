@@ -0,0 +1,303 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.arrow.iterator;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+import org.apache.commons.io.IOUtils;
+import org.datavec.api.split.InputSplit;
+import org.datavec.arrow.ArrowConverter;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the record batches of one or more Arrow IPC files or streams, and returns minibatches of rows as
+ * {@link INDArray}s, one per {@link ColumnSubset}.<br>
+ * A single fixed width numeric column (or fixed size list column) is returned as a view of the Arrow data buffer,
+ * without copying. Arrays are only copied when they must be: several columns stacked into one array, conversion
+ * to another data type, one-hot encoding, and minibatches that span two record batches.<br>
+ * Views are only valid until the next record batch is loaded.
+ */
+@Slf4j
+class ArrowBatchSource implements Closeable {
+
+    private static final byte[] FILE_MAGIC = "ARROW1".getBytes(StandardCharsets.UTF_8);
+
+    private final URI[] locations;
+    private final InputSplit split;
+    private final List<ColumnSubset> subsets;
+    private final DataType dataType;
+    private final BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+
+    private int locationIdx;
+    private ArrowReader reader;
+    private VectorSchemaRoot root;
+    private int row;
+    //Zero-copy views of the columns of the current record batch
+    private final Map<String, INDArray> views = new HashMap<>();
+
+    /**
+     * @param split    Locations of the Arrow files or streams to read
+     * @param subsets  Columns for each output array
+     * @param dataType Data type of the output arrays. If null, arrays have the data type of their (first) column
+     */
+    ArrowBatchSource(@NonNull InputSplit split, @NonNull List<ColumnSubset> subsets, DataType dataType) {
+        this.split = split;
+        this.locations = split.locations();
+        this.subsets = subsets;
+        this.dataType = dataType;
+    }
+
+    boolean hasNext() {
+        try {
+            while (root == null || row >= root.getRowCount()) {
+                if (!loadNextBatch())
+                    return false;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading Arrow data from " + locations[locationIdx - 1], e);
+        }
+    }
+
+    /**
+     * @param num Maximum number of rows to return
+     * @return One array per column subset, each with up to num rows
+     */
+    INDArray[] next(int num) {
+        if (!hasNext())
+            throw new NoSuchElementException("No more Arrow record batches");
+
+        List<INDArray[]> pieces = new ArrayList<>(1);
+        int remaining = num;
+        while (remaining > 0 && hasNext()) {
+            int n = Math.min(remaining, root.getRowCount() - row);
+            INDArray[] piece = new INDArray[subsets.size()];
+            for (int i = 0; i < piece.length; i++) {
+                piece[i] = get(subsets.get(i), row, n);
+            }
+            row += n;
+            remaining -= n;
+            if (remaining > 0) {
+                //Minibatch continues in the next record batch: views of this batch are about to become invalid
+                for (int i = 0; i < piece.length; i++) {
+                    if (isView(subsets.get(i)))
+                        piece[i] = piece[i].dup();
+                }
+            }
+            pieces.add(piece);
+        }
+
+        if (pieces.size() == 1)
+            return pieces.get(0);
+
+        INDArray[] out = new INDArray[subsets.size()];
+        for (int i = 0; i < out.length; i++) {
+            INDArray[] toConcat = new INDArray[pieces.size()];
+            for (int j = 0; j < toConcat.length; j++) {
+                toConcat[j] = pieces.get(j)[i];
+            }
+            out[i] = Nd4j.concat(0, toConcat);
+        }
+        return out;
+    }
+
+    /**
+     * @return Number of columns of the array for the specified subset, or -1 if there is no data
+     */
+    int width(int subsetIdx) {
+        ColumnSubset subset = subsets.get(subsetIdx);
+        if (subset.isOneHot())
+            return subset.getNumClasses();
+        if (!hasNext())
+            return -1;
+        int width = 0;
+        for (String column : subset.getColumns()) {
+            ArrowType type = field(column).getType();
+            width += type instanceof ArrowType.FixedSizeList ? ((ArrowType.FixedSizeList) type).getListSize() : 1;
+        }
+        return width;
+    }
+
+    void reset() {
+        closeReader();
+        split.reset();
+        locationIdx = 0;
+    }
+
+    @Override
+    public void close() {
+        closeReader();
+        allocator.close();
+    }
+
+    protected INDArray get(ColumnSubset subset, int firstRow, int numRows) {
+        if (subset.isOneHot()) {
+            String column = subset.getColumns()[0];
+            FieldVector vector = vector(column);
+            if (!(vector instanceof BaseIntVector))
+                throw new IllegalStateException("Cannot one-hot encode column " + column + " of type " + vector.getMinorType()
+                        + ": column must be an integer column");
+            BaseIntVector intVector = (BaseIntVector) vector;
+            int numClasses = subset.getNumClasses();
+            float[] data = new float[numRows * numClasses];
+            for (int i = 0; i < numRows; i++) {
+                long idx = intVector.isNull(firstRow + i) ? -1 : intVector.getValueAsLong(firstRow + i);
+                if (idx < 0 || idx >= numClasses)
+                    throw new IllegalStateException("Invalid class index " + (intVector.isNull(firstRow + i) ? "null" : idx)
+                            + " in column " + column + " for one-hot encoding with " + numClasses + " classes");
+                data[i * numClasses + (int) idx] = 1.0f;
+            }
+            return Nd4j.create(data, new long[] {numRows, numClasses}, dataType == null ? DataType.FLOAT : dataType);
+        }
+
+        String[] columns = subset.getColumns();
+        INDArray[] arrays = new INDArray[columns.length];
+        DataType outType = dataType;
+        for (int i = 0; i < columns.length; i++) {
+            INDArray view = views.get(columns[i]);
+            if (view == null) {
+                view = ArrowConverter.toArrayView(vector(columns[i]));
+                views.put(columns[i], view);
+            }
+            if (outType == null)
+                outType = view.dataType();
+            arrays[i] = view.get(NDArrayIndex.interval(firstRow, firstRow + numRows), NDArrayIndex.all());
+            if (arrays[i].dataType() != outType)
+                arrays[i] = arrays[i].castTo(outType);
+        }
+        return arrays.length == 1 ? arrays[0] : Nd4j.hstack(arrays);
+    }
+
+    /**
+     * @return True if the arrays for the subset may be views of Arrow memory
+     */
+    protected boolean isView(ColumnSubset subset) {
+        return !subset.isOneHot() && subset.getColumns().length == 1;
+    }
+
+    protected FieldVector vector(String column) {
+        FieldVector vector = root.getVector(column);
+        if (vector == null)
+            throw new IllegalStateException("No column with name \"" + column + "\" in Arrow data from "
+                    + locations[locationIdx - 1] + ". Columns: " + root.getSchema().getFields());
+        return vector;
+    }
+
+    protected Field field(String column) {
+        return vector(column).getField();
+    }
+
+    private boolean loadNextBatch() throws IOException {
+        views.clear();
+        row = 0;
+        if (reader != null) {
+            if (reader.loadNextBatch()) {
+                root = reader.getVectorSchemaRoot();
+                return true;
+            }
+            closeReader();
+        }
+        if (locationIdx >= locations.length)
+            return false;
+        //Row count of the new root is 0 until its first batch is loaded
+        reader = open(locations[locationIdx++]);
+        root = reader.getVectorSchemaRoot();
+        return true;
+    }
+
+    protected ArrowReader open(URI location) throws IOException {
+        if ("file".equals(location.getScheme())) {
+            FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+            ByteBuffer magic = ByteBuffer.allocate(FILE_MAGIC.length);
+            channel.read(magic, 0);
+            if (Arrays.equals(magic.array(), FILE_MAGIC))
+                return new ArrowFileReader(channel, allocator);
+            return new ArrowStreamReader(channel, allocator);
+        }
+
+        InputStream is;
+        try {
+            is = new BufferedInputStream(split.openInputStreamFor(location.toString()));
+        } catch (Exception e) {
+            throw new IOException("Unable to open " + location, e);
+        }
+        is.mark(FILE_MAGIC.length);
+        byte[] magic = new byte[FILE_MAGIC.length];
+        int read = IOUtils.read(is, magic);
+        is.reset();
+        if (read == FILE_MAGIC.length && Arrays.equals(magic, FILE_MAGIC)) {
+            //File format needs random access: read the whole file
+            byte[] bytes;
+            try {
+                bytes = IOUtils.toByteArray(is);
+            } finally {
+                is.close();
+            }
+            return new ArrowFileReader(new ByteArrayReadableSeekableByteChannel(bytes), allocator);
+        }
+        return new ArrowStreamReader(is, allocator);
+    }
+
+    private void closeReader() {
+        views.clear();
+        root = null;
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.warn("Error closing Arrow reader", e);
+            }
+            reader = null;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.arrow.iterator;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.InputSplit;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link DataSetIterator} that reads Arrow IPC files or streams (for example, exported from Spark) directly into
+ * {@link INDArray}s, without going through {@link org.datavec.api.writable.Writable}s.<br>
+ * When the features (or labels) are a single fixed width numeric column, or a single fixed size list column of a
+ * numeric type, the arrays are views of the Arrow buffers and no data is copied. Data is only copied when several
+ * columns are stacked, when a data type conversion is needed, for one-hot labels, and for minibatches that span two
+ * Arrow record batches.<br>
+ * As the returned arrays may be views of Arrow memory that is reused for the next record batch, a DataSet returned
+ * by this iterator must not be used after the iterator has moved on to the next record batch. For this reason, this
+ * iterator does not support asynchronous prefetching. Use {@link DataSet#detach()} or
+ * {@link INDArray#dup()} to keep a DataSet.<br>
+ * Example:
+ * <pre>
+ * {@code
+ * DataSetIterator iter = new ArrowDataSetIterator.Builder(64)
+ *         .source(new File("train.arrow"))
+ *         .features("features")
+ *         .labelsOneHot("label", 10)
+ *         .build();
+ * }
+ * </pre>
+ */
+public class ArrowDataSetIterator implements DataSetIterator, Closeable {
+
+    private final ArrowBatchSource source;
+    private final int batchSize;
+    private final boolean hasLabels;
+    @Getter
+    @Setter
+    private DataSetPreProcessor preProcessor;
+
+    protected ArrowDataSetIterator(Builder builder) {
+        List<ColumnSubset> subsets = new ArrayList<>(2);
+        subsets.add(builder.features);
+        if (builder.labels != null)
+            subsets.add(builder.labels);
+        this.source = new ArrowBatchSource(builder.split, subsets, builder.dataType);
+        this.batchSize = builder.batchSize;
+        this.hasLabels = builder.labels != null;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        INDArray[] arrays = source.next(num);
+        DataSet ds = new DataSet(arrays[0], hasLabels ? arrays[1] : null);
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+        return ds;
+    }
+
+    @Override
+    public int inputColumns() {
+        return source.width(0);
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return hasLabels ? source.width(1) : -1;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        source.reset();
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return source.hasNext();
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    public static class Builder {
+
+        private final int batchSize;
+        private InputSplit split;
+        private ColumnSubset features;
+        private ColumnSubset labels;
+        private DataType dataType;
+
+        /**
+         * @param batchSize Maximum number of rows in each DataSet
+         */
+        public Builder(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * @param split Locations of the Arrow IPC files or streams to read, in order
+         */
+        public Builder source(@NonNull InputSplit split) {
+            this.split = split;
+            return this;
+        }
+
+        /**
+         * @param files Arrow IPC files or streams to read, in order
+         */
+        public Builder source(@NonNull File... files) {
+            List<URI> uris = new ArrayList<>(files.length);
+            for (File f : files) {
+                uris.add(f.toURI());
+            }
+            return source(new CollectionInputSplit(uris));
+        }
+
+        /**
+         * Set the features columns. Each column must be a numeric column, or a fixed size list of a numeric type.
+         * If a single column is specified, features are views of the Arrow data, otherwise the columns are stacked
+         * in the specified order.
+         *
+         * @param columns Names of the features columns
+         */
+        public Builder features(@NonNull String... columns) {
+            Preconditions.checkArgument(columns.length > 0, "At least one features column must be specified");
+            this.features = ColumnSubset.of(columns);
+            return this;
+        }
+
+        /**
+         * Set the labels columns, as per {@link #features(String...)}. If no labels are set, DataSets have null labels.
+         *
+         * @param columns Names of the labels columns
+         */
+        public Builder labels(@NonNull String... columns) {
+            Preconditions.checkArgument(columns.length > 0, "At least one labels column must be specified");
+            this.labels = ColumnSubset.of(columns);
+            return this;
+        }
+
+        /**
+         * Set the labels to the one-hot representation of an integer column with values in range 0..numClasses-1
+         *
+         * @param column     Name of the column with the class index
+         * @param numClasses Number of classes
+         */
+        public Builder labelsOneHot(@NonNull String column, int numClasses) {
+            Preconditions.checkArgument(numClasses > 0, "Number of classes must be positive, got %s", numClasses);
+            this.labels = ColumnSubset.oneHot(column, numClasses);
+            return this;
+        }
+
+        /**
+         * Set the data type of the features and labels. If not set, each array has the data type of its (first)
+         * column, which avoids a conversion copy. One-hot labels default to FLOAT.
+         */
+        public Builder dataType(DataType dataType) {
+            this.dataType = dataType;
+            return this;
+        }
+
+        public ArrowDataSetIterator build() {
+            Preconditions.checkState(batchSize > 0, "Batch size must be positive, got %s", batchSize);
+            Preconditions.checkState(split != null, "No source set: use source(InputSplit) or source(File...)");
+            Preconditions.checkState(features != null, "No features columns set: use features(String...)");
+            return new ArrowDataSetIterator(this);
+        }
+    }
+}
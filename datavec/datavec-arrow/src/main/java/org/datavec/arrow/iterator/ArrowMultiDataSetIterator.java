@@ -0,0 +1,215 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.arrow.iterator;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.InputSplit;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link MultiDataSetIterator} that reads Arrow IPC files or streams directly into {@link INDArray}s.<br>
+ * Each input and output is made of one or more columns, or is the one-hot representation of an integer column.
+ * As with {@link ArrowDataSetIterator}, single column inputs and outputs are views of the Arrow data, and MultiDataSets
+ * must not be used after the iterator has moved on to the next Arrow record batch.<br>
+ * Example:
+ * <pre>
+ * {@code
+ * MultiDataSetIterator iter = new ArrowMultiDataSetIterator.Builder(64)
+ *         .source(new File("train.arrow"))
+ *         .addInput("image")
+ *         .addInput("age", "height", "weight")
+ *         .addOutputOneHot("label", 10)
+ *         .build();
+ * }
+ * </pre>
+ */
+public class ArrowMultiDataSetIterator implements MultiDataSetIterator, Closeable {
+
+    private final ArrowBatchSource source;
+    private final int batchSize;
+    private final int numInputs;
+    @Getter
+    @Setter
+    private MultiDataSetPreProcessor preProcessor;
+
+    protected ArrowMultiDataSetIterator(Builder builder) {
+        List<ColumnSubset> subsets = new ArrayList<>(builder.inputs);
+        subsets.addAll(builder.outputs);
+        this.source = new ArrowBatchSource(builder.split, subsets, builder.dataType);
+        this.batchSize = builder.batchSize;
+        this.numInputs = builder.inputs.size();
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        INDArray[] arrays = source.next(num);
+        INDArray[] features = Arrays.copyOfRange(arrays, 0, numInputs);
+        INDArray[] labels = Arrays.copyOfRange(arrays, numInputs, arrays.length);
+        MultiDataSet mds = new org.nd4j.linalg.dataset.MultiDataSet(features, labels);
+        if (preProcessor != null)
+            preProcessor.preProcess(mds);
+        return mds;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        source.reset();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return source.hasNext();
+    }
+
+    @Override
+    public MultiDataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    public static class Builder {
+
+        private final int batchSize;
+        private InputSplit split;
+        private final List<ColumnSubset> inputs = new ArrayList<>();
+        private final List<ColumnSubset> outputs = new ArrayList<>();
+        private DataType dataType;
+
+        /**
+         * @param batchSize Maximum number of rows in each MultiDataSet
+         */
+        public Builder(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * @param split Locations of the Arrow IPC files or streams to read, in order
+         */
+        public Builder source(@NonNull InputSplit split) {
+            this.split = split;
+            return this;
+        }
+
+        /**
+         * @param files Arrow IPC files or streams to read, in order
+         */
+        public Builder source(@NonNull File... files) {
+            List<URI> uris = new ArrayList<>(files.length);
+            for (File f : files) {
+                uris.add(f.toURI());
+            }
+            return source(new CollectionInputSplit(uris));
+        }
+
+        /**
+         * Add an input made of the specified columns, stacked in order. Each column must be a numeric column, or a
+         * fixed size list of a numeric type
+         *
+         * @param columns Names of the columns
+         */
+        public Builder addInput(@NonNull String... columns) {
+            Preconditions.checkArgument(columns.length > 0, "At least one column must be specified");
+            inputs.add(ColumnSubset.of(columns));
+            return this;
+        }
+
+        /**
+         * Add an input that is the one-hot representation of an integer column with values in range 0..numClasses-1
+         *
+         * @param column     Name of the column
+         * @param numClasses Number of classes
+         */
+        public Builder addInputOneHot(@NonNull String column, int numClasses) {
+            Preconditions.checkArgument(numClasses > 0, "Number of classes must be positive, got %s", numClasses);
+            inputs.add(ColumnSubset.oneHot(column, numClasses));
+            return this;
+        }
+
+        /**
+         * Add an output made of the specified columns, as per {@link #addInput(String...)}
+         *
+         * @param columns Names of the columns
+         */
+        public Builder addOutput(@NonNull String... columns) {
+            Preconditions.checkArgument(columns.length > 0, "At least one column must be specified");
+            outputs.add(ColumnSubset.of(columns));
+            return this;
+        }
+
+        /**
+         * Add an output that is the one-hot representation of an integer column with values in range 0..numClasses-1
+         *
+         * @param column     Name of the column
+         * @param numClasses Number of classes
+         */
+        public Builder addOutputOneHot(@NonNull String column, int numClasses) {
+            Preconditions.checkArgument(numClasses > 0, "Number of classes must be positive, got %s", numClasses);
+            outputs.add(ColumnSubset.oneHot(column, numClasses));
+            return this;
+        }
+
+        /**
+         * Set the data type of all inputs and outputs. If not set, each array has the data type of its (first)
+         * column, which avoids a conversion copy. One-hot arrays default to FLOAT.
+         */
+        public Builder dataType(DataType dataType) {
+            this.dataType = dataType;
+            return this;
+        }
+
+        public ArrowMultiDataSetIterator build() {
+            Preconditions.checkState(batchSize > 0, "Batch size must be positive, got %s", batchSize);
+            Preconditions.checkState(split != null, "No source set: use source(InputSplit) or source(File...)");
+            Preconditions.checkState(!inputs.isEmpty() || !outputs.isEmpty(), "No inputs or outputs set");
+            return new ArrowMultiDataSetIterator(this);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.arrow.iterator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The columns of an Arrow record batch that make up one array of a DataSet or MultiDataSet
+ */
+@Data
+@AllArgsConstructor
+class ColumnSubset {
+    private final String[] columns;
+    private final boolean oneHot;
+    private final int numClasses;
+
+    static ColumnSubset of(String... columns) {
+        return new ColumnSubset(columns, false, -1);
+    }
+
+    static ColumnSubset oneHot(String column, int numClasses) {
+        return new ColumnSubset(new String[] {column}, true, numClasses);
+    }
+}
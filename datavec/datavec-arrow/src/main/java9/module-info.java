@@ -6,6 +6,8 @@ open module datavec.arrow {
     requires datavec.api;
     requires nd4j.api;
     requires nd4j.common;
+    requires org.bytedeco.javacpp;
     exports org.datavec.arrow;
+    exports org.datavec.arrow.iterator;
     exports org.datavec.arrow.recordreader;
 }
@@ -0,0 +1,203 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.arrow.iterator;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.ArrowWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Arrow Data Set Iterator Test")
+@Tag(TagNames.JAVA_ONLY)
+@Tag(TagNames.FILE_IO)
+class ArrowDataSetIteratorTest extends BaseND4JTest {
+
+    private static final int NUM_FEATURES = 3;
+    private static final int NUM_CLASSES = 4;
+
+    private static BufferAllocator bufferAllocator = new RootAllocator(Long.MAX_VALUE);
+
+    @TempDir
+    public Path testDir;
+
+    /**
+     * Write numBatches record batches of rowsPerBatch rows. For row r (counted across batches):
+     * features = [r, r + 0.1, r + 0.2] (fixed size list of float), a = r and b = 2r (double), label = r % NUM_CLASSES
+     */
+    private static File write(File f, boolean fileFormat, int numBatches, int rowsPerBatch) throws Exception {
+        FixedSizeListVector features = FixedSizeListVector.empty("features", NUM_FEATURES, bufferAllocator);
+        Float4Vector values = (Float4Vector) features.addOrGetVector(
+                FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE))).getVector();
+        Float8Vector a = new Float8Vector("a", bufferAllocator);
+        Float8Vector b = new Float8Vector("b", bufferAllocator);
+        IntVector label = new IntVector("label", bufferAllocator);
+        try (VectorSchemaRoot root = new VectorSchemaRoot(Arrays.<FieldVector>asList(features, a, b, label));
+             FileOutputStream fos = new FileOutputStream(f)) {
+            ArrowWriter writer = fileFormat ? new ArrowFileWriter(root, null, fos.getChannel())
+                    : new ArrowStreamWriter(root, null, fos.getChannel());
+            writer.start();
+            int r = 0;
+            for (int batch = 0; batch < numBatches; batch++) {
+                root.allocateNew();
+                for (int i = 0; i < rowsPerBatch; i++, r++) {
+                    features.setNotNull(i);
+                    for (int j = 0; j < NUM_FEATURES; j++) {
+                        values.setSafe(i * NUM_FEATURES + j, r + 0.1f * j);
+                    }
+                    a.setSafe(i, r);
+                    b.setSafe(i, 2 * r);
+                    label.setSafe(i, r % NUM_CLASSES);
+                }
+                root.setRowCount(rowsPerBatch);
+                writer.writeBatch();
+            }
+            writer.end();
+            writer.close();
+        }
+        return f;
+    }
+
+    @Test
+    @DisplayName("Test Features View And One Hot Labels")
+    void testFeaturesViewAndOneHotLabels() throws Exception {
+        File f = write(testDir.resolve("data.arrow").toFile(), true, 2, 8);
+        ArrowDataSetIterator iter = new ArrowDataSetIterator.Builder(4)
+                .source(f)
+                .features("features")
+                .labelsOneHot("label", NUM_CLASSES)
+                .build();
+
+        assertEquals(NUM_FEATURES, iter.inputColumns());
+        assertEquals(NUM_CLASSES, iter.totalOutcomes());
+        assertFalse(iter.asyncSupported());
+
+        for (int epoch = 0; epoch < 2; epoch++) {
+            int r = 0;
+            int count = 0;
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                assertEquals(DataType.FLOAT, ds.getFeatures().dataType());
+                assertArrayEquals(new long[] {4, NUM_FEATURES}, ds.getFeatures().shape());
+                assertArrayEquals(new long[] {4, NUM_CLASSES}, ds.getLabels().shape());
+                for (int i = 0; i < 4; i++, r++) {
+                    for (int j = 0; j < NUM_FEATURES; j++) {
+                        assertEquals(r + 0.1f * j, ds.getFeatures().getFloat(i, j), 1e-6);
+                    }
+                    assertEquals(1.0f, ds.getLabels().getFloat(i, r % NUM_CLASSES), 0.0f);
+                    assertEquals(1.0f, ds.getLabels().getRow(i).sumNumber().floatValue(), 0.0f);
+                }
+                count++;
+            }
+            assertEquals(4, count);
+            iter.reset();
+        }
+        iter.close();
+    }
+
+    @Test
+    @DisplayName("Test Stacked Columns Across Batches And Files")
+    void testStackedColumnsAcrossBatchesAndFiles() throws Exception {
+        File f1 = write(testDir.resolve("data1.arrows").toFile(), false, 2, 5);
+        File f2 = write(testDir.resolve("data2.arrow").toFile(), true, 1, 3);
+        ArrowDataSetIterator iter = new ArrowDataSetIterator.Builder(4)
+                .source(f1, f2)
+                .features("a", "b")
+                .labels("label")
+                .dataType(DataType.FLOAT)
+                .build();
+
+        //Rows: 10 from the first file (two batches of 5), then 3 from the second
+        long[] expSizes = {4, 4, 4, 1};
+        int[] expFirstRow = {0, 4, 8, 2};
+        int idx = 0;
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            assertEquals(DataType.FLOAT, ds.getFeatures().dataType());
+            assertEquals(DataType.FLOAT, ds.getLabels().dataType());
+            assertEquals(expSizes[idx], ds.getFeatures().size(0));
+            assertEquals(2, ds.getFeatures().size(1));
+            assertEquals(1, ds.getLabels().size(1));
+            for (int i = 0; i < ds.getFeatures().size(0); i++) {
+                int r = (idx * 4 + i) < 10 ? idx * 4 + i : idx * 4 + i - 10;
+                assertEquals(r, ds.getFeatures().getFloat(i, 0), 0.0f);
+                assertEquals(2 * r, ds.getFeatures().getFloat(i, 1), 0.0f);
+                assertEquals(r % NUM_CLASSES, ds.getLabels().getFloat(i, 0), 0.0f);
+            }
+            assertEquals(expFirstRow[idx], (int) ds.getFeatures().getFloat(0, 0));
+            idx++;
+        }
+        assertEquals(4, idx);
+        iter.close();
+    }
+
+    @Test
+    @DisplayName("Test Multi Data Set Iterator")
+    void testMultiDataSetIterator() throws Exception {
+        File f = write(testDir.resolve("data.arrow").toFile(), true, 1, 6);
+        ArrowMultiDataSetIterator iter = new ArrowMultiDataSetIterator.Builder(6)
+                .source(f)
+                .addInput("features")
+                .addInput("a")
+                .addOutputOneHot("label", NUM_CLASSES)
+                .addOutput("b")
+                .build();
+
+        assertTrue(iter.hasNext());
+        MultiDataSet mds = iter.next();
+        assertFalse(iter.hasNext());
+        assertEquals(2, mds.getFeatures().length);
+        assertEquals(2, mds.getLabels().length);
+        assertEquals(DataType.FLOAT, mds.getFeatures(0).dataType());
+        assertEquals(DataType.DOUBLE, mds.getFeatures(1).dataType());
+        assertEquals(Nd4j.arange(6).castTo(DataType.DOUBLE).reshape(6, 1), mds.getFeatures(1));
+        assertEquals(Nd4j.arange(6).muli(2).castTo(DataType.DOUBLE).reshape(6, 1), mds.getLabels(1));
+        assertArrayEquals(new long[] {6, NUM_CLASSES}, mds.getLabels(0).shape());
+        iter.close();
+    }
+}
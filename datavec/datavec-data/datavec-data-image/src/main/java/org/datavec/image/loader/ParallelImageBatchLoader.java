@@ -0,0 +1,500 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.image.loader;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8U;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Loads minibatches of images, decoding and augmenting the images of each minibatch in parallel.<br>
+ * Unlike {@link NativeImageLoader} with an {@link org.datavec.image.transform.ImageTransform} pipeline, which creates
+ * a new Mat for each transform, each image here goes through a single fused pass:
+ * <ol>
+ *     <li>Decode (OpenCV imdecode), directly to the required number of channels where possible</li>
+ *     <li>Crop (random area/aspect ratio crop, or center crop to the output aspect ratio): a view, not a copy</li>
+ *     <li>Resize the crop to the output size (OpenCV resize)</li>
+ *     <li>Horizontal flip, per channel normalization ((x - mean) / std), optional BGR to RGB and NCHW/NHWC layout,
+ *     in one pass written directly to the image's region of the preallocated output array</li>
+ * </ol>
+ * Random augmentation is reproducible: the crop and flip of each image only depend on the seed and the image's
+ * position in the sequence of images loaded by this instance, not on which thread loads it.<br>
+ * Only 8-bit images are supported: images are decoded to 8 bits per channel.
+ */
+@Slf4j
+public class ParallelImageBatchLoader implements Closeable {
+
+    private static final int MAX_CROP_ATTEMPTS = 10;
+
+    @Getter
+    private final int height;
+    @Getter
+    private final int width;
+    @Getter
+    private final int channels;
+    @Getter
+    private final boolean nchw;
+    private final boolean rgb;
+    private final boolean centerCrop;
+    private final double minCropArea;
+    private final double maxCropArea;
+    private final double minAspectRatio;
+    private final double maxAspectRatio;
+    private final double flipProbability;
+    private final float[] scale;
+    private final float[] offset;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final AtomicLong imageCount = new AtomicLong();
+
+    protected ParallelImageBatchLoader(Builder b) {
+        this.height = b.height;
+        this.width = b.width;
+        this.channels = b.channels;
+        this.nchw = b.nchw;
+        this.rgb = b.rgb;
+        this.centerCrop = b.centerCrop;
+        this.minCropArea = b.minCropArea;
+        this.maxCropArea = b.maxCropArea;
+        this.minAspectRatio = b.minAspectRatio;
+        this.maxAspectRatio = b.maxAspectRatio;
+        this.flipProbability = b.flipProbability;
+        this.seed = b.seed;
+        //(x - mean) / std == x * scale + offset
+        this.scale = new float[channels];
+        this.offset = new float[channels];
+        for (int c = 0; c < channels; c++) {
+            double mean = b.mean == null ? 0.0 : b.mean[b.mean.length == 1 ? 0 : c];
+            double std = b.std == null ? 1.0 : b.std[b.std.length == 1 ? 0 : c];
+            scale[c] = (float) (1.0 / std);
+            offset[c] = (float) (-mean / std);
+        }
+        this.ownsPool = b.pool == null;
+        this.pool = b.pool != null ? b.pool : new ForkJoinPool(b.numThreads);
+    }
+
+    /**
+     * @return Total number of images loaded so far. This is also the sequence number of the next image, that
+     * determines its random augmentation
+     */
+    public long getImageCount() {
+        return imageCount.get();
+    }
+
+    /**
+     * Set the sequence number of the next image: for example, to reproduce the augmentation of an earlier run
+     */
+    public void setImageCount(long count) {
+        imageCount.set(count);
+    }
+
+    /**
+     * Load the specified images into a new array, with shape [n, channels, height, width] (NCHW) or
+     * [n, height, width, channels] (NHWC)
+     */
+    public INDArray load(@NonNull List<File> files) throws IOException {
+        long n = files.size();
+        long[] shape = nchw ? new long[]{n, channels, height, width} : new long[]{n, height, width, channels};
+        INDArray out = Nd4j.createUninitialized(DataType.FLOAT, shape, 'c');
+        load(files, out);
+        return out;
+    }
+
+    /**
+     * Load the specified images into the specified array, with shape [n, channels, height, width] (NCHW) or
+     * [n, height, width, channels] (NHWC)
+     */
+    public void load(@NonNull List<File> files, @NonNull INDArray out) throws IOException {
+        int n = files.size();
+        long[] expShape = nchw ? new long[]{n, channels, height, width} : new long[]{n, height, width, channels};
+        Preconditions.checkState(Arrays.equals(expShape, out.shape()), "Expected output array with shape %s, got %ndShape",
+                expShape, out);
+
+        long first = imageCount.getAndAdd(n);
+        int imageLength = height * width * channels;
+        //Write directly to the output buffer if possible, otherwise via a temporary float array per image
+        boolean direct = out.dataType() == DataType.FLOAT && out.ordering() == 'c' && !out.isView();
+        FloatPointer outPointer = direct ? (FloatPointer) out.data().pointer() : null;
+        long outOffset = out.data().offset();
+        Nd4j.getAffinityManager().tagLocation(out, AffinityManager.Location.HOST);
+
+        run(n, i -> {
+            float[] image = new float[imageLength];
+            try {
+                load(FileUtils.readFileToByteArray(files.get(i)), first + i, image, 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error loading image " + files.get(i), e);
+            }
+            if (direct) {
+                new FloatPointer(outPointer).position(outOffset + (long) i * imageLength).put(image, 0, imageLength);
+            } else {
+                INDArray arr = Nd4j.createFromArray(image).reshape(nchw ? new long[]{channels, height, width} : new long[]{height, width, channels});
+                synchronized (out) {
+                    out.get(NDArrayIndex.point(i)).assign(arr);
+                }
+            }
+        });
+        Nd4j.getAffinityManager().ensureLocation(out, AffinityManager.Location.DEVICE);
+    }
+
+    private void run(int n, IntConsumer task) throws IOException {
+        try {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(task)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading images", e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof UncheckedIOException)
+                throw ((UncheckedIOException) t).getCause();
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Decode and augment a single encoded image
+     *
+     * @param encoded   Encoded image (JPEG, PNG, etc)
+     * @param sequence  Sequence number of the image, used to seed its random augmentation
+     * @param out       Output array
+     * @param outOffset Offset in the output array: the image is written to outOffset to outOffset + height*width*channels
+     */
+    public void load(@NonNull byte[] encoded, long sequence, @NonNull float[] out, int outOffset) throws IOException {
+        Mat decoded = decode(encoded);
+        try {
+            Random r = new Random(mix(seed + sequence * 0x9E3779B97F4A7C15L));
+            int srcH = decoded.rows();
+            int srcW = decoded.cols();
+
+            int[] crop = cropRegion(srcH, srcW, r);
+            boolean flip = flipProbability > 0 && r.nextDouble() < flipProbability;
+
+            Mat cropped = (crop[0] == 0 && crop[1] == 0 && crop[2] == srcW && crop[3] == srcH)
+                    ? decoded : new Mat(decoded, new Rect(crop[0], crop[1], crop[2], crop[3]));
+            Mat resized = cropped;
+            if (cropped.rows() != height || cropped.cols() != width) {
+                resized = new Mat();
+                //Area interpolation for downscaling avoids aliasing; linear is faster for upscaling
+                boolean shrink = cropped.rows() > height && cropped.cols() > width;
+                resize(cropped, resized, new Size(width, height), 0, 0, shrink ? INTER_AREA : INTER_LINEAR);
+            }
+            try {
+                byte[] pixels = pixels(resized);
+                write(pixels, flip, out, outOffset);
+            } finally {
+                if (resized != cropped)
+                    resized.close();
+                if (cropped != decoded)
+                    cropped.close();
+            }
+        } finally {
+            decoded.close();
+        }
+    }
+
+    protected Mat decode(byte[] encoded) throws IOException {
+        int flags = channels == 1 ? IMREAD_GRAYSCALE : channels == 3 ? IMREAD_COLOR : IMREAD_UNCHANGED;
+        Mat image;
+        try (BytePointer bp = new BytePointer(encoded); Mat buf = new Mat(1, encoded.length, CV_8UC1, bp)) {
+            image = imdecode(buf, flags);
+        }
+        if (image == null || image.empty())
+            throw new IOException("Could not decode image: unsupported or corrupt image data");
+
+        if (image.channels() != channels) {
+            int code;
+            if (image.channels() == 1 && channels == 4) {
+                code = COLOR_GRAY2BGRA;
+            } else if (image.channels() == 3 && channels == 4) {
+                code = COLOR_BGR2BGRA;
+            } else {
+                image.close();
+                throw new IOException("Cannot convert from " + image.channels() + " to " + channels + " channels");
+            }
+            Mat converted = new Mat();
+            cvtColor(image, converted, code);
+            image.close();
+            image = converted;
+        }
+        if (image.depth() != CV_8U) {
+            Mat converted = new Mat();
+            image.convertTo(converted, CV_8U, 1.0 / 256, 0);
+            image.close();
+            image = converted;
+        }
+        return image;
+    }
+
+    /**
+     * @return Crop region: x, y, width, height
+     */
+    protected int[] cropRegion(int srcH, int srcW, Random r) {
+        if (minCropArea < 1.0 || maxCropArea < 1.0) {
+            //Random crop, as per "Going deeper with convolutions" (Inception) - random area and aspect ratio
+            double area = (double) srcH * srcW;
+            for (int attempt = 0; attempt < MAX_CROP_ATTEMPTS; attempt++) {
+                double targetArea = area * (minCropArea + (maxCropArea - minCropArea) * r.nextDouble());
+                double logRatio = Math.log(minAspectRatio) + (Math.log(maxAspectRatio) - Math.log(minAspectRatio)) * r.nextDouble();
+                double aspect = Math.exp(logRatio);
+                int w = (int) Math.round(Math.sqrt(targetArea * aspect));
+                int h = (int) Math.round(Math.sqrt(targetArea / aspect));
+                if (w > 0 && h > 0 && w <= srcW && h <= srcH) {
+                    int x = r.nextInt(srcW - w + 1);
+                    int y = r.nextInt(srcH - h + 1);
+                    return new int[]{x, y, w, h};
+                }
+            }
+            //Fall back on center crop
+        } else if (!centerCrop) {
+            return new int[]{0, 0, srcW, srcH};
+        }
+
+        //Center crop to the output aspect ratio
+        double outAspect = (double) width / height;
+        int w = srcW;
+        int h = srcH;
+        if ((double) srcW / srcH > outAspect) {
+            w = Math.max(1, (int) Math.round(srcH * outAspect));
+        } else {
+            h = Math.max(1, (int) Math.round(srcW / outAspect));
+        }
+        return new int[]{(srcW - w) / 2, (srcH - h) / 2, w, h};
+    }
+
+    private static byte[] pixels(Mat image) {
+        byte[] pixels = new byte[(int) (image.total() * image.channels())];
+        if (image.isContinuous()) {
+            image.data().get(pixels);
+        } else {
+            int rowLength = image.cols() * image.channels();
+            for (int y = 0; y < image.rows(); y++) {
+                image.ptr(y).get(pixels, y * rowLength, rowLength);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Convert the interleaved (HWC) 8 bit pixels to floats: flip, normalize, reorder channels and change layout
+     */
+    protected void write(byte[] pixels, boolean flip, float[] out, int outOffset) {
+        int c = channels;
+        int plane = height * width;
+        for (int ch = 0; ch < c; ch++) {
+            //OpenCV decodes to BGR(A): swap the first and third channels for RGB(A)
+            int srcCh = rgb && c >= 3 && ch < 3 ? 2 - ch : ch;
+            float s = scale[ch];
+            float o = offset[ch];
+            for (int y = 0; y < height; y++) {
+                int rowIn = y * width * c;
+                if (nchw) {
+                    int rowOut = outOffset + ch * plane + y * width;
+                    if (flip) {
+                        for (int x = 0; x < width; x++) {
+                            out[rowOut + x] = (pixels[rowIn + (width - 1 - x) * c + srcCh] & 0xFF) * s + o;
+                        }
+                    } else {
+                        for (int x = 0; x < width; x++) {
+                            out[rowOut + x] = (pixels[rowIn + x * c + srcCh] & 0xFF) * s + o;
+                        }
+                    }
+                } else {
+                    int rowOut = outOffset + y * width * c + ch;
+                    for (int x = 0; x < width; x++) {
+                        int xIn = flip ? width - 1 - x : x;
+                        out[rowOut + x * c] = (pixels[rowIn + xIn * c + srcCh] & 0xFF) * s + o;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long mix(long z) {
+        //SplitMix64 finalizer: decorrelates the seeds of consecutive images
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool)
+            pool.shutdown();
+    }
+
+    public static class Builder {
+        private final int height;
+        private final int width;
+        private final int channels;
+        private boolean nchw = true;
+        private boolean rgb = false;
+        private boolean centerCrop = false;
+        private double minCropArea = 1.0;
+        private double maxCropArea = 1.0;
+        private double minAspectRatio = 1.0;
+        private double maxAspectRatio = 1.0;
+        private double flipProbability = 0.0;
+        private double[] mean;
+        private double[] std;
+        private long seed = 12345;
+        private int numThreads = Runtime.getRuntime().availableProcessors();
+        private ForkJoinPool pool;
+
+        /**
+         * @param height   Output height
+         * @param width    Output width
+         * @param channels Output channels: 1 (grayscale), 3 (BGR or RGB) or 4 (BGRA or RGBA)
+         */
+        public Builder(int height, int width, int channels) {
+            Preconditions.checkArgument(height > 0 && width > 0, "Height and width must be positive, got %s, %s", height, width);
+            Preconditions.checkArgument(channels == 1 || channels == 3 || channels == 4, "Channels must be 1, 3 or 4, got %s", channels);
+            this.height = height;
+            this.width = width;
+            this.channels = channels;
+        }
+
+        /**
+         * @param nchw If true (default): output is [n, channels, height, width]. Otherwise [n, height, width, channels]
+         */
+        public Builder nchw(boolean nchw) {
+            this.nchw = nchw;
+            return this;
+        }
+
+        /**
+         * @param rgb If true: channels are in RGB order. Default: false (BGR order, as per NativeImageLoader)
+         */
+        public Builder rgb(boolean rgb) {
+            this.rgb = rgb;
+            return this;
+        }
+
+        /**
+         * If true: when not using random crops, crop the center of each image to the aspect ratio of the output
+         * before resizing. Otherwise (default), the whole image is resized to the output size
+         */
+        public Builder centerCrop(boolean centerCrop) {
+            this.centerCrop = centerCrop;
+            return this;
+        }
+
+        /**
+         * Random crop: the area of each crop is chosen uniformly between minArea and maxArea (as a fraction of the
+         * image area), and its aspect ratio log-uniformly between minAspectRatio and maxAspectRatio. For example,
+         * (0.08, 1.0, 3.0/4, 4.0/3) for the common Inception-style crop
+         */
+        public Builder randomCrop(double minArea, double maxArea, double minAspectRatio, double maxAspectRatio) {
+            Preconditions.checkArgument(minArea > 0 && minArea <= maxArea && maxArea <= 1.0, "Invalid crop area range: %s to %s", minArea, maxArea);
+            Preconditions.checkArgument(minAspectRatio > 0 && minAspectRatio <= maxAspectRatio, "Invalid aspect ratio range: %s to %s", minAspectRatio, maxAspectRatio);
+            this.minCropArea = minArea;
+            this.maxCropArea = maxArea;
+            this.minAspectRatio = minAspectRatio;
+            this.maxAspectRatio = maxAspectRatio;
+            return this;
+        }
+
+        /**
+         * @param probability Probability of flipping each image horizontally. Default: 0
+         */
+        public Builder flipHorizontal(double probability) {
+            Preconditions.checkArgument(probability >= 0 && probability <= 1, "Probability must be between 0 and 1, got %s", probability);
+            this.flipProbability = probability;
+            return this;
+        }
+
+        /**
+         * Normalize each channel as (x - mean) / std, where x is the pixel value in the range 0 to 255. Values are
+         * specified in the output channel order; a single value is used for all channels. For example, use mean 0 and
+         * std 255 to scale pixels to the range 0 to 1. Default: no normalization
+         */
+        public Builder normalize(@NonNull double[] mean, @NonNull double[] std) {
+            Preconditions.checkArgument(mean.length == 1 || mean.length == channels, "Expected 1 or %s mean values, got %s", channels, mean.length);
+            Preconditions.checkArgument(std.length == 1 || std.length == channels, "Expected 1 or %s std values, got %s", channels, std.length);
+            this.mean = mean;
+            this.std = std;
+            return this;
+        }
+
+        /**
+         * @param seed Seed for random augmentation
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param numThreads Number of threads used to load images. Default: number of processors
+         */
+        public Builder numThreads(int numThreads) {
+            Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+            this.numThreads = numThreads;
+            return this;
+        }
+
+        /**
+         * @param pool Pool used to load images, instead of a new pool. The pool is not shut down by
+         *             {@link ParallelImageBatchLoader#close()}
+         */
+        public Builder pool(@NonNull ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public ParallelImageBatchLoader build() {
+            return new ParallelImageBatchLoader(this);
+        }
+    }
+}
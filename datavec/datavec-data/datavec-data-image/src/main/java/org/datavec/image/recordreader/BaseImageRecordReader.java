@@ -44,6 +44,7 @@ import org.datavec.api.writable.batch.NDArrayRecordBatch;
 import org.datavec.image.loader.BaseImageLoader;
 import org.datavec.image.loader.ImageLoader;
 import org.datavec.image.loader.NativeImageLoader;
+import org.datavec.image.loader.ParallelImageBatchLoader;
 import org.datavec.image.transform.ImageTransform;
 import org.nd4j.linalg.api.concurrency.AffinityManager;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -78,6 +79,7 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
     protected boolean logLabelCountOnInit = true;
     @Getter @Setter
     protected boolean nchw_channels_first = true;
+    protected ParallelImageBatchLoader batchLoader;
 
     public final static String HEIGHT = NAME_SPACE + ".height";
     public final static String WIDTH = NAME_SPACE + ".width";
@@ -292,7 +294,25 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
 
     @Override
     public boolean batchesSupported() {
-        return (imageLoader instanceof NativeImageLoader);
+        return (imageLoader instanceof NativeImageLoader) || batchLoader != null;
+    }
+
+    /**
+     * Set a loader used to decode and augment the images of each minibatch in parallel, in {@link #next(int)}.
+     * When set, the ImageTransform and image loader of this record reader are not used by {@link #next(int)}.
+     * The height, width, channels and layout (NCHW or NHWC) of the loader must match this record reader.
+     *
+     * @param batchLoader Loader to use for minibatches. May be null, to use the image loader of this record reader
+     */
+    public void setBatchLoader(ParallelImageBatchLoader batchLoader) {
+        if (batchLoader != null) {
+            Preconditions.checkArgument(batchLoader.getHeight() == height && batchLoader.getWidth() == width
+                    && batchLoader.getChannels() == channels, "Batch loader size [%s, %s, %s] does not match record reader size [%s, %s, %s]",
+                    batchLoader.getHeight(), batchLoader.getWidth(), batchLoader.getChannels(), height, width, channels);
+            Preconditions.checkArgument(batchLoader.isNchw() == nchw_channels_first, "Batch loader and record reader "
+                    + "must both use NCHW or both use NHWC layout");
+        }
+        this.batchLoader = batchLoader;
     }
 
     @Override
@@ -337,21 +357,31 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
             cnt++;
         }
 
-        INDArray features = Nd4j.createUninitialized(new long[] {cnt, channels, height, width}, 'c');
-        Nd4j.getAffinityManager().tagLocation(features, AffinityManager.Location.HOST);
-        for (int i = 0; i < cnt; i++) {
+        INDArray features;
+        if (batchLoader != null) {
+            //Decoded and augmented in parallel, directly in the required layout
             try {
-                ((NativeImageLoader) imageLoader).asMatrixView(currBatch.get(i),
-                        features.tensorAlongDimension(i, 1, 2, 3));
-            } catch (Exception e) {
-                System.out.println("Image file failed during load: " + currBatch.get(i).getAbsolutePath());
+                features = batchLoader.load(currBatch);
+            } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+        } else {
+            features = Nd4j.createUninitialized(new long[] {cnt, channels, height, width}, 'c');
+            Nd4j.getAffinityManager().tagLocation(features, AffinityManager.Location.HOST);
+            for (int i = 0; i < cnt; i++) {
+                try {
+                    ((NativeImageLoader) imageLoader).asMatrixView(currBatch.get(i),
+                            features.tensorAlongDimension(i, 1, 2, 3));
+                } catch (Exception e) {
+                    System.out.println("Image file failed during load: " + currBatch.get(i).getAbsolutePath());
+                    throw new RuntimeException(e);
+                }
+            }
+            if(!nchw_channels_first){
+                features = features.permute(0,2,3,1);   //NCHW to NHWC
+            }
+            Nd4j.getAffinityManager().ensureLocation(features, AffinityManager.Location.DEVICE);
         }
-        if(!nchw_channels_first){
-            features = features.permute(0,2,3,1);   //NCHW to NHWC
-        }
-        Nd4j.getAffinityManager().ensureLocation(features, AffinityManager.Location.DEVICE);
 
 
         List<INDArray> ret = new ArrayList<>();
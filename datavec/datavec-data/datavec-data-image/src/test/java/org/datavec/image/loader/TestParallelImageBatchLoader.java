@@ -0,0 +1,164 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.image.loader;
+
+import org.datavec.api.io.labels.ParentPathLabelGenerator;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.datavec.image.recordreader.ImageRecordReader;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.FILE_IO)
+public class TestParallelImageBatchLoader {
+
+    private static List<File> createImages(File dir, int n, int height, int width) throws Exception {
+        Random r = new Random(12345);
+        List<File> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    bi.setRGB(x, y, r.nextInt());
+                }
+            }
+            File f = new File(dir, "img_" + i + ".png");
+            ImageIO.write(bi, "png", f);
+            out.add(f);
+        }
+        return out;
+    }
+
+    @Test
+    public void testMatchesNativeImageLoader(@TempDir Path testDir) throws Exception {
+        List<File> files = createImages(testDir.toFile(), 5, 12, 16);
+
+        try (ParallelImageBatchLoader loader = new ParallelImageBatchLoader.Builder(12, 16, 3).numThreads(3).build()) {
+            INDArray out = loader.load(files);
+            assertArrayEquals(new long[]{5, 3, 12, 16}, out.shape());
+            assertEquals(DataType.FLOAT, out.dataType());
+
+            NativeImageLoader nil = new NativeImageLoader(12, 16, 3);
+            for (int i = 0; i < files.size(); i++) {
+                INDArray exp = nil.asMatrix(files.get(i)).castTo(DataType.FLOAT);
+                assertEquals(exp.get(NDArrayIndex.point(0)), out.get(NDArrayIndex.point(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testFlipNormalizeAndLayout(@TempDir Path testDir) throws Exception {
+        List<File> files = createImages(testDir.toFile(), 3, 8, 10);
+
+        INDArray plain;
+        try (ParallelImageBatchLoader loader = new ParallelImageBatchLoader.Builder(8, 10, 3).build()) {
+            plain = loader.load(files);
+        }
+
+        try (ParallelImageBatchLoader loader = new ParallelImageBatchLoader.Builder(8, 10, 3)
+                .flipHorizontal(1.0).rgb(true).nchw(false)
+                .normalize(new double[]{10, 20, 30}, new double[]{2, 4, 8}).build()) {
+            INDArray out = loader.load(files);
+            assertArrayEquals(new long[]{3, 8, 10, 3}, out.shape());
+            for (int i = 0; i < 3; i++) {
+                for (int c = 0; c < 3; c++) {
+                    double mean = 10 * (c + 1);
+                    double std = Math.pow(2, c + 1);
+                    for (int y = 0; y < 8; y++) {
+                        for (int x = 0; x < 10; x++) {
+                            double exp = (plain.getDouble(i, 2 - c, y, 9 - x) - mean) / std;
+                            assertEquals(exp, out.getDouble(i, y, x, c), 1e-4);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomAugmentationReproducible(@TempDir Path testDir) throws Exception {
+        List<File> files = createImages(testDir.toFile(), 8, 40, 60);
+
+        INDArray first;
+        INDArray second;
+        try (ParallelImageBatchLoader loader = new ParallelImageBatchLoader.Builder(16, 16, 3)
+                .randomCrop(0.1, 1.0, 0.75, 4.0 / 3).flipHorizontal(0.5).seed(42).numThreads(4).build()) {
+            first = loader.load(files);
+            second = loader.load(files);
+            assertEquals(16, loader.getImageCount());
+            //Different augmentation for the second epoch
+            assertNotEquals(first, second);
+
+            loader.setImageCount(0);
+            assertEquals(first, loader.load(files));
+        }
+
+        //Independent of the number of threads
+        try (ParallelImageBatchLoader loader = new ParallelImageBatchLoader.Builder(16, 16, 3)
+                .randomCrop(0.1, 1.0, 0.75, 4.0 / 3).flipHorizontal(0.5).seed(42).numThreads(1).build()) {
+            assertEquals(first, loader.load(files));
+            assertEquals(second, loader.load(files));
+        }
+    }
+
+    @Test
+    public void testImageRecordReader(@TempDir Path testDir) throws Exception {
+        File dir = testDir.toFile();
+        for (String label : Arrays.asList("a", "b")) {
+            File d = new File(dir, label);
+            assertTrue(d.mkdirs());
+            createImages(d, 3, 20, 30);
+        }
+
+        ImageRecordReader rr = new ImageRecordReader(16, 16, 3, false, new ParentPathLabelGenerator(), null);
+        rr.initialize(new FileSplit(dir));
+        try (ParallelImageBatchLoader loader = new ParallelImageBatchLoader.Builder(16, 16, 3).nchw(false)
+                .centerCrop(true).build()) {
+            rr.setBatchLoader(loader);
+            assertTrue(rr.batchesSupported());
+            NDArrayRecordBatch b = (NDArrayRecordBatch) rr.next(4);
+            List<INDArray> arrays = b.getArrays();
+            assertArrayEquals(new long[]{4, 16, 16, 3}, arrays.get(0).shape());
+            assertArrayEquals(new long[]{4, 2}, arrays.get(1).shape());
+
+            assertThrows(IllegalArgumentException.class, () -> rr.setBatchLoader(new ParallelImageBatchLoader.Builder(16, 16, 3).build()));
+        }
+    }
+}
@@ -325,6 +325,11 @@ public class LocalTransformExecutor {
             }
         }
 
+        if (currentWritables != null && !isTryCatch() && sequence.supportsColumnar()) {
+            //Every step is a ColumnarTransform: execute column-at-a-time rather than materializing each step per record
+            currentWritables = sequence.executeBatch(currentWritables);
+            dataActions = Collections.emptyList();
+        }
 
         for (DataAction d : dataActions) {
             //log.info("Starting execution of stage {} of {}", count, dataActions.size());     //
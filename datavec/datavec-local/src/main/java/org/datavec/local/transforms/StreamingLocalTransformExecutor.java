@@ -0,0 +1,586 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.ops.IAggregableReduceOp;
+import org.datavec.api.transform.rank.CalculateSortedRank;
+import org.datavec.api.transform.reduce.IAssociativeReducer;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.writable.LongWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.WritableFactory;
+import org.datavec.local.transforms.reduce.MapToPairForReducerFunction;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A streaming alternative to {@link LocalTransformExecutor}, for non-sequence data that may not fit in memory.<br>
+ * The TransformProcess is compiled into stages:
+ * <ul>
+ *     <li>Each run of consecutive transforms and filters is fused into a single function per record. The input is
+ *     processed in chunks: each chunk is mapped in parallel on a {@link ForkJoinPool}, while the next chunk is read.
+ *     Record order is preserved.</li>
+ *     <li>Reductions keep one aggregation per key, not the records themselves.</li>
+ *     <li>{@link CalculateSortedRank} steps sort in memory up to {@code maxRecordsInMemory} records, and otherwise
+ *     spill sorted runs to temporary files, which are then merged.</li>
+ * </ul>
+ * Nothing else is materialized, and no input is read until the output is consumed. Reductions and sorts have to
+ * consume all of their input before producing their first output: they do so on the first call to {@code hasNext()}
+ * of the returned iterator. All other stages produce output as it is consumed.<br>
+ * If every step is a {@link org.datavec.api.transform.columnar.ColumnarTransform}, each chunk is instead executed
+ * column-at-a-time, as per {@link TransformProcess#executeBatch(List)}.<br>
+ * Sequence steps (convert to/from sequence, sequence split) are not supported: use {@link LocalTransformExecutor}.
+ * Unlike LocalTransformExecutor, output values are not converted via Arrow to the types of the final schema.
+ */
+@Slf4j
+public class StreamingLocalTransformExecutor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+    public static final int DEFAULT_MAX_RECORDS_IN_MEMORY = 1_000_000;
+
+    private final TransformProcess transformProcess;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxRecordsInMemory;
+    private final File tempDir;
+
+    protected StreamingLocalTransformExecutor(Builder builder) {
+        this.transformProcess = builder.transformProcess;
+        this.pool = builder.pool == null ? ForkJoinPool.commonPool() : builder.pool;
+        this.chunkSize = builder.chunkSize;
+        this.maxRecordsInMemory = builder.maxRecordsInMemory;
+        this.tempDir = builder.tempDir == null ? new File(System.getProperty("java.io.tmpdir")) : builder.tempDir;
+
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema || transformProcess.getFinalSchema() instanceof SequenceSchema)
+            throw new IllegalArgumentException("Sequence data is not supported by StreamingLocalTransformExecutor: use LocalTransformExecutor");
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getConvertToSequence() != null || d.getConvertFromSequence() != null || d.getSequenceSplit() != null)
+                throw new IllegalArgumentException("Sequence step " + d + " is not supported by StreamingLocalTransformExecutor: use LocalTransformExecutor");
+        }
+    }
+
+    /**
+     * Execute the TransformProcess on the specified input. No input is read by this method: the input is read, and
+     * output produced, as the returned iterator is consumed (for reductions and sorts: all input up to that stage on
+     * the first call to {@code hasNext()})
+     *
+     * @param input Input records
+     * @return Iterator over the output records
+     */
+    public Iterator<List<Writable>> execute(@NonNull Iterator<List<Writable>> input) {
+        int numColumns = transformProcess.getInitialSchema().numColumns();
+        Iterator<List<Writable>> current = new ColumnCountFilter(input, numColumns);
+        if (!LocalTransformExecutor.isTryCatch() && transformProcess.supportsColumnar()) {
+            //Every step is a ColumnarTransform: execute column-at-a-time, on one slice of each chunk per thread
+            return new FusedStage(current, this::executeColumnar);
+        }
+
+        List<UnaryOperator<List<Writable>>> fused = new ArrayList<>();
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() != null) {
+                fused.add(transformOp(d));
+            } else if (d.getFilter() != null) {
+                fused.add(r -> d.getFilter().removeExample(r) ? null : r);
+            } else {
+                if (!fused.isEmpty()) {
+                    current = new FusedStage(current, fused);
+                    fused = new ArrayList<>();
+                }
+                if (d.getReducer() != null) {
+                    current = new ReduceStage(current, d.getReducer());
+                } else if (d.getCalculateSortedRank() != null) {
+                    current = new SortedRankStage(current, d.getCalculateSortedRank());
+                } else {
+                    throw new RuntimeException("Unknown/not implemented action: " + d);
+                }
+            }
+        }
+        if (!fused.isEmpty())
+            current = new FusedStage(current, fused);
+        return current;
+    }
+
+    /**
+     * Execute the TransformProcess on all records of the reader, writing the output to the writer
+     *
+     * @return Number of records written
+     */
+    public long execute(@NonNull RecordReader reader, @NonNull RecordWriter writer) throws IOException {
+        Iterator<List<Writable>> input = new Iterator<List<Writable>>() {
+            @Override
+            public boolean hasNext() {
+                return reader.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                return reader.next();
+            }
+        };
+
+        long count = 0;
+        Iterator<List<Writable>> out = execute(input);
+        List<List<Writable>> batch = new ArrayList<>(chunkSize);
+        while (out.hasNext()) {
+            batch.add(out.next());
+            if (batch.size() == chunkSize) {
+                count += write(writer, batch);
+            }
+        }
+        count += write(writer, batch);
+        return count;
+    }
+
+    private static int write(RecordWriter writer, List<List<Writable>> batch) throws IOException {
+        int n = batch.size();
+        if (n == 0)
+            return 0;
+        if (writer.supportsBatch()) {
+            writer.writeBatch(batch);
+        } else {
+            for (List<Writable> r : batch) {
+                writer.write(r);
+            }
+        }
+        batch.clear();
+        return n;
+    }
+
+    private static UnaryOperator<List<Writable>> transformOp(DataAction d) {
+        if (!LocalTransformExecutor.isTryCatch())
+            return r -> d.getTransform().map(r);
+        return r -> {
+            try {
+                return d.getTransform().map(r);
+            } catch (Exception e) {
+                log.warn("Error occurred " + e + " on record " + r);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Reduction: keeps one aggregation per key, not the records themselves. The input is consumed on the first call
+     * to {@link #hasNext()}
+     */
+    private static class ReduceStage implements Iterator<List<Writable>> {
+        private final Iterator<List<Writable>> input;
+        private final IAssociativeReducer reducer;
+        private Iterator<IAggregableReduceOp<List<Writable>, List<Writable>>> reduced;
+
+        private ReduceStage(Iterator<List<Writable>> input, IAssociativeReducer reducer) {
+            this.input = input;
+            this.reducer = reducer;
+        }
+
+        private void reduce() {
+            MapToPairForReducerFunction toKey = new MapToPairForReducerFunction(reducer);
+            Map<String, IAggregableReduceOp<List<Writable>, List<Writable>>> perKey = new LinkedHashMap<>();
+            while (input.hasNext()) {
+                List<Writable> r = input.next();
+                perKey.computeIfAbsent(toKey.apply(r).getFirst(), k -> reducer.aggregableReducer()).accept(r);
+            }
+            reduced = perKey.values().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (reduced == null)
+                reduce();
+            return reduced.hasNext();
+        }
+
+        @Override
+        public List<Writable> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return reduced.next().get();
+        }
+    }
+
+    /**
+     * Drops records with the wrong number of columns, as per {@link LocalTransformExecutor#execute(List, TransformProcess)}
+     */
+    private static class ColumnCountFilter implements Iterator<List<Writable>> {
+        private final Iterator<List<Writable>> input;
+        private final int numColumns;
+        private List<Writable> next;
+        private long dropped;
+
+        private ColumnCountFilter(Iterator<List<Writable>> input, int numColumns) {
+            this.input = input;
+            this.numColumns = numColumns;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && input.hasNext()) {
+                List<Writable> r = input.next();
+                if (r.size() == numColumns) {
+                    next = r;
+                } else if (dropped++ == 0) {
+                    log.warn("Filtering out record with {} columns, expected {} columns", r.size(), numColumns);
+                }
+            }
+            if (next == null && dropped > 0) {
+                log.warn("Filtered out " + dropped + " values");
+                dropped = 0;
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<Writable> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            List<Writable> r = next;
+            next = null;
+            return r;
+        }
+    }
+
+    private List<List<Writable>> executeColumnar(List<List<Writable>> chunk) {
+        int slices = Math.min(pool.getParallelism(), chunk.size());
+        List<List<List<Writable>>> sliced = new ArrayList<>(slices);
+        for (int i = 0; i < slices; i++) {
+            sliced.add(chunk.subList(i * chunk.size() / slices, (i + 1) * chunk.size() / slices));
+        }
+        return sliced.parallelStream().map(transformProcess::executeBatch).flatMap(List::stream).collect(toList());
+    }
+
+    /**
+     * Consecutive transforms and filters, applied to chunks of records in parallel. A filter (or a failed transform
+     * in try/catch mode) returns null to remove the record
+     */
+    private class FusedStage implements Iterator<List<Writable>> {
+        private final Iterator<List<Writable>> input;
+        private final UnaryOperator<List<List<Writable>>> chunkOp;
+        private Future<List<List<Writable>>> pending;
+        private Iterator<List<Writable>> current = Collections.emptyIterator();
+
+        @SuppressWarnings("unchecked")
+        private FusedStage(Iterator<List<Writable>> input, List<UnaryOperator<List<Writable>>> ops) {
+            UnaryOperator<List<Writable>>[] arr = ops.toArray(new UnaryOperator[0]);
+            this.input = input;
+            this.chunkOp = chunk -> chunk.parallelStream().map(r -> apply(arr, r)).filter(Objects::nonNull).collect(toList());
+        }
+
+        private FusedStage(Iterator<List<Writable>> input, UnaryOperator<List<List<Writable>>> chunkOp) {
+            this.input = input;
+            this.chunkOp = chunkOp;
+        }
+
+        private List<Writable> apply(UnaryOperator<List<Writable>>[] ops, List<Writable> record) {
+            List<Writable> r = record;
+            for (int i = 0; i < ops.length && r != null; i++) {
+                r = ops[i].apply(r);
+            }
+            return r;
+        }
+
+        private Future<List<List<Writable>>> submitNext() {
+            List<List<Writable>> chunk = new ArrayList<>(chunkSize);
+            while (chunk.size() < chunkSize && input.hasNext()) {
+                chunk.add(input.next());
+            }
+            if (chunk.isEmpty())
+                return null;
+            return pool.submit(() -> chunkOp.apply(chunk));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (pending == null)
+                    pending = submitNext();
+                if (pending == null)
+                    return false;
+                List<List<Writable>> result;
+                try {
+                    result = pending.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+                }
+                //Read the next chunk while the current one is consumed
+                pending = submitNext();
+                current = result.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public List<Writable> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return current.next();
+        }
+    }
+
+    /**
+     * External merge sort for {@link CalculateSortedRank}: sorted runs of up to maxRecordsInMemory records are written
+     * to temporary files, then merged. The rank is appended to each record, as per LocalTransformExecutor.<br>
+     * The input is consumed (and sorted) on the first call to {@link #hasNext()}
+     */
+    private class SortedRankStage implements Iterator<List<Writable>>, Closeable {
+        private final Iterator<List<Writable>> input;
+        private final Comparator<List<Writable>> comparator;
+        private final List<File> runFiles = new ArrayList<>();
+        private final List<RunReader> readers = new ArrayList<>();
+        private final PriorityQueue<RunReader> heap;
+        private Iterator<List<Writable>> inMemory;
+        private boolean sorted;
+        private long rank;
+
+        private SortedRankStage(Iterator<List<Writable>> input, CalculateSortedRank csr) {
+            this.input = input;
+            int sortColumnIdx = csr.getInputSchema().getIndexOfColumn(csr.getSortOnColumn());
+            Comparator<Writable> c = csr.getComparator();
+            Comparator<List<Writable>> byColumn = (a, b) -> c.compare(a.get(sortColumnIdx), b.get(sortColumnIdx));
+            this.comparator = csr.isAscending() ? byColumn : byColumn.reversed();
+            //Ties are broken by run index, so the merge is stable
+            this.heap = new PriorityQueue<>((a, b) -> {
+                int cmp = comparator.compare(a.head, b.head);
+                return cmp != 0 ? cmp : Integer.compare(a.idx, b.idx);
+            });
+        }
+
+        private void sortInput() {
+            sorted = true;
+            try {
+                List<List<Writable>> run = new ArrayList<>();
+                while (input.hasNext()) {
+                    run.add(input.next());
+                    if (run.size() >= maxRecordsInMemory) {
+                        spill(run);
+                        run = new ArrayList<>();
+                    }
+                }
+                if (runFiles.isEmpty()) {
+                    inMemory = sort(run).iterator();
+                } else {
+                    if (!run.isEmpty())
+                        spill(run);
+                    for (int i = 0; i < runFiles.size(); i++) {
+                        RunReader r = new RunReader(runFiles.get(i), i);
+                        readers.add(r);
+                        if (r.advance())
+                            heap.add(r);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Error spilling records to disk for sorting", e);
+            }
+        }
+
+        private List<List<Writable>> sort(List<List<Writable>> run) {
+            @SuppressWarnings("unchecked")
+            List<Writable>[] arr = run.toArray(new List[0]);
+            Arrays.parallelSort(arr, comparator);
+            return Arrays.asList(arr);
+        }
+
+        private void spill(List<List<Writable>> run) throws IOException {
+            File f = File.createTempFile("datavec_sort_", ".bin", tempDir);
+            f.deleteOnExit();
+            runFiles.add(f);
+            WritableFactory wf = WritableFactory.getInstance();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16))) {
+                for (List<Writable> r : sort(run)) {
+                    out.writeInt(r.size());
+                    for (Writable w : r) {
+                        wf.writeWithType(w, out);
+                    }
+                }
+            }
+            log.debug("Spilled sorted run of {} records to {}", run.size(), f);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!sorted)
+                sortInput();
+            boolean hasNext = inMemory != null ? inMemory.hasNext() : !heap.isEmpty();
+            if (!hasNext)
+                close();
+            return hasNext;
+        }
+
+        @Override
+        public List<Writable> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            List<Writable> r;
+            if (inMemory != null) {
+                r = inMemory.next();
+            } else {
+                RunReader reader = heap.poll();
+                r = reader.head;
+                try {
+                    if (reader.advance())
+                        heap.add(reader);
+                } catch (IOException e) {
+                    close();
+                    throw new UncheckedIOException("Error reading spilled records", e);
+                }
+            }
+            List<Writable> out = new ArrayList<>(r.size() + 1);
+            out.addAll(r);
+            out.add(new LongWritable(rank++));
+            return out;
+        }
+
+        @Override
+        public void close() {
+            for (RunReader r : readers) {
+                try {
+                    r.in.close();
+                } catch (IOException e) {
+                    log.warn("Error closing spill file", e);
+                }
+            }
+            readers.clear();
+            for (File f : runFiles) {
+                if (!f.delete())
+                    log.warn("Unable to delete spill file {}", f);
+            }
+            runFiles.clear();
+        }
+    }
+
+    private static class RunReader {
+        private final DataInputStream in;
+        private final int idx;
+        private List<Writable> head;
+
+        private RunReader(File f, int idx) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+            this.idx = idx;
+        }
+
+        private boolean advance() throws IOException {
+            int n;
+            try {
+                n = in.readInt();
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+            WritableFactory wf = WritableFactory.getInstance();
+            List<Writable> r = new ArrayList<>(n + 1);
+            for (int i = 0; i < n; i++) {
+                r.add(wf.readWithType(in));
+            }
+            head = r;
+            return true;
+        }
+    }
+
+    public static class Builder {
+        private final TransformProcess transformProcess;
+        private ForkJoinPool pool;
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private int maxRecordsInMemory = DEFAULT_MAX_RECORDS_IN_MEMORY;
+        private File tempDir;
+
+        public Builder(@NonNull TransformProcess transformProcess) {
+            this.transformProcess = transformProcess;
+        }
+
+        /**
+         * Pool used to process chunks in parallel. Default: {@link ForkJoinPool#commonPool()}
+         */
+        public Builder pool(@NonNull ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Number of records processed per parallel task. Default: {@link #DEFAULT_CHUNK_SIZE}
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of records held in memory by a sort (CalculateSortedRank) before spilling to disk.
+         * Default: {@link #DEFAULT_MAX_RECORDS_IN_MEMORY}
+         */
+        public Builder maxRecordsInMemory(int maxRecordsInMemory) {
+            this.maxRecordsInMemory = maxRecordsInMemory;
+            return this;
+        }
+
+        /**
+         * Directory for spill files. Default: java.io.tmpdir
+         */
+        public Builder tempDir(@NonNull File tempDir) {
+            this.tempDir = tempDir;
+            return this;
+        }
+
+        public StreamingLocalTransformExecutor build() {
+            Preconditions.checkState(chunkSize > 0, "Chunk size must be positive, got %s", chunkSize);
+            Preconditions.checkState(maxRecordsInMemory > 0, "Max records in memory must be positive, got %s", maxRecordsInMemory);
+            return new StreamingLocalTransformExecutor(this);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.transform;
+
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.transform.sequence.comparator.NumericalColumnComparator;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.IntWritable;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.comparator.DoubleWritableComparator;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.datavec.local.transforms.StreamingLocalTransformExecutor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Streaming Local Transform Executor Test")
+@Tag(TagNames.FILE_IO)
+@Tag(TagNames.JAVA_ONLY)
+class StreamingLocalTransformExecutorTest {
+
+    private static List<List<Writable>> data(int n) {
+        List<List<Writable>> data = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            data.add(Arrays.asList(new IntWritable(i), new Text("key" + (i % 3)), new DoubleWritable(i / 10.0)));
+        }
+        return data;
+    }
+
+    private static List<List<Writable>> collect(Iterator<List<Writable>> iter) {
+        List<List<Writable>> out = new ArrayList<>();
+        iter.forEachRemaining(out::add);
+        return out;
+    }
+
+    private static List<String> asStrings(List<List<Writable>> records) {
+        List<String> out = new ArrayList<>();
+        for (List<Writable> r : records) {
+            StringBuilder sb = new StringBuilder();
+            for (Writable w : r) {
+                sb.append(w.toString()).append(',');
+            }
+            out.add(sb.toString());
+        }
+        return out;
+    }
+
+    private static Schema schema() {
+        return new Schema.Builder().addColumnInteger("id").addColumnString("key").addColumnDouble("value").build();
+    }
+
+    @Test
+    @DisplayName("Test Fused Transforms And Filters")
+    void testFusedTransformsAndFilters() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("value", MathOp.Add, 1.0)
+                .filter(new DoubleColumnCondition("value", ConditionOp.LessThan, 3.0))
+                .doubleMathOp("value", MathOp.Multiply, 2.0)
+                .removeColumns("key")
+                .build();
+
+        List<List<Writable>> input = data(1000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            StreamingLocalTransformExecutor exec = new StreamingLocalTransformExecutor.Builder(tp)
+                    .pool(pool).chunkSize(37).build();
+            List<List<Writable>> out = collect(exec.execute(input.iterator()));
+
+            //Records 0 to 19 are removed; order is preserved
+            assertEquals(980, out.size());
+            for (int i = 0; i < out.size(); i++) {
+                assertEquals(2, out.get(i).size());
+                assertEquals(i + 20, out.get(i).get(0).toInt());
+                assertEquals(((i + 20) / 10.0 + 1.0) * 2.0, out.get(i).get(1).toDouble(), 1e-9);
+            }
+
+            assertEquals(asStrings(LocalTransformExecutor.execute(input, tp)), asStrings(out));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Test Columnar Execution")
+    void testColumnarExecution() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("value", MathOp.Multiply, 2.0)
+                .removeColumns("key")
+                .build();
+        assertTrue(tp.supportsColumnar());
+
+        List<List<Writable>> input = data(1000);
+        StreamingLocalTransformExecutor exec = new StreamingLocalTransformExecutor.Builder(tp).chunkSize(64).build();
+        List<List<Writable>> out = collect(exec.execute(input.iterator()));
+        assertEquals(1000, out.size());
+        for (int i = 0; i < out.size(); i++) {
+            assertEquals(i, out.get(i).get(0).toInt());
+            assertEquals(i / 5.0, out.get(i).get(1).toDouble(), 1e-9);
+        }
+
+        assertEquals(asStrings(LocalTransformExecutor.execute(input, tp)), asStrings(out));
+    }
+
+    @Test
+    @DisplayName("Test Invalid Records Removed")
+    void testInvalidRecordsRemoved() {
+        TransformProcess tp = new TransformProcess.Builder(schema()).removeColumns("key").build();
+        List<List<Writable>> input = new ArrayList<>(data(5));
+        input.add(2, Collections.singletonList(new IntWritable(-1)));
+
+        StreamingLocalTransformExecutor exec = new StreamingLocalTransformExecutor.Builder(tp).build();
+        List<List<Writable>> out = collect(exec.execute(input.iterator()));
+        assertEquals(5, out.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, out.get(i).get(0).toInt());
+        }
+    }
+
+    @Test
+    @DisplayName("Test Reduce")
+    void testReduce() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("value", MathOp.Add, 1.0)
+                .reduce(new Reducer.Builder(ReduceOp.Sum).keyColumns("key").countColumns("id").build())
+                .build();
+
+        List<List<Writable>> input = data(100);
+        StreamingLocalTransformExecutor exec = new StreamingLocalTransformExecutor.Builder(tp).chunkSize(16).build();
+        List<String> out = asStrings(collect(exec.execute(input.iterator())));
+        List<String> expected = asStrings(LocalTransformExecutor.execute(input, tp));
+        assertEquals(3, out.size());
+
+        Collections.sort(out);
+        Collections.sort(expected);
+        assertEquals(expected, out);
+    }
+
+    @Test
+    @DisplayName("Test Sorted Rank With Spilling")
+    void testSortedRankSpilling(@TempDir File tempDir) {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .filter(new DoubleColumnCondition("value", ConditionOp.GreaterOrEqual, 50.0))
+                .calculateSortedRank("rank", "value", new DoubleWritableComparator(), false)
+                .doubleMathOp("value", MathOp.Multiply, 10.0)
+                .build();
+
+        List<List<Writable>> input = data(1000);
+        Collections.shuffle(input, new Random(12345));
+
+        for (int maxInMemory : new int[]{1000, 64}) {
+            StreamingLocalTransformExecutor exec = new StreamingLocalTransformExecutor.Builder(tp)
+                    .chunkSize(50).maxRecordsInMemory(maxInMemory).tempDir(tempDir).build();
+            List<List<Writable>> out = collect(exec.execute(input.iterator()));
+
+            //Descending order of value: records 499 down to 0
+            assertEquals(500, out.size());
+            for (int i = 0; i < 500; i++) {
+                List<Writable> r = out.get(i);
+                assertEquals(499 - i, r.get(0).toInt());
+                assertEquals(i, r.get(3).toLong());
+                assertEquals((499 - i) / 10.0 * 10.0, r.get(2).toDouble(), 1e-9);
+            }
+            //All spill files are deleted once the output is consumed
+            assertEquals(0, tempDir.listFiles().length);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Reduce And Sort Consume Input On First HasNext")
+    void testReduceAndSortLazy() {
+        TransformProcess reduce = new TransformProcess.Builder(schema())
+                .reduce(new Reducer.Builder(ReduceOp.Sum).keyColumns("key").countColumns("id").build())
+                .build();
+        TransformProcess sort = new TransformProcess.Builder(schema())
+                .calculateSortedRank("rank", "value", new DoubleWritableComparator())
+                .build();
+
+        for (TransformProcess tp : new TransformProcess[]{reduce, sort}) {
+            int[] read = new int[1];
+            Iterator<List<Writable>> base = data(100).iterator();
+            Iterator<List<Writable>> input = new Iterator<List<Writable>>() {
+                @Override
+                public boolean hasNext() {
+                    return base.hasNext();
+                }
+
+                @Override
+                public List<Writable> next() {
+                    read[0]++;
+                    return base.next();
+                }
+            };
+
+            Iterator<List<Writable>> out = new StreamingLocalTransformExecutor.Builder(tp).build().execute(input);
+            assertEquals(0, read[0]);
+            assertTrue(out.hasNext());
+            assertEquals(100, read[0]);
+            collect(out);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Sequence Not Supported")
+    void testSequenceNotSupported() {
+        Schema seqSchema = new SequenceSchema.Builder().addColumnInteger("id").addColumnDouble("value").build();
+        TransformProcess tp = new TransformProcess.Builder(seqSchema).doubleMathOp("value", MathOp.Add, 1.0).build();
+        assertThrows(IllegalArgumentException.class, () -> new StreamingLocalTransformExecutor.Builder(tp).build());
+
+        TransformProcess tp2 = new TransformProcess.Builder(schema()).convertToSequence("key", new NumericalColumnComparator("id")).build();
+        assertThrows(IllegalArgumentException.class, () -> new StreamingLocalTransformExecutor.Builder(tp2).build());
+    }
+}
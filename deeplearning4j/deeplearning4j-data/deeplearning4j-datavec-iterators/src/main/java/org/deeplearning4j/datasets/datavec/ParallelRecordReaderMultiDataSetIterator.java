@@ -0,0 +1,603 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.datasets.datavec;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.InputSplit;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.dataset.callbacks.DataSetCallback;
+import org.nd4j.linalg.dataset.callbacks.DefaultCallback;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A MultiDataSetIterator that reads and converts records with several threads in parallel.<br>
+ * The input is split into shards, and each shard is read by its own worker thread, with its own iterator (usually a
+ * {@link RecordReaderMultiDataSetIterator} over record readers initialized on the shard). This allows CPU heavy
+ * record reading and conversion (image decoding, CSV parsing, etc) to scale with the number of cores, unlike
+ * {@link org.nd4j.linalg.dataset.AsyncMultiDataSetIterator} which uses a single producer thread.<br>
+ * Each worker has a bounded queue of at most {@code prefetch} MultiDataSets: workers block when their queue is full,
+ * which bounds the memory used by the pipeline. With workspaces enabled (the default), each worker creates its
+ * MultiDataSets in its own cyclic workspace, as per AsyncMultiDataSetIterator.<br>
+ * MultiDataSets are returned in one of two orders, see {@link Ordering}. Throughput of each stage is available from
+ * {@link #getStats()}.<br>
+ * Example:
+ * <pre>
+ * {@code
+ * MultiDataSetIterator iter = new ParallelRecordReaderMultiDataSetIterator.Builder()
+ *         .split(new FileSplit(dir), 4)
+ *         .iteratorFactory((shard, idx) -> {
+ *             RecordReader rr = new CSVRecordReader();
+ *             rr.initialize(shard);
+ *             return new RecordReaderMultiDataSetIterator.Builder(32)
+ *                     .addReader("csv", rr).addInput("csv", 0, 3).addOutputOneHot("csv", 4, 3).build();
+ *         })
+ *         .build();
+ * }
+ * </pre>
+ */
+@Slf4j
+public class ParallelRecordReaderMultiDataSetIterator implements MultiDataSetIterator {
+
+    /**
+     * Order in which the MultiDataSets of the workers are returned
+     */
+    public enum Ordering {
+        /**
+         * Round robin over the workers: the i-th MultiDataSet is taken from worker (i % numWorkers), skipping workers
+         * that have finished. The order is the same on every epoch and every run, regardless of thread timing
+         */
+        ROUND_ROBIN,
+        /**
+         * MultiDataSets are returned in the order they are produced. This avoids waiting on a slow worker when
+         * others have data ready, but the order is not deterministic. Each worker is still limited to
+         * {@code prefetch} MultiDataSets that haven't been returned yet
+         */
+        ARRIVAL
+    }
+
+    /**
+     * Creates the iterator for one shard of the input
+     */
+    public interface ShardIteratorFactory extends Serializable {
+        /**
+         * @param shard    The locations for this shard
+         * @param shardIdx Index of the shard, 0 to numShards-1
+         * @return The iterator for the shard. Called once per shard; iterators are reset for each epoch
+         */
+        MultiDataSetIterator create(InputSplit shard, int shardIdx) throws Exception;
+    }
+
+    private final List<MultiDataSetIterator> shards;
+    private final Ordering ordering;
+    private final int prefetch;
+    private final boolean useWorkspaces;
+    private final DataSetCallback callback;
+    private final Integer deviceId;
+    private final String workspaceId = "PRRMDSI_ITER-" + java.util.UUID.randomUUID().toString();
+
+    private final MultiDataSet terminator = new org.nd4j.linalg.dataset.MultiDataSet();
+    private BlockingQueue<MultiDataSet>[] queues;
+    //ARRIVAL ordering only: index of the worker for each MultiDataSet (or terminator) added to the queues, in order
+    private BlockingQueue<Integer> arrivals;
+    private Worker[] workers;
+    private List<Integer> active;
+    private int position;
+    private MultiDataSet nextElement;
+    private volatile RuntimeException throwable;
+    private volatile MultiDataSetPreProcessor preProcessor;
+    @Getter
+    private final Stats stats;
+
+    /**
+     * @param shards        One iterator per worker. Each iterator is only ever used from its worker thread
+     * @param ordering      Order of the returned MultiDataSets
+     * @param prefetch      Maximum number of MultiDataSets buffered per worker
+     * @param useWorkspaces If true: workers create MultiDataSets in workspaces
+     */
+    public ParallelRecordReaderMultiDataSetIterator(@NonNull List<? extends MultiDataSetIterator> shards,
+                                                    @NonNull Ordering ordering, int prefetch, boolean useWorkspaces) {
+        Preconditions.checkArgument(!shards.isEmpty(), "At least one shard iterator is required");
+        Preconditions.checkArgument(prefetch > 0, "Prefetch size must be positive, got %s", prefetch);
+        this.shards = new ArrayList<>(shards);
+        this.ordering = ordering;
+        this.prefetch = prefetch;
+        this.useWorkspaces = useWorkspaces;
+        this.callback = new DefaultCallback();
+        this.deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        this.stats = new Stats(shards.size());
+        start();
+    }
+
+    protected ParallelRecordReaderMultiDataSetIterator(Builder builder) {
+        this(builder.createShards(), builder.ordering, builder.prefetch, builder.useWorkspaces);
+    }
+
+    /**
+     * Split the locations of an InputSplit into shards of (nearly) equal size. Locations are assigned round robin,
+     * so that shards remain balanced when locations are sorted by size or by class
+     *
+     * @param split     Split to shard
+     * @param numShards Number of shards
+     * @return The shards
+     */
+    public static InputSplit[] shard(@NonNull InputSplit split, int numShards) {
+        Preconditions.checkArgument(numShards > 0, "Number of shards must be positive, got %s", numShards);
+        URI[] locations = split.locations();
+        Preconditions.checkState(locations.length >= numShards, "Cannot split %s locations into %s shards",
+                locations.length, numShards);
+        List<List<URI>> lists = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            lists.add(new ArrayList<URI>(locations.length / numShards + 1));
+        }
+        for (int i = 0; i < locations.length; i++) {
+            lists.get(i % numShards).add(locations[i]);
+        }
+        InputSplit[] out = new InputSplit[numShards];
+        for (int i = 0; i < numShards; i++) {
+            out[i] = new CollectionInputSplit(lists.get(i));
+        }
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void start() {
+        int n = shards.size();
+        //Each worker has its own queue, also for ARRIVAL ordering: a worker's workspace can only hold prefetch + 1
+        // MultiDataSets, so a fast worker must not get further ahead than that of the consumer
+        queues = new BlockingQueue[n];
+        for (int i = 0; i < n; i++) {
+            queues[i] = new ArrayBlockingQueue<>(prefetch);
+        }
+        arrivals = ordering == Ordering.ARRIVAL ? new ArrayBlockingQueue<Integer>(n * prefetch) : null;
+
+        active = new ArrayList<>(n);
+        workers = new Worker[n];
+        for (int i = 0; i < n; i++) {
+            active.add(i);
+            workers[i] = new Worker(i, shards.get(i), queues[i], arrivals);
+        }
+        for (Worker w : workers) {
+            w.start();
+        }
+        position = 0;
+        nextElement = null;
+        throwable = null;
+    }
+
+    private void stop() {
+        for (Worker w : workers) {
+            w.shouldWork = false;
+            w.interrupt();
+        }
+        for (Worker w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            w.destroyWorkspace();
+        }
+        for (BlockingQueue<MultiDataSet> q : queues) {
+            q.clear();
+        }
+        if (arrivals != null)
+            arrivals.clear();
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        throw new UnsupportedOperationException("Cannot specify the number of examples: determined by the shard iterators");
+    }
+
+    /**
+     * Set the preprocessor. Preprocessing is done by the worker threads, so the preprocessor must be safe to call
+     * from multiple threads concurrently (normalizers are, once fit)
+     */
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (MultiDataSetIterator iter : shards) {
+            if (!iter.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        stop();
+        for (MultiDataSetIterator iter : shards) {
+            iter.reset();
+        }
+        start();
+    }
+
+    /**
+     * Stop all worker threads and destroy their workspaces. This iterator can't be used after shutdown
+     */
+    public void shutdown() {
+        stop();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (throwable != null)
+            throw throwable;
+        if (nextElement != null)
+            return true;
+
+        try {
+            while (!active.isEmpty()) {
+                long start = System.nanoTime();
+                int worker = arrivals != null ? arrivals.take() : active.get(position);
+                MultiDataSet mds = queues[worker].take();
+                stats.consumerWaitNanos.addAndGet(System.nanoTime() - start);
+
+                if (mds == terminator) {
+                    if (throwable != null)
+                        throw throwable;
+                    active.remove(Integer.valueOf(worker));
+                    if (position >= active.size())
+                        position = 0;
+                    continue;
+                }
+
+                if (ordering == Ordering.ROUND_ROBIN)
+                    position = (position + 1) % active.size();
+                nextElement = mds;
+                return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public MultiDataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No more elements");
+        MultiDataSet ret = nextElement;
+        nextElement = null;
+        stats.consumed.incrementAndGet();
+        return ret;
+    }
+
+    @Override
+    public void remove() {
+        //No op
+    }
+
+    protected class Worker extends Thread {
+        private final int idx;
+        private final MultiDataSetIterator iterator;
+        private final BlockingQueue<MultiDataSet> queue;
+        private final BlockingQueue<Integer> arrivals;
+        private volatile boolean shouldWork = true;
+        private MemoryWorkspace workspace;
+
+        protected Worker(int idx, MultiDataSetIterator iterator, BlockingQueue<MultiDataSet> queue,
+                         BlockingQueue<Integer> arrivals) {
+            this.idx = idx;
+            this.iterator = iterator;
+            this.queue = queue;
+            this.arrivals = arrivals;
+            this.setDaemon(true);
+            this.setName("PRRMDSI worker " + idx);
+        }
+
+        @Override
+        public void run() {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            try {
+                if (useWorkspaces) {
+                    WorkspaceConfiguration configuration = WorkspaceConfiguration.builder().minSize(10 * 1024L * 1024L)
+                            .overallocationLimit(prefetch + 1).policyReset(ResetPolicy.ENDOFBUFFER_REACHED)
+                            .policyLearning(LearningPolicy.FIRST_LOOP).policyAllocation(AllocationPolicy.OVERALLOCATE)
+                            .policySpill(SpillPolicy.REALLOCATE).build();
+                    workspace = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, workspaceId + "_" + idx);
+                }
+
+                while (shouldWork) {
+                    long start = System.nanoTime();
+                    MultiDataSet mds;
+                    if (useWorkspaces) {
+                        try (MemoryWorkspace ws = workspace.notifyScopeEntered()) {
+                            mds = produce();
+                        }
+                    } else {
+                        mds = produce();
+                    }
+                    if (mds == null)
+                        break;
+                    long produced = System.nanoTime();
+                    stats.produceNanos[idx].addAndGet(produced - start);
+                    stats.produced[idx].incrementAndGet();
+                    stats.examples[idx].addAndGet(numExamples(mds));
+
+                    put(mds);
+                    stats.blockedNanos[idx].addAndGet(System.nanoTime() - produced);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                if (!shouldWork) {
+                    //Stopped by reset or shutdown: interrupting a reader may fail it (for example, interrupted file channels)
+                    return;
+                }
+                log.error("Error in worker {} of ParallelRecordReaderMultiDataSetIterator", idx, t);
+                throwable = t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+            }
+
+            try {
+                put(terminator);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void put(MultiDataSet mds) throws InterruptedException {
+            //Blocks while this worker already has prefetch MultiDataSets waiting, regardless of ordering
+            queue.put(mds);
+            if (arrivals != null)
+                arrivals.put(idx);
+        }
+
+        private MultiDataSet produce() {
+            if (!iterator.hasNext())
+                return null;
+            MultiDataSet mds = iterator.next();
+            MultiDataSetPreProcessor pp = preProcessor;
+            if (pp != null)
+                pp.preProcess(mds);
+            if (callback != null)
+                callback.call(mds);
+            //Ensure the MultiDataSet is fully created before handing it to the consumer thread
+            Nd4j.getExecutioner().commit();
+            return mds;
+        }
+
+        private long numExamples(MultiDataSet mds) {
+            if (mds.getFeatures() != null && mds.getFeatures().length > 0)
+                return mds.getFeatures(0).size(0);
+            if (mds.getLabels() != null && mds.getLabels().length > 0)
+                return mds.getLabels(0).size(0);
+            return 0;
+        }
+
+        protected void destroyWorkspace() {
+            if (workspace != null) {
+                workspace.destroyWorkspace(true);
+                workspace = null;
+            }
+        }
+    }
+
+    /**
+     * Throughput counters for each stage of the pipeline: reading and converting (per worker), waiting for queue
+     * space (per worker, backpressure from a slower consumer), and the consumer waiting for data (starvation).<br>
+     * Counters are cumulative since the iterator was created.
+     */
+    public static class Stats {
+        private final AtomicLong[] produced;
+        private final AtomicLong[] examples;
+        private final AtomicLong[] produceNanos;
+        private final AtomicLong[] blockedNanos;
+        private final AtomicLong consumed = new AtomicLong();
+        private final AtomicLong consumerWaitNanos = new AtomicLong();
+
+        protected Stats(int numWorkers) {
+            produced = counters(numWorkers);
+            examples = counters(numWorkers);
+            produceNanos = counters(numWorkers);
+            blockedNanos = counters(numWorkers);
+        }
+
+        private static AtomicLong[] counters(int n) {
+            AtomicLong[] out = new AtomicLong[n];
+            for (int i = 0; i < n; i++) {
+                out[i] = new AtomicLong();
+            }
+            return out;
+        }
+
+        public int numWorkers() {
+            return produced.length;
+        }
+
+        /**
+         * @return Number of MultiDataSets produced by the worker
+         */
+        public long produced(int worker) {
+            return produced[worker].get();
+        }
+
+        /**
+         * @return Number of examples produced by the worker
+         */
+        public long examples(int worker) {
+            return examples[worker].get();
+        }
+
+        /**
+         * @return Time spent by the worker reading and converting, in milliseconds
+         */
+        public long produceMillis(int worker) {
+            return produceNanos[worker].get() / 1_000_000;
+        }
+
+        /**
+         * @return Time spent by the worker waiting for space in its queue, in milliseconds
+         */
+        public long blockedMillis(int worker) {
+            return blockedNanos[worker].get() / 1_000_000;
+        }
+
+        /**
+         * @return Examples per second produced by the worker, while reading and converting
+         */
+        public double examplesPerSecond(int worker) {
+            long nanos = produceNanos[worker].get();
+            return nanos == 0 ? 0.0 : examples[worker].get() * 1e9 / nanos;
+        }
+
+        /**
+         * @return Number of MultiDataSets returned by the iterator
+         */
+        public long consumed() {
+            return consumed.get();
+        }
+
+        /**
+         * @return Time spent by the consumer waiting for a worker, in milliseconds. A large value means the
+         * pipeline is the bottleneck: consider more workers
+         */
+        public long consumerWaitMillis() {
+            return consumerWaitNanos.get() / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("ParallelRecordReaderMultiDataSetIterator.Stats(consumed=")
+                    .append(consumed()).append(", consumerWaitMs=").append(consumerWaitMillis());
+            for (int i = 0; i < numWorkers(); i++) {
+                sb.append(", worker").append(i).append("=[produced=").append(produced(i))
+                        .append(", examplesPerSec=").append(String.format("%.1f", examplesPerSecond(i)))
+                        .append(", blockedMs=").append(blockedMillis(i)).append("]");
+            }
+            return sb.append(")").toString();
+        }
+    }
+
+    public static class Builder {
+        private InputSplit[] splits;
+        private ShardIteratorFactory factory;
+        private Ordering ordering = Ordering.ROUND_ROBIN;
+        private int prefetch = 4;
+        private boolean useWorkspaces = true;
+
+        /**
+         * Split the input into the specified number of shards, one per worker thread, as per
+         * {@link #shard(InputSplit, int)}
+         */
+        public Builder split(@NonNull InputSplit split, int numWorkers) {
+            this.splits = shard(split, numWorkers);
+            return this;
+        }
+
+        /**
+         * Use the specified shards, one per worker thread
+         */
+        public Builder splits(@NonNull InputSplit... shards) {
+            this.splits = shards;
+            return this;
+        }
+
+        /**
+         * Factory used to create the iterator for each shard
+         */
+        public Builder iteratorFactory(@NonNull ShardIteratorFactory factory) {
+            this.factory = factory;
+            return this;
+        }
+
+        /**
+         * Order of the returned MultiDataSets. Default: {@link Ordering#ROUND_ROBIN}
+         */
+        public Builder ordering(@NonNull Ordering ordering) {
+            this.ordering = ordering;
+            return this;
+        }
+
+        /**
+         * Maximum number of MultiDataSets buffered per worker. Default: 4
+         */
+        public Builder prefetch(int prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * If true (default): workers create MultiDataSets in workspaces
+         */
+        public Builder useWorkspaces(boolean useWorkspaces) {
+            this.useWorkspaces = useWorkspaces;
+            return this;
+        }
+
+        protected List<MultiDataSetIterator> createShards() {
+            Preconditions.checkState(splits != null && splits.length > 0, "No input: use split(InputSplit, int) or splits(InputSplit...)");
+            Preconditions.checkState(factory != null, "No iterator factory: use iteratorFactory(ShardIteratorFactory)");
+            List<MultiDataSetIterator> out = new ArrayList<>(splits.length);
+            for (int i = 0; i < splits.length; i++) {
+                try {
+                    out.add(factory.create(splits[i], i));
+                } catch (Exception e) {
+                    throw new IllegalStateException("Error creating iterator for shard " + i, e);
+                }
+            }
+            return out;
+        }
+
+        public ParallelRecordReaderMultiDataSetIterator build() {
+            return new ParallelRecordReaderMultiDataSetIterator(this);
+        }
+    }
+}
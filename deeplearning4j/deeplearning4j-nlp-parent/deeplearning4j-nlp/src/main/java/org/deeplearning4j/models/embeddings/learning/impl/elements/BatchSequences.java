@@ -17,59 +17,263 @@
  *  * SPDX-License-Identifier: Apache-2.0
  *  *****************************************************************************
  */
-
 package org.deeplearning4j.models.embeddings.learning.impl.elements;
 
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Buffer for SkipGram and CBOW training rows, collected from many sequences and executed in large native calls
+ * (see {@link SkipGram#iterateSample(BatchSequences, int)} and {@link CBOW#iterateSample(BatchSequences, int)}).<br>
+ * Rows are stored in contiguous, reusable primitive arrays (indices, Huffman codes and points, context windows,
+ * learning rates and random values) instead of one object per row, so buffering a row doesn't allocate once the
+ * buffer has grown to its working size, and building the op inputs for a chunk is a sequence of array copies.
+ * Call {@link #clear()} to reuse the buffer.
+ */
 @Slf4j
 public class BatchSequences<T extends SequenceElement> {
 
     private int batches;
 
-    List<BatchItem<T>> buffer = new ArrayList<>();
+    private int size;
+    private final List<T> words = new ArrayList<>();
+    private final List<T> lastWords = new ArrayList<>();
+
+    //Per row columns
+    int[] wordIndexes = new int[16];
+    int[] lastWordIndexes = new int[16];
+    long[] randomValues = new long[16];
+    double[] alphas = new double[16];
+    int[] numLabels = new int[16];
+    int[] codeOffsets = new int[16];
+    int[] codeLengths = new int[16];
+    int[] windowOffsets = new int[16];
+    int[] windowLengths = new int[16];
+
+    //Variable length data, referenced by offset and length from the row columns
+    byte[] codes = new byte[256];
+    int[] points = new int[256];
+    private int codesSize;
+    int[] windowWords = new int[256];
+    int[] windowStatuses = new int[256];
+    private int windowSize;
 
     public BatchSequences(int batches) {
         this.batches = batches;
     }
 
+    /**
+     * @return Number of rows per chunk
+     */
+    public int getBatchSize() {
+        return batches;
+    }
+
+    /**
+     * Add a SkipGram row. Rows that can't be trained (missing, UNK or STOP elements) are ignored
+     */
     public void put(T word, T lastWord, long randomValue, double alpha) {
-        BatchItem<T> newItem = new BatchItem<>(word, lastWord, randomValue, alpha);
-        buffer.add(newItem);
+        if (word == null || lastWord == null || lastWord.getIndex() < 0 || word.getIndex() == lastWord.getIndex()
+                || word.getLabel().equals("STOP") || lastWord.getLabel().equals("STOP")
+                || word.getLabel().equals("UNK") || lastWord.getLabel().equals("UNK")) {
+            return;
+        }
+        int row = addRow(word, lastWord, randomValue, alpha, 0);
+        windowLengths[row] = -1;
     }
 
     public void put(T word, int[] windowWords, boolean[] wordStatuses, long randomValue, double alpha) {
-        BatchItem<T> newItem = new BatchItem<>(word, windowWords, wordStatuses, randomValue, alpha);
-        buffer.add(newItem);
+        put(word, windowWords, wordStatuses, randomValue, alpha, 0);
     }
 
+    /**
+     * Add a CBOW row
+     */
     public void put(T word, int[] windowWords, boolean[] wordStatuses, long randomValue, double alpha, int numLabels) {
-        BatchItem<T> newItem = new BatchItem<>(word, windowWords, wordStatuses, randomValue, alpha, numLabels);
-        buffer.add(newItem);
+        int row = addRow(word, null, randomValue, alpha, numLabels);
+        int length = windowWords.length;
+        if (windowSize + length > this.windowWords.length) {
+            int newLength = Math.max(2 * this.windowWords.length, windowSize + length);
+            this.windowWords = Arrays.copyOf(this.windowWords, newLength);
+            this.windowStatuses = Arrays.copyOf(this.windowStatuses, newLength);
+        }
+        System.arraycopy(windowWords, 0, this.windowWords, windowSize, length);
+        for (int i = 0; i < length; i++) {
+            this.windowStatuses[windowSize + i] = wordStatuses[i] ? 1 : 0;
+        }
+        windowOffsets[row] = windowSize;
+        windowLengths[row] = length;
+        windowSize += length;
     }
 
+    private int addRow(T word, T lastWord, long randomValue, double alpha, int numLabel) {
+        int row = size++;
+        if (row == wordIndexes.length) {
+            int newLength = 2 * row;
+            wordIndexes = Arrays.copyOf(wordIndexes, newLength);
+            lastWordIndexes = Arrays.copyOf(lastWordIndexes, newLength);
+            randomValues = Arrays.copyOf(randomValues, newLength);
+            alphas = Arrays.copyOf(alphas, newLength);
+            numLabels = Arrays.copyOf(numLabels, newLength);
+            codeOffsets = Arrays.copyOf(codeOffsets, newLength);
+            codeLengths = Arrays.copyOf(codeLengths, newLength);
+            windowOffsets = Arrays.copyOf(windowOffsets, newLength);
+            windowLengths = Arrays.copyOf(windowLengths, newLength);
+        }
+        words.add(word);
+        lastWords.add(lastWord);
+        wordIndexes[row] = word.getIndex();
+        lastWordIndexes[row] = lastWord == null ? -1 : lastWord.getIndex();
+        randomValues[row] = randomValue;
+        alphas[row] = alpha;
+        numLabels[row] = numLabel;
+
+        //Huffman codes and points of the word, with invalid points skipped the same way as the per-row ops do
+        int codeLength = word.getCodeLength();
+        if (codesSize + codeLength > codes.length) {
+            int newLength = Math.max(2 * codes.length, codesSize + codeLength);
+            codes = Arrays.copyOf(codes, newLength);
+            points = Arrays.copyOf(points, newLength);
+        }
+        List<Byte> wordCodes = word.getCodes();
+        List<Integer> wordPoints = word.getPoints();
+        for (int i = 0; i < codeLength; i++) {
+            int point = wordPoints.get(i);
+            if (point < 0) {
+                codes[codesSize + i] = 0;
+                points[codesSize + i] = 0;
+            } else {
+                codes[codesSize + i] = wordCodes.get(i);
+                points[codesSize + i] = point;
+            }
+        }
+        codeOffsets[row] = codesSize;
+        codeLengths[row] = codeLength;
+        codesSize += codeLength;
+        return row;
+    }
+
+    /**
+     * @return Number of chunks of up to {@link #getBatchSize()} rows
+     */
+    public int chunks() {
+        return (size + batches - 1) / batches;
+    }
+
+    /**
+     * @return The rows of the specified chunk, as BatchItem instances
+     */
     public List<BatchItem<T>> get(int chunkNo) {
         List<BatchItem<T>> retVal = new ArrayList<>();
 
-        for (int i = 0 + chunkNo * batches; (i < batches + chunkNo * batches) && (i < buffer.size()); ++i) {
-            BatchItem<T> value = buffer.get(i);
-            retVal.add(value);
+        for (int i = 0 + chunkNo * batches; (i < batches + chunkNo * batches) && (i < size); ++i) {
+            if (windowLengths[i] < 0) {
+                retVal.add(new BatchItem<>(words.get(i), lastWords.get(i), randomValues[i], alphas[i]));
+            } else {
+                int from = windowOffsets[i];
+                int to = from + windowLengths[i];
+                boolean[] statuses = new boolean[windowLengths[i]];
+                for (int j = from; j < to; j++) {
+                    statuses[j - from] = windowStatuses[j] != 0;
+                }
+                retVal.add(new BatchItem<>(words.get(i), Arrays.copyOfRange(windowWords, from, to), statuses,
+                        randomValues[i], alphas[i], numLabels[i]));
+            }
         }
         return retVal;
     }
 
     public int size() {
-        return buffer.size();
+        return size;
     }
 
     public void clear() {
-        buffer.clear();
+        size = 0;
+        codesSize = 0;
+        windowSize = 0;
+        words.clear();
+        lastWords.clear();
+    }
+
+    /**
+     * Maximum Huffman code length of rows [from, to), at least 1
+     */
+    int maxCodeLength(int from, int to) {
+        int max = 1;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, codeLengths[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Maximum context window length of rows [from, to), at least 1
+     */
+    int maxWindowLength(int from, int to) {
+        int max = 1;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, windowLengths[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Huffman points of rows [from, to) as a [rows, maxCols] matrix, padded with -1
+     */
+    INDArray pointsMatrix(int from, int to, int maxCols) {
+        int rows = to - from;
+        int[] out = new int[rows * maxCols];
+        Arrays.fill(out, -1);
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(points, codeOffsets[from + r], out, r * maxCols, codeLengths[from + r]);
+        }
+        return Nd4j.create(out, new long[] {rows, maxCols}, DataType.INT);
+    }
+
+    /**
+     * Huffman codes of rows [from, to) as a [rows, maxCols] matrix, padded with -1
+     */
+    INDArray codesMatrix(int from, int to, int maxCols) {
+        int rows = to - from;
+        byte[] out = new byte[rows * maxCols];
+        Arrays.fill(out, (byte) -1);
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(codes, codeOffsets[from + r], out, r * maxCols, codeLengths[from + r]);
+        }
+        return Nd4j.create(out, new long[] {rows, maxCols}, DataType.BYTE);
     }
 
+    /**
+     * Context windows (statuses == false) or their locked statuses (statuses == true) of rows [from, to) as a
+     * [rows, maxCols] matrix, padded with -1
+     */
+    INDArray windowMatrix(int from, int to, int maxCols, boolean statuses) {
+        int rows = to - from;
+        int[] src = statuses ? windowStatuses : windowWords;
+        int[] out = new int[rows * maxCols];
+        Arrays.fill(out, -1);
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(src, windowOffsets[from + r], out, r * maxCols, windowLengths[from + r]);
+        }
+        return Nd4j.create(out, new long[] {rows, maxCols}, DataType.INT);
+    }
 
+    static INDArray column(int[] data, int from, int to) {
+        return Nd4j.createFromArray(Arrays.copyOfRange(data, from, to));
+    }
+
+    static INDArray column(long[] data, int from, int to) {
+        return Nd4j.createFromArray(Arrays.copyOfRange(data, from, to));
+    }
+
+    static INDArray column(double[] data, int from, int to) {
+        return Nd4j.createFromArray(Arrays.copyOfRange(data, from, to));
+    }
 }
@@ -274,6 +274,58 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
 
     }
 
+    /**
+     * Train one chunk of rows buffered in the specified BatchSequences with a single native op call.
+     * Op inputs are built directly from the contiguous buffers of the BatchSequences.
+     *
+     * @param batch   Buffered rows, added with one of the BatchSequences CBOW put methods
+     * @param chunkNo Chunk to train, in range [0, {@link BatchSequences#chunks()})
+     */
+    public void iterateSample(@NonNull BatchSequences<T> batch, int chunkNo) {
+        int from = chunkNo * batch.getBatchSize();
+        int to = Math.min(batch.size(), from + batch.getBatchSize());
+        if (from >= to)
+            return;
+
+        boolean useHS = configuration.isUseHierarchicSoftmax();
+
+        if (negative > 0) {
+            if (syn1Neg == null) {
+                ((InMemoryLookupTable<T>) lookupTable).initNegative();
+                syn1Neg = new DeviceLocalNDArray(((InMemoryLookupTable<T>) lookupTable).getSyn1Neg());
+            }
+        }
+
+        boolean hasNumLabels = false;
+        for (int i = from; i < to && !hasNumLabels; i++) {
+            hasNumLabels = batch.numLabels[i] > 0;
+        }
+
+        int maxCols = useHS ? batch.maxCodeLength(from, to) : 0;
+        int maxWinWordsCols = batch.maxWindowLength(from, to);
+        INDArray currentWordIndexesArray = BatchSequences.column(batch.wordIndexes, from, to);
+
+        CbowRound cbow = new CbowRound(currentWordIndexesArray,
+                batch.windowMatrix(from, to, maxWinWordsCols, false),
+                batch.windowMatrix(from, to, maxWinWordsCols, true),
+                currentWordIndexesArray,
+                syn0.get(),
+                useHS? syn1.get() : Nd4j.empty(syn0.get().dataType()),
+                (negative > 0) ? syn1Neg.get() : Nd4j.empty(syn0.get().dataType()),
+                expTable.get(),
+                (negative > 0) ? table.get() : Nd4j.empty(syn0.get().dataType()),
+                useHS ? batch.pointsMatrix(from, to, maxCols) : Nd4j.empty(DataType.INT),
+                useHS ? batch.codesMatrix(from, to, maxCols) : Nd4j.empty(DataType.BYTE),
+                (int) negative, BatchSequences.column(batch.alphas, from, to),
+                BatchSequences.column(batch.randomValues, from, to),
+                Nd4j.empty(syn0.get().dataType()),
+                hasNumLabels ? BatchSequences.column(batch.numLabels, from, to) : Nd4j.empty(DataType.INT),
+                configuration.isTrainElementsVectors(),
+                workers);
+
+        Nd4j.getExecutioner().exec(cbow);
+    }
+
     public void iterateSample(List<BatchItem<T>> items) {
 
         boolean useHS = configuration.isUseHierarchicSoftmax();
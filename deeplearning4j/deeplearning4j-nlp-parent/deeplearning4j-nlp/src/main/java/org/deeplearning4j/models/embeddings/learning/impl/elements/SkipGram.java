@@ -425,6 +425,50 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
         return score;
     }
 
+    /**
+     * Train one chunk of rows buffered in the specified BatchSequences with a single native op call.
+     * Op inputs are built directly from the contiguous buffers of the BatchSequences.
+     *
+     * @param batch   Buffered rows, added with {@link BatchSequences#put(SequenceElement, SequenceElement, long, double)}
+     * @param chunkNo Chunk to train, in range [0, {@link BatchSequences#chunks()})
+     */
+    public double iterateSample(@NonNull BatchSequences<T> batch, int chunkNo) {
+        int from = chunkNo * batch.getBatchSize();
+        int to = Math.min(batch.size(), from + batch.getBatchSize());
+        if (from >= to)
+            return 0.0;
+
+        boolean useHS = configuration.isUseHierarchicSoftmax();
+
+        //negative sampling
+        if (negative > 0) {
+            if (syn1Neg == null) {
+                ((InMemoryLookupTable<T>) lookupTable).initNegative();
+                syn1Neg = new DeviceLocalNDArray(((InMemoryLookupTable<T>) lookupTable).getSyn1Neg());
+            }
+        }
+
+        int maxCols = useHS ? batch.maxCodeLength(from, to) : 0;
+
+        val sg = new SkipGramRound(BatchSequences.column(batch.lastWordIndexes, from, to),
+                (negative > 0) ? BatchSequences.column(batch.wordIndexes, from, to) : Nd4j.empty(DataType.INT),
+                syn0.get(),
+                useHS ? syn1.get() : Nd4j.empty(syn0.get().dataType()),
+                (negative > 0) ? syn1Neg.get() : Nd4j.empty(syn0.get().dataType()), expTable.get(),
+                (negative > 0) ? table.get() : Nd4j.empty(syn0.get().dataType()),
+                (int) negative,
+                useHS ? batch.pointsMatrix(from, to, maxCols) : Nd4j.empty(DataType.INT),
+                useHS ? batch.codesMatrix(from, to, maxCols) : Nd4j.empty(DataType.BYTE),
+                BatchSequences.column(batch.alphas, from, to), BatchSequences.column(batch.randomValues, from, to),
+                Nd4j.empty(syn0.get().dataType()),
+                configuration.isPreciseMode(),
+                workers);
+
+        Nd4j.getExecutioner().exec(sg);
+
+        return 0.0;
+    }
+
     public double iterateSample(List<BatchItem<T>> items) {
 
         boolean useHS = configuration.isUseHierarchicSoftmax();
@@ -36,6 +36,8 @@ import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.embeddings.reader.impl.BasicModelUtils;
+import org.deeplearning4j.models.embeddings.reader.impl.HnswIndex;
+import org.deeplearning4j.models.embeddings.reader.impl.HnswModelUtils;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectorsImpl;
 import org.deeplearning4j.models.fasttext.FastText;
@@ -52,6 +54,7 @@ import org.deeplearning4j.models.word2vec.wordstore.VocabularyHolder;
 import org.deeplearning4j.models.word2vec.wordstore.VocabularyWord;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.InMemoryLookupCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.OffHeapVocabCache;
 import org.deeplearning4j.text.documentiterator.LabelsSource;
 import org.deeplearning4j.text.sentenceiterator.BasicLineIterator;
 import org.deeplearning4j.text.tokenization.tokenizer.TokenPreProcess;
@@ -1899,6 +1902,7 @@ public class WordVectorSerializer {
     private static final String SYN0_ENTRY = "syn0.bin";
     private static final String SYN1_ENTRY = "syn1.bin";
     private static final String SYN1_NEG_ENTRY = "syn1neg.bin";
+    private static final String HNSW_ENTRY = "hnsw.bin";
 
     /**
      * This method saves specified SequenceVectors model to target  OutputStream
@@ -1949,6 +1953,16 @@ public class WordVectorSerializer {
                 Nd4j.write(syn1NegData, dos);
                 dos.flush();
             }
+
+            if (vectors.getModelUtils() instanceof HnswModelUtils) {
+                HnswIndex index = ((HnswModelUtils<T>) vectors.getModelUtils()).getIndex();
+                if (index != null) {
+                    ZipEntry hnsw = new ZipEntry(HNSW_ENTRY);
+                    zipfile.putNextEntry(hnsw);
+                    index.save(dos);
+                    dos.flush();
+                }
+            }
         }
     }
 
@@ -2000,6 +2014,7 @@ public class WordVectorSerializer {
         VectorsConfiguration configuration = null;
 
         INDArray syn0 = null, syn1 = null, syn1neg = null;
+        HnswIndex hnswIndex = null;
 
         try (ZipInputStream zipfile = new ZipInputStream(new BufferedInputStream(stream))) {
 
@@ -2026,6 +2041,8 @@ public class WordVectorSerializer {
                         syn1 = Nd4j.read(new ByteArrayInputStream(bytes));
                     } else if (name.equals(SYN1_NEG_ENTRY)) {
                         syn1neg = Nd4j.read(new ByteArrayInputStream(bytes));
+                    } else if (name.equals(HNSW_ENTRY)) {
+                        hnswIndex = HnswIndex.load(new ByteArrayInputStream(bytes));
                     }
                 }
             }
@@ -2039,6 +2056,13 @@ public class WordVectorSerializer {
                 lookupTable(lookupTable).
                 vocabCache(vocabCache).
                 build();
+
+        if (hnswIndex != null) {
+            HnswModelUtils<T> modelUtils = vectors.getModelUtils() instanceof HnswModelUtils ?
+                    (HnswModelUtils<T>) vectors.getModelUtils() : new HnswModelUtils<T>();
+            modelUtils.setIndex(hnswIndex);
+            vectors.setModelUtils(modelUtils);
+        }
         return vectors;
     }
 
@@ -2142,15 +2166,47 @@ public class WordVectorSerializer {
         }
     }
 
+    /**
+     * This method saves vocab cache to provided File, in the binary format of {@link OffHeapVocabCache}.
+     * Files in this format are memory-mapped on load, see {@link #readOffHeapVocabCache(File)}.
+     * Unlike {@link #writeVocabCache(VocabCache, File)}, Huffman codes and points are saved too.
+     *
+     * @param vocabCache
+     * @param file
+     * @throws IOException
+     */
+    public static void writeOffHeapVocabCache(@NonNull VocabCache<VocabWord> vocabCache, @NonNull File file)
+            throws IOException {
+        OffHeapVocabCache cache = vocabCache instanceof OffHeapVocabCache ? (OffHeapVocabCache) vocabCache
+                : OffHeapVocabCache.copyOf(vocabCache);
+        cache.save(file);
+    }
+
+    /**
+     * This method memory-maps vocab cache saved with {@link #writeOffHeapVocabCache(VocabCache, File)}.
+     * Content is not read or copied on load, so it's suitable for very large vocabularies.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static OffHeapVocabCache readOffHeapVocabCache(@NonNull File file) throws IOException {
+        return OffHeapVocabCache.load(file);
+    }
+
     /**
      * This method reads vocab cache from provided file.
-     * Please note: it reads only vocab content, so it's suitable mostly for BagOfWords/TF-IDF vectorizers
+     * Please note: it reads only vocab content, so it's suitable mostly for BagOfWords/TF-IDF vectorizers.
+     * Files saved with {@link #writeOffHeapVocabCache(VocabCache, File)} are memory-mapped instead.
      *
      * @param file
      * @return
      * @throws IOException
      */
     public static VocabCache<VocabWord> readVocabCache(@NonNull File file) throws IOException {
+        if (OffHeapVocabCache.isOffHeapVocabCacheFile(file))
+            return readOffHeapVocabCache(file);
+
         try (FileInputStream fis = new FileInputStream(file)) {
             return readVocabCache(fis);
         }
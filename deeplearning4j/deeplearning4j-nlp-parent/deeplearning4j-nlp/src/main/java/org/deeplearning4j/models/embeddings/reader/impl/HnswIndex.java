@@ -0,0 +1,824 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest neighbour index for cosine similarity, based on Hierarchical Navigable Small World graphs
+ * (Malkov and Yashunin, "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small
+ * World graphs", 2016).<br>
+ * Each vector is stored normalized, together with an integer label (for word vectors: the index of the word in the
+ * vocabulary). Vectors can be added at any time, concurrently with other additions and with searches.<br>
+ * Search quality is controlled by {@link #setEfSearch(int)}: larger values give better recall, at the cost of slower
+ * queries. Index quality is controlled by M (maximum number of links per node) and efConstruction, which can't be
+ * changed after creation.
+ */
+@Slf4j
+public class HnswIndex {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final int BLOCK_SHIFT = 14;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int NUM_LOCKS = 4096;
+    private static final int MAX_LEVEL = 30;
+    private static final long EMPTY = -1L;
+
+    @Getter
+    private final int dimension;
+    @Getter
+    private final int m;
+    private final int m0;
+    @Getter
+    private final int efConstruction;
+    @Getter
+    private final long seed;
+    private final double levelMultiplier;
+    @Getter
+    private volatile int efSearch;
+
+    //Vectors and layer 0 links are stored in blocks of BLOCK_SIZE nodes. Layer 0 links: [count, link 0, ..., link m0-1]
+    private float[][] vectors = new float[0][];
+    private int[][] links0 = new int[0][];
+    //Links for layers 1 to level, [count, link 0, ..., link m-1] per layer. Null for nodes on layer 0 only
+    private int[][] upperLinks = new int[0][];
+    private int[] labels = new int[0];
+    private volatile int capacity;
+
+    private final AtomicInteger size = new AtomicInteger();
+    //Entry point node and the highest layer in the graph: (maxLevel << 32) | node
+    private volatile long entry = EMPTY;
+    private final Object entryLock = new Object();
+    private final ReentrantReadWriteLock growLock = new ReentrantReadWriteLock();
+    private final Object[] locks = new Object[NUM_LOCKS];
+    private final ThreadLocal<SearchContext> contexts = new ThreadLocal<>();
+
+    /**
+     * @param dimension      Length of the indexed vectors
+     * @param m              Maximum number of links per node and layer (twice as many on layer 0). Typical values: 8 to 48
+     * @param efConstruction Size of the candidate list used when adding vectors. Typical values: 100 to 500
+     * @param efSearch       Default size of the candidate list used for searches. Must be at least the number of
+     *                       results requested, larger values increase recall
+     * @param seed           Seed for the random layer assignment
+     */
+    public HnswIndex(int dimension, int m, int efConstruction, int efSearch, long seed) {
+        Preconditions.checkArgument(dimension > 0, "Dimension must be positive, got %s", dimension);
+        Preconditions.checkArgument(m >= 2, "M must be at least 2, got %s", m);
+        Preconditions.checkArgument(efConstruction > 0 && efSearch > 0, "efConstruction and efSearch must be positive, got %s and %s",
+                efConstruction, efSearch);
+        this.dimension = dimension;
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.seed = seed;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * A search result: label of the vector, and its cosine similarity to the query
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Neighbor {
+        private int label;
+        private float similarity;
+    }
+
+    /**
+     * @return Number of vectors in this index
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Set the default size of the candidate list for searches. Larger values give higher recall and slower queries
+     */
+    public void setEfSearch(int efSearch) {
+        Preconditions.checkArgument(efSearch > 0, "efSearch must be positive, got %s", efSearch);
+        this.efSearch = efSearch;
+    }
+
+    /* ------------------------------------------------ Storage ------------------------------------------------ */
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity)
+            return;
+        growLock.writeLock().lock();
+        try {
+            if (required <= capacity)
+                return;
+            int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, 2L * capacity));
+            int blocks = (newCapacity + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+            int oldBlocks = vectors.length;
+            if (blocks > oldBlocks) {
+                vectors = Arrays.copyOf(vectors, blocks);
+                links0 = Arrays.copyOf(links0, blocks);
+                for (int b = oldBlocks; b < blocks; b++) {
+                    vectors[b] = new float[BLOCK_SIZE * dimension];
+                    links0[b] = new int[BLOCK_SIZE * (m0 + 1)];
+                }
+            }
+            upperLinks = Arrays.copyOf(upperLinks, newCapacity);
+            labels = Arrays.copyOf(labels, newCapacity);
+            capacity = newCapacity;
+        } finally {
+            growLock.writeLock().unlock();
+        }
+    }
+
+    private Object lock(int node) {
+        return locks[node & (NUM_LOCKS - 1)];
+    }
+
+    private int level(int node) {
+        int[] upper = upperLinks[node];
+        return upper == null ? 0 : upper.length / (m + 1);
+    }
+
+    /**
+     * Copy the links of the specified node on the specified layer to dst, and return their number
+     */
+    private int copyLinks(int node, int layer, int[] dst) {
+        synchronized (lock(node)) {
+            int[] arr;
+            int base;
+            if (layer == 0) {
+                arr = links0[node >>> BLOCK_SHIFT];
+                base = (node & BLOCK_MASK) * (m0 + 1);
+            } else {
+                arr = upperLinks[node];
+                base = (layer - 1) * (m + 1);
+            }
+            int count = arr[base];
+            System.arraycopy(arr, base + 1, dst, 0, count);
+            return count;
+        }
+    }
+
+    private void setLinks(int node, int layer, int[] src, int count) {
+        synchronized (lock(node)) {
+            int[] arr;
+            int base;
+            if (layer == 0) {
+                arr = links0[node >>> BLOCK_SHIFT];
+                base = (node & BLOCK_MASK) * (m0 + 1);
+            } else {
+                arr = upperLinks[node];
+                base = (layer - 1) * (m + 1);
+            }
+            arr[base] = count;
+            System.arraycopy(src, 0, arr, base + 1, count);
+        }
+    }
+
+    /**
+     * Cosine distance between a normalized query and a stored vector
+     */
+    private float distance(float[] query, int node) {
+        float[] block = vectors[node >>> BLOCK_SHIFT];
+        int offset = (node & BLOCK_MASK) * dimension;
+        float dot = 0;
+        for (int i = 0; i < dimension; i++) {
+            dot += query[i] * block[offset + i];
+        }
+        return 1.0f - dot;
+    }
+
+    private float distance(int a, int b) {
+        float[] blockA = vectors[a >>> BLOCK_SHIFT];
+        float[] blockB = vectors[b >>> BLOCK_SHIFT];
+        int offsetA = (a & BLOCK_MASK) * dimension;
+        int offsetB = (b & BLOCK_MASK) * dimension;
+        float dot = 0;
+        for (int i = 0; i < dimension; i++) {
+            dot += blockA[offsetA + i] * blockB[offsetB + i];
+        }
+        return 1.0f - dot;
+    }
+
+    private float[] normalize(float[] vector) {
+        Preconditions.checkArgument(vector.length == dimension, "Expected vector of length %s, got length %s", dimension, vector.length);
+        double norm = 0;
+        for (float f : vector) {
+            norm += f * f;
+        }
+        norm = Math.sqrt(norm);
+        float[] ret = new float[dimension];
+        if (norm > 0) {
+            for (int i = 0; i < dimension; i++) {
+                ret[i] = (float) (vector[i] / norm);
+            }
+        }
+        return ret;
+    }
+
+    private int randomLevel(int node) {
+        //SplitMix64 of seed and node: levels don't depend on insertion order or threads
+        long z = seed + (node + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        double u = ((z >>> 11) + 1) * 0x1.0p-53;
+        return (int) Math.min(MAX_LEVEL, Math.floor(-Math.log(u) * levelMultiplier));
+    }
+
+    /* ------------------------------------------------ Insertion ------------------------------------------------ */
+
+    /**
+     * Add a vector to this index
+     *
+     * @param label  Label returned by searches for this vector
+     * @param vector Vector to add, of length {@link #getDimension()}
+     */
+    public void add(int label, @NonNull float[] vector) {
+        float[] v = normalize(vector);
+        int node = size.getAndIncrement();
+        ensureCapacity(node + 1);
+        growLock.readLock().lock();
+        try {
+            insert(node, label, v);
+        } finally {
+            growLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add a vector to this index
+     *
+     * @param label  Label returned by searches for this vector
+     * @param vector Vector to add, of length {@link #getDimension()}
+     */
+    public void add(int label, @NonNull INDArray vector) {
+        add(label, vector.castTo(DataType.FLOAT).toFloatVector());
+    }
+
+    /**
+     * Add all rows of the specified matrix to this index, using multiple threads. Row i is added with label
+     * firstLabel + i
+     *
+     * @param matrix     Vectors to add, one per row
+     * @param firstLabel Label of the first row
+     * @param numThreads Number of threads to use
+     */
+    public void addAll(@NonNull INDArray matrix, final int firstLabel, int numThreads) {
+        Preconditions.checkArgument(matrix.rank() == 2 && matrix.columns() == dimension,
+                "Expected matrix with %s columns, got array with shape %ndShape", dimension, matrix);
+        final INDArray rows = matrix;
+        final int numRows = rows.rows();
+        final int batch = 1024;
+        final AtomicInteger next = new AtomicInteger();
+        ensureCapacity(size.get() + numRows);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < Math.max(1, numThreads); t++) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        int start;
+                        while ((start = next.getAndAdd(batch)) < numRows) {
+                            int end = Math.min(numRows, start + batch);
+                            float[] data = rows.get(NDArrayIndex.interval(start, end), NDArrayIndex.all())
+                                    .castTo(DataType.FLOAT).dup('c').data().asFloat();
+                            for (int r = start; r < end; r++) {
+                                add(firstLabel + r, Arrays.copyOfRange(data, (r - start) * dimension, (r - start + 1) * dimension));
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error building HNSW index", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void insert(int node, int label, float[] v) {
+        float[] block = vectors[node >>> BLOCK_SHIFT];
+        System.arraycopy(v, 0, block, (node & BLOCK_MASK) * dimension, dimension);
+        labels[node] = label;
+        int level = randomLevel(node);
+        if (level > 0)
+            upperLinks[node] = new int[level * (m + 1)];
+
+        long ep;
+        synchronized (entryLock) {
+            ep = entry;
+            if (ep == EMPTY) {
+                entry = ((long) level << 32) | node;
+                return;
+            }
+        }
+
+        SearchContext ctx = context();
+        int maxLevel = (int) (ep >>> 32);
+        int cur = (int) ep;
+        float curDist = distance(v, cur);
+        for (int layer = maxLevel; layer > level; layer--) {
+            cur = greedy(ctx, v, cur, curDist, layer);
+            curDist = distance(v, cur);
+        }
+
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            searchLayer(ctx, v, cur, efConstruction, layer);
+            int count = ctx.sortResults();
+            cur = ctx.sortedNodes[0];
+            int selected = selectNeighbors(ctx.sortedNodes, ctx.sortedDistances, count, m, ctx.selected);
+            setLinks(node, layer, ctx.selected, selected);
+            for (int i = 0; i < selected; i++) {
+                connect(ctx.selected[i], node, layer);
+            }
+        }
+
+        if (level > maxLevel) {
+            synchronized (entryLock) {
+                if (level > (int) (entry >>> 32))
+                    entry = ((long) level << 32) | node;
+            }
+        }
+    }
+
+    /**
+     * Select up to max neighbors from candidates sorted by increasing distance, with the heuristic from the HNSW
+     * paper: a candidate is only kept if it is closer to the base than to all already selected neighbors. This keeps
+     * links pointing in diverse directions
+     */
+    private int selectNeighbors(int[] candidates, float[] distances, int count, int max, int[] out) {
+        int selected = 0;
+        for (int i = 0; i < count && selected < max; i++) {
+            int c = candidates[i];
+            boolean keep = true;
+            for (int j = 0; j < selected; j++) {
+                if (distance(c, out[j]) < distances[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep)
+                out[selected++] = c;
+        }
+        return selected;
+    }
+
+    /**
+     * Add a link from node to newNode on the specified layer, pruning the links of node if required
+     */
+    private void connect(int node, int newNode, int layer) {
+        int max = layer == 0 ? m0 : m;
+        synchronized (lock(node)) {
+            int[] arr;
+            int base;
+            if (layer == 0) {
+                arr = links0[node >>> BLOCK_SHIFT];
+                base = (node & BLOCK_MASK) * (m0 + 1);
+            } else {
+                arr = upperLinks[node];
+                base = (layer - 1) * (m + 1);
+            }
+            int count = arr[base];
+            if (count < max) {
+                arr[base + 1 + count] = newNode;
+                arr[base] = count + 1;
+                return;
+            }
+
+            //Full: keep the best links out of the existing ones and the new one
+            int[] candidates = new int[count + 1];
+            float[] distances = new float[count + 1];
+            System.arraycopy(arr, base + 1, candidates, 0, count);
+            candidates[count] = newNode;
+            for (int i = 0; i <= count; i++) {
+                distances[i] = distance(node, candidates[i]);
+            }
+            sortByDistance(candidates, distances, count + 1);
+            int[] out = new int[max];
+            int selected = selectNeighbors(candidates, distances, count + 1, max, out);
+            arr[base] = selected;
+            System.arraycopy(out, 0, arr, base + 1, selected);
+        }
+    }
+
+    private static void sortByDistance(int[] nodes, float[] distances, int count) {
+        //Insertion sort: at most 2*M + 1 elements
+        for (int i = 1; i < count; i++) {
+            int n = nodes[i];
+            float d = distances[i];
+            int j = i - 1;
+            while (j >= 0 && distances[j] > d) {
+                nodes[j + 1] = nodes[j];
+                distances[j + 1] = distances[j];
+                j--;
+            }
+            nodes[j + 1] = n;
+            distances[j + 1] = d;
+        }
+    }
+
+    /* ------------------------------------------------ Search ------------------------------------------------ */
+
+    private SearchContext context() {
+        SearchContext ctx = contexts.get();
+        if (ctx == null) {
+            ctx = new SearchContext(m0);
+            contexts.set(ctx);
+        }
+        return ctx;
+    }
+
+    private int greedy(SearchContext ctx, float[] q, int cur, float curDist, int layer) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = copyLinks(cur, layer, ctx.links);
+            for (int i = 0; i < count; i++) {
+                int n = ctx.links[i];
+                float d = distance(q, n);
+                if (d < curDist) {
+                    curDist = d;
+                    cur = n;
+                    changed = true;
+                }
+            }
+        }
+        return cur;
+    }
+
+    /**
+     * Best-first search on one layer, starting from the specified entry point. The ef nearest nodes found are left
+     * in ctx.results
+     */
+    private void searchLayer(SearchContext ctx, float[] q, int ep, int ef, int layer) {
+        ctx.visited.clear();
+        ctx.candidates.clear();
+        ctx.results.clear();
+        ctx.visited.add(ep);
+        float d = distance(q, ep);
+        ctx.candidates.push(d, ep);
+        ctx.results.push(-d, ep);
+
+        while (ctx.candidates.size() > 0) {
+            float cd = ctx.candidates.topKey();
+            if (cd > -ctx.results.topKey() && ctx.results.size() >= ef)
+                break;
+            int c = ctx.candidates.pop();
+            int count = copyLinks(c, layer, ctx.links);
+            for (int i = 0; i < count; i++) {
+                int n = ctx.links[i];
+                if (!ctx.visited.add(n))
+                    continue;
+                float dn = distance(q, n);
+                if (ctx.results.size() < ef || dn < -ctx.results.topKey()) {
+                    ctx.candidates.push(dn, n);
+                    ctx.results.push(-dn, n);
+                    if (ctx.results.size() > ef)
+                        ctx.results.pop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the approximate k nearest neighbors of the query vector, using the default efSearch
+     *
+     * @param query Query vector
+     * @param k     Number of results
+     * @return Up to k results, most similar first
+     */
+    public List<Neighbor> search(@NonNull float[] query, int k) {
+        return search(query, k, efSearch);
+    }
+
+    /**
+     * Find the approximate k nearest neighbors of the query vector
+     *
+     * @param query Query vector
+     * @param k     Number of results
+     * @param ef    Size of the candidate list. Values less than k are increased to k
+     * @return Up to k results, most similar first
+     */
+    public List<Neighbor> search(@NonNull float[] query, int k, int ef) {
+        Preconditions.checkArgument(k > 0, "Number of results must be positive, got %s", k);
+        float[] q = normalize(query);
+        growLock.readLock().lock();
+        try {
+            long ep = entry;
+            if (ep == EMPTY)
+                return new ArrayList<>();
+
+            SearchContext ctx = context();
+            int cur = (int) ep;
+            float curDist = distance(q, cur);
+            for (int layer = (int) (ep >>> 32); layer > 0; layer--) {
+                cur = greedy(ctx, q, cur, curDist, layer);
+                curDist = distance(q, cur);
+            }
+            searchLayer(ctx, q, cur, Math.max(ef, k), 0);
+            int count = ctx.sortResults();
+            List<Neighbor> ret = new ArrayList<>(Math.min(k, count));
+            for (int i = 0; i < count && i < k; i++) {
+                ret.add(new Neighbor(labels[ctx.sortedNodes[i]], 1.0f - ctx.sortedDistances[i]));
+            }
+            return ret;
+        } finally {
+            growLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @see #search(float[], int)
+     */
+    public List<Neighbor> search(@NonNull INDArray query, int k) {
+        return search(query.castTo(DataType.FLOAT).toFloatVector(), k);
+    }
+
+    /* ------------------------------------------------ Persistence ------------------------------------------------ */
+
+    /**
+     * Write this index to the specified stream. The stream is not closed.
+     * Vectors must not be added while the index is being saved.
+     */
+    public void save(@NonNull OutputStream stream) throws IOException {
+        growLock.writeLock().lock();
+        try {
+            DataOutputStream dos = new DataOutputStream(stream);
+            int n = size.get();
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(dimension);
+            dos.writeInt(m);
+            dos.writeInt(efConstruction);
+            dos.writeInt(efSearch);
+            dos.writeLong(seed);
+            dos.writeInt(n);
+            dos.writeLong(entry);
+
+            byte[] bytes = new byte[dimension * 4];
+            ByteBuffer bb = ByteBuffer.wrap(bytes);
+            int[] links = new int[m0];
+            for (int node = 0; node < n; node++) {
+                int level = level(node);
+                dos.writeInt(labels[node]);
+                dos.writeInt(level);
+                bb.clear();
+                bb.asFloatBuffer().put(vectors[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * dimension, dimension);
+                dos.write(bytes);
+                for (int layer = 0; layer <= level; layer++) {
+                    int count = copyLinks(node, layer, links);
+                    dos.writeInt(count);
+                    for (int i = 0; i < count; i++) {
+                        dos.writeInt(links[i]);
+                    }
+                }
+            }
+            dos.flush();
+        } finally {
+            growLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read an index written by {@link #save(OutputStream)}. The stream is not closed.
+     */
+    public static HnswIndex load(@NonNull InputStream stream) throws IOException {
+        DataInputStream dis = new DataInputStream(stream);
+        Preconditions.checkState(dis.readInt() == MAGIC, "Not a HNSW index");
+        int version = dis.readInt();
+        Preconditions.checkState(version == VERSION, "Unsupported HNSW index version: %s", version);
+        int dimension = dis.readInt();
+        int m = dis.readInt();
+        int efConstruction = dis.readInt();
+        int efSearch = dis.readInt();
+        long seed = dis.readLong();
+        int n = dis.readInt();
+        HnswIndex ret = new HnswIndex(dimension, m, efConstruction, efSearch, seed);
+        ret.ensureCapacity(Math.max(1, n));
+        ret.size.set(n);
+        ret.entry = dis.readLong();
+
+        byte[] bytes = new byte[dimension * 4];
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        int[] links = new int[ret.m0];
+        for (int node = 0; node < n; node++) {
+            ret.labels[node] = dis.readInt();
+            int level = dis.readInt();
+            if (level > 0)
+                ret.upperLinks[node] = new int[level * (m + 1)];
+            dis.readFully(bytes);
+            bb.clear();
+            bb.asFloatBuffer().get(ret.vectors[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * dimension, dimension);
+            for (int layer = 0; layer <= level; layer++) {
+                int count = dis.readInt();
+                for (int i = 0; i < count; i++) {
+                    links[i] = dis.readInt();
+                }
+                ret.setLinks(node, layer, links, count);
+            }
+        }
+        return ret;
+    }
+
+    /* ------------------------------------------------ Search state ------------------------------------------------ */
+
+    /**
+     * Per-thread buffers used by searches, so that queries don't allocate
+     */
+    private static class SearchContext {
+        private final int[] links;
+        private final int[] selected;
+        private final NodeHeap candidates = new NodeHeap();
+        //Results are stored with negated distances, so the top of the heap is the farthest result
+        private final NodeHeap results = new NodeHeap();
+        private final VisitedSet visited = new VisitedSet();
+        private int[] sortedNodes = new int[16];
+        private float[] sortedDistances = new float[16];
+
+        private SearchContext(int maxLinks) {
+            this.links = new int[maxLinks];
+            this.selected = new int[maxLinks];
+        }
+
+        /**
+         * Move results to sortedNodes and sortedDistances, nearest first
+         *
+         * @return Number of results
+         */
+        private int sortResults() {
+            int count = results.size();
+            if (sortedNodes.length < count) {
+                sortedNodes = new int[count];
+                sortedDistances = new float[count];
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                sortedDistances[i] = -results.topKey();
+                sortedNodes[i] = results.pop();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Binary min-heap of (float key, int node) pairs
+     */
+    private static class NodeHeap {
+        private float[] keys = new float[64];
+        private int[] nodes = new int[64];
+        private int size;
+
+        private int size() {
+            return size;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private float topKey() {
+            return keys[0];
+        }
+
+        private void push(float key, int node) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * size);
+                nodes = Arrays.copyOf(nodes, 2 * size);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key)
+                    break;
+                keys[i] = keys[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        private int pop() {
+            int ret = nodes[0];
+            size--;
+            float key = keys[size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && keys[child + 1] < keys[child])
+                    child++;
+                if (keys[child] >= key)
+                    break;
+                keys[i] = keys[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+            return ret;
+        }
+    }
+
+    /**
+     * Open addressing set of node ids, cleared in time proportional to its number of entries
+     */
+    private static class VisitedSet {
+        private int[] table = new int[1024];
+        private int[] used = new int[512];
+        private int size;
+
+        private void clear() {
+            for (int i = 0; i < size; i++) {
+                table[used[i]] = 0;
+            }
+            size = 0;
+        }
+
+        /**
+         * @return True if the node was not already in the set
+         */
+        private boolean add(int node) {
+            if (2 * (size + 1) > table.length)
+                grow();
+            int mask = table.length - 1;
+            int v = node + 1;
+            int slot = (v * 0x9E3779B9) >>> 1 & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == v)
+                    return false;
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = v;
+            used[size++] = slot;
+            return true;
+        }
+
+        private void grow() {
+            int[] oldTable = table;
+            int[] oldUsed = used;
+            int oldSize = size;
+            table = new int[oldTable.length * 2];
+            used = new int[oldUsed.length * 2];
+            size = 0;
+            for (int i = 0; i < oldSize; i++) {
+                add(oldTable[oldUsed[i]] - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ModelUtils implementation that answers {@link #wordsNearest(INDArray, int)} queries (and all other wordsNearest
+ * variants, which delegate to it) with an approximate nearest neighbour search over a {@link HnswIndex}, instead of
+ * a brute force comparison against the whole vocabulary.<br>
+ * The index is built from {@link InMemoryLookupTable#getSyn0()} on the first query, or explicitly via
+ * {@link #buildIndex()}. Words added to the vocabulary after that can be added to the index with {@link #insert(String)}.
+ * Unlike {@link BasicModelUtils}, syn0 is not normalized in place.<br>
+ * Recall can be traded for speed with {@link #setEfSearch(int)}.<br>
+ * The index is written alongside the model by WordVectorSerializer, so it doesn't need to be rebuilt after loading.
+ *
+ * @param <T>
+ */
+@Slf4j
+public class HnswModelUtils<T extends SequenceElement> extends BasicModelUtils<T> {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    @Getter
+    protected final int m;
+    @Getter
+    protected final int efConstruction;
+    @Getter
+    protected volatile int efSearch;
+    protected volatile HnswIndex index;
+
+    public HnswModelUtils() {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * @param m              Maximum number of links per node in the HNSW graph
+     * @param efConstruction Size of the candidate list used while building the index
+     * @param efSearch       Size of the candidate list used for queries. Higher values give higher recall
+     */
+    public HnswModelUtils(int m, int efConstruction, int efSearch) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+    }
+
+    @Override
+    public void init(@NonNull WeightLookupTable<T> lookupTable) {
+        super.init(lookupTable);
+        HnswIndex idx = index;
+        if (idx != null && lookupTable.layerSize() > 0 && idx.getDimension() != lookupTable.layerSize()) {
+            log.warn("Discarding HNSW index with dimension {}: lookup table has layer size {}", idx.getDimension(), lookupTable.layerSize());
+            index = null;
+        }
+    }
+
+    /**
+     * Set the size of the candidate list used for queries. Higher values give higher recall, but slower queries
+     */
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+        HnswIndex idx = index;
+        if (idx != null)
+            idx.setEfSearch(efSearch);
+    }
+
+    /**
+     * @return The index, or null if it has not been built yet
+     */
+    public HnswIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Use the specified index, for example one loaded from disk. Labels in the index must be vocabulary indices
+     */
+    public void setIndex(HnswIndex index) {
+        if (index != null)
+            index.setEfSearch(efSearch);
+        this.index = index;
+    }
+
+    /**
+     * Build the index from all vectors in the lookup table, replacing any existing index
+     *
+     * @return The new index
+     */
+    public synchronized HnswIndex buildIndex() {
+        Preconditions.checkState(lookupTable instanceof InMemoryLookupTable,
+                "HNSW index can only be built for InMemoryLookupTable, got %s", lookupTable == null ? null : lookupTable.getClass());
+        INDArray syn0 = ((InMemoryLookupTable<T>) lookupTable).getSyn0();
+        long start = System.currentTimeMillis();
+        HnswIndex idx = new HnswIndex((int) syn0.columns(), m, efConstruction, efSearch, 12345L);
+        idx.addAll(syn0, 0, Runtime.getRuntime().availableProcessors());
+        log.info("Built HNSW index for {} vectors in {} ms", idx.size(), System.currentTimeMillis() - start);
+        index = idx;
+        return idx;
+    }
+
+    /**
+     * Add the vector of the specified word to the index. Use this for words added to the vocabulary and lookup table
+     * after the index was built.
+     */
+    public void insert(@NonNull String label) {
+        int idx = vocabCache.indexOf(label);
+        Preconditions.checkArgument(idx >= 0, "Unknown word: %s", label);
+        index().add(idx, lookupTable.vector(label).castTo(DataType.FLOAT).toFloatVector());
+    }
+
+    protected HnswIndex index() {
+        HnswIndex idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null)
+                    idx = buildIndex();
+            }
+        }
+        return idx;
+    }
+
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        words = adjustRank(words);
+        if (!(lookupTable instanceof InMemoryLookupTable) || words.rows() != 1)
+            return super.wordsNearest(words, top);
+
+        //A few extra results, as UNK and STOP are filtered out
+        List<HnswIndex.Neighbor> neighbors = index().search(words.castTo(DataType.FLOAT).toFloatVector(), top + 2);
+        List<WordSimilarity> result = new ArrayList<>(neighbors.size());
+        for (HnswIndex.Neighbor n : neighbors) {
+            String word = vocabCache.wordAtIndex(n.getLabel());
+            if (word != null && !word.equals("UNK") && !word.equals("STOP")) {
+                result.add(new WordSimilarity(word, n.getSimilarity()));
+            }
+        }
+        Collections.sort(result, new SimilarityComparator());
+        return getLabels(result, top);
+    }
+}
@@ -90,6 +90,12 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
     protected transient AtomicDouble scoreElements = new AtomicDouble(0.0);
     protected transient AtomicDouble scoreSequences = new AtomicDouble(0.0);
     protected transient boolean configured = false;
+
+    /**
+     * Training throughput of the last finished epoch, in elements (words) per second
+     */
+    @Getter
+    protected transient volatile double wordsPerSecond;
     protected transient boolean lockFactor = false;
 
     protected boolean enableScavenger = false;
@@ -334,6 +340,8 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         val wordsCounter = new AtomicLong(0);
         for (int currentEpoch = 1; currentEpoch <= numEpochs; currentEpoch++) {
             val linesCounter = new AtomicLong(0);
+            long epochStartTime = System.currentTimeMillis();
+            long epochStartWords = wordsCounter.get();
 
 
             val sequencer = new AsyncSequencer(this.iterator, this.stopWords);
@@ -368,8 +376,11 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                             && sequenceLearningAlgorithm.isEarlyTerminationHit()) {
                 break;
             }
+            long epochTime = Math.max(1, System.currentTimeMillis() - epochStartTime);
+            wordsPerSecond = (wordsCounter.get() - epochStartWords) / (epochTime / 1000.0);
             log.info("Epoch [" + currentEpoch + "] finished; Elements processed so far: [" + wordsCounter.get()
-                            + "];  Sequences processed: [" + linesCounter.get() + "]");
+                            + "];  Sequences processed: [" + linesCounter.get() + "]; Words/sec: ["
+                            + String.format("%.2f", wordsPerSecond) + "]");
 
             if (eventListeners != null && !eventListeners.isEmpty()) {
                 for (VectorsListener listener : eventListeners) {
@@ -1244,7 +1255,10 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                     // getting back number of iterations
                     for (int i = 0; i < numIterations; i++) {
 
-                        batchSequences = new BatchSequences<>(configuration.getBatchSize());
+                        // buffers are reused across iterations, so batching doesn't allocate once warmed up
+                        if (batchSequences == null || batchSequences.getBatchSize() != configuration.getBatchSize())
+                            batchSequences = new BatchSequences<>(configuration.getBatchSize());
+                        batchSequences.clear();
                         // we roll over sequences derived from digitizer, it's NOT window loop
                         for (int x = 0; x < sequences.size(); x++) {
                             try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(conf, workspace_id)) {
@@ -1294,25 +1308,23 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
 
                         int batchSize = configuration.getBatchSize();
                         if (batchSize > 1 && batchSequences != null) {
-                            int rest = batchSequences.size() % batchSize;
-                            int chunks = ((batchSequences.size() >= batchSize) ? batchSequences.size() / batchSize : 0) + ((rest > 0)? 1 : 0);
+                            int chunks = batchSequences.chunks();
                             for (int j = 0; j < chunks; ++j) {
                                 if (trainElementsVectors) {
                                     if (elementsLearningAlgorithm instanceof SkipGram)
-                                        ((SkipGram) elementsLearningAlgorithm).iterateSample(batchSequences.get(j));
+                                        ((SkipGram<T>) elementsLearningAlgorithm).iterateSample(batchSequences, j);
                                     else if (elementsLearningAlgorithm instanceof CBOW)
-                                        ((CBOW) elementsLearningAlgorithm).iterateSample(batchSequences.get(j));
+                                        ((CBOW<T>) elementsLearningAlgorithm).iterateSample(batchSequences, j);
                                 }
 
                                 if (trainSequenceVectors) {
                                     if (sequenceLearningAlgorithm instanceof DBOW)
-                                        ((SkipGram<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).iterateSample(batchSequences.get(j));
+                                        ((SkipGram<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).iterateSample(batchSequences, j);
                                     else if (sequenceLearningAlgorithm instanceof DM)
-                                        ((CBOW<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).iterateSample(batchSequences.get(j));
+                                        ((CBOW<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).iterateSample(batchSequences, j);
                                 }
                             }
                             batchSequences.clear();
-                            batchSequences = null;
                         }
 
                         if (eventListeners != null && !eventListeners.isEmpty()) {
@@ -30,6 +30,7 @@ import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.Huffman;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.OffHeapVocabCache;
 import org.deeplearning4j.text.invertedindex.InvertedIndex;
 import org.nd4j.common.util.ThreadUtils;
 import org.slf4j.Logger;
@@ -184,11 +185,8 @@ public class VocabConstructor<T extends SequenceElement> {
                     result.addWordToIndex(result.numWords(), v.getLabel());
         }
 
-        if (buildHuffman) {
-            val huffman = new Huffman(result.vocabWords());
-            huffman.build();
-            huffman.applyIndexes(result);
-        }
+        if (buildHuffman)
+            buildHuffmanTree(result);
 
         return result;
     }
@@ -419,9 +417,7 @@ public class VocabConstructor<T extends SequenceElement> {
                 }
             }
             // and now we're building Huffman tree
-            val huffman = new Huffman(cache.vocabWords());
-            huffman.build();
-            huffman.applyIndexes(cache);
+            buildHuffmanTree(cache);
         }
 
         executorService.shutdown();
@@ -437,6 +433,17 @@ public class VocabConstructor<T extends SequenceElement> {
         return cache;
     }
 
+    protected void buildHuffmanTree(VocabCache<T> cache) {
+        if (cache instanceof OffHeapVocabCache) {
+            // builds the same tree, without materializing all elements on heap
+            ((OffHeapVocabCache) cache).buildHuffmanTree();
+        } else {
+            val huffman = new Huffman(cache.vocabWords());
+            huffman.build();
+            huffman.applyIndexes(cache);
+        }
+    }
+
     protected void filterVocab(AbstractCache<T> cache, int minWordFrequency) {
         int numWords = cache.numWords();
         LinkedBlockingQueue<String> labelsToRemove = new LinkedBlockingQueue<>();
@@ -0,0 +1,228 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Growable, long-addressed block of off-heap memory used as storage by {@link OffHeapVocabCache}.<br>
+ * Memory is split into chunks of at most {@link #CHUNK_SIZE} bytes, each backed by a direct or memory-mapped
+ * {@link ByteBuffer}. Values are little endian, and must be aligned to their own width so that no value crosses a
+ * chunk boundary.<br>
+ * This class is not thread safe for writes: callers must synchronize all writes, and all calls to
+ * {@link #ensureCapacity(long)}. Concurrent reads are safe.
+ */
+class OffHeapBuffer {
+
+    static final int CHUNK_SHIFT = 26;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_CHUNK = 4096;
+
+    private volatile ByteBuffer[] chunks;
+    private long capacity;
+
+    OffHeapBuffer(long initialCapacity) {
+        this.chunks = new ByteBuffer[0];
+        ensureCapacity(Math.max(1, initialCapacity));
+    }
+
+    private OffHeapBuffer(ByteBuffer[] chunks, long capacity) {
+        this.chunks = chunks;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Map a region of a file as a buffer. If writable, the mapping is copy-on-write: the buffer can be modified, but
+     * modifications are never written back to the file. Otherwise the mapping is read-only.
+     *
+     * @param channel  Channel of the file to map
+     * @param position Position of the region within the file
+     * @param length   Length of the region, in bytes
+     * @param writable If true: the channel must be open for reading and writing
+     */
+    static OffHeapBuffer map(FileChannel channel, long position, long length, boolean writable) throws IOException {
+        if (length == 0)
+            return new OffHeapBuffer(MIN_CHUNK);
+
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+        int numChunks = (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+        ByteBuffer[] chunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            long start = (long) i << CHUNK_SHIFT;
+            long size = Math.min(CHUNK_SIZE, length - start);
+            chunks[i] = channel.map(mode, position + start, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new OffHeapBuffer(chunks, length);
+    }
+
+    /**
+     * Read a buffer of the specified length from a channel
+     */
+    static OffHeapBuffer read(ReadableByteChannel channel, long length) throws IOException {
+        OffHeapBuffer ret = new OffHeapBuffer(Math.max(length, MIN_CHUNK));
+        ByteBuffer[] chunks = ret.chunks;
+        for (int i = 0; i < chunks.length && length > 0; i++) {
+            ByteBuffer b = chunks[i].duplicate();
+            int len = (int) Math.min(length, b.capacity());
+            b.position(0);
+            b.limit(len);
+            while (b.hasRemaining()) {
+                if (channel.read(b) < 0)
+                    throw new EOFException("Unexpected end of stream");
+            }
+            length -= len;
+        }
+        return ret;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Grow this buffer so that it can hold at least the specified number of bytes. Existing content is preserved.
+     */
+    void ensureCapacity(long bytes) {
+        while (capacity < bytes) {
+            ByteBuffer[] current = chunks;
+            int last = current.length - 1;
+            if (last >= 0 && current[last].capacity() < CHUNK_SIZE) {
+                //Last chunk is partial: replace it with a larger one
+                long needed = bytes - ((long) last << CHUNK_SHIFT);
+                int size = (int) Math.min(CHUNK_SIZE, Math.max(needed, 2L * current[last].capacity()));
+                ByteBuffer replacement = allocate(size);
+                ByteBuffer old = current[last].duplicate();
+                old.position(0);
+                old.limit(old.capacity());
+                replacement.put(old);
+                replacement.position(0);
+                ByteBuffer[] next = Arrays.copyOf(current, current.length);
+                next[last] = replacement;
+                capacity += size - current[last].capacity();
+                chunks = next;
+            } else {
+                long needed = bytes - capacity;
+                int size = (int) Math.min(CHUNK_SIZE, Math.max(needed, MIN_CHUNK));
+                ByteBuffer[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = allocate(size);
+                capacity += size;
+                chunks = next;
+            }
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    byte getByte(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].get((int) (pos & CHUNK_MASK));
+    }
+
+    void putByte(long pos, byte value) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].put((int) (pos & CHUNK_MASK), value);
+    }
+
+    int getInt(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].getInt((int) (pos & CHUNK_MASK));
+    }
+
+    void putInt(long pos, int value) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].putInt((int) (pos & CHUNK_MASK), value);
+    }
+
+    long getLong(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].getLong((int) (pos & CHUNK_MASK));
+    }
+
+    void putLong(long pos, long value) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].putLong((int) (pos & CHUNK_MASK), value);
+    }
+
+    double getDouble(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)].getDouble((int) (pos & CHUNK_MASK));
+    }
+
+    void putDouble(long pos, double value) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)].putDouble((int) (pos & CHUNK_MASK), value);
+    }
+
+    /**
+     * @return True if this buffer can't be written to, because it is a read-only file mapping
+     */
+    boolean isReadOnly() {
+        ByteBuffer[] current = chunks;
+        return current.length > 0 && current[0].isReadOnly();
+    }
+
+    /**
+     * Copy bytes out of this buffer. The region must not cross a chunk boundary.
+     */
+    void getBytes(long pos, byte[] dst) {
+        ByteBuffer b = chunks[(int) (pos >>> CHUNK_SHIFT)].duplicate();
+        b.position((int) (pos & CHUNK_MASK));
+        b.get(dst);
+    }
+
+    /**
+     * Copy bytes into this buffer. The region must not cross a chunk boundary.
+     */
+    void putBytes(long pos, byte[] src) {
+        ByteBuffer b = chunks[(int) (pos >>> CHUNK_SHIFT)].duplicate();
+        b.position((int) (pos & CHUNK_MASK));
+        b.put(src);
+    }
+
+    /**
+     * Fill a region with zeros
+     */
+    void clear(long pos, long bytes) {
+        for (long i = 0; i < bytes; i++) {
+            putByte(pos + i, (byte) 0);
+        }
+    }
+
+    /**
+     * Write the first {@code bytes} bytes of this buffer to the specified channel
+     */
+    void writeTo(WritableByteChannel channel, long bytes) throws IOException {
+        ByteBuffer[] current = chunks;
+        for (int i = 0; i < current.length && bytes > 0; i++) {
+            ByteBuffer b = current[i].duplicate();
+            int len = (int) Math.min(bytes, b.capacity());
+            b.position(0);
+            b.limit(len);
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+            bytes -= len;
+        }
+    }
+}
@@ -0,0 +1,1366 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link VocabCache} for very large vocabularies, that keeps all of its content off-heap.<br>
+ * Unlike {@link AbstractCache}, which stores one {@link VocabWord} object (plus boxed codes and points) per element,
+ * this cache stores:
+ * <ul>
+ *     <li>Labels as UTF-8 bytes in an off-heap arena</li>
+ *     <li>Two open addressing hash tables, mapping labels and storage ids to element ids</li>
+ *     <li>Frequencies, sequence counts, Huffman indexes, codes (packed as bits) and points in primitive off-heap
+ *     columns, indexed by element id</li>
+ * </ul>
+ * The elements returned by this cache are lightweight {@link Element} views: they are created on demand, and all
+ * changes made through them (for example, by {@link org.deeplearning4j.models.word2vec.Huffman}) are written through
+ * to the cache. Elements should be compared with equals(), not by reference.<br>
+ * The cache can be saved with {@link #save(File)}, and memory-mapped with {@link #load(File)} without parsing or
+ * copying. See also {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer#writeOffHeapVocabCache}.<br>
+ * All modifications are synchronized; lookups are lock free.
+ */
+@Slf4j
+public class OffHeapVocabCache implements VocabCache<VocabWord> {
+
+    private static final long serialVersionUID = 4372918253450171648L;
+
+    /**
+     * Maximum length of Huffman codes. The same as {@link org.deeplearning4j.models.word2vec.Huffman}
+     */
+    public static final int MAX_CODE_LENGTH = 40;
+
+    private static final long MAGIC = 0x31434F5648344C44L;     //"DL4HVOC1", little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int NUM_SECTIONS = 14;
+
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final double MAX_LOAD = 0.7;
+    private static final int MAX_POINTS = 255;
+
+    private static final int FLAG_SPECIAL = 1;
+    private static final int FLAG_LABEL = 2;
+    private static final int FLAG_INIT = 4;
+    private static final int FLAG_LOCKED = 8;
+    private static final int FLAG_REMOVED = 16;
+
+    //Per element columns, indexed by element id
+    private transient OffHeapBuffer labelOffsets;      //long: offset of the label in the string arena
+    private transient OffHeapBuffer labelHashes;       //int
+    private transient OffHeapBuffer storageIds;        //long
+    private transient OffHeapBuffer frequencies;       //double
+    private transient OffHeapBuffer sequenceCounts;    //long
+    private transient OffHeapBuffer huffmanIndexes;    //int
+    private transient OffHeapBuffer codes;             //long: one bit per code
+    private transient OffHeapBuffer pointOffsets;      //long: offset of the points in the points arena, in ints
+    private transient OffHeapBuffer meta;              //4 bytes: code length, points length, points capacity, flags
+
+    //Huffman index -> element id + 1
+    private transient OffHeapBuffer indexToId;
+    private transient volatile Tables tables;
+
+    //Arenas: labels as [int length][UTF-8 bytes], 4 byte aligned, and points
+    private transient OffHeapBuffer strings;
+    private transient OffHeapBuffer points;
+
+    private transient volatile int numIds;
+    private transient volatile int liveCount;
+    private transient int indexCapacity;
+    private transient int tableUsed;
+    private transient long stringBytes;
+    private transient long pointsUsed;
+
+    private final AtomicLong totalWordCount = new AtomicLong(0);
+    private final AtomicLong documentsCounter = new AtomicLong(0);
+
+    public OffHeapVocabCache() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedElements Expected number of elements. The cache grows as required, this is only a hint
+     */
+    public OffHeapVocabCache(int expectedElements) {
+        Preconditions.checkArgument(expectedElements >= 0, "Expected number of elements must be >= 0, got %s", expectedElements);
+        int n = Math.max(16, expectedElements);
+        labelOffsets = new OffHeapBuffer(8L * n);
+        labelHashes = new OffHeapBuffer(4L * n);
+        storageIds = new OffHeapBuffer(8L * n);
+        frequencies = new OffHeapBuffer(8L * n);
+        sequenceCounts = new OffHeapBuffer(8L * n);
+        huffmanIndexes = new OffHeapBuffer(4L * n);
+        codes = new OffHeapBuffer(8L * n);
+        pointOffsets = new OffHeapBuffer(8L * n);
+        meta = new OffHeapBuffer(4L * n);
+        indexToId = new OffHeapBuffer(4L * n);
+        strings = new OffHeapBuffer(16L * n);
+        points = new OffHeapBuffer(4L * n);
+        tables = new Tables(tableCapacityFor(n));
+    }
+
+    /**
+     * Create a new OffHeapVocabCache with the same content as the specified cache, including Huffman indexes, codes
+     * and points
+     */
+    public static OffHeapVocabCache copyOf(@NonNull VocabCache<VocabWord> source) {
+        OffHeapVocabCache ret = new OffHeapVocabCache(source.numWords());
+        for (VocabWord w : source.vocabWords()) {
+            ret.addToken(w);
+            if (w.getIndex() >= 0)
+                ret.addWordToIndex(w.getIndex(), w.getLabel());
+        }
+        ret.totalWordCount.set(source.totalWordOccurrences());
+        ret.documentsCounter.set(source.totalNumberOfDocs());
+        return ret;
+    }
+
+    /**
+     * Open addressing hash tables (linear probing) from label and from storage id to element id + 1.
+     * Both tables have the same capacity and the same entries
+     */
+    private static class Tables {
+        private final OffHeapBuffer labels;
+        private final OffHeapBuffer storage;
+        private final int mask;
+
+        private Tables(int capacity) {
+            this(new OffHeapBuffer(4L * capacity), new OffHeapBuffer(4L * capacity), capacity);
+        }
+
+        private Tables(OffHeapBuffer labels, OffHeapBuffer storage, int capacity) {
+            this.labels = labels;
+            this.storage = storage;
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+    }
+
+    private static int tableCapacityFor(int elements) {
+        long required = (long) Math.ceil(Math.max(16, elements) / (MAX_LOAD * 0.75));
+        Preconditions.checkState(required <= (1 << 30), "Too many elements for OffHeapVocabCache: %s", elements);
+        int capacity = 16;
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int hashLabel(String label) {
+        return mix(label.hashCode());
+    }
+
+    private static int hashStorageId(long storageId) {
+        return mix((int) (storageId ^ (storageId >>> 32)));
+    }
+
+    /* ------------------------------------------------ Lookup ------------------------------------------------ */
+
+    /**
+     * @return Element id for the specified label, or -1 if it isn't present
+     */
+    protected int find(String label) {
+        if (label == null)
+            return -1;
+        int h = hashLabel(label);
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        Tables t = tables;
+        for (long slot = h & t.mask; ; slot = (slot + 1) & t.mask) {
+            int v = t.labels.getInt(4 * slot);
+            if (v == EMPTY)
+                return -1;
+            if (v != TOMBSTONE && labelHashes.getInt(4L * (v - 1)) == h && labelEquals(v - 1, bytes))
+                return v - 1;
+        }
+    }
+
+    /**
+     * @return Element id for the specified storage id, or -1 if it isn't present
+     */
+    protected int find(long storageId) {
+        Tables t = tables;
+        for (long slot = hashStorageId(storageId) & t.mask; ; slot = (slot + 1) & t.mask) {
+            int v = t.storage.getInt(4 * slot);
+            if (v == EMPTY)
+                return -1;
+            if (v != TOMBSTONE && storageIds.getLong(8L * (v - 1)) == storageId)
+                return v - 1;
+        }
+    }
+
+    private boolean labelEquals(int id, byte[] bytes) {
+        long offset = labelOffsets.getLong(8L * id);
+        if (strings.getInt(offset) != bytes.length)
+            return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (strings.getByte(offset + 4 + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Label of the element with the specified id
+     */
+    protected String label(int id) {
+        long offset = labelOffsets.getLong(8L * id);
+        byte[] bytes = new byte[strings.getInt(offset)];
+        strings.getBytes(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int flags(int id) {
+        return meta.getByte(4L * id + 3) & 0xFF;
+    }
+
+    private boolean isLive(int id) {
+        return (flags(id) & FLAG_REMOVED) == 0;
+    }
+
+    private Element element(int id) {
+        return id < 0 ? null : new Element(this, id, label(id));
+    }
+
+    /* ------------------------------------------------ Modification ------------------------------------------------ */
+
+    private int insert(String label, long storageId) {
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        long recordBytes = (4L + bytes.length + 3) & ~3L;
+        Preconditions.checkArgument(recordBytes <= OffHeapBuffer.CHUNK_SIZE, "Label is too long: %s bytes", bytes.length);
+
+        if (tableUsed + 1 > MAX_LOAD * tables.capacity())
+            rehash(liveCount + 1);
+
+        int id = numIds;
+        Preconditions.checkState(id < Integer.MAX_VALUE - 1, "Too many elements for OffHeapVocabCache");
+        ensureColumnCapacity(id + 1);
+
+        //Labels never cross a chunk boundary
+        long offset = stringBytes;
+        if ((offset & (OffHeapBuffer.CHUNK_SIZE - 1)) + recordBytes > OffHeapBuffer.CHUNK_SIZE)
+            offset = ((offset >>> OffHeapBuffer.CHUNK_SHIFT) + 1) << OffHeapBuffer.CHUNK_SHIFT;
+        strings.ensureCapacity(offset + recordBytes);
+        strings.putInt(offset, bytes.length);
+        strings.putBytes(offset + 4, bytes);
+        stringBytes = offset + recordBytes;
+
+        int h = hashLabel(label);
+        labelOffsets.putLong(8L * id, offset);
+        labelHashes.putInt(4L * id, h);
+        storageIds.putLong(8L * id, storageId);
+        frequencies.putDouble(8L * id, 0.0);
+        sequenceCounts.putLong(8L * id, 0L);
+        huffmanIndexes.putInt(4L * id, -1);
+        codes.putLong(8L * id, 0L);
+        pointOffsets.putLong(8L * id, 0L);
+        meta.putInt(4L * id, 0);
+
+        Tables t = tables;
+        putSlot(t.labels, t.mask, h, id);
+        putSlot(t.storage, t.mask, hashStorageId(storageId), id);
+        tableUsed++;
+        numIds = id + 1;
+        liveCount++;
+        return id;
+    }
+
+    private static void putSlot(OffHeapBuffer table, int mask, int hash, int id) {
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int v = table.getInt(4 * slot);
+            if (v == EMPTY || v == TOMBSTONE) {
+                table.putInt(4 * slot, id + 1);
+                return;
+            }
+        }
+    }
+
+    private static void removeSlot(OffHeapBuffer table, int mask, int hash, int id) {
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int v = table.getInt(4 * slot);
+            if (v == EMPTY)
+                return;
+            if (v == id + 1) {
+                table.putInt(4 * slot, TOMBSTONE);
+                return;
+            }
+        }
+    }
+
+    private void rehash(int elements) {
+        Tables t = new Tables(tableCapacityFor(elements));
+        for (int id = 0; id < numIds; id++) {
+            if (isLive(id)) {
+                putSlot(t.labels, t.mask, labelHashes.getInt(4L * id), id);
+                putSlot(t.storage, t.mask, hashStorageId(storageIds.getLong(8L * id)), id);
+            }
+        }
+        tableUsed = liveCount;
+        tables = t;
+    }
+
+    private void ensureColumnCapacity(int n) {
+        labelOffsets.ensureCapacity(8L * n);
+        labelHashes.ensureCapacity(4L * n);
+        storageIds.ensureCapacity(8L * n);
+        frequencies.ensureCapacity(8L * n);
+        sequenceCounts.ensureCapacity(8L * n);
+        huffmanIndexes.ensureCapacity(4L * n);
+        codes.ensureCapacity(8L * n);
+        pointOffsets.ensureCapacity(8L * n);
+        meta.ensureCapacity(4L * n);
+    }
+
+    private synchronized void setFlag(int id, int flag, boolean value) {
+        int f = flags(id);
+        meta.putByte(4L * id + 3, (byte) (value ? f | flag : f & ~flag));
+    }
+
+    private synchronized void addFrequency(int id, double by) {
+        frequencies.putDouble(8L * id, frequencies.getDouble(8L * id) + by);
+    }
+
+    private synchronized void setFrequency(int id, double value) {
+        frequencies.putDouble(8L * id, value);
+    }
+
+    private synchronized void addSequencesCount(int id, long by) {
+        sequenceCounts.putLong(8L * id, sequenceCounts.getLong(8L * id) + by);
+    }
+
+    private synchronized void setSequencesCount(int id, long value) {
+        sequenceCounts.putLong(8L * id, value);
+    }
+
+    private synchronized void setIndex(int id, int index) {
+        huffmanIndexes.putInt(4L * id, index);
+    }
+
+    private synchronized void setIndexMapping(int index, int id) {
+        if (index >= indexCapacity) {
+            indexToId.ensureCapacity(4L * (index + 1));
+            indexCapacity = index + 1;
+        }
+        indexToId.putInt(4L * index, id + 1);
+    }
+
+    private int codeLength(int id) {
+        return meta.getByte(4L * id) & 0xFF;
+    }
+
+    private int code(int id, int i) {
+        return (int) ((codes.getLong(8L * id) >>> i) & 1);
+    }
+
+    private synchronized void setCode(int id, int i, int value) {
+        Preconditions.checkArgument(value == 0 || value == 1, "Huffman codes must be 0 or 1, got %s", value);
+        long c = codes.getLong(8L * id);
+        codes.putLong(8L * id, value == 0 ? c & ~(1L << i) : c | (1L << i));
+    }
+
+    private synchronized void setCodeLength(int id, int length) {
+        Preconditions.checkArgument(length >= 0 && length <= Long.SIZE, "Code length must be between 0 and %s, got %s",
+                Long.SIZE, length);
+        if (length < codeLength(id))
+            codes.putLong(8L * id, codes.getLong(8L * id) & (length == Long.SIZE ? -1L : (1L << length) - 1));
+        meta.putByte(4L * id, (byte) length);
+    }
+
+    private int pointsLength(int id) {
+        return meta.getByte(4L * id + 1) & 0xFF;
+    }
+
+    private int point(int id, int i) {
+        return points.getInt(4 * (pointOffsets.getLong(8L * id) + i));
+    }
+
+    private synchronized void setPoint(int id, int i, int value) {
+        points.putInt(4 * (pointOffsets.getLong(8L * id) + i), value);
+    }
+
+    /**
+     * Set the number of points of the specified element. New points are set to zero
+     */
+    private synchronized void setPointsLength(int id, int length) {
+        Preconditions.checkArgument(length >= 0 && length <= MAX_POINTS, "Number of points must be between 0 and %s, got %s",
+                MAX_POINTS, length);
+        int current = pointsLength(id);
+        int capacity = meta.getByte(4L * id + 2) & 0xFF;
+        if (length > capacity) {
+            //Points are never freed: a region is only replaced if it is too small
+            int newCapacity = Math.min(MAX_POINTS, Math.max(length, Math.max(4, 2 * capacity)));
+            long offset = pointsUsed;
+            points.ensureCapacity(4 * (offset + newCapacity));
+            for (int i = 0; i < current; i++) {
+                points.putInt(4 * (offset + i), point(id, i));
+            }
+            pointsUsed += newCapacity;
+            pointOffsets.putLong(8L * id, offset);
+            meta.putByte(4L * id + 2, (byte) newCapacity);
+        }
+        for (int i = current; i < length; i++) {
+            setPoint(id, i, 0);
+        }
+        meta.putByte(4L * id + 1, (byte) length);
+    }
+
+    private synchronized void setCodes(int id, List<Byte> values) {
+        setCodeLength(id, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            setCode(id, i, values.get(i));
+        }
+    }
+
+    private synchronized void setPoints(int id, List<Integer> values) {
+        setPointsLength(id, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            setPoint(id, i, values.get(i));
+        }
+    }
+
+    /* ------------------------------------------------ VocabCache ------------------------------------------------ */
+
+    /**
+     * Not supported: use {@link #load(File)} instead
+     */
+    @Override
+    public void loadVocab() {
+        // no-op, see load(File)
+    }
+
+    @Override
+    public boolean vocabExists() {
+        return liveCount > 0;
+    }
+
+    /**
+     * Not supported: use {@link #save(File)} instead
+     */
+    @Override
+    public void saveVocab() {
+        // no-op, see save(File)
+    }
+
+    /**
+     * Returns collection of labels available in this vocabulary. The collection is a view: labels are decoded
+     * when iterated over
+     */
+    @Override
+    public Collection<String> words() {
+        return new AbstractCollection<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<VocabWord> iter = vocabWords().iterator();
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iter.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return iter.next().getLabel();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && containsWord((String) o);
+            }
+
+            @Override
+            public int size() {
+                return liveCount;
+            }
+        };
+    }
+
+    @Override
+    public void incrementWordCount(String word) {
+        incrementWordCount(word, 1);
+    }
+
+    @Override
+    public synchronized void incrementWordCount(String word, int increment) {
+        int id = find(word);
+        if (id >= 0) {
+            addFrequency(id, increment);
+            totalWordCount.addAndGet(increment);
+        }
+    }
+
+    @Override
+    public int wordFrequency(@NonNull String word) {
+        int id = find(word);
+        return id < 0 ? 0 : (int) frequencies.getDouble(8L * id);
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        return find(word) >= 0;
+    }
+
+    /**
+     * @return Element id (stable for the lifetime of this cache, but not across {@link #save(File)}) for the index
+     * in the Huffman tree, or -1 if there is no such element
+     */
+    protected int idForIndex(int index) {
+        if (index < 0 || index >= indexCapacity)
+            return -1;
+        int id = indexToId.getInt(4L * index) - 1;
+        return id >= 0 && isLive(id) ? id : -1;
+    }
+
+    @Override
+    public String wordAtIndex(int index) {
+        int id = idForIndex(index);
+        return id < 0 ? null : label(id);
+    }
+
+    @Override
+    public VocabWord elementAtIndex(int index) {
+        return element(idForIndex(index));
+    }
+
+    /**
+     * Returns Huffman index for specified label
+     *
+     * @param label the label to get index for
+     * @return >=0 if label exists, -1 if Huffman tree wasn't built yet, -2 if specified label wasn't found
+     */
+    @Override
+    public int indexOf(String label) {
+        int id = find(label);
+        return id < 0 ? -2 : huffmanIndexes.getInt(4L * id);
+    }
+
+    /**
+     * Returns a view of all elements in this vocabulary. Elements are created as they are iterated over
+     */
+    @Override
+    public Collection<VocabWord> vocabWords() {
+        return new AbstractCollection<VocabWord>() {
+            @Override
+            public Iterator<VocabWord> iterator() {
+                return new Iterator<VocabWord>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        int n = numIds;
+                        while (from < n && !isLive(from)) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < numIds;
+                    }
+
+                    @Override
+                    public VocabWord next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        Element e = element(next);
+                        next = advance(next + 1);
+                        return e;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return liveCount;
+            }
+        };
+    }
+
+    @Override
+    public long totalWordOccurrences() {
+        return totalWordCount.get();
+    }
+
+    public void setTotalWordOccurences(long value) {
+        totalWordCount.set(value);
+    }
+
+    @Override
+    public VocabWord wordFor(@NonNull String label) {
+        return element(find(label));
+    }
+
+    @Override
+    public VocabWord wordFor(long id) {
+        return element(find(id));
+    }
+
+    /**
+     * This method allows to insert specified label to specified Huffman tree position.
+     * CAUTION: Never use this, unless you 100% sure what are you doing.
+     */
+    @Override
+    public synchronized void addWordToIndex(int index, String label) {
+        if (index >= 0) {
+            int id = find(label);
+            if (id >= 0) {
+                setIndexMapping(index, id);
+                setIndex(id, index);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addWordToIndex(int index, long elementId) {
+        if (index >= 0) {
+            int id = find(elementId);
+            if (id >= 0)
+                setIndexMapping(index, id);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void putVocabWord(String word) {
+        if (!containsWord(word))
+            throw new IllegalStateException("Specified label is not present in vocabulary");
+    }
+
+    @Override
+    public int numWords() {
+        return liveCount;
+    }
+
+    @Override
+    public int docAppearedIn(String word) {
+        int id = find(word);
+        return id < 0 ? -1 : (int) sequenceCounts.getLong(8L * id);
+    }
+
+    @Override
+    public void incrementDocCount(String word, long howMuch) {
+        int id = find(word);
+        if (id >= 0)
+            addSequencesCount(id, howMuch);
+    }
+
+    @Override
+    public void setCountForDoc(String word, long count) {
+        int id = find(word);
+        if (id >= 0)
+            setSequencesCount(id, count);
+    }
+
+    @Override
+    public long totalNumberOfDocs() {
+        return documentsCounter.get();
+    }
+
+    @Override
+    public void incrementTotalDocCount() {
+        documentsCounter.incrementAndGet();
+    }
+
+    @Override
+    public void incrementTotalDocCount(long by) {
+        documentsCounter.addAndGet(by);
+    }
+
+    public void setTotalDocCount(long by) {
+        documentsCounter.set(by);
+    }
+
+    @Override
+    public Collection<VocabWord> tokens() {
+        return vocabWords();
+    }
+
+    /**
+     * Add the specified element to this vocabulary. The element is copied: later changes to it are not reflected
+     * in this cache. If an element with the same storage id already exists, its counters are incremented instead.
+     *
+     * @return True if the element was added, false if it already existed
+     */
+    @Override
+    public synchronized boolean addToken(@NonNull VocabWord element) {
+        Preconditions.checkArgument(element.getLabel() != null, "OffHeapVocabCache can't store elements without label");
+        boolean ret;
+        int id = find(element.getStorageId());
+        if (id < 0) {
+            id = insert(element.getLabel(), element.getStorageId());
+            setFrequency(id, element.getElementFrequency());
+            setSequencesCount(id, element.getSequencesCount());
+            setIndex(id, element.getIndex());
+            setFlag(id, FLAG_SPECIAL, element.isSpecial());
+            setFlag(id, FLAG_LABEL, element.isLabel());
+            if (element.getCodes() != null)
+                setCodes(id, element.getCodes());
+            if (element.getPoints() != null)
+                setPoints(id, element.getPoints());
+            ret = true;
+        } else {
+            addSequencesCount(id, element.getSequencesCount());
+            addFrequency(id, (int) element.getElementFrequency());
+            ret = false;
+        }
+        totalWordCount.addAndGet((long) frequencies.getDouble(8L * id));
+        return ret;
+    }
+
+    @Override
+    public VocabWord tokenFor(String label) {
+        return wordFor(label);
+    }
+
+    @Override
+    public VocabWord tokenFor(long id) {
+        return wordFor(id);
+    }
+
+    @Override
+    public boolean hasToken(String label) {
+        return containsWord(label);
+    }
+
+    @Override
+    public synchronized void importVocabulary(@NonNull VocabCache<VocabWord> vocabCache) {
+        boolean added = false;
+        for (VocabWord element : vocabCache.vocabWords()) {
+            if (addToken(element))
+                added = true;
+        }
+        if (added)
+            documentsCounter.addAndGet(vocabCache.totalNumberOfDocs());
+    }
+
+    @Override
+    public synchronized void updateWordsOccurrences() {
+        long total = 0;
+        for (int id = 0; id < numIds; id++) {
+            long value = (long) frequencies.getDouble(8L * id);
+            if (isLive(id) && value > 0)
+                total += value;
+        }
+        totalWordCount.set(total);
+        log.info("Updated counter: [" + total + "]");
+    }
+
+    @Override
+    public synchronized void removeElement(String label) {
+        int id = find(label);
+        if (id < 0)
+            throw new IllegalStateException("Can't get label: '" + label + "'");
+
+        totalWordCount.getAndAdd(-(long) frequencies.getDouble(8L * id));
+        int index = huffmanIndexes.getInt(4L * id);
+        if (idForIndex(index) == id)
+            indexToId.putInt(4L * index, 0);
+        Tables t = tables;
+        removeSlot(t.labels, t.mask, labelHashes.getInt(4L * id), id);
+        removeSlot(t.storage, t.mask, hashStorageId(storageIds.getLong(8L * id)), id);
+        setFlag(id, FLAG_REMOVED, true);
+        liveCount--;
+    }
+
+    @Override
+    public void removeElement(VocabWord element) {
+        removeElement(element.getLabel());
+    }
+
+    /* ------------------------------------------------ Huffman ------------------------------------------------ */
+
+    /**
+     * Build the Huffman tree for all elements in this vocabulary, and assign Huffman indexes, codes and points.<br>
+     * The result is the same as {@link org.deeplearning4j.models.word2vec.Huffman#build()} followed by
+     * {@link org.deeplearning4j.models.word2vec.Huffman#applyIndexes(VocabCache)}, but works on primitive arrays
+     * instead of materializing every element: temporary heap usage is about 40 bytes per element.
+     */
+    public synchronized void buildHuffmanTree() {
+        int n = liveCount;
+        if (n == 0)
+            return;
+
+        //Element ids, sorted by descending frequency. Stable, like Huffman
+        int[] order = new int[n];
+        double[] freq = new double[numIds];
+        for (int id = 0, a = 0; id < numIds; id++) {
+            if (isLive(id)) {
+                order[a++] = id;
+                freq[id] = frequencies.getDouble(8L * id);
+            }
+        }
+        sortByFrequency(order, freq);
+        freq = null;
+
+        long[] count = new long[n * 2 + 1];
+        byte[] binary = new byte[n * 2 + 1];
+        int[] parentNode = new int[n * 2 + 1];
+        byte[] code = new byte[MAX_CODE_LENGTH];
+        int[] point = new int[MAX_CODE_LENGTH];
+
+        for (int a = 0; a < n; a++) {
+            count[a] = (long) frequencies.getDouble(8L * order[a]);
+        }
+        for (int a = n; a < n * 2; a++) {
+            count[a] = Integer.MAX_VALUE;
+        }
+
+        int pos1 = n - 1;
+        int pos2 = n;
+        int min1i;
+        int min2i;
+        for (int a = 0; a < n - 1; a++) {
+            if (pos1 >= 0 && count[pos1] < count[pos2]) {
+                min1i = pos1--;
+            } else {
+                min1i = pos2++;
+            }
+            if (pos1 >= 0 && count[pos1] < count[pos2]) {
+                min2i = pos1--;
+            } else {
+                min2i = pos2++;
+            }
+            count[n + a] = count[min1i] + count[min2i];
+            parentNode[min1i] = n + a;
+            parentNode[min2i] = n + a;
+            binary[min2i] = 1;
+        }
+
+        for (int i = 0; i < indexCapacity; i++) {
+            indexToId.putInt(4L * i, 0);
+        }
+
+        for (int a = 0; a < n; a++) {
+            int b = a;
+            int i = 0;
+            do {
+                code[i] = binary[b];
+                point[i] = b;
+                i++;
+                b = parentNode[b];
+            } while (b != n * 2 - 2 && i < MAX_CODE_LENGTH - 1);
+
+            int id = order[a];
+            setCodeLength(id, i);
+            long bits = 0;
+            for (b = 0; b < i; b++) {
+                if (code[b] != 0)
+                    bits |= 1L << (i - b - 1);
+            }
+            codes.putLong(8L * id, bits);
+
+            //Same layout as Huffman: point 0 is unused
+            setPointsLength(id, i + 1);
+            setPoint(id, 0, 0);
+            for (b = 0; b < i; b++) {
+                setPoint(id, i - b, point[b] - n);
+            }
+
+            setIndexMapping(a, id);
+            setIndex(id, a);
+        }
+    }
+
+    /**
+     * Stable bottom-up merge sort of element ids by descending frequency
+     */
+    private static void sortByFrequency(int[] ids, double[] freq) {
+        int n = ids.length;
+        int[] src = ids;
+        int[] dst = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (i < mid && (j >= hi || freq[src[i]] >= freq[src[j]])) {
+                        dst[k] = src[i++];
+                    } else {
+                        dst[k] = src[j++];
+                    }
+                }
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (src != ids)
+            System.arraycopy(src, 0, ids, 0, n);
+    }
+
+    /* ------------------------------------------------ Persistence ------------------------------------------------ */
+
+    private OffHeapBuffer[] sections() {
+        Tables t = tables;
+        return new OffHeapBuffer[]{labelOffsets, labelHashes, storageIds, frequencies, sequenceCounts, huffmanIndexes,
+                codes, pointOffsets, meta, indexToId, t.labels, t.storage, strings, points};
+    }
+
+    private static long[] sectionLengths(int numIds, int indexCapacity, int tableCapacity, long stringBytes, long pointsUsed) {
+        long n = numIds;
+        return new long[]{8 * n, 4 * n, 8 * n, 8 * n, 8 * n, 4 * n, 8 * n, 8 * n, 4 * n, 4L * indexCapacity,
+                4L * tableCapacity, 4L * tableCapacity, stringBytes, 4 * pointsUsed};
+    }
+
+    private static long align8(long value) {
+        return (value + 7) & ~7L;
+    }
+
+    private void setSections(OffHeapBuffer[] s, int tableCapacity) {
+        labelOffsets = s[0];
+        labelHashes = s[1];
+        storageIds = s[2];
+        frequencies = s[3];
+        sequenceCounts = s[4];
+        huffmanIndexes = s[5];
+        codes = s[6];
+        pointOffsets = s[7];
+        meta = s[8];
+        indexToId = s[9];
+        tables = new Tables(s[10], s[11], tableCapacity);
+        strings = s[12];
+        points = s[13];
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(VERSION).putInt(numIds).putInt(liveCount).putInt(indexCapacity)
+                .putInt(tables.capacity()).putInt(tableUsed).putLong(stringBytes).putLong(pointsUsed)
+                .putLong(totalWordCount.get()).putLong(documentsCounter.get());
+        header.position(0);
+        return header;
+    }
+
+    private long[] readHeader(ByteBuffer header) {
+        Preconditions.checkState(header.getLong() == MAGIC, "Not an OffHeapVocabCache file");
+        int version = header.getInt();
+        Preconditions.checkState(version == VERSION, "Unsupported OffHeapVocabCache format version: %s", version);
+        numIds = header.getInt();
+        liveCount = header.getInt();
+        indexCapacity = header.getInt();
+        int tableCapacity = header.getInt();
+        tableUsed = header.getInt();
+        stringBytes = header.getLong();
+        pointsUsed = header.getLong();
+        totalWordCount.set(header.getLong());
+        documentsCounter.set(header.getLong());
+        return sectionLengths(numIds, indexCapacity, tableCapacity, stringBytes, pointsUsed);
+    }
+
+    private void write(WritableByteChannel channel) throws IOException {
+        ByteBuffer header = header();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        OffHeapBuffer[] s = sections();
+        long[] lengths = sectionLengths(numIds, indexCapacity, tables.capacity(), stringBytes, pointsUsed);
+        for (int i = 0; i < NUM_SECTIONS; i++) {
+            s[i].writeTo(channel, lengths[i]);
+            ByteBuffer padding = ByteBuffer.allocate((int) (align8(lengths[i]) - lengths[i]));
+            while (padding.hasRemaining()) {
+                channel.write(padding);
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (b.hasRemaining()) {
+            if (channel.read(b) < 0)
+                throw new IOException("Unexpected end of OffHeapVocabCache data");
+        }
+        b.position(0);
+        return b;
+    }
+
+    /**
+     * Save this vocabulary to the specified file, in a format that can be memory-mapped by {@link #load(File)}
+     */
+    public synchronized void save(@NonNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel);
+        }
+    }
+
+    /**
+     * Memory-map a vocabulary saved with {@link #save(File)}. Loading doesn't read or copy the content of the file:
+     * pages are loaded by the operating system as they are accessed.<br>
+     * If the file is writable, the loaded cache can be modified, but modifications are never written back to the
+     * file. Otherwise, the loaded cache is read-only.
+     *
+     * @param file File to load
+     * @return The loaded vocabulary
+     */
+    public static OffHeapVocabCache load(@NonNull File file) throws IOException {
+        boolean writable = file.canWrite();
+        OffHeapVocabCache ret = new OffHeapVocabCache(0);
+        try (FileChannel channel = writable ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] lengths = ret.readHeader(readFully(channel, HEADER_BYTES));
+            OffHeapBuffer[] s = new OffHeapBuffer[NUM_SECTIONS];
+            long position = HEADER_BYTES;
+            for (int i = 0; i < NUM_SECTIONS; i++) {
+                s[i] = OffHeapBuffer.map(channel, position, lengths[i], writable);
+                position += align8(lengths[i]);
+            }
+            Preconditions.checkState(position <= channel.size(), "OffHeapVocabCache file is truncated: %s", file);
+            ret.setSections(s, (int) (lengths[10] / 4));
+        }
+        return ret;
+    }
+
+    /**
+     * @return True if the specified file was created by {@link #save(File)}
+     */
+    public static boolean isOffHeapVocabCacheFile(@NonNull File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_BYTES)
+            return false;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readFully(channel, 8).getLong() == MAGIC;
+        }
+    }
+
+    /**
+     * @return True if this cache is a read-only memory mapping of a file, and can't be modified
+     */
+    public boolean isReadOnly() {
+        return labelOffsets.isReadOnly();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        synchronized (this) {
+            out.defaultWriteObject();
+            WritableByteChannel channel = Channels.newChannel(out);
+            write(channel);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        ReadableByteChannel channel = Channels.newChannel(in);
+        long[] lengths = readHeader(readFully(channel, HEADER_BYTES));
+        OffHeapBuffer[] s = new OffHeapBuffer[NUM_SECTIONS];
+        for (int i = 0; i < NUM_SECTIONS; i++) {
+            s[i] = OffHeapBuffer.read(channel, lengths[i]);
+            readFully(channel, (int) (align8(lengths[i]) - lengths[i]));
+        }
+        setSections(s, (int) (lengths[10] / 4));
+    }
+
+    /**
+     * A {@link VocabWord} view of one element of an {@link OffHeapVocabCache}. All properties except for the label are
+     * read from, and written to, the cache.<br>
+     * When serialized (to JSON or with Java serialization), a detached copy is serialized instead.
+     */
+    public static class Element extends VocabWord {
+
+        private static final long serialVersionUID = -3197446208447352013L;
+
+        private final transient OffHeapVocabCache cache;
+        private final transient int id;
+
+        protected Element(OffHeapVocabCache cache, int id, String label) {
+            this.cache = cache;
+            this.id = id;
+            super.setWord(label);
+        }
+
+        /**
+         * @return A regular VocabWord with the same content as this element, not backed by the cache
+         */
+        public VocabWord detach() {
+            VocabWord ret = new VocabWord(getElementFrequency(), getLabel(), getStorageId());
+            ret.setSequencesCount(getSequencesCount());
+            ret.setIndex(getIndex());
+            ret.setSpecial(isSpecial());
+            ret.markAsLabel(isLabel());
+            ret.setCodes(new ArrayList<>(getCodes()));
+            ret.setPoints(new ArrayList<>(getPoints()));
+            ret.setCodeLength((short) getCodeLength());
+            return ret;
+        }
+
+        @Override
+        public double getElementFrequency() {
+            return cache.frequencies.getDouble(8L * id);
+        }
+
+        @Override
+        public void setElementFrequency(long value) {
+            cache.setFrequency(id, value);
+        }
+
+        @Override
+        public void incrementElementFrequency() {
+            increaseElementFrequency(1);
+        }
+
+        @Override
+        public void increaseElementFrequency(int by) {
+            cache.addFrequency(id, by);
+        }
+
+        @Override
+        public long getSequencesCount() {
+            return cache.sequenceCounts.getLong(8L * id);
+        }
+
+        @Override
+        public void setSequencesCount(long count) {
+            cache.setSequencesCount(id, count);
+        }
+
+        @Override
+        public void incrementSequencesCount() {
+            incrementSequencesCount(1);
+        }
+
+        @Override
+        public void incrementSequencesCount(long count) {
+            cache.addSequencesCount(id, count);
+        }
+
+        @Override
+        public int getIndex() {
+            return cache.huffmanIndexes.getInt(4L * id);
+        }
+
+        @Override
+        public void setIndex(int index) {
+            cache.setIndex(id, index);
+        }
+
+        @Override
+        public List<Byte> getCodes() {
+            return new AbstractList<Byte>() {
+                @Override
+                public Byte get(int i) {
+                    checkIndex(i, size());
+                    return (byte) cache.code(id, i);
+                }
+
+                @Override
+                public Byte set(int i, Byte value) {
+                    Byte old = get(i);
+                    cache.setCode(id, i, value);
+                    return old;
+                }
+
+                @Override
+                public void add(int i, Byte value) {
+                    Preconditions.checkArgument(i == size(), "Codes can only be appended");
+                    cache.setCodeLength(id, i + 1);
+                    cache.setCode(id, i, value);
+                }
+
+                @Override
+                public int size() {
+                    return cache.codeLength(id);
+                }
+            };
+        }
+
+        @Override
+        public void setCodes(List<Byte> codes) {
+            cache.setCodes(id, codes);
+        }
+
+        @Override
+        public List<Integer> getPoints() {
+            return new AbstractList<Integer>() {
+                @Override
+                public Integer get(int i) {
+                    checkIndex(i, size());
+                    return cache.point(id, i);
+                }
+
+                @Override
+                public Integer set(int i, Integer value) {
+                    Integer old = get(i);
+                    cache.setPoint(id, i, value);
+                    return old;
+                }
+
+                @Override
+                public void add(int i, Integer value) {
+                    Preconditions.checkArgument(i == size(), "Points can only be appended");
+                    cache.setPointsLength(id, i + 1);
+                    cache.setPoint(id, i, value);
+                }
+
+                @Override
+                public int size() {
+                    return cache.pointsLength(id);
+                }
+            };
+        }
+
+        @Override
+        public void setPoints(List<Integer> points) {
+            cache.setPoints(id, points);
+        }
+
+        @Override
+        public void setPoints(int[] points) {
+            cache.setPointsLength(id, points.length);
+            for (int i = 0; i < points.length; i++) {
+                cache.setPoint(id, i, points[i]);
+            }
+        }
+
+        @Override
+        public int getCodeLength() {
+            return cache.codeLength(id);
+        }
+
+        @Override
+        public void setCodeLength(short codeLength) {
+            //Same as SequenceElement: codes and points are padded up to the code length
+            synchronized (cache) {
+                if (cache.codeLength(id) != codeLength)
+                    cache.setCodeLength(id, codeLength);
+                if (cache.pointsLength(id) < codeLength)
+                    cache.setPointsLength(id, codeLength);
+            }
+        }
+
+        @Override
+        public Long getStorageId() {
+            return cache.storageIds.getLong(8L * id);
+        }
+
+        @Override
+        public boolean isSpecial() {
+            return (cache.flags(id) & FLAG_SPECIAL) != 0;
+        }
+
+        @Override
+        public void setSpecial(boolean special) {
+            cache.setFlag(id, FLAG_SPECIAL, special);
+        }
+
+        @Override
+        public boolean isLabel() {
+            return (cache.flags(id) & FLAG_LABEL) != 0;
+        }
+
+        @Override
+        public void markAsLabel(boolean isLabel) {
+            cache.setFlag(id, FLAG_LABEL, isLabel);
+        }
+
+        @Override
+        public boolean isInit() {
+            return (cache.flags(id) & FLAG_INIT) != 0;
+        }
+
+        @Override
+        public void setInit(boolean init) {
+            cache.setFlag(id, FLAG_INIT, init);
+        }
+
+        @Override
+        public boolean isLocked() {
+            return (cache.flags(id) & FLAG_LOCKED) != 0;
+        }
+
+        @Override
+        public void setLocked(boolean locked) {
+            cache.setFlag(id, FLAG_LOCKED, locked);
+        }
+
+        @Override
+        public void setWord(String word) {
+            Preconditions.checkState(cache == null, "Labels of OffHeapVocabCache elements can't be changed");
+            super.setWord(word);
+        }
+
+        @Override
+        public int compareTo(SequenceElement o) {
+            return Double.compare(getElementFrequency(), o.getElementFrequency());
+        }
+
+        @Override
+        public String toJSON() {
+            return detach().toJSON();
+        }
+
+        @Override
+        public String toString() {
+            return "VocabWord{" + "wordFrequency=" + getElementFrequency() + ", index=" + getIndex() + ", word='"
+                    + getWord() + '\'' + ", codeLength=" + getCodeLength() + '}';
+        }
+
+        protected Object writeReplace() throws ObjectStreamException {
+            return detach();
+        }
+
+        private static void checkIndex(int i, int size) {
+            if (i < 0 || i >= size)
+                throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+        }
+    }
+}
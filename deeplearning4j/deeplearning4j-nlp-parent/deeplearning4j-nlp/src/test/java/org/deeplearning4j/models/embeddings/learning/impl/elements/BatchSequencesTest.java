@@ -0,0 +1,100 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.embeddings.learning.impl.elements;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchSequencesTest extends BaseDL4JTest {
+
+    private static VocabWord word(String label, int index) {
+        VocabWord w = new VocabWord(1.0, label);
+        w.setIndex(index);
+        w.setCodes(Arrays.asList((byte) 1, (byte) 0, (byte) 1));
+        w.setPoints(new int[] {0, 1, 2});
+        w.setCodeLength((short) 3);
+        return w;
+    }
+
+    @Test
+    public void testSkipGramRows() {
+        BatchSequences<VocabWord> batch = new BatchSequences<>(4);
+        VocabWord a = word("a", 0);
+        VocabWord b = word("b", 1);
+        VocabWord unk = word("UNK", 2);
+
+        for (int i = 0; i < 10; i++) {
+            batch.put(a, b, i, 0.025);
+        }
+        //Rows that can't be trained are dropped
+        batch.put(a, a, 0, 0.025);
+        batch.put(a, unk, 0, 0.025);
+
+        assertEquals(10, batch.size());
+        assertEquals(3, batch.chunks());
+        List<BatchItem<VocabWord>> last = batch.get(2);
+        assertEquals(2, last.size());
+        assertSame(a, last.get(0).getWord());
+        assertSame(b, last.get(0).getLastWord());
+        assertEquals(8, last.get(0).getRandomValue());
+        assertEquals(3, batch.maxCodeLength(0, 10));
+        assertEquals(0, batch.wordIndexes[9]);
+        assertEquals(1, batch.lastWordIndexes[9]);
+
+        batch.clear();
+        assertEquals(0, batch.size());
+        assertEquals(0, batch.chunks());
+    }
+
+    @Test
+    public void testCbowRows() {
+        BatchSequences<VocabWord> batch = new BatchSequences<>(100);
+        VocabWord a = word("a", 0);
+        for (int i = 0; i < 50; i++) {
+            int[] window = new int[i % 5 + 1];
+            boolean[] statuses = new boolean[window.length];
+            for (int j = 0; j < window.length; j++) {
+                window[j] = i + j;
+                statuses[j] = j % 2 == 0;
+            }
+            batch.put(a, window, statuses, i, 0.01, i % 2);
+        }
+
+        assertEquals(50, batch.size());
+        assertEquals(1, batch.chunks());
+        assertEquals(5, batch.maxWindowLength(0, 50));
+
+        List<BatchItem<VocabWord>> items = batch.get(0);
+        assertEquals(50, items.size());
+        BatchItem<VocabWord> item = items.get(13);
+        assertArrayEquals(new int[] {13, 14, 15, 16}, item.getWindowWords());
+        assertArrayEquals(new boolean[] {true, false, true, false}, item.getWordStatuses());
+        assertEquals(1, item.getNumLabel());
+        assertEquals(13, item.getRandomValue());
+    }
+}
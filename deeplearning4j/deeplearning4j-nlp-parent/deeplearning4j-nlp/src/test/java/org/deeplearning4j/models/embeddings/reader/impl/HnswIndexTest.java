@@ -0,0 +1,160 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HnswIndexTest extends BaseDL4JTest {
+
+    private static float[][] randomVectors(int n, int dim, long seed) {
+        Random r = new Random(seed);
+        float[][] ret = new float[n][dim];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < dim; j++) {
+                ret[i][j] = (float) r.nextGaussian();
+            }
+        }
+        return ret;
+    }
+
+    private static Set<Integer> bruteForce(float[][] vectors, float[] query, int k) {
+        final double[] sims = new double[vectors.length];
+        double qNorm = 0;
+        for (float f : query)
+            qNorm += f * f;
+        for (int i = 0; i < vectors.length; i++) {
+            double dot = 0, norm = 0;
+            for (int j = 0; j < query.length; j++) {
+                dot += vectors[i][j] * query[j];
+                norm += vectors[i][j] * vectors[i][j];
+            }
+            sims[i] = dot / Math.sqrt(norm * qNorm);
+        }
+        Integer[] idx = new Integer[vectors.length];
+        for (int i = 0; i < idx.length; i++)
+            idx[i] = i;
+        java.util.Arrays.sort(idx, (a, b) -> Double.compare(sims[b], sims[a]));
+        Set<Integer> ret = new HashSet<>();
+        for (int i = 0; i < k; i++)
+            ret.add(idx[i]);
+        return ret;
+    }
+
+    private static double recall(HnswIndex index, float[][] vectors, float[][] queries, int k) {
+        int found = 0;
+        for (float[] q : queries) {
+            Set<Integer> expected = bruteForce(vectors, q, k);
+            for (HnswIndex.Neighbor n : index.search(q, k)) {
+                if (expected.contains(n.getLabel()))
+                    found++;
+            }
+        }
+        return found / (double) (queries.length * k);
+    }
+
+    @Test
+    public void testRecall() {
+        int dim = 32;
+        float[][] vectors = randomVectors(5000, dim, 12345);
+        float[][] queries = randomVectors(100, dim, 54321);
+
+        HnswIndex index = new HnswIndex(dim, 16, 200, 100, 12345);
+        for (int i = 0; i < vectors.length; i++) {
+            index.add(i, vectors[i]);
+        }
+        assertEquals(vectors.length, index.size());
+
+        double recall = recall(index, vectors, queries, 10);
+        assertTrue(recall >= 0.9, "Recall@10: " + recall);
+
+        //Exact match of an indexed vector should be the top result
+        List<HnswIndex.Neighbor> top = index.search(vectors[42], 1);
+        assertEquals(42, top.get(0).getLabel());
+        assertEquals(1.0, top.get(0).getSimilarity(), 1e-4);
+
+        //Results are sorted by decreasing similarity
+        List<HnswIndex.Neighbor> results = index.search(queries[0], 10);
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).getSimilarity() >= results.get(i).getSimilarity());
+        }
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final int dim = 16;
+        final float[][] vectors = randomVectors(4000, dim, 123);
+        final HnswIndex index = new HnswIndex(dim, 12, 100, 64, 123);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = thread; i < vectors.length; i += threads.length) {
+                    index.add(i, vectors[i]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(vectors.length, index.size());
+        double recall = recall(index, vectors, randomVectors(50, dim, 321), 10);
+        assertTrue(recall >= 0.9, "Recall@10: " + recall);
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        int dim = 8;
+        float[][] vectors = randomVectors(1000, dim, 1);
+        HnswIndex index = new HnswIndex(dim, 8, 50, 32, 1);
+        for (int i = 0; i < vectors.length; i++) {
+            index.add(i + 10, vectors[i]);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        index.save(baos);
+        HnswIndex restored = HnswIndex.load(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(index.size(), restored.size());
+        assertEquals(index.getDimension(), restored.getDimension());
+        assertEquals(index.getM(), restored.getM());
+
+        float[][] queries = randomVectors(20, dim, 2);
+        for (float[] q : queries) {
+            assertEquals(index.search(q, 5), restored.search(q, 5));
+        }
+
+        //Incremental inserts after loading
+        float[] extra = randomVectors(1, dim, 3)[0];
+        restored.add(5000, extra);
+        assertEquals(5000, restored.search(extra, 1).get(0).getLabel());
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapVocabCacheTest extends BaseDL4JTest {
+
+    @Test
+    public void testBasicOperations() {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+
+        assertTrue(cache.addToken(new VocabWord(1.0, "word")));
+        assertTrue(cache.addToken(new VocabWord(2.0, "test")));
+        assertTrue(cache.addToken(new VocabWord(3.0, "tester")));
+        assertFalse(cache.addToken(new VocabWord(2.0, "word")));
+
+        assertEquals(3, cache.numWords());
+        assertEquals(3, cache.wordFrequency("word"));
+        assertEquals(0, cache.wordFrequency("missing"));
+        assertTrue(cache.containsWord("tester"));
+        assertFalse(cache.containsWord("teste"));
+        assertEquals(-2, cache.indexOf("missing"));
+        assertEquals(-1, cache.indexOf("word"));
+
+        cache.incrementWordCount("test", 5);
+        assertEquals(7, cache.wordFrequency("test"));
+
+        VocabWord w = cache.wordFor("tester");
+        assertEquals(new VocabWord(1.0, "tester"), w);
+        assertEquals(w, cache.wordFor(w.getStorageId()));
+        w.increaseElementFrequency(2);
+        w.setSpecial(true);
+        assertEquals(5, cache.wordFrequency("tester"));
+        assertTrue(cache.wordFor("tester").isSpecial());
+
+        cache.addWordToIndex(0, "tester");
+        assertEquals(0, cache.indexOf("tester"));
+        assertEquals("tester", cache.wordAtIndex(0));
+        assertEquals("tester", cache.elementAtIndex(0).getLabel());
+
+        Collection<String> words = cache.words();
+        assertEquals(3, words.size());
+        assertTrue(words.contains("word"));
+        assertTrue(words.contains("test"));
+        assertTrue(words.contains("tester"));
+    }
+
+    @Test
+    public void testRemovalAndGrowth() {
+        OffHeapVocabCache cache = new OffHeapVocabCache(16);
+        int n = 20000;
+        for (int i = 0; i < n; i++) {
+            cache.addToken(new VocabWord(i + 1, "word_" + i));
+        }
+        assertEquals(n, cache.numWords());
+
+        for (int i = 0; i < n; i += 2) {
+            cache.removeElement("word_" + i);
+        }
+        assertEquals(n / 2, cache.numWords());
+        assertEquals(n / 2, cache.vocabWords().size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 2 != 0, cache.containsWord("word_" + i));
+        }
+        assertThrows(IllegalStateException.class, () -> cache.removeElement("word_0"));
+
+        //Re-adding a removed element
+        cache.addToken(new VocabWord(1.0, "word_0"));
+        assertTrue(cache.containsWord("word_0"));
+        assertEquals(1, cache.wordFrequency("word_0"));
+        assertEquals(n / 2 + 1, cache.numWords());
+    }
+
+    @Test
+    public void testHuffmanMatchesAbstractCache() {
+        AbstractCache<VocabWord> expCache = new AbstractCache.Builder<VocabWord>().build();
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+        for (int i = 0; i < 500; i++) {
+            String label = "w" + i + "_é";
+            expCache.addToken(new VocabWord(1 + (i * 37) % 1000 + i * 1000, label));
+            cache.addToken(new VocabWord(1 + (i * 37) % 1000 + i * 1000, label));
+        }
+
+        Huffman huffman = new Huffman(expCache.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(expCache);
+        cache.buildHuffmanTree();
+
+        assertEquals(expCache.numWords(), cache.numWords());
+        for (VocabWord exp : expCache.vocabWords()) {
+            VocabWord act = cache.wordFor(exp.getLabel());
+            assertEquals(exp.getIndex(), act.getIndex());
+            assertEquals(exp.getCodeLength(), act.getCodeLength());
+            assertEquals(exp.getCodes(), act.getCodes());
+            assertEquals(exp.getPoints(), act.getPoints());
+            assertEquals(exp.getLabel(), cache.wordAtIndex(exp.getIndex()));
+        }
+
+        //Generic Huffman on the off-heap cache: writes through the elements
+        OffHeapVocabCache cache2 = new OffHeapVocabCache();
+        for (VocabWord exp : expCache.vocabWords()) {
+            cache2.addToken(new VocabWord(exp.getElementFrequency(), exp.getLabel()));
+        }
+        Huffman huffman2 = new Huffman(cache2.vocabWords());
+        huffman2.build();
+        huffman2.applyIndexes(cache2);
+        for (VocabWord exp : expCache.vocabWords()) {
+            VocabWord act = cache2.wordFor(exp.getLabel());
+            assertEquals(exp.getIndex(), act.getIndex());
+            assertEquals(exp.getCodes(), act.getCodes());
+            assertEquals(exp.getPoints(), act.getPoints());
+        }
+    }
+
+    @Test
+    public void testMappedPersistence(@TempDir Path testDir) throws Exception {
+        AbstractCache<VocabWord> source = new AbstractCache.Builder<VocabWord>().build();
+        for (int i = 0; i < 1000; i++) {
+            VocabWord w = new VocabWord(i + 1, "token" + i);
+            w.setSequencesCount(i % 7);
+            source.addToken(w);
+        }
+        source.setTotalDocCount(42);
+        Huffman huffman = new Huffman(source.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(source);
+
+        File f = testDir.resolve("vocab.bin").toFile();
+        WordVectorSerializer.writeOffHeapVocabCache(source, f);
+        VocabCache<VocabWord> restored = WordVectorSerializer.readVocabCache(f);
+        assertTrue(restored instanceof OffHeapVocabCache);
+
+        assertEquals(source.numWords(), restored.numWords());
+        assertEquals(source.totalWordOccurrences(), restored.totalWordOccurrences());
+        assertEquals(42, restored.totalNumberOfDocs());
+        for (VocabWord exp : source.vocabWords()) {
+            VocabWord act = restored.wordFor(exp.getLabel());
+            assertEquals(exp.getIndex(), act.getIndex());
+            assertEquals(exp.getElementFrequency(), act.getElementFrequency(), 0.0);
+            assertEquals(exp.getSequencesCount(), act.getSequencesCount());
+            assertEquals(exp.getCodes(), act.getCodes());
+            assertEquals(exp.getPoints(), act.getPoints());
+            assertEquals(exp.getLabel(), restored.wordAtIndex(exp.getIndex()));
+        }
+
+        //Loaded cache can still be modified
+        OffHeapVocabCache mapped = (OffHeapVocabCache) restored;
+        assertFalse(mapped.isReadOnly());
+        mapped.addToken(new VocabWord(5.0, "newToken"));
+        mapped.removeElement("token0");
+        assertTrue(mapped.containsWord("newToken"));
+        assertFalse(mapped.containsWord("token0"));
+        assertEquals(source.numWords(), mapped.numWords());
+    }
+
+    @Test
+    public void testJavaSerialization() {
+        OffHeapVocabCache cache = new OffHeapVocabCache();
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+        cache.buildHuffmanTree();
+
+        OffHeapVocabCache restored = SerializationUtils.clone(cache);
+        assertEquals(3, restored.numWords());
+        assertEquals(cache.totalWordOccurrences(), restored.totalWordOccurrences());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(cache.wordAtIndex(i), restored.wordAtIndex(i));
+            assertEquals(cache.elementAtIndex(i).getCodes(), restored.elementAtIndex(i).getCodes());
+        }
+
+        //Elements are serialized as regular VocabWords
+        VocabWord w = SerializationUtils.clone(cache.wordFor("test"));
+        assertEquals(VocabWord.class, w.getClass());
+        assertEquals(2.0, w.getElementFrequency(), 0.0);
+        assertEquals(cache.wordFor("test").getPoints(), w.getPoints());
+    }
+}
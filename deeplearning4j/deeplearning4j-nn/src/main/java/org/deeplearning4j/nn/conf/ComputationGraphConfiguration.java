@@ -93,6 +93,12 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     protected BackpropType backpropType = BackpropType.Standard;
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
+    //Gradient accumulation: see GraphBuilder.microBatchSize(int) and GraphBuilder.gradientAccumulationSteps(int)
+    protected int microBatchSize = 0;
+    protected int gradientAccumulationSteps = 1;
+    //Activation checkpointing: see GraphBuilder.activationCheckpointing(boolean) and GraphBuilder.activationCheckpoints(String...)
+    protected boolean activationCheckpointing = false;
+    protected String[] activationCheckpoints;
 
     protected NeuralNetConfiguration defaultConfiguration;
 
@@ -327,6 +333,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.backpropType = backpropType;
         conf.tbpttFwdLength = tbpttFwdLength;
         conf.tbpttBackLength = tbpttBackLength;
+        conf.microBatchSize = microBatchSize;
+        conf.gradientAccumulationSteps = gradientAccumulationSteps;
+        conf.activationCheckpointing = activationCheckpointing;
+        conf.activationCheckpoints = (activationCheckpoints == null ? null : activationCheckpoints.clone());
         conf.defaultConfiguration = defaultConfiguration.clone();
         conf.trainingWorkspaceMode = trainingWorkspaceMode;
         conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
@@ -724,6 +734,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected BackpropType backpropType = BackpropType.Standard;
         protected int tbpttFwdLength = DEFAULT_TBPTT_LENGTH;
         protected int tbpttBackLength = DEFAULT_TBPTT_LENGTH;
+        protected int microBatchSize = 0;
+        protected int gradientAccumulationSteps = 1;
+        protected boolean activationCheckpointing = false;
+        protected String[] activationCheckpoints;
 
         protected Map<String, InputPreProcessor> inputPreProcessors = new LinkedHashMap<>();
 
@@ -752,6 +766,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             this.backpropType = clonedConf.getBackpropType();
             this.tbpttFwdLength = clonedConf.getTbpttFwdLength();
             this.tbpttBackLength = clonedConf.getTbpttBackLength();
+            this.microBatchSize = clonedConf.getMicroBatchSize();
+            this.gradientAccumulationSteps = clonedConf.getGradientAccumulationSteps();
+            this.activationCheckpointing = clonedConf.isActivationCheckpointing();
+            this.activationCheckpoints = clonedConf.getActivationCheckpoints();
             this.globalConfiguration = globalConfiguration;
             //this.getGlobalConfiguration().setSeed(clonedConf.getDefaultConfiguration().getSeed());
         }
@@ -811,6 +829,75 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Maximum number of examples to forward and backpropagate at once during fitting. Larger minibatches are split
+         * into micro-batches of (at most) this size, and the gradients of all micro-batches are summed before the
+         * updater is applied once for the whole minibatch. This limits the activation memory required for training to
+         * that of one micro-batch, without changing the effective minibatch size.<br>
+         * Note that layers that normalize over the minibatch (BatchNormalization) see one micro-batch at a time.<br>
+         * Not supported with truncated BPTT. Default: 0 (disabled)
+         *
+         * @param microBatchSize Maximum micro-batch size, or 0 to disable splitting of minibatches
+         */
+        public GraphBuilder microBatchSize(int microBatchSize) {
+            Preconditions.checkArgument(microBatchSize >= 0, "Micro-batch size must be >= 0, got %s", microBatchSize);
+            this.microBatchSize = microBatchSize;
+            return this;
+        }
+
+        /**
+         * Number of minibatches to accumulate gradients over before applying the updater once. With N steps, the
+         * parameters are updated every N calls of fit(DataSet) or fit(MultiDataSet) (or every N minibatches from an
+         * iterator), as if one minibatch of all N minibatches combined had been used. The iteration count (and hence
+         * learning rate schedules) only advances when the parameters are updated.<br>
+         * Not supported with truncated BPTT. Default: 1 (update after every minibatch)
+         *
+         * @param gradientAccumulationSteps Number of minibatches per parameter update
+         */
+        public GraphBuilder gradientAccumulationSteps(int gradientAccumulationSteps) {
+            Preconditions.checkArgument(gradientAccumulationSteps >= 1, "Gradient accumulation steps must be >= 1, got %s",
+                    gradientAccumulationSteps);
+            this.gradientAccumulationSteps = gradientAccumulationSteps;
+            return this;
+        }
+
+        /**
+         * Activation checkpointing (rematerialization) for training. Instead of keeping the activations of all vertices
+         * in memory between the forward pass and backprop, the topological order of the graph is split into segments
+         * at "checkpoint" vertices. Only activations that are used outside of the segment they are computed in (and the
+         * inputs of the output layers) are kept; all other activations are discarded during the forward pass, and
+         * recomputed for one segment at a time when backprop reaches that segment.<br>
+         * Unless set explicitly via {@link #activationCheckpoints(String...)}, a segment starts every sqrt(N) vertices
+         * for a graph with N vertices, not counting the input and output vertices (this gives the same segments as
+         * {@link MultiLayerConfiguration} for an equivalent network). Note that skip connections spanning segments keep the corresponding activations
+         * in memory. See {@link org.deeplearning4j.nn.graph.ComputationGraph#getActivationCheckpointStats()} for the
+         * memory saved and the recomputation required in the last iteration.<br>
+         * Note that {@link org.deeplearning4j.optimize.api.TrainingListener#onForwardPass(org.deeplearning4j.nn.api.Model, java.util.Map)}
+         * only receives the kept activations.<br>
+         * Requires workspaces (training workspace mode ENABLED); ignored when the training workspace mode is NONE.
+         * Not supported with truncated BPTT. Default: false
+         *
+         * @param activationCheckpointing Whether activation checkpointing should be used for training
+         */
+        public GraphBuilder activationCheckpointing(boolean activationCheckpointing) {
+            this.activationCheckpointing = activationCheckpointing;
+            return this;
+        }
+
+        /**
+         * Enable activation checkpointing (see {@link #activationCheckpointing(boolean)}) with explicitly chosen
+         * checkpoints: a new segment starts at each of the specified vertices (in topological order).
+         *
+         * @param vertexNames Names of the checkpoint vertices
+         */
+        public GraphBuilder activationCheckpoints(String... vertexNames) {
+            Preconditions.checkArgument(vertexNames != null && vertexNames.length > 0, "At least one checkpoint vertex " +
+                    "name must be specified");
+            this.activationCheckpointing = true;
+            this.activationCheckpoints = vertexNames.clone();
+            return this;
+        }
+
         /**
          * When doing truncated backpropagation through time (tBPTT): how many steps should we do?<br>
          * Only applicable when doing backpropType(BackpropType.TruncatedBPTT)<br>
@@ -1186,10 +1273,33 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
                         " settings will only take effect if backprop type is set to BackpropType.TruncatedBPTT");
             }
 
+            if(backpropType == BackpropType.TruncatedBPTT && (microBatchSize > 0 || gradientAccumulationSteps > 1)) {
+                throw new IllegalStateException("Invalid network configuration detected: micro-batching and gradient " +
+                        "accumulation cannot be used with truncated backpropagation through time (TBPTT)");
+            }
+
+            if(backpropType == BackpropType.TruncatedBPTT && activationCheckpointing) {
+                throw new IllegalStateException("Invalid network configuration detected: activation checkpointing " +
+                        "cannot be used with truncated backpropagation through time (TBPTT)");
+            }
+
+            if(activationCheckpoints != null) {
+                for (String s : activationCheckpoints) {
+                    if (!vertices.containsKey(s) && !networkInputs.contains(s)) {
+                        throw new IllegalStateException("Invalid activation checkpoint: no vertex with name \"" + s +
+                                "\" exists in the graph");
+                    }
+                }
+            }
+
             ComputationGraphConfiguration conf = new ComputationGraphConfiguration();
             conf.backpropType = backpropType;
             conf.tbpttBackLength = tbpttBackLength;
             conf.tbpttFwdLength = tbpttFwdLength;
+            conf.microBatchSize = microBatchSize;
+            conf.gradientAccumulationSteps = gradientAccumulationSteps;
+            conf.activationCheckpointing = activationCheckpointing;
+            conf.activationCheckpoints = activationCheckpoints;
 
             conf.networkInputs = networkInputs;
             conf.networkOutputs = networkOutputs;
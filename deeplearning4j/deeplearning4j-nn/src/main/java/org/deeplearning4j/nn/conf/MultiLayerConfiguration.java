@@ -36,6 +36,7 @@ import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.util.OutputLayerUtil;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
@@ -63,6 +64,12 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     protected BackpropType backpropType = BackpropType.Standard;
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
+    //Gradient accumulation: see Builder.microBatchSize(int) and Builder.gradientAccumulationSteps(int)
+    protected int microBatchSize = 0;
+    protected int gradientAccumulationSteps = 1;
+    //Activation checkpointing: see Builder.activationCheckpointing(boolean) and Builder.activationCheckpoints(int...)
+    protected boolean activationCheckpointing = false;
+    protected int[] activationCheckpoints;
     protected boolean validateOutputLayerConfig = true; //Default to legacy for pre 1.0.0-beta3 networks on deserialization
 
     @Getter
@@ -392,6 +399,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
             clone.dataType = this.dataType;
+            clone.activationCheckpoints = (activationCheckpoints == null ? null : activationCheckpoints.clone());
 
             return clone;
 
@@ -470,6 +478,10 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected BackpropType backpropType = BackpropType.Standard;
         protected int tbpttFwdLength = DEFAULT_TBPTT_LENGTH;
         protected int tbpttBackLength = DEFAULT_TBPTT_LENGTH;
+        protected int microBatchSize = 0;
+        protected int gradientAccumulationSteps = 1;
+        protected boolean activationCheckpointing = false;
+        protected int[] activationCheckpoints;
         protected InputType inputType;
 
         protected WorkspaceMode trainingWorkspaceMode = WorkspaceMode.ENABLED;
@@ -596,6 +608,75 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Maximum number of examples to forward and backpropagate at once during fitting. Larger minibatches are split
+         * into micro-batches of (at most) this size, and the gradients of all micro-batches are summed before the
+         * updater is applied once for the whole minibatch. This limits the activation memory required for training to
+         * that of one micro-batch, without changing the effective minibatch size.<br>
+         * Note that layers that normalize over the minibatch (BatchNormalization) see one micro-batch at a time.<br>
+         * Not supported with truncated BPTT. Default: 0 (disabled)
+         *
+         * @param microBatchSize Maximum micro-batch size, or 0 to disable splitting of minibatches
+         */
+        public Builder microBatchSize(int microBatchSize) {
+            Preconditions.checkArgument(microBatchSize >= 0, "Micro-batch size must be >= 0, got %s", microBatchSize);
+            this.microBatchSize = microBatchSize;
+            return this;
+        }
+
+        /**
+         * Number of minibatches to accumulate gradients over before applying the updater once. With N steps, the
+         * parameters are updated every N calls of fit(DataSet) (or every N minibatches from an iterator), as if one
+         * minibatch of all N minibatches combined had been used. The iteration count (and hence learning rate
+         * schedules) only advances when the parameters are updated.<br>
+         * Not supported with truncated BPTT. Default: 1 (update after every minibatch)
+         *
+         * @param gradientAccumulationSteps Number of minibatches per parameter update
+         */
+        public Builder gradientAccumulationSteps(int gradientAccumulationSteps) {
+            Preconditions.checkArgument(gradientAccumulationSteps >= 1, "Gradient accumulation steps must be >= 1, got %s",
+                    gradientAccumulationSteps);
+            this.gradientAccumulationSteps = gradientAccumulationSteps;
+            return this;
+        }
+
+        /**
+         * Activation checkpointing (rematerialization) for training. Instead of keeping the activations of all layers
+         * in memory between the forward pass and backprop, only the inputs of some "checkpoint" layers are kept. The
+         * layers between two checkpoints form a segment: its activations are discarded during the forward pass, and
+         * recomputed from the checkpoint when backprop reaches the segment.<br>
+         * Unless set explicitly via {@link #activationCheckpoints(int...)}, a checkpoint is placed every sqrt(N) layers
+         * for a network with N layers, not counting the output layer. Activation memory then scales with roughly 2*sqrt(N) layers instead of N, at the
+         * cost of one additional forward pass per layer (except the output layer). See
+         * {@link org.deeplearning4j.nn.multilayer.MultiLayerNetwork#getActivationCheckpointStats()} for the memory saved
+         * and the recomputation required in the last iteration.<br>
+         * Note that {@link org.deeplearning4j.optimize.api.TrainingListener#onForwardPass(org.deeplearning4j.nn.api.Model, java.util.List)}
+         * only receives the kept activations: the entries for all other layers are null.<br>
+         * Requires workspaces (training workspace mode ENABLED); ignored when the training workspace mode is NONE.
+         * Not supported with truncated BPTT. Default: false
+         *
+         * @param activationCheckpointing Whether activation checkpointing should be used for training
+         */
+        public Builder activationCheckpointing(boolean activationCheckpointing) {
+            this.activationCheckpointing = activationCheckpointing;
+            return this;
+        }
+
+        /**
+         * Enable activation checkpointing (see {@link #activationCheckpointing(boolean)}) with explicitly chosen
+         * checkpoints: the inputs of the specified layers are kept in memory for backprop, and the activations of all
+         * other layers are recomputed. The first layer and the output layer are always checkpoints.
+         *
+         * @param layerIndices Indices of the checkpoint layers
+         */
+        public Builder activationCheckpoints(int... layerIndices) {
+            Preconditions.checkArgument(layerIndices != null && layerIndices.length > 0, "At least one checkpoint layer " +
+                    "index must be specified");
+            this.activationCheckpointing = true;
+            this.activationCheckpoints = layerIndices.clone();
+            return this;
+        }
+
         public Builder confs(List<NeuralNetConfiguration> confs) {
             this.confs = confs;
             return this;
@@ -652,6 +733,25 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
                         " settings will only take effect if backprop type is set to BackpropType.TruncatedBPTT");
             }
 
+            if(backpropType == BackpropType.TruncatedBPTT && (microBatchSize > 0 || gradientAccumulationSteps > 1)) {
+                throw new IllegalStateException("Invalid network configuration detected: micro-batching and gradient " +
+                        "accumulation cannot be used with truncated backpropagation through time (TBPTT)");
+            }
+
+            if(backpropType == BackpropType.TruncatedBPTT && activationCheckpointing) {
+                throw new IllegalStateException("Invalid network configuration detected: activation checkpointing " +
+                        "cannot be used with truncated backpropagation through time (TBPTT)");
+            }
+
+            if(activationCheckpoints != null) {
+                for (int idx : activationCheckpoints) {
+                    if (idx < 0 || idx >= confs.size()) {
+                        throw new IllegalStateException("Invalid activation checkpoint: layer index " + idx + " is not " +
+                                "valid for a network with " + confs.size() + " layers");
+                    }
+                }
+            }
+
             if(backpropType == BackpropType.TruncatedBPTT && validateTbpttConfig) {
                 //Check for invalid combination - tbptt plus LastTimeStepLayer or
                 for( int i = 0; i < confs.size(); i++) {
@@ -746,6 +846,10 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.backpropType = backpropType;
             conf.tbpttFwdLength = tbpttFwdLength;
             conf.tbpttBackLength = tbpttBackLength;
+            conf.microBatchSize = microBatchSize;
+            conf.gradientAccumulationSteps = gradientAccumulationSteps;
+            conf.activationCheckpointing = activationCheckpointing;
+            conf.activationCheckpoints = activationCheckpoints;
             conf.trainingWorkspaceMode = trainingWorkspaceMode;
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
@@ -229,6 +229,30 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
              return this;
         }
 
+        @Override
+        public ListBuilder microBatchSize(int microBatchSize) {
+            super.microBatchSize(microBatchSize);
+            return this;
+        }
+
+        @Override
+        public ListBuilder gradientAccumulationSteps(int gradientAccumulationSteps) {
+            super.gradientAccumulationSteps(gradientAccumulationSteps);
+            return this;
+        }
+
+        @Override
+        public ListBuilder activationCheckpointing(boolean activationCheckpointing) {
+            super.activationCheckpointing(activationCheckpointing);
+            return this;
+        }
+
+        @Override
+        public ListBuilder activationCheckpoints(int... layerIndices) {
+            super.activationCheckpoints(layerIndices);
+            return this;
+        }
+
         @Override
         public ListBuilder confs(List<NeuralNetConfiguration> confs) {
              super.confs(confs);
@@ -324,14 +348,19 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
             WorkspaceMode wsmTest = (globalConfig.setIWM ? globalConfig.inferenceWorkspaceMode : inferenceWorkspaceMode);
 
 
-            return new MultiLayerConfiguration.Builder().inputPreProcessors(inputPreProcessors)
+            MultiLayerConfiguration.Builder builder = new MultiLayerConfiguration.Builder().inputPreProcessors(inputPreProcessors)
                     .backpropType(backpropType).tBPTTForwardLength(tbpttFwdLength)
                     .tBPTTBackwardLength(tbpttBackLength).setInputType(this.inputType)
+                    .microBatchSize(microBatchSize).gradientAccumulationSteps(gradientAccumulationSteps)
+                    .activationCheckpointing(activationCheckpointing)
                     .trainingWorkspaceMode(wsmTrain).cacheMode(globalConfig.cacheMode)
                     .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
                     .overrideNinUponBuild(overrideNinUponBuild)
-                    .dataType(globalConfig.dataType)
-                    .build();
+                    .dataType(globalConfig.dataType);
+            if (activationCheckpoints != null) {
+                builder.activationCheckpoints(activationCheckpoints);
+            }
+            return builder.build();
         }
 
         /** Helper class for setting input types */
@@ -0,0 +1,168 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.nn.gradient;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.nn.api.Updater;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+/**
+ * Sum of the gradients of several micro-batches (parts of one minibatch) and/or several minibatches, for applying the
+ * updater once for all of them. Used by MultiLayerNetwork and ComputationGraph for micro-batching and gradient
+ * accumulation: see MultiLayerConfiguration.Builder#microBatchSize(int) and
+ * MultiLayerConfiguration.Builder#gradientAccumulationSteps(int)<br>
+ * <br>
+ * Gradients are summed, as they are not yet divided by the minibatch size when they are calculated. The exceptions are
+ * the 'gradients' that are actually updates (such as BatchNormalization mean/variance estimates): these are averaged.
+ */
+public class AccumulatedGradients {
+
+    private INDArray sum;
+    /**
+     * Number of gradient calculations summed so far
+     */
+    @Getter
+    private int count;
+    /**
+     * Number of examples the summed gradients were calculated for
+     */
+    @Getter
+    private long numExamples;
+    private double scoreSum;
+    private int minibatches;
+
+    /**
+     * Signal the start of a new minibatch
+     *
+     * @param accumulationSteps Number of minibatches per parameter update
+     * @return True if the parameters should be updated at the end of this minibatch
+     */
+    public boolean startMinibatch(int accumulationSteps) {
+        if (++minibatches >= accumulationSteps) {
+            minibatches = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return True if there are no gradients that haven't been applied yet
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Add the gradients calculated for one micro-batch or minibatch
+     *
+     * @param gradients   Flattened gradients. Not modified
+     * @param score       Score (average loss) for the examples
+     * @param numExamples Number of examples the gradients were calculated for
+     */
+    public void add(@NonNull INDArray gradients, double score, long numExamples) {
+        if (sum == null || sum.length() != gradients.length() || sum.dataType() != gradients.dataType()) {
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                sum = gradients.dup();
+            }
+        } else if (count == 0) {
+            sum.assign(gradients);
+        } else {
+            sum.addi(gradients);
+        }
+        count++;
+        this.numExamples += numExamples;
+        scoreSum += score * numExamples;
+    }
+
+    /**
+     * Add the accumulated gradients to the gradients of the last micro-batch or minibatch, such that the updater
+     * (which divides the gradients by the size of that last micro-batch or minibatch) computes the update for all
+     * examples at once. Accumulated gradients are cleared afterwards.
+     *
+     * @param gradients   Flattened gradients of the last micro-batch or minibatch. Modified in place
+     * @param score       Score for the last micro-batch or minibatch
+     * @param numExamples Number of examples in the last micro-batch or minibatch
+     * @param miniBatch   Whether the updater divides the gradients by the minibatch size
+     * @param updater     Updater of the network, used to find the gradients that are actually updates
+     * @return Score for all examples
+     */
+    public double applyTo(@NonNull INDArray gradients, double score, long numExamples, boolean miniBatch,
+                          Updater updater) {
+        long totalExamples = this.numExamples + numExamples;
+        int totalCount = count + 1;
+        double scale = miniBatch ? numExamples / (double) totalExamples : 1.0;
+
+        gradients.addi(sum);
+        if (scale != 1.0) {
+            gradients.muli(scale);
+        }
+        if (updater instanceof BaseMultiLayerUpdater) {
+            for (INDArray updates : ((BaseMultiLayerUpdater<?>) updater).getNonMinibatchDivisionSubsets(gradients)) {
+                updates.divi(totalCount * scale);
+            }
+        }
+
+        double totalScore = (scoreSum + score * numExamples) / totalExamples;
+        clear();
+        return totalScore;
+    }
+
+    /**
+     * Discard the accumulated gradients
+     */
+    public void clear() {
+        count = 0;
+        numExamples = 0;
+        scoreSum = 0.0;
+    }
+
+    /**
+     * Get examples [start, end) of a features, labels or mask array
+     *
+     * @return View of the examples, or null if the array is null
+     */
+    public static INDArray microBatch(INDArray array, long start, long end) {
+        if (array == null) {
+            return null;
+        }
+        return array.get(NDArrayIndex.interval(start, end));
+    }
+
+    /**
+     * @see #microBatch(INDArray, long, long)
+     */
+    public static INDArray[] microBatch(INDArray[] arrays, long start, long end) {
+        if (arrays == null) {
+            return null;
+        }
+        INDArray[] out = new INDArray[arrays.length];
+        for (int i = 0; i < arrays.length; i++) {
+            out[i] = microBatch(arrays[i], start, end);
+        }
+        return out;
+    }
+}
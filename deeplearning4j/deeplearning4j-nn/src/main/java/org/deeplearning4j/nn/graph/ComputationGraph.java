@@ -41,6 +41,7 @@ import org.deeplearning4j.nn.conf.*;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
 import org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional;
+import org.deeplearning4j.nn.gradient.AccumulatedGradients;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.util.ComputationGraphUtil;
@@ -55,6 +56,7 @@ import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
+import org.deeplearning4j.nn.workspace.ActivationCheckpointStats;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.Solver;
@@ -109,6 +111,13 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     protected ComputationGraphConfiguration configuration;
     protected boolean initCalled = false;
     protected transient Solver solver; //Used to call optimizers during backprop
+    protected transient AccumulatedGradients accumulatedGradients; //Gradients not yet applied, for micro-batching/gradient accumulation
+    //Activation checkpointing, for the current iteration only: vertex outputs kept for backprop (by vertex index, null if
+    // discarded), the segment of each vertex (by vertex index), and the RNG state at the start of each segment
+    protected transient INDArray[] checkpointActivations;
+    protected transient int[] checkpointSegments;
+    protected transient long[][] checkpointRngStates;
+    protected transient ActivationCheckpointStats activationCheckpointStats;
     protected INDArray flattenedParams; //Params for all layers are a view/subset of this array
     @Getter
     protected transient INDArray flattenedGradients; //Gradients for all layers are a view/subset of this array
@@ -147,6 +156,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      */
     protected static final String WS_OUTPUT_MEM = "WS_OUTPUT_MEM";
 
+    /**
+     * Workspace for the activations of one segment of vertices, when activation checkpointing is used for training.
+     * Opened and closed once per segment in the forward pass, and again when the segment is recomputed during backprop
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT_ACT = "WS_CHECKPOINT_SEGMENT_ACT";
+
     protected final WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
     protected static final WorkspaceConfiguration WS_ALL_LAYERS_ACT_CONFIG = WorkspaceConfiguration.builder()
@@ -160,6 +175,15 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
     protected final WorkspaceConfiguration WS_LAYER_ACT_X_CONFIG;
 
+    protected static final WorkspaceConfiguration WS_CHECKPOINT_SEGMENT_ACT_CONFIG = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .overallocationLimit(0.05)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .policyReset(ResetPolicy.BLOCK_LEFT)
+            .policySpill(SpillPolicy.REALLOCATE)
+            .policyAllocation(AllocationPolicy.OVERALLOCATE)
+            .build();
+
     protected static final WorkspaceConfiguration WS_RNN_LOOP_WORKING_MEM_CONFIG = WorkspaceConfiguration.builder()
             .initialSize(0).overallocationLimit(0.05).policyReset(ResetPolicy.BLOCK_LEFT)
             .policyAllocation(AllocationPolicy.OVERALLOCATE).policySpill(SpillPolicy.REALLOCATE)
@@ -1131,6 +1155,56 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
     }
 
+    /**
+     * Perform one optimizer step for the minibatch that is currently set as the network inputs and labels.<br>
+     * If micro-batching or gradient accumulation is configured, the minibatch is split into micro-batches whose
+     * gradients are accumulated, and the updater is only applied after the last micro-batch of an accumulation step.
+     */
+    private void optimizeMinibatch(INDArray[] inputs, INDArray[] labels, INDArray[] featureMaskArrays,
+                                   INDArray[] labelMaskArrays, LayerWorkspaceMgr workspaceMgr) {
+        int microBatchSize = configuration.getMicroBatchSize();
+        int accumulationSteps = configuration.getGradientAccumulationSteps();
+        if (microBatchSize <= 0 && accumulationSteps <= 1 && (accumulatedGradients == null || accumulatedGradients.isEmpty())) {
+            solver.optimize(workspaceMgr);
+            return;
+        }
+
+        if (accumulatedGradients == null) {
+            accumulatedGradients = new AccumulatedGradients();
+        }
+        boolean update = accumulatedGradients.startMinibatch(accumulationSteps);
+
+        //Can only split if all inputs and labels have the same number of examples (not the case for space to batch etc)
+        long minibatch = inputs[0].size(0);
+        boolean split = microBatchSize > 0 && minibatch > microBatchSize;
+        for (INDArray arr : ArrayUtils.addAll(inputs, labels)) {
+            split &= arr == null || arr.size(0) == minibatch;
+        }
+        long step = split ? microBatchSize : minibatch;
+        for (long start = 0; start < minibatch; start += step) {
+            long end = Math.min(start + step, minibatch);
+            if (split) {
+                setInputs(AccumulatedGradients.microBatch(inputs, start, end));
+                setLabels(AccumulatedGradients.microBatch(labels, start, end));
+                setLayerMaskArrays(AccumulatedGradients.microBatch(featureMaskArrays, start, end),
+                        AccumulatedGradients.microBatch(labelMaskArrays, start, end));
+            }
+
+            if (update && end == minibatch) {
+                //Gradients accumulated so far are added in computeGradientAndScore
+                solver.optimize(workspaceMgr);
+            } else {
+                computeGradientAndScoreHelper();
+                accumulatedGradients.add(flattenedGradients, score, batchSize());
+            }
+        }
+
+        if (split) {
+            setInputs(inputs);
+            setLabels(labels);
+        }
+    }
+
     private synchronized void fitHelper(INDArray[] inputs, INDArray[] labels, INDArray[] featureMaskArrays, INDArray[] labelMaskArrays) {
         if (numParams() == 0) {
             return; //Edge case: net with no params: fitting is a no-op
@@ -1174,7 +1248,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             }
 
             //TODO: cache workspace
-            solver.optimize(workspaceMgr);
+            optimizeMinibatch(inputs, labels, featureMaskArrays, labelMaskArrays, workspaceMgr);
 
         }
 
@@ -1354,6 +1428,15 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
     public void computeGradientAndScore() {
+        computeGradientAndScoreHelper();
+
+        //Micro-batching/gradient accumulation: apply the accumulated gradients together with the current ones
+        if (accumulatedGradients != null && !accumulatedGradients.isEmpty()) {
+            score = accumulatedGradients.applyTo(flattenedGradients, score, batchSize(), conf().isMiniBatch(), getUpdater());
+        }
+    }
+
+    private void computeGradientAndScoreHelper() {
         synchronizeIterEpochCounts();
 
         LayerWorkspaceMgr workspaceMgr;
@@ -1377,12 +1460,15 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         boolean tbptt = configuration.getBackpropType() == BackpropType.TruncatedBPTT;
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
+        boolean checkpointing = useActivationCheckpointing();
         synchronizeIterEpochCounts();
 
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
-            Map<String, INDArray> activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
-                    fwdType, tbptt, inputs, inputMaskArrays, labelMaskArrays, false);
+            //With activation checkpointing, most activations are discarded here, and recomputed during backprop
+            Map<String, INDArray> activations = checkpointing ? ffToLayerActivationsCheckpointed(inputs, inputMaskArrays, labelMaskArrays)
+                    : ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(), fwdType, tbptt, inputs, inputMaskArrays,
+                    labelMaskArrays, false);
             if (!trainingListeners.isEmpty()) {
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
@@ -1431,6 +1517,13 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     }
                 }
             }
+        } finally {
+            checkpointActivations = null;
+            checkpointRngStates = null;
+        }
+
+        if (checkpointing && log.isDebugEnabled()) {
+            log.debug("Activation checkpointing: {}", activationCheckpointStats);
         }
 
         for(GraphVertex gv : vertices){
@@ -2197,6 +2290,260 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
 
+    /**
+     * @return True if activation checkpointing should be used when computing gradients: see
+     * {@link ComputationGraphConfiguration.GraphBuilder#activationCheckpointing(boolean)}
+     */
+    protected boolean useActivationCheckpointing() {
+        return configuration.isActivationCheckpointing()
+                && configuration.getTrainingWorkspaceMode() != WorkspaceMode.NONE
+                && configuration.getBackpropType() != BackpropType.TruncatedBPTT;
+    }
+
+    /**
+     * @return For each vertex (by vertex index): the segment it belongs to. Segments are contiguous ranges of the
+     * topological order, numbered from 0
+     */
+    protected int[] activationCheckpointSegments() {
+        int n = topologicalOrder.length;
+        boolean[] starts = new boolean[n];
+        String[] checkpoints = configuration.getActivationCheckpoints();
+        if (checkpoints != null) {
+            for (String s : checkpoints) {
+                starts[ArrayUtils.indexOf(topologicalOrder, verticesMap.get(s).getVertexIndex())] = true;
+            }
+        } else {
+            //Default: a new segment every sqrt(N) vertices, where N excludes the input and output vertices - the same
+            //segmentation as MultiLayerNetwork uses for the equivalent network
+            int[] outputIdxs = getOutputLayerIndices();
+            List<Integer> positions = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                GraphVertex v = vertices[topologicalOrder[i]];
+                if (!v.isInputVertex() && !ArrayUtils.contains(outputIdxs, v.getVertexIndex())) {
+                    positions.add(i);
+                }
+            }
+            int step = Math.max(1, (int) Math.ceil(Math.sqrt(positions.size())));
+            for (int i = 0; i < positions.size(); i += step) {
+                starts[positions.get(i)] = true;
+            }
+        }
+
+        int[] segments = new int[vertices.length];
+        int segment = 0;
+        for (int i = 0; i < n; i++) {
+            if (starts[i] && i > 0) {
+                segment++;
+            }
+            segments[topologicalOrder[i]] = segment;
+        }
+        return segments;
+    }
+
+    /**
+     * @return True if the output of the specified vertex must be kept until backprop with activation checkpointing:
+     * network inputs, and the outputs of vertices that are used by output vertices or by vertices in another segment
+     */
+    private boolean isCheckpointRetained(GraphVertex vertex, int[] outputIdxs) {
+        if (vertex.isInputVertex()) {
+            return true;
+        }
+        VertexIndices[] inputsTo = vertex.getOutputVertices();
+        if (inputsTo != null) {
+            for (VertexIndices v : inputsTo) {
+                int idx = v.getVertexIndex();
+                if (ArrayUtils.contains(outputIdxs, idx) || checkpointSegments[idx] != checkpointSegments[vertex.getVertexIndex()]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    protected LayerWorkspaceMgr checkpointSegmentWorkspaceMgr() {
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.builder()
+                .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT_ACT, WS_CHECKPOINT_SEGMENT_ACT_CONFIG)
+                .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT_ACT, WS_CHECKPOINT_SEGMENT_ACT_CONFIG)
+                .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .build();
+
+        if(configuration.getCacheMode() != CacheMode.NONE){
+            //Cached activations are recomputed along with the other activations of the segment
+            mgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT_ACT, WS_CHECKPOINT_SEGMENT_ACT_CONFIG);
+        }
+        mgr.setHelperWorkspacePointers(helperWorkspaces);
+        return mgr;
+    }
+
+    /**
+     * Feed-forward through the network at training time with activation checkpointing. This is a standard forward pass
+     * of all vertices except the output vertices, as per
+     * {@link #ffToLayerActivationsInWS(boolean, int, int[], FwdPassType, boolean, INDArray[], INDArray[], INDArray[], boolean)},
+     * except that only the activations used outside of the segment they are computed in (and the inputs to the output
+     * vertices) are kept in workspace WS_ALL_LAYERS_ACT. All other activations are placed in workspace
+     * WS_CHECKPOINT_SEGMENT_ACT, which is closed at the end of each segment; they are recomputed one segment at a time in
+     * {@link #calcBackpropGradients(boolean, boolean, INDArray...)}.<br>
+     * Note: requires that WS_ALL_LAYERS_ACT is open externally.
+     *
+     * @param input Input feature arrays
+     * @param fMask Feature mask arrays. May be null.
+     * @param lMask Label mask array. May be null.
+     * @return Map of the activations that were kept (including the inputs)
+     */
+    protected synchronized Map<String,INDArray> ffToLayerActivationsCheckpointed(INDArray[] input, INDArray[] fMask, INDArray[] lMask) {
+        setInputs(input);
+        setLayerMaskArrays(fMask, lMask);
+        WorkspaceUtils.assertOpenAndActive(WS_ALL_LAYERS_ACT, "ffToLayerActivationsCheckpointed method requires workspace WS_ALL_LAYERS_ACT to be open");
+
+        LayerWorkspaceMgr mgrSegment = checkpointSegmentWorkspaceMgr();
+        LayerWorkspaceMgr mgrRetain = checkpointSegmentWorkspaceMgr();
+        mgrRetain.setWorkspace(ArrayType.ACTIVATIONS, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG);
+        //Inputs to output vertices are set now, but only used after backprop: keep them until then
+        LayerWorkspaceMgr mgrAll = checkpointSegmentWorkspaceMgr();
+        mgrAll.setWorkspace(ArrayType.ACTIVATIONS, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG);
+        mgrAll.setWorkspace(ArrayType.INPUT, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG);
+        if(input[0].isAttached()){
+            //Don't leverage out of async DataMultiSetIterator workspaces
+            for (LayerWorkspaceMgr m : new LayerWorkspaceMgr[]{mgrSegment, mgrRetain, mgrAll}) {
+                m.setNoLeverageOverride(input[0].data().getParentWorkspace().getId());
+            }
+        }
+
+        int[] outputIdxs = getOutputLayerIndices();
+        checkpointSegments = activationCheckpointSegments();
+        int numSegments = checkpointSegments[topologicalOrder[topologicalOrder.length - 1]] + 1;
+        checkpointRngStates = new long[numSegments][];
+        checkpointActivations = new INDArray[vertices.length];
+        if (activationCheckpointStats == null) {
+            activationCheckpointStats = new ActivationCheckpointStats();
+        }
+        activationCheckpointStats.startIteration(numSegments);
+
+        Map<String, INDArray> activations = new HashMap<>();
+        MemoryWorkspace wsSegment = null;
+        int segment = -1;
+        try {
+            for (int i = 0; i < topologicalOrder.length; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                int vIdx = current.getVertexIndex();
+                if (checkpointSegments[vIdx] != segment) {
+                    if (wsSegment != null) {
+                        wsSegment.close();
+                    }
+                    //Record the RNG state, so that dropout etc. can be replayed when the segment is recomputed
+                    segment = checkpointSegments[vIdx];
+                    checkpointRngStates[segment] = new long[]{Nd4j.getRandom().rootState(), Nd4j.getRandom().nodeState()};
+                    wsSegment = mgrSegment.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                }
+
+                if (ArrayUtils.contains(outputIdxs, vIdx)) {
+                    continue;
+                }
+
+                boolean retain = isCheckpointRetained(current, outputIdxs);
+                INDArray out = forwardCheckpointed(current, retain ? mgrRetain : mgrSegment, mgrSegment, mgrAll, outputIdxs);
+                if (retain) {
+                    checkpointActivations[vIdx] = out;
+                    activations.put(current.getVertexName(), out);
+                }
+                if (!current.isInputVertex()) {
+                    activationCheckpointStats.recordForward(segment, out, retain);
+                }
+            }
+        } finally {
+            if (wsSegment != null) {
+                wsSegment.close();
+            }
+        }
+
+        return activations;
+    }
+
+    /**
+     * Recompute the forward pass for all vertices of one segment during backprop with activation checkpointing,
+     * starting from the kept activations of earlier segments. Workspace WS_CHECKPOINT_SEGMENT_ACT must be open.
+     */
+    private void recomputeCheckpointSegment(int segment, LayerWorkspaceMgr mgr) {
+        int[] outputIdxs = getOutputLayerIndices();
+
+        //Replay the RNG state of the original forward pass, so that dropout masks etc. are identical
+        org.nd4j.linalg.api.rng.Random rng = Nd4j.getRandom();
+        long rootState = rng.rootState();
+        long nodeState = rng.nodeState();
+        rng.setStates(checkpointRngStates[segment][0], checkpointRngStates[segment][1]);
+        int count = 0;
+        try {
+            for (int i = 0; i < topologicalOrder.length; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                int vIdx = current.getVertexIndex();
+                if (checkpointSegments[vIdx] != segment || ArrayUtils.contains(outputIdxs, vIdx)) {
+                    continue;
+                }
+                forwardCheckpointed(current, mgr, mgr, null, outputIdxs);
+                if (!current.isInputVertex()) {
+                    count++;
+                }
+            }
+        } finally {
+            rng.setStates(rootState, nodeState);
+        }
+        activationCheckpointStats.recordRecompute(count);
+    }
+
+    /**
+     * Forward pass of a single vertex with activation checkpointing. Inputs from other segments are (re)set from the
+     * kept activations first; the output is set as input of the vertices in the same segment, and - if mgrOutputVertices
+     * is not null - of the output vertices
+     */
+    private INDArray forwardCheckpointed(GraphVertex current, LayerWorkspaceMgr mgrOut, LayerWorkspaceMgr mgrSegment,
+                                         LayerWorkspaceMgr mgrOutputVertices, int[] outputIdxs) {
+        int vIdx = current.getVertexIndex();
+        int segment = checkpointSegments[vIdx];
+        try(MemoryWorkspace wsFFWorking = mgrSegment.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+            INDArray out;
+            if (current.isInputVertex()) {
+                out = inputs[vIdx];
+            } else {
+                VertexIndices[] inputsFrom = current.getInputVertices();
+                for (int j = 0; j < inputsFrom.length; j++) {
+                    int fromIdx = inputsFrom[j].getVertexIndex();
+                    if (checkpointSegments[fromIdx] != segment) {
+                        current.setInput(inputsFrom[j].getVertexEdgeNumber(), checkpointActivations[fromIdx], mgrSegment);
+                    }
+                }
+
+                out = current.doForward(true, mgrOut);
+                validateArrayWorkspaces(mgrOut, out, ArrayType.ACTIVATIONS, current.getVertexName(), false, "Feed forward (training, checkpointed)");
+            }
+
+            VertexIndices[] inputsTo = current.getOutputVertices();
+            if (inputsTo != null) {
+                for (VertexIndices v : inputsTo) {
+                    int inputToIndex = v.getVertexIndex();
+                    if (ArrayUtils.contains(outputIdxs, inputToIndex)) {
+                        if (mgrOutputVertices != null) {
+                            vertices[inputToIndex].setInput(v.getVertexEdgeNumber(), out, mgrOutputVertices);
+                        }
+                    } else if (checkpointSegments[inputToIndex] == segment) {
+                        vertices[inputToIndex].setInput(v.getVertexEdgeNumber(), out, mgrSegment);
+                    }
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Memory and compute statistics of activation checkpointing for the last training iteration: see
+     * {@link ComputationGraphConfiguration.GraphBuilder#activationCheckpointing(boolean)}
+     *
+     * @return Statistics for the last iteration, or null if activation checkpointing has not been used
+     */
+    public ActivationCheckpointStats getActivationCheckpointStats() {
+        return activationCheckpointStats;
+    }
+
     /**
      * Provide the output of the specified layers, detached from any workspace. This is most commonly used at inference/test
      * time, and is more memory efficient than {@link #ffToLayerActivationsDetached(boolean, FwdPassType, boolean, int, int[], INDArray[], INDArray[], INDArray[], boolean)}
@@ -2669,6 +3016,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         boolean[] setVertexEpsilon = new boolean[topologicalOrder.length]; //If true: already set epsilon for this vertex; later epsilons should be *added* to the existing one, not set
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
 
+        //Activation checkpointing: activations are recomputed one segment at a time, as backprop reaches the segment
+        //The segment workspace is opened at the last vertex of the segment, and closed when backprop leaves the segment
+        boolean checkpointed = checkpointActivations != null && (externalEpsilons == null || externalEpsilons.length == 0);
+        LayerWorkspaceMgr mgrCheckpoint = checkpointed ? checkpointSegmentWorkspaceMgr() : null;
+        MemoryWorkspace wsCheckpointSegment = null;
+
         boolean traceLog = log.isTraceEnabled();
 
         Throwable t = null;
@@ -2679,6 +3032,20 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 int vIdx = current.getVertexIndex();
                 String vertexName = current.getVertexName();
 
+                if (checkpointed) {
+                    int segment = checkpointSegments[vIdx];
+                    boolean lastInSegment = i == topologicalOrder.length - 1 || checkpointSegments[topologicalOrder[i + 1]] != segment;
+                    if (lastInSegment) {
+                        if (wsCheckpointSegment != null) {
+                            wsCheckpointSegment.close();
+                        }
+                        wsCheckpointSegment = mgrCheckpoint.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                        wsCheckpointSegment.setPreviousWorkspace(initialWorkspace);
+                        recomputeCheckpointSegment(segment, mgrCheckpoint);
+                        Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
+                    }
+                }
+
                 if (traceLog) {
                     log.trace("About backprop: {} (\"{}\") - {}", i, vertexName, current.getClass().getSimpleName());
                 }
@@ -2863,6 +3230,18 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     }
                 }
             }
+            if(wsCheckpointSegment != null){
+                //Recomputed activations of the first segment
+                try{
+                    wsCheckpointSegment.close();
+                } catch (Throwable t2){
+                    if(t != null){
+                        log.error("Encountered second exception while trying to close workspace after initial exception");
+                        log.error("Original exception:", t);
+                        throw t2;
+                    }
+                }
+            }
             Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
 
             if(t != null){
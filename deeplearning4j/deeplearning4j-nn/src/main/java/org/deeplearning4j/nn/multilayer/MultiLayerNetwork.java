@@ -40,6 +40,7 @@ import org.deeplearning4j.nn.conf.*;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
 import org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional;
+import org.deeplearning4j.nn.gradient.AccumulatedGradients;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -49,6 +50,7 @@ import org.deeplearning4j.nn.layers.LayerHelper;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
+import org.deeplearning4j.nn.workspace.ActivationCheckpointStats;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.Solver;
@@ -133,6 +135,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     protected int layerIndex; //For Layer.get/setIndex()
 
     protected transient Solver solver; //Used to call optimizers during backprop
+    protected transient AccumulatedGradients accumulatedGradients; //Gradients not yet applied, for micro-batching/gradient accumulation
+    //Activation checkpointing, for the current iteration only: layer inputs kept for backprop (null if discarded), the
+    // layers that start a segment, and the RNG state at the start of each segment
+    protected transient List<INDArray> checkpointActivations;
+    protected transient boolean[] checkpointSegmentStarts;
+    protected transient long[][] checkpointRngStates;
+    protected transient ActivationCheckpointStats activationCheckpointStats;
     //Workspaces for CUDNN. Pass to LayerWorkspaceMgr for re-use in cudnn helpers
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
@@ -167,6 +176,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected static final String WS_RNN_LOOP_WORKING_MEM = "WS_RNN_LOOP_WORKING_MEM";
 
+    /**
+     * Workspace for the activations of one segment of layers, when activation checkpointing is used for training.
+     * Opened and closed once per segment in the forward pass, and again when the segment is recomputed during backprop
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT_ACT = "WS_CHECKPOINT_SEGMENT_ACT";
+
 
     protected WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
@@ -181,6 +196,15 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
     protected WorkspaceConfiguration WS_LAYER_ACT_X_CONFIG;
 
+    protected static final WorkspaceConfiguration WS_CHECKPOINT_SEGMENT_ACT_CONFIG = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .overallocationLimit(0.05)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .policyReset(ResetPolicy.BLOCK_LEFT)
+            .policySpill(SpillPolicy.REALLOCATE)
+            .policyAllocation(AllocationPolicy.OVERALLOCATE)
+            .build();
+
     protected static final WorkspaceConfiguration WS_RNN_LOOP_WORKING_MEM_CONFIG = WorkspaceConfiguration.builder()
             .initialSize(0).overallocationLimit(0.05).policyReset(ResetPolicy.BLOCK_LEFT)
             .policyAllocation(AllocationPolicy.OVERALLOCATE).policySpill(SpillPolicy.REALLOCATE)
@@ -1178,6 +1202,183 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         return out;
     }
 
+    /**
+     * @return True if activation checkpointing should be used when computing gradients: see
+     * {@link MultiLayerConfiguration.Builder#activationCheckpointing(boolean)}
+     */
+    protected boolean useActivationCheckpointing() {
+        return layerWiseConfigurations.isActivationCheckpointing() && layers.length > 1
+                && layerWiseConfigurations.getTrainingWorkspaceMode() != WorkspaceMode.NONE
+                && layerWiseConfigurations.getBackpropType() != BackpropType.TruncatedBPTT;
+    }
+
+    /**
+     * @return For each layer: true if the input of this layer is a checkpoint (i.e., the layer starts a new segment)
+     */
+    protected boolean[] activationCheckpointSegmentStarts() {
+        int numLayers = layers.length;
+        boolean[] starts = new boolean[numLayers];
+        int[] checkpoints = layerWiseConfigurations.getActivationCheckpoints();
+        if (checkpoints != null) {
+            for (int idx : checkpoints) {
+                starts[idx] = true;
+            }
+        } else {
+            //Default: a checkpoint every sqrt(N) layers. The output layer is handled separately
+            int step = Math.max(1, (int) Math.ceil(Math.sqrt(numLayers - 1)));
+            for (int i = 0; i < numLayers - 1; i += step) {
+                starts[i] = true;
+            }
+        }
+        //The network input and the input to the output layer (needed for the score) are always kept
+        starts[0] = true;
+        starts[numLayers - 1] = true;
+        return starts;
+    }
+
+    protected LayerWorkspaceMgr checkpointSegmentWorkspaceMgr() {
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.builder()
+                .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT_ACT, WS_CHECKPOINT_SEGMENT_ACT_CONFIG)
+                .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT_ACT, WS_CHECKPOINT_SEGMENT_ACT_CONFIG)
+                .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .build();
+
+        if(layerWiseConfigurations.getCacheMode() != CacheMode.NONE){
+            //Cached activations are recomputed along with the other activations of the segment
+            mgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT_ACT, WS_CHECKPOINT_SEGMENT_ACT_CONFIG);
+            mgr.setWorkspace(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG);
+        }
+        mgr.setHelperWorkspacePointers(helperWorkspaces);
+        return mgr;
+    }
+
+    /**
+     * Feed-forward through the network at training time with activation checkpointing. This is a standard forward pass
+     * up to (but excluding) the output layer, as per {@link #ffToLayerActivationsInWs(int, FwdPassType, boolean, INDArray, INDArray, INDArray)},
+     * except that only the checkpoint activations (inputs to the layers that start a segment) are kept in workspace
+     * WS_ALL_LAYERS_ACT. All other activations are placed in workspace WS_CHECKPOINT_SEGMENT_ACT, which is closed at
+     * the end of each segment; they are recomputed one segment at a time in
+     * {@link #calcBackpropGradients(INDArray, boolean, boolean, boolean)}.<br>
+     * Note: requires that WS_ALL_LAYERS_ACT is open externally.
+     *
+     * @param input Input to network
+     * @param fMask Feature mask array. May be null
+     * @param lMask Label mask aray. May be null.
+     * @return Activations, including the input. Entries for activations that were discarded are null
+     */
+    protected synchronized List<INDArray> ffToLayerActivationsCheckpointed(@NonNull INDArray input, INDArray fMask, INDArray lMask) {
+        setInput(input);
+        setLayerMaskArrays(fMask, lMask);
+        WorkspaceUtils.assertOpenAndActive(WS_ALL_LAYERS_ACT, "ffToLayerActivationsCheckpointed method requires workspace WS_ALL_LAYERS_ACT to be open");
+
+        LayerWorkspaceMgr mgrSegment = checkpointSegmentWorkspaceMgr();
+        LayerWorkspaceMgr mgrRetain = checkpointSegmentWorkspaceMgr();
+        mgrRetain.setWorkspace(ArrayType.ACTIVATIONS, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG);
+        if(input.isAttached()){
+            //Don't leverage out of async DataSetIterator workspaces
+            mgrSegment.setNoLeverageOverride(input.data().getParentWorkspace().getId());
+            mgrRetain.setNoLeverageOverride(input.data().getParentWorkspace().getId());
+        }
+
+        int numLayers = layers.length;
+        checkpointSegmentStarts = activationCheckpointSegmentStarts();
+        checkpointRngStates = new long[numLayers][];
+        int numSegments = 0;
+        for (boolean b : checkpointSegmentStarts) {
+            if (b) {
+                numSegments++;
+            }
+        }
+        if (activationCheckpointStats == null) {
+            activationCheckpointStats = new ActivationCheckpointStats();
+        }
+        activationCheckpointStats.startIteration(numSegments);
+
+        List<INDArray> out = new ArrayList<>();
+        out.add(mgrRetain.leverageTo(ArrayType.ACTIVATIONS, input));
+        checkpointActivations = out;
+
+        MemoryWorkspace wsSegment = null;
+        int segment = -1;
+        try {
+            for (int i = 0; i < numLayers - 1; i++) {
+                if (checkpointSegmentStarts[i]) {
+                    //Record the RNG state, so that dropout etc. can be replayed when the segment is recomputed
+                    segment++;
+                    checkpointRngStates[i] = new long[]{Nd4j.getRandom().rootState(), Nd4j.getRandom().nodeState()};
+                    wsSegment = mgrSegment.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                }
+
+                boolean retain = checkpointSegmentStarts[i + 1];
+                input = activateCheckpointed(i, input, mgrSegment, retain ? mgrRetain : mgrSegment);
+                activationCheckpointStats.recordForward(segment, input, retain);
+                out.add(retain ? input : null);
+
+                if (retain) {
+                    wsSegment.close();
+                    wsSegment = null;
+                }
+            }
+        } finally {
+            if (wsSegment != null) {
+                wsSegment.close();
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Recompute the forward pass for layers start to end (inclusive) during backprop with activation checkpointing,
+     * starting from the checkpoint activations of layer start. Workspace WS_CHECKPOINT_SEGMENT_ACT must be open.
+     */
+    private void recomputeCheckpointSegment(int start, int end, LayerWorkspaceMgr mgr) {
+        //Replay the RNG state of the original forward pass, so that dropout masks etc. are identical
+        org.nd4j.linalg.api.rng.Random rng = Nd4j.getRandom();
+        long rootState = rng.rootState();
+        long nodeState = rng.nodeState();
+        rng.setStates(checkpointRngStates[start][0], checkpointRngStates[start][1]);
+        try {
+            INDArray input = checkpointActivations.get(start);
+            for (int i = start; i <= end; i++) {
+                input = activateCheckpointed(i, input, mgr, mgr);
+            }
+        } finally {
+            rng.setStates(rootState, nodeState);
+        }
+        activationCheckpointStats.recordRecompute(end - start + 1);
+    }
+
+    private INDArray activateCheckpointed(int i, INDArray input, LayerWorkspaceMgr mgrSegment, LayerWorkspaceMgr mgrOut) {
+        try(MemoryWorkspace wsFFWorking = mgrSegment.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+            if (layerWiseConfigurations.getInputPreProcess(i) != null) {
+                input = layerWiseConfigurations.getInputPreProcess(i).preProcess(input, getInputMiniBatchSize(), mgrSegment);
+                //Validation: Exception if invalid (bad preprocessor implementation)
+                validateArrayWorkspaces(mgrSegment, input, ArrayType.ACTIVATIONS, i, true, "Feed forward to layer (training, checkpointed)");
+            }
+
+            input = layers[i].activate(input, true, mgrOut);
+            if(input == null){
+                throw new IllegalStateException("Layer " + i + " returned null activations");
+            }
+
+            //Validation: Exception if invalid (bad layer implementation)
+            validateArrayWorkspaces(mgrOut, input, ArrayType.ACTIVATIONS, i, false, "Feed forward to layer (training, checkpointed)");
+            return input;
+        }
+    }
+
+    /**
+     * Memory and compute statistics of activation checkpointing for the last training iteration: see
+     * {@link MultiLayerConfiguration.Builder#activationCheckpointing(boolean)}
+     *
+     * @return Statistics for the last iteration, or null if activation checkpointing has not been used
+     */
+    public ActivationCheckpointStats getActivationCheckpointStats() {
+        return activationCheckpointStats;
+    }
+
     /**
      * Provide the output of the specified layer, detached from any workspace. This is most commonly used at inference/test
      * time, and is more memory efficient than {@link #ffToLayerActivationsDetached(boolean, FwdPassType, boolean, int, INDArray, INDArray, INDArray, boolean)}
@@ -1762,7 +1963,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
 
                 //TODO CACHE
-                solver.optimize(workspaceMgr);
+                optimizeMinibatch(next.getFeatures(), next.getLabels(), next.getFeaturesMaskArray(),
+                        next.getLabelsMaskArray(), workspaceMgr);
             }
 
             if (hasMaskArrays)
@@ -1950,8 +2152,14 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         Pair<Gradient, INDArray> currPair = null;
         MemoryWorkspace wsActGradCloseNext = null;
         MemoryWorkspace wsActGradTemp = null;
+        MemoryWorkspace wsCheckpointSegment = null;
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
 
+        //Activation checkpointing: activations are recomputed one segment at a time, as backprop reaches the segment
+        //The segment workspace is opened at the last layer of the segment, and closed after backprop of its first layer
+        boolean checkpointed = checkpointActivations != null && epsilon == null;
+        LayerWorkspaceMgr mgrCheckpoint = checkpointed ? checkpointSegmentWorkspaceMgr() : null;
+
         boolean traceLog = log.isTraceEnabled();
 
         Throwable t = null;
@@ -1961,6 +2169,17 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     break;
                 }
 
+                if (checkpointed && i < layers.length - 1 && checkpointSegmentStarts[i + 1]) {
+                    int start = i;
+                    while (!checkpointSegmentStarts[start]) {
+                        start--;
+                    }
+                    wsCheckpointSegment = mgrCheckpoint.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                    wsCheckpointSegment.setPreviousWorkspace(initialWorkspace);
+                    recomputeCheckpointSegment(start, i, mgrCheckpoint);
+                    Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
+                }
+
                 if (traceLog) {
                     log.trace("About to backprop: {} - {}", i, layers[i].getClass().getSimpleName());
                 }
@@ -2041,6 +2260,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     wsActGradTemp = null;
                 }
 
+                if (wsCheckpointSegment != null && checkpointSegmentStarts[i]) {
+                    //First layer of the segment is done: recomputed activations are no longer required
+                    wsCheckpointSegment.close();
+                    wsCheckpointSegment = null;
+                }
+
                 if (traceLog) {
                     log.trace("Completed backprop: {} - {}", i, layers[i].getClass().getSimpleName());
                 }
@@ -2071,6 +2296,18 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     }
                 }
             }
+            if(wsCheckpointSegment != null) {
+                //Non-null on exception, or if backprop stopped at a frozen layer
+                try {
+                    wsCheckpointSegment.close();
+                } catch (Throwable t2) {
+                    if (t != null) {
+                        log.error("Encountered second exception while trying to close workspace after initial exception");
+                        log.error("Original exception:", t);
+                        throw t2;
+                    }
+                }
+            }
             Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
 
             if(t != null){
@@ -2352,7 +2589,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
             }
             //TODO CACHE WORKSPACE, IF USED???
-            solver.optimize(workspaceMgr);
+            optimizeMinibatch(features, labels, featuresMask, labelsMask, workspaceMgr);
         }
 
         clearLayerMaskArrays();
@@ -2360,6 +2597,54 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         synchronizeIterEpochCounts();
     }
 
+    /**
+     * Perform one optimizer step for the minibatch that is currently set as the network input and labels.<br>
+     * If micro-batching or gradient accumulation is configured, the minibatch is split into micro-batches whose
+     * gradients are accumulated, and the updater is only applied after the last micro-batch of an accumulation step.
+     */
+    private void optimizeMinibatch(INDArray features, INDArray labels, INDArray featuresMask, INDArray labelsMask,
+                                   LayerWorkspaceMgr workspaceMgr) {
+        int microBatchSize = layerWiseConfigurations.getMicroBatchSize();
+        int accumulationSteps = layerWiseConfigurations.getGradientAccumulationSteps();
+        if (microBatchSize <= 0 && accumulationSteps <= 1 && (accumulatedGradients == null || accumulatedGradients.isEmpty())) {
+            solver.optimize(workspaceMgr);
+            return;
+        }
+
+        if (accumulatedGradients == null) {
+            accumulatedGradients = new AccumulatedGradients();
+        }
+        boolean update = accumulatedGradients.startMinibatch(accumulationSteps);
+
+        //Can only split if labels and features have the same number of examples (not the case for space to batch etc)
+        long minibatch = features.size(0);
+        boolean split = microBatchSize > 0 && minibatch > microBatchSize && (labels == null || labels.size(0) == minibatch);
+        long step = split ? microBatchSize : minibatch;
+        for (long start = 0; start < minibatch; start += step) {
+            long end = Math.min(start + step, minibatch);
+            if (split) {
+                setInput(AccumulatedGradients.microBatch(features, start, end));
+                setLabels(AccumulatedGradients.microBatch(labels, start, end));
+                clearLayerMaskArrays();
+                setLayerMaskArrays(AccumulatedGradients.microBatch(featuresMask, start, end),
+                        AccumulatedGradients.microBatch(labelsMask, start, end));
+            }
+
+            if (update && end == minibatch) {
+                //Gradients accumulated so far are added in computeGradientAndScore
+                solver.optimize(workspaceMgr);
+            } else {
+                computeGradientAndScoreHelper();
+                accumulatedGradients.add(flattenedGradients, score, batchSize());
+            }
+        }
+
+        if (split) {
+            setInput(features);
+            setLabels(labels);
+        }
+    }
+
     @Override
     public void fit(INDArray data, LayerWorkspaceMgr workspaceMgr){
         throw new UnsupportedOperationException("Not supported: use pretrainLayer");
@@ -2755,7 +3040,15 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     }
 
     public void computeGradientAndScore() {
+        computeGradientAndScoreHelper();
+
+        //Micro-batching/gradient accumulation: apply the accumulated gradients together with the current ones
+        if (accumulatedGradients != null && !accumulatedGradients.isEmpty()) {
+            score = accumulatedGradients.applyTo(flattenedGradients, score, batchSize(), conf().isMiniBatch(), getUpdater());
+        }
+    }
 
+    private void computeGradientAndScoreHelper() {
         if (!(getOutputLayer() instanceof IOutputLayer)) {
             throw new DL4JException(
                     "Cannot calculate gradient and score with respect to labels: final layer is not an IOutputLayer. " +
@@ -2786,6 +3079,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
         boolean tbptt = layerWiseConfigurations.getBackpropType() == BackpropType.TruncatedBPTT;
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
+        boolean checkpointing = useActivationCheckpointing();
         synchronizeIterEpochCounts();
 
         //Calculate activations (which are stored in each layer, and used in backprop)
@@ -2793,7 +3087,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             //First: do a feed-forward through the network
             //Note that we don't actually need to do the full forward pass through the output layer right now; but we do
             // need the input to the output layer to be set (such that backprop can be done)
-            List<INDArray> activations = ffToLayerActivationsInWs(layers.length - 2, fwdType, tbptt, input, mask, null);
+            //With activation checkpointing, most activations are discarded here, and recomputed during backprop
+            List<INDArray> activations = checkpointing ? ffToLayerActivationsCheckpointed(input, mask, null)
+                    : ffToLayerActivationsInWs(layers.length - 2, fwdType, tbptt, input, mask, null);
             if (!trainingListeners.isEmpty()) {
                 //TODO: We possibly do want output layer activations in some cases here...
                 for (TrainingListener tl : trainingListeners) {
@@ -2825,6 +3121,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     }
                 }
             }
+        } finally {
+            checkpointActivations = null;
+            checkpointRngStates = null;
+        }
+
+        if (checkpointing && log.isDebugEnabled()) {
+            log.debug("Activation checkpointing: {}", activationCheckpointStats);
         }
 
         //Clear the post noise/dropconnect parameters on the output layer
@@ -380,6 +380,29 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         return out;
     }
 
+    /**
+     * Get the subsets of the given gradient array that are not divided by the minibatch size by the updater: i.e., the
+     * 'gradients' that are actually updates, such as BatchNormalization mean/variance estimates
+     *
+     * @param from Gradient array with the same layout as the flattened gradients view
+     * @return Views of the subsets of the array, one per parameter not divided by the minibatch size
+     */
+    public List<INDArray> getNonMinibatchDivisionSubsets(INDArray from){
+        List<INDArray> out = new ArrayList<>();
+        INDArray flat = from.reshape(from.length());
+        long paramsSoFar = 0;
+        for(Trainable t : getOrderedLayers()){
+            for(Map.Entry<String,INDArray> e : t.paramTable(false).entrySet()) {
+                long l = e.getValue().length();
+                if(!t.updaterDivideByMinibatch(e.getKey())){
+                    out.add(flat.get(NDArrayIndex.interval(paramsSoFar, paramsSoFar + l)));
+                }
+                paramsSoFar += l;
+            }
+        }
+        return out;
+    }
+
     protected boolean isSingleLayerUpdater() {
         return false;
     }
@@ -0,0 +1,139 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.nn.workspace;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Memory and compute statistics of activation checkpointing for one training iteration of a MultiLayerNetwork or
+ * ComputationGraph: see MultiLayerConfiguration.Builder#activationCheckpointing(boolean) and
+ * ComputationGraphConfiguration.GraphBuilder#activationCheckpointing(boolean)<br>
+ * <br>
+ * Without checkpointing, the activations of all layers are kept in memory from the forward pass until backprop.
+ * With checkpointing, only the retained (checkpoint) activations are kept, plus the activations of one segment at a
+ * time, which are computed twice: once in the forward pass, and once more during backprop.<br>
+ * Sizes only include the output activations of each layer/vertex, not the working memory of the layers.
+ */
+@Getter
+public class ActivationCheckpointStats {
+
+    /**
+     * Number of segments the network was split into
+     */
+    private int numSegments;
+    /**
+     * Bytes of all activations of the forward pass, as kept in memory until backprop without checkpointing
+     */
+    private long activationBytes;
+    /**
+     * Bytes of the activations kept in memory until backprop with checkpointing
+     */
+    private long retainedBytes;
+    /**
+     * Bytes of the largest segment's activations, which are only in memory while that segment is computed
+     */
+    private long maxSegmentBytes;
+    /**
+     * Number of layer/vertex forward passes in the forward pass
+     */
+    private int forwardOps;
+    /**
+     * Number of layer/vertex forward passes repeated during backprop
+     */
+    private int recomputedOps;
+
+    private long[] segmentBytes;
+
+    /**
+     * Reset the statistics at the start of a new forward pass
+     *
+     * @param numSegments Number of segments the network is split into
+     */
+    public void startIteration(int numSegments) {
+        this.numSegments = numSegments;
+        this.segmentBytes = new long[numSegments];
+        this.activationBytes = 0;
+        this.retainedBytes = 0;
+        this.maxSegmentBytes = 0;
+        this.forwardOps = 0;
+        this.recomputedOps = 0;
+    }
+
+    /**
+     * Record the output activations of one layer or vertex in the forward pass
+     *
+     * @param segment     Segment the layer/vertex belongs to
+     * @param activations Output activations
+     * @param retained    Whether the activations are kept in memory until backprop
+     */
+    public void recordForward(int segment, @NonNull INDArray activations, boolean retained) {
+        long bytes = activations.length() * activations.dataType().width();
+        forwardOps++;
+        activationBytes += bytes;
+        if (retained) {
+            retainedBytes += bytes;
+        } else {
+            segmentBytes[segment] += bytes;
+            maxSegmentBytes = Math.max(maxSegmentBytes, segmentBytes[segment]);
+        }
+    }
+
+    /**
+     * Record the recomputation of (part of) a segment during backprop
+     *
+     * @param numOps Number of layer/vertex forward passes that were repeated
+     */
+    public void recordRecompute(int numOps) {
+        recomputedOps += numOps;
+    }
+
+    /**
+     * @return Peak activation memory with checkpointing, in bytes: retained activations plus the largest segment
+     */
+    public long getPeakBytes() {
+        return retainedBytes + maxSegmentBytes;
+    }
+
+    /**
+     * @return Activation memory saved by checkpointing, in bytes
+     */
+    public long getBytesSaved() {
+        return Math.max(0, activationBytes - getPeakBytes());
+    }
+
+    /**
+     * @return Extra forward pass compute due to checkpointing, as a fraction of the forward pass: 1.0 means every layer
+     * was computed twice
+     */
+    public double getRecomputeOverhead() {
+        return forwardOps == 0 ? 0.0 : recomputedOps / (double) forwardOps;
+    }
+
+    @Override
+    public String toString() {
+        return "ActivationCheckpointStats(segments=" + numSegments + ", activationBytes=" + activationBytes +
+                ", peakBytes=" + getPeakBytes() + ", bytesSaved=" + getBytesSaved() + ", forwardOps=" + forwardOps +
+                ", recomputedOps=" + recomputedOps + ")";
+    }
+}
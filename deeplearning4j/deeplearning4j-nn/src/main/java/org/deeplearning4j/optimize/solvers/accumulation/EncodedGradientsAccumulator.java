@@ -27,6 +27,8 @@ import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor;
@@ -175,6 +177,21 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         return getOptimalBufferSize(model.params().length(), numWorkers, queueSize);
     }
 
+    /**
+     * This method returns optimal bufferSize for a given number of parameters, when updates are encoded with the given
+     * GradientCodec instead of threshold encoding
+     *
+     * @param gradientCodec
+     * @param paramsLength
+     * @param numWorkers
+     * @param queueSize
+     * @return
+     */
+    public static long getOptimalBufferSize(@NonNull GradientCodec gradientCodec, long paramsLength, int numWorkers, int queueSize) {
+        val maxMessageLength = Math.max(paramsLength / 16, gradientCodec.maxEncodedLength(paramsLength));
+        return (maxMessageLength + 65536) * numWorkers * queueSize * 4;
+    }
+
     @Override
     public void fallbackToSingleConsumerMode(boolean reallyFallback) {
         if (externalSource != null && externalSource instanceof Registerable)
@@ -297,6 +314,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
                     Nd4j.getExecutioner().thresholdDecode(compressed, updates);
                 else if (encoding == ThresholdCompression.BITMAP_ENCODING)
                     Nd4j.getExecutioner().bitmapDecode(compressed, updates);
+                else if (GradientCodecs.isRegistered(encoding))
+                    GradientCodecs.decode(compressed, updates);
                 else
                     throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
 
@@ -362,6 +381,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
                     Nd4j.getExecutioner().thresholdDecode(compressed, updates);
                 else if (encoding == ThresholdCompression.BITMAP_ENCODING)
                     Nd4j.getExecutioner().bitmapDecode(compressed, updates);
+                else if (GradientCodecs.isRegistered(encoding))
+                    GradientCodecs.decode(compressed, updates);
                 else
                     throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
 
@@ -547,6 +568,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         protected int parties;
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
+        protected GradientCodec gradientCodec;
         protected long initialMemory = DEFAULT_INITIAL_MEMORY;
         protected int queueSize = 5;
         protected MessageHandler handler;
@@ -594,6 +616,19 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             return this;
         }
 
+        /**
+         * This method allows to encode updates with a GradientCodec (for example, top-k sparsification or 1-bit
+         * quantization) instead of threshold encoding. If set, thresholdAlgorithm and residualPostProcessor are ignored
+         *
+         * Default value: null (threshold encoding)
+         * @param gradientCodec
+         * @return
+         */
+        public Builder gradientCodec(GradientCodec gradientCodec) {
+            this.gradientCodec = gradientCodec;
+            return this;
+        }
+
         /**
          * This method enables optional limit for max number of updates per message
          *
@@ -630,8 +665,10 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         }
 
         public EncodedGradientsAccumulator build() {
-            if (handler == null) {
-                Preconditions.checkNotNull(thresholdAlgorithm, "Both threshold algorithm and handler are null - one or the other must be set");
+            if (handler == null && gradientCodec != null) {
+                handler = new EncodingHandler(gradientCodec, encodingDebugMode);
+            } else if (handler == null) {
+                Preconditions.checkNotNull(thresholdAlgorithm, "Threshold algorithm, gradient codec and handler are all null - one of them must be set");
                 handler = new EncodingHandler(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
             }
 
@@ -24,6 +24,8 @@ import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.shade.guava.util.concurrent.AtomicDouble;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithmReducer;
@@ -48,6 +50,7 @@ public class EncodingHandler implements MessageHandler {
     protected transient GradientsAccumulator accumulator;
     protected ThresholdAlgorithm initialThresholdAlgorithm;
     protected ResidualPostProcessor initialResidualPostProcessor;
+    protected GradientCodec initialGradientCodec;
 
     protected Integer boundary;
     protected boolean encodingDebugMode;
@@ -63,6 +66,13 @@ public class EncodingHandler implements MessageHandler {
     protected ThreadLocal<AtomicDouble> currentThreshold = new ThreadLocal<>();
     protected ThreadLocal<AtomicBoolean> bitmapMode = new ThreadLocal<>();
     protected ThreadLocal<AtomicBoolean> lastIterWasDense = new ThreadLocal<>();    //Same as bitmapMode but lagging by 1 iter
+    protected ThreadLocal<GradientCodec> gradientCodec = new ThreadLocal<>();
+
+    //Bytes on wire vs. bytes of the original (dense) updates: totals over all threads, and last iteration per thread
+    protected final AtomicLong encodedBytes = new AtomicLong();
+    protected final AtomicLong originalBytes = new AtomicLong();
+    protected ThreadLocal<AtomicLong> lastEncodedBytes = new ThreadLocal<>();
+    protected ThreadLocal<AtomicLong> lastOriginalBytes = new ThreadLocal<>();
 
     protected final AtomicLong lastThresholdLogTime = new AtomicLong();
 
@@ -74,12 +84,29 @@ public class EncodingHandler implements MessageHandler {
         this.encodingDebugMode = encodingDebugMode;
     }
 
+    /**
+     * Create an EncodingHandler that uses the specified codec instead of threshold encoding
+     *
+     * @param gradientCodec     Codec to encode the updates with. Each thread uses its own clone of the codec
+     * @param encodingDebugMode If true: log bytes on wire and compression ratio on every iteration
+     */
+    public EncodingHandler(@NonNull GradientCodec gradientCodec, boolean encodingDebugMode){
+        this.initialGradientCodec = gradientCodec;
+        this.boundary = Integer.MAX_VALUE;
+        this.encodingDebugMode = encodingDebugMode;
+        GradientCodecs.register(gradientCodec);
+    }
+
     @Override
     public void initialize(@NonNull GradientsAccumulator accumulator) {
         this.accumulator = accumulator;
     }
 
     public INDArray encodeUpdates(int iteration, int epoch, INDArray updates) {
+        if(initialGradientCodec != null){
+            return encodeWithCodec(iteration, epoch, updates);
+        }
+
         if(thresholdAlgorithm.get() == null){
             synchronized (this){
                 //Synchronized in case threshold algorithm has INDArrays and we're running on GPU - don't want race condition for shifting devices
@@ -197,6 +224,17 @@ public class EncodingHandler implements MessageHandler {
         return encoded;
     }
 
+    protected INDArray encodeWithCodec(int iteration, int epoch, INDArray updates) {
+        if(gradientCodec.get() == null){
+            synchronized (this){
+                //Synchronized as cloning may modify the initial codec's state (random seeds, for example)
+                gradientCodec.set(initialGradientCodec.clone());
+            }
+        }
+
+        return gradientCodec.get().encode(iteration, epoch, updates);
+    }
+
     public void applyPostProcessor(int iteration, int epoch, Double lastThreshold, INDArray residuals){
         if(initialResidualPostProcessor == null) {
             return; //No op
@@ -229,6 +267,7 @@ public class EncodingHandler implements MessageHandler {
             2) send them somewhere
          */
         INDArray message = encodeUpdates(iterationNumber, epochNumber, updates);
+        recordStatistics(updates, message, iterationNumber, epochNumber);
         if (message != null) {
             sendMessage(message, iterationNumber, epochNumber);
             return true;
@@ -236,6 +275,77 @@ public class EncodingHandler implements MessageHandler {
             return false;
     }
 
+    protected void recordStatistics(INDArray updates, INDArray message, int iteration, int epoch){
+        long original = updates.length() * updates.dataType().width();
+        long encoded = message == null ? 0 : message.length() * message.dataType().width();
+        originalBytes.addAndGet(original);
+        encodedBytes.addAndGet(encoded);
+        if(lastEncodedBytes.get() == null){
+            lastEncodedBytes.set(new AtomicLong());
+            lastOriginalBytes.set(new AtomicLong());
+        }
+        lastEncodedBytes.get().set(encoded);
+        lastOriginalBytes.get().set(original);
+
+        if(encodingDebugMode){
+            log.info("Encoded updates at iter {}, epoch {} [thread {}]: {} bytes on wire, compression ratio {}", iteration, epoch,
+                    Thread.currentThread().getId(), encoded, format(ratio(original, encoded)));
+        } else if(initialGradientCodec != null){
+            logCodecIfReq(iteration, epoch);
+        }
+    }
+
+    protected void logCodecIfReq(int iter, int epoch){
+        long now = System.currentTimeMillis();
+        long lastLog = lastThresholdLogTime.get();
+        if(lastLog + THRESHOLD_LOG_FREQ_MS <= now && lastThresholdLogTime.compareAndSet(lastLog, now)){
+            log.info("Encoded updates at iter {}, epoch {} [thread {}]: {} bytes on wire, compression ratio {}; total compression ratio {}",
+                    iter, epoch, Thread.currentThread().getId(), getLastEncodedBytes(), format(getLastCompressionRatio()),
+                    format(getCompressionRatio()));
+        }
+    }
+
+    /**
+     * @return Total number of bytes of encoded messages, over all threads
+     */
+    public long getEncodedBytes(){
+        return encodedBytes.get();
+    }
+
+    /**
+     * @return Total number of bytes of the updates before encoding, over all threads
+     */
+    public long getOriginalBytes(){
+        return originalBytes.get();
+    }
+
+    /**
+     * @return Overall compression ratio: size of the updates before encoding, divided by size of the encoded messages
+     */
+    public double getCompressionRatio(){
+        return ratio(originalBytes.get(), encodedBytes.get());
+    }
+
+    /**
+     * @return Number of bytes of the message encoded in the last iteration by the current thread, or -1 if the current
+     * thread hasn't encoded any updates yet
+     */
+    public long getLastEncodedBytes(){
+        return lastEncodedBytes.get() == null ? -1 : lastEncodedBytes.get().get();
+    }
+
+    /**
+     * @return Compression ratio in the last iteration of the current thread, or NaN if the current thread hasn't encoded
+     * any updates yet
+     */
+    public double getLastCompressionRatio(){
+        return lastEncodedBytes.get() == null ? Double.NaN : ratio(lastOriginalBytes.get().get(), lastEncodedBytes.get().get());
+    }
+
+    protected static double ratio(long original, long encoded){
+        return encoded == 0 ? Double.POSITIVE_INFINITY : original / (double) encoded;
+    }
+
     protected void logThresholdIfReq(boolean denseUpdates, int iter, int epoch){
         long now = System.currentTimeMillis();
         long lastLog = lastThresholdLogTime.get();
@@ -24,6 +24,7 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -339,6 +340,8 @@ public class IndexedTail {
                 Nd4j.getExecutioner().thresholdDecode(encoded, result);
             } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
                 Nd4j.getExecutioner().bitmapDecode(encoded, result);
+            } else if (GradientCodecs.isRegistered(encoding)) {
+                GradientCodecs.decode(encoded, result);
             } else
                 throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
         } else {
@@ -0,0 +1,446 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer / multiple consumer ring of encoded updates, usable anywhere an {@link IndexedTail} is expected.<br>
+ * Design follows the Disruptor: encoded updates are copied into a preallocated off-heap ring of fixed size slots, the
+ * producer publishes them by advancing a sequence, and every consumer (identified by thread id, as in IndexedTail)
+ * owns a cursor into that sequence. Consumers never take a shared lock: draining only reads the published sequence and
+ * the slots between the consumer's cursor and it.<br>
+ * <br>
+ * When the ring is full, the slowest consumer is a full ring behind the producer. The producer then waits for up to
+ * {@code maxWaitNanos} (backpressure), and after that collapses every lagging consumer: all updates it hasn't applied
+ * yet are decoded into a dense per-consumer array, which the consumer applies on its next drain. Without collapse
+ * (no shape available) the producer waits until the slowest consumer frees a slot.<br>
+ * Updates that can't be stored in a slot (dense updates, or encoded updates longer than {@code maxMessageLength}) are
+ * collapsed into every consumer directly.<br>
+ * <br>
+ * Calls to {@link #put(INDArray)} are serialized, so multiple producer threads are allowed, but only one of them makes
+ * progress at a time.
+ */
+@Slf4j
+public class UpdatesRingBuffer extends IndexedTail {
+    @Getter
+    protected final int capacity;
+    @Getter
+    protected final int maxMessageLength;
+    protected final long maxWaitNanos;
+    protected final int mask;
+
+    // off-heap slots, and length of the message stored in each slot
+    protected final INDArray storage;
+    protected final int[] lengths;
+
+    // next sequence to be published
+    protected final Sequence published = new Sequence(0);
+
+    protected final ConcurrentHashMap<Long, Consumer> consumers = new ConcurrentHashMap<>();
+
+    // serializes producers
+    protected final Object producerLock = new Object();
+
+    // guards collapsing and registration of consumers
+    protected final Object collapseLock = new Object();
+
+    // updates collapsed before all expected consumers were registered: late consumers start from here
+    protected INDArray baseline;
+    protected volatile long baselineSequence = 0;
+
+    /**
+     * Ring without collapse: put() blocks until the slowest consumer frees a slot
+     *
+     * @param expectedConsumers Number of consumers
+     * @param capacity          Number of slots, must be a power of 2
+     * @param maxMessageLength  Max length of an encoded update, in ints
+     */
+    public UpdatesRingBuffer(int expectedConsumers, int capacity, int maxMessageLength) {
+        this(expectedConsumers, capacity, maxMessageLength, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Ring with collapse: lagging consumers are collapsed as soon as the ring is full
+     *
+     * @param expectedConsumers Number of consumers
+     * @param capacity          Number of slots, must be a power of 2
+     * @param maxMessageLength  Max length of an encoded update, in ints
+     * @param shape             Shape of the decoded updates
+     */
+    public UpdatesRingBuffer(int expectedConsumers, int capacity, int maxMessageLength, @NonNull long[] shape) {
+        this(expectedConsumers, capacity, maxMessageLength, shape, 0);
+    }
+
+    /**
+     * @param expectedConsumers Number of consumers
+     * @param capacity          Number of slots, must be a power of 2
+     * @param maxMessageLength  Max length of an encoded update, in ints
+     * @param shape             Shape of the decoded updates. If null, lagging consumers are never collapsed
+     * @param maxWaitNanos      Max time put() waits for a free slot before lagging consumers are collapsed
+     */
+    public UpdatesRingBuffer(int expectedConsumers, int capacity, int maxMessageLength, long[] shape, long maxWaitNanos) {
+        super(expectedConsumers, shape != null, shape);
+        Preconditions.checkArgument(capacity > 0 && (capacity & (capacity - 1)) == 0, "Capacity must be a power of 2, got %s", capacity);
+        Preconditions.checkArgument(maxMessageLength > 0, "Max message length must be positive, got %s", maxMessageLength);
+        Preconditions.checkArgument(maxWaitNanos >= 0, "Max wait time can't be negative, got %s", maxWaitNanos);
+        this.capacity = capacity;
+        this.maxMessageLength = maxMessageLength;
+        this.maxWaitNanos = maxWaitNanos;
+        this.mask = capacity - 1;
+        this.lengths = new int[capacity];
+        this.storage = Nd4j.createUninitializedDetached(DataType.INT32, (long) capacity * maxMessageLength);
+    }
+
+    /**
+     * @return Size of the preallocated off-heap storage, in bytes
+     */
+    public long getStorageBytes() {
+        return (long) capacity * maxMessageLength * DataType.INT32.width();
+    }
+
+    @Override
+    public void put(@NonNull INDArray update) {
+        synchronized (producerLock) {
+            if (!fitsSlot(update)) {
+                Preconditions.checkState(allowCollapse, "Update of type %s and length %s doesn't fit into a slot of %s ints, and collapse isn't allowed",
+                        update.dataType(), update.length(), maxMessageLength);
+                collapseIntoAll(update);
+                return;
+            }
+
+            long sequence = published.get();
+            if (!awaitSlot(sequence))
+                return;
+
+            int slot = (int) (sequence & mask);
+            int length = (int) update.length();
+            slotView(slot, length).assign(update.reshape(length));
+            lengths[slot] = length;
+
+            // volatile write publishes both the slot contents and its length
+            published.set(sequence + 1);
+        }
+    }
+
+    protected boolean fitsSlot(INDArray update) {
+        return !update.isCompressed() && update.dataType() == DataType.INT32 && update.length() <= maxMessageLength;
+    }
+
+    protected INDArray slotView(int slot, int length) {
+        return Nd4j.create(storage.data(), new long[]{length}, new long[]{1}, (long) slot * maxMessageLength, 'c', DataType.INT32);
+    }
+
+    /**
+     * Waits until slot for the given sequence isn't needed by any consumer anymore, collapsing lagging consumers if allowed
+     *
+     * @return false if the ring was marked dead while waiting
+     */
+    protected boolean awaitSlot(long sequence) {
+        long wrapPoint = sequence - capacity;
+        if (wrapPoint < 0 || gatingSequence() > wrapPoint)
+            return true;
+
+        long start = System.nanoTime();
+        while (gatingSequence() <= wrapPoint) {
+            if (isDead())
+                return false;
+
+            if (allowCollapse && System.nanoTime() - start >= maxWaitNanos) {
+                collapseLagging(wrapPoint, sequence);
+            } else {
+                LockSupport.parkNanos(1000L);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Smallest sequence that is still required by any consumer, including consumers not registered yet
+     */
+    protected long gatingSequence() {
+        long min = consumers.size() < expectedConsumers ? baselineSequence : Long.MAX_VALUE;
+        for (Consumer c : consumers.values()) {
+            min = Math.min(min, c.cursor.get());
+        }
+        return min;
+    }
+
+    /**
+     * Decodes all updates below the given sequence into every consumer that hasn't applied the given wrap point yet
+     */
+    protected void collapseLagging(long wrapPoint, long sequence) {
+        synchronized (collapseLock) {
+            for (Consumer c : consumers.values()) {
+                if (c.cursor.get() > wrapPoint)
+                    continue;
+
+                c.lock();
+                try {
+                    long cursor = c.cursor.get();
+                    if (cursor > wrapPoint)
+                        continue;
+
+                    log.trace("Collapsing consumer [{}]: <{}...{}>", c.threadId, cursor, sequence);
+                    INDArray target = c.collapsed();
+                    for (long s = cursor; s < sequence; s++) {
+                        decodeSlot(s, target);
+                    }
+                    c.hasCollapsed = true;
+                    c.cursor.set(sequence);
+                } finally {
+                    c.unlock();
+                }
+            }
+
+            if (consumers.size() < expectedConsumers && baselineSequence <= wrapPoint) {
+                INDArray target = baseline();
+                for (long s = baselineSequence; s < sequence; s++) {
+                    decodeSlot(s, target);
+                }
+                baselineSequence = sequence;
+            }
+        }
+    }
+
+    protected void collapseIntoAll(INDArray update) {
+        synchronized (collapseLock) {
+            for (Consumer c : consumers.values()) {
+                c.lock();
+                try {
+                    smartDecompress(update, c.collapsed());
+                    c.hasCollapsed = true;
+                } finally {
+                    c.unlock();
+                }
+            }
+
+            if (consumers.size() < expectedConsumers)
+                smartDecompress(update, baseline());
+        }
+    }
+
+    protected void decodeSlot(long sequence, INDArray target) {
+        int slot = (int) (sequence & mask);
+        smartDecompress(slotView(slot, lengths[slot]), target);
+    }
+
+    protected INDArray baseline() {
+        if (baseline == null)
+            baseline = createDense();
+        return baseline;
+    }
+
+    protected INDArray createDense() {
+        try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            return Nd4j.create(shape);
+        }
+    }
+
+    protected Consumer consumer(long threadId) {
+        Consumer c = consumers.get(threadId);
+        if (c != null)
+            return c;
+
+        synchronized (collapseLock) {
+            c = consumers.get(threadId);
+            if (c == null) {
+                if (consumers.size() < expectedConsumers) {
+                    // the ring kept everything since the baseline for this consumer
+                    c = new Consumer(threadId, baselineSequence);
+                    if (baseline != null) {
+                        c.collapsed().assign(baseline);
+                        c.hasCollapsed = true;
+                    }
+                } else {
+                    // consumer beyond the expected number: older slots may already be reused
+                    c = new Consumer(threadId, published.get());
+                }
+                consumers.put(threadId, c);
+
+                // every consumer has now seen the updates collapsed so far
+                if (consumers.size() >= expectedConsumers)
+                    baseline = null;
+            }
+            return c;
+        }
+    }
+
+    @Override
+    public boolean hasAnything(long threadId) {
+        Consumer c = consumer(threadId);
+        return c.hasCollapsed || c.cursor.get() < published.get();
+    }
+
+    @Override
+    public boolean drainTo(long threadId, @NonNull INDArray array) {
+        Consumer c = consumer(threadId);
+        boolean applied = false;
+        c.lock();
+        try {
+            if (c.hasCollapsed) {
+                array.addi(c.collapsed);
+                Nd4j.getMemoryManager().memset(c.collapsed);
+                c.hasCollapsed = false;
+                applied = true;
+            }
+
+            long cursor = c.cursor.get();
+            long end = published.get();
+            for (long s = cursor; s < end; s++) {
+                decodeSlot(s, array);
+            }
+            c.cursor.set(end);
+
+            return applied || end > cursor;
+        } finally {
+            c.unlock();
+        }
+    }
+
+    @Override
+    protected long getGlobalPosition() {
+        return published.get();
+    }
+
+    @Override
+    protected long getLocalPosition(long threadId) {
+        return consumer(threadId).cursor.get();
+    }
+
+    @Override
+    public long getDelta(long threadId) {
+        Consumer c = consumer(threadId);
+        return published.get() - c.cursor.get() + (c.hasCollapsed ? 1 : 0);
+    }
+
+    @Override
+    public long firstNotAppliedIndexEverywhere() {
+        if (published.get() == 0)
+            return -1;
+
+        long maxIdx = -1;
+        for (Consumer c : consumers.values()) {
+            maxIdx = Math.max(maxIdx, c.cursor.get());
+        }
+        return maxIdx + 1;
+    }
+
+    @Override
+    public long maxAppliedIndexEverywhere() {
+        long minIdx = Long.MAX_VALUE;
+        for (Consumer c : consumers.values()) {
+            minIdx = Math.min(minIdx, c.cursor.get());
+        }
+        return minIdx;
+    }
+
+    /**
+     * Slots are reused in place, so there's nothing to clean up
+     */
+    @Override
+    public void maintenance() {
+        // no-op
+    }
+
+    /**
+     * @return Number of updates stored in the ring that weren't applied by all consumers yet
+     */
+    @Override
+    public int updatesSize() {
+        return (int) (published.get() - Math.min(gatingSequence(), published.get()));
+    }
+
+    @Override
+    public void purge() {
+        synchronized (producerLock) {
+            synchronized (collapseLock) {
+                consumers.clear();
+                published.set(0);
+                baseline = null;
+                baselineSequence = 0;
+            }
+        }
+    }
+
+    /**
+     * Sequence padded to its own cache line, so that cursors of different consumers don't share one
+     */
+    protected static class Sequence {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+        protected volatile long value;
+        protected long p9, p10, p11, p12, p13, p14, p15;
+
+        protected Sequence(long initial) {
+            this.value = initial;
+        }
+
+        protected long get() {
+            return value;
+        }
+
+        protected void set(long value) {
+            this.value = value;
+        }
+    }
+
+    protected class Consumer {
+        protected final long threadId;
+        protected final Sequence cursor;
+        // held by the consumer while draining, and by the producer while collapsing this consumer
+        protected final AtomicBoolean busy = new AtomicBoolean(false);
+        protected INDArray collapsed;
+        protected volatile boolean hasCollapsed;
+
+        protected Consumer(long threadId, long cursor) {
+            this.threadId = threadId;
+            this.cursor = new Sequence(cursor);
+        }
+
+        protected INDArray collapsed() {
+            if (collapsed == null)
+                collapsed = createDense();
+            return collapsed;
+        }
+
+        protected void lock() {
+            while (!busy.compareAndSet(false, true)) {
+                Thread.yield();
+            }
+        }
+
+        protected void unlock() {
+            busy.set(false);
+        }
+    }
+}
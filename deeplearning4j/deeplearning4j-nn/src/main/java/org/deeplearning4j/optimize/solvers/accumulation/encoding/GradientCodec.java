@@ -0,0 +1,75 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+
+/**
+ * A GradientCodec is an alternative to threshold encoding (see {@link ThresholdAlgorithm}) for compressing the updates
+ * shared between workers by {@link org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler}.<br>
+ * Codecs use error feedback: whatever is not transmitted in one iteration stays in the residual, and is added to the
+ * updates of the next iteration.<br>
+ * Encoded messages are INT32 arrays with a 4 element header: [codec specific value, original length, codec specific
+ * value, encoding type], followed by the codec payload. Header index 3 is the same as for threshold and bitmap encoding
+ * (see {@link org.nd4j.linalg.compression.ThresholdCompression}), which is how receivers select the decoder.
+ * Decoding must depend only on the message, not on codec state - see {@link GradientCodecs}.
+ */
+public interface GradientCodec extends Serializable {
+
+    /**
+     * Encode the updates. The encoded (transmitted) values must be subtracted in-place from updatesPlusResidual:
+     * what is left is the residual for the next iteration
+     *
+     * @param iteration           Current neural network training iteration
+     * @param epoch               Current neural network training epoch
+     * @param updatesPlusResidual Updates plus residual from previous iterations. Modified in-place
+     * @return Encoded message, or null if there is nothing to send
+     */
+    INDArray encode(int iteration, int epoch, INDArray updatesPlusResidual);
+
+    /**
+     * Decode the encoded message, and add the decoded values to the target array
+     *
+     * @param encoded Encoded message, as returned by {@link #encode(int, int, INDArray)}
+     * @param target  Array to add the decoded updates to
+     */
+    void decode(INDArray encoded, INDArray target);
+
+    /**
+     * @return Encoding type stored at header index 3 of each encoded message. Must be unique for each codec type, and
+     * must not be one of the values used by {@link org.nd4j.linalg.compression.ThresholdCompression}
+     */
+    int encodingType();
+
+    /**
+     * @param length Number of elements in the updates array
+     * @return Maximum length (number of INT32 elements, including the header) of an encoded message
+     */
+    long maxEncodedLength(long length);
+
+    /**
+     * @return A clone of the current codec
+     */
+    GradientCodec clone();
+}
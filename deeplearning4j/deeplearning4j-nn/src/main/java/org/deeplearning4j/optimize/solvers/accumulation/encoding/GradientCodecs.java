@@ -0,0 +1,87 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding;
+
+import lombok.NonNull;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.QsgdGradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.SignGradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.TopKGradientCodec;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.ThresholdCompression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link GradientCodec} decoders, by encoding type (header index 3 of encoded messages).<br>
+ * The built-in codecs are always registered. Custom codecs are registered when an
+ * {@link org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler} is created for them, or via
+ * {@link #register(GradientCodec)}.
+ */
+public class GradientCodecs {
+    public static final int TOPK_ENCODING = 2;
+    public static final int SIGN_ENCODING = 3;
+    public static final int QSGD_ENCODING = 4;
+
+    private static final Map<Integer, GradientCodec> decoders = new ConcurrentHashMap<>();
+
+    static {
+        register(new TopKGradientCodec(0.01));
+        register(new SignGradientCodec());
+        register(new QsgdGradientCodec(4));
+    }
+
+    private GradientCodecs() {
+    }
+
+    /**
+     * Register the specified codec for decoding messages of its encoding type
+     */
+    public static void register(@NonNull GradientCodec codec) {
+        int type = codec.encodingType();
+        Preconditions.checkArgument(type != ThresholdCompression.FLEXIBLE_ENCODING && type != ThresholdCompression.BITMAP_ENCODING,
+                "Encoding type %s of codec %s is reserved for threshold encoding", type, codec.getClass().getSimpleName());
+        GradientCodec existing = decoders.putIfAbsent(type, codec);
+        Preconditions.checkArgument(existing == null || existing.getClass() == codec.getClass(),
+                "Encoding type %s of codec %s is already used by %s", type, codec.getClass().getSimpleName(),
+                existing == null ? null : existing.getClass().getSimpleName());
+    }
+
+    /**
+     * @return True if a codec is registered for the specified encoding type
+     */
+    public static boolean isRegistered(int encodingType) {
+        return decoders.containsKey(encodingType);
+    }
+
+    /**
+     * Decode the encoded message with the codec registered for its encoding type, and add the decoded values to the
+     * target array
+     */
+    public static void decode(@NonNull INDArray encoded, @NonNull INDArray target) {
+        int type = encoded.data().getInt(3);
+        GradientCodec codec = decoders.get(type);
+        Preconditions.checkState(codec != null, "No gradient codec registered for encoding type %s", type);
+        codec.decode(encoded, target);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Base class for {@link GradientCodec}s that work on the flattened (c order) updates array.<br>
+ * Subclasses encode the values into an INT32 message, and at the same time write the values the receivers will decode
+ * into a dense array - that array is then subtracted from the updates, which implements the error feedback.
+ */
+public abstract class BaseGradientCodec implements GradientCodec {
+    public static final int HEADER_LENGTH = 4;
+
+    @Override
+    public INDArray encode(int iteration, int epoch, INDArray updatesPlusResidual) {
+        float[] values = toFloatArray(updatesPlusResidual);
+        float[] decoded = new float[values.length];
+        int[] message = encode(values, decoded);
+        if (message == null)
+            return null;
+
+        // castTo is a no-op for FLOAT updates
+        updatesPlusResidual.subi(Nd4j.create(decoded, updatesPlusResidual.shape(), 'c').castTo(updatesPlusResidual.dataType()));
+        return Nd4j.createFromArray(message);
+    }
+
+    @Override
+    public void decode(INDArray encoded, INDArray target) {
+        int[] message = readMessage(encoded, target);
+        float[] decoded = new float[message[1]];
+        decode(message, decoded);
+        target.addi(Nd4j.create(decoded, target.shape(), 'c').castTo(target.dataType()));
+    }
+
+    /**
+     * Encode the values
+     *
+     * @param values  Values to encode
+     * @param decoded Output: the values the receivers will get after decoding the message. Initially all zeros
+     * @return The encoded message including the header, or null if there is nothing to send
+     */
+    protected abstract int[] encode(float[] values, float[] decoded);
+
+    /**
+     * Decode the message
+     *
+     * @param message Encoded message, including the header
+     * @param decoded Output: the decoded values. Initially all zeros
+     */
+    protected abstract void decode(int[] message, float[] decoded);
+
+    /**
+     * @return The values of the array in c order. This is a single copy of the array's buffer for FLOAT arrays that
+     * are contiguous in c order
+     */
+    protected static float[] toFloatArray(INDArray arr) {
+        INDArray values = arr.castTo(DataType.FLOAT);
+        if (flatView(values) == null || values.data().offset() != 0 || values.data().length() != values.length())
+            values = values.dup('c');
+        return values.data().asFloat();
+    }
+
+    /**
+     * @return A rank 1 view of all elements of the array in c order, or null if the array is not contiguous in c order
+     */
+    protected static INDArray flatView(INDArray arr) {
+        if (arr.ordering() != 'c' || !Shape.hasDefaultStridesForShape(arr))
+            return null;
+        return arr.rank() == 1 ? arr : arr.reshape('c', arr.length());
+    }
+
+    protected int[] readMessage(INDArray encoded, INDArray target) {
+        int[] message = encoded.toIntVector();
+        Preconditions.checkArgument(message.length >= HEADER_LENGTH && message[3] == encodingType(),
+                "Message is not encoded with %s", getClass().getSimpleName());
+        Preconditions.checkArgument(message[1] == target.length(), "Message was encoded for %s elements, target has %s elements",
+                message[1], target.length());
+        return message;
+    }
+
+    protected int[] header(int payloadLength, int first, int length, float scale) {
+        int[] message = new int[HEADER_LENGTH + payloadLength];
+        message[0] = first;
+        message[1] = length;
+        message[2] = Float.floatToIntBits(scale);
+        message[3] = encodingType();
+        return message;
+    }
+
+    @Override
+    public abstract BaseGradientCodec clone();
+}
@@ -0,0 +1,143 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.Random;
+
+/**
+ * QSGD stochastic quantization: each update is sent as a sign and one of 2^bits - 1 levels of the L2 norm of all
+ * updates. Values are rounded to one of the two nearest levels at random, so that the decoded value is unbiased.
+ * See <a href="https://arxiv.org/abs/1610.02132">QSGD: Communication-Efficient SGD via Gradient Quantization and
+ * Encoding</a>. The quantization error stays in the residual.<br>
+ * Message format: header [bits, original length, L2 norm, {@link GradientCodecs#QSGD_ENCODING}], then bits + 1 bits
+ * per update (sign in the lowest bit, then the level), packed into words.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false, exclude = "rng")
+@ToString(exclude = "rng")
+public class QsgdGradientCodec extends BaseGradientCodec {
+
+    private final int bits;
+    private final Random rng;
+
+    /**
+     * @param bits Number of bits for the quantization level of each update, in range 1 to 16. The number of
+     *             quantization levels is 2^bits - 1
+     */
+    public QsgdGradientCodec(int bits) {
+        this(bits, new Random().nextLong());
+    }
+
+    /**
+     * @param bits Number of bits for the quantization level of each update, in range 1 to 16
+     * @param seed Seed for the random rounding
+     */
+    public QsgdGradientCodec(int bits, long seed) {
+        Preconditions.checkArgument(bits >= 1 && bits <= 16, "Bits must be in range 1 to 16, got %s", bits);
+        this.bits = bits;
+        this.rng = new Random(seed);
+    }
+
+    @Override
+    protected int[] encode(float[] values, float[] decoded) {
+        double sumSq = 0.0;
+        for (float v : values)
+            sumSq += (double) v * v;
+        float norm = (float) Math.sqrt(sumSq);
+        if (norm == 0.0f)
+            return null;
+
+        int levels = (1 << bits) - 1;
+        int width = bits + 1;
+        int words = (int) (((long) values.length * width + 31) / 32);
+        int[] message = header(words, bits, values.length, norm);
+        for (int i = 0; i < values.length; i++) {
+            double r = Math.abs(values[i]) / norm * levels;
+            int level = (int) r;
+            if (rng.nextDouble() < r - level)
+                level++;
+            level = Math.min(level, levels);
+            boolean negative = values[i] < 0;
+
+            write(message, i, width, (level << 1) | (negative ? 1 : 0));
+            decoded[i] = value(norm, level, levels, negative);
+        }
+        return message;
+    }
+
+    @Override
+    protected void decode(int[] message, float[] decoded) {
+        int levels = (1 << message[0]) - 1;
+        int width = message[0] + 1;
+        float norm = Float.intBitsToFloat(message[2]);
+        for (int i = 0; i < decoded.length; i++) {
+            int code = read(message, i, width);
+            decoded[i] = value(norm, code >>> 1, levels, (code & 1) != 0);
+        }
+    }
+
+    protected static float value(float norm, int level, int levels, boolean negative) {
+        float v = norm * level / levels;
+        return negative ? -v : v;
+    }
+
+    protected static void write(int[] message, int i, int width, int code) {
+        long pos = (long) i * width;
+        int word = HEADER_LENGTH + (int) (pos >>> 5);
+        int offset = (int) (pos & 31);
+        message[word] |= code << offset;
+        if (offset + width > 32)
+            message[word + 1] |= code >>> (32 - offset);
+    }
+
+    protected static int read(int[] message, int i, int width) {
+        long pos = (long) i * width;
+        int word = HEADER_LENGTH + (int) (pos >>> 5);
+        int offset = (int) (pos & 31);
+        int code = message[word] >>> offset;
+        if (offset + width > 32)
+            code |= message[word + 1] << (32 - offset);
+        return code & ((1 << width) - 1);
+    }
+
+    @Override
+    public int encodingType() {
+        return GradientCodecs.QSGD_ENCODING;
+    }
+
+    @Override
+    public long maxEncodedLength(long length) {
+        return HEADER_LENGTH + (length * (bits + 1) + 31) / 32;
+    }
+
+    @Override
+    public QsgdGradientCodec clone() {
+        // each clone gets its own random stream
+        return new QsgdGradientCodec(bits, rng.nextLong());
+    }
+}
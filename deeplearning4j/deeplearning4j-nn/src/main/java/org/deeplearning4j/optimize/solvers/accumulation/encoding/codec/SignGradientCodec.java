@@ -0,0 +1,80 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import lombok.Data;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
+
+/**
+ * 1-bit (signSGD) compression with scaling: each update is sent as its sign only, and decoded as +/- the mean
+ * magnitude of all updates. With error feedback, this is the "EF-SignSGD" scheme: the quantization error stays in the
+ * residual and is sent in later iterations.<br>
+ * Message format: header [number of words, original length, scale, {@link GradientCodecs#SIGN_ENCODING}], then one
+ * bit per update (set for negative values), 32 updates per word.
+ */
+@Data
+public class SignGradientCodec extends BaseGradientCodec {
+
+    @Override
+    protected int[] encode(float[] values, float[] decoded) {
+        double sum = 0.0;
+        for (float v : values)
+            sum += Math.abs(v);
+        float scale = (float) (sum / values.length);
+        if (scale == 0.0f)
+            return null;
+
+        int words = (values.length + 31) / 32;
+        int[] message = header(words, words, values.length, scale);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] < 0) {
+                message[HEADER_LENGTH + (i >>> 5)] |= 1 << (i & 31);
+                decoded[i] = -scale;
+            } else {
+                decoded[i] = scale;
+            }
+        }
+        return message;
+    }
+
+    @Override
+    protected void decode(int[] message, float[] decoded) {
+        float scale = Float.intBitsToFloat(message[2]);
+        for (int i = 0; i < decoded.length; i++)
+            decoded[i] = (message[HEADER_LENGTH + (i >>> 5)] & (1 << (i & 31))) != 0 ? -scale : scale;
+    }
+
+    @Override
+    public int encodingType() {
+        return GradientCodecs.SIGN_ENCODING;
+    }
+
+    @Override
+    public long maxEncodedLength(long length) {
+        return HEADER_LENGTH + (length + 31) / 32;
+    }
+
+    @Override
+    public SignGradientCodec clone() {
+        return new SignGradientCodec();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.codec;
+
+import lombok.Data;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Top-k sparsification: each message contains the indices and exact values of the k updates with the largest
+ * magnitude, where k is a fixed fraction of the number of parameters. All other values stay in the residual.<br>
+ * Message format: header [k, original length, k-th largest magnitude, {@link GradientCodecs#TOPK_ENCODING}],
+ * then k indices (in increasing order), then the k values as float bits.<br>
+ * As only k values change, both the error feedback on encoding and decoding are done as a native scatter of the k
+ * values, in place, for arrays that are contiguous in c order.
+ */
+@Data
+public class TopKGradientCodec extends BaseGradientCodec {
+
+    private final double ratio;
+
+    /**
+     * @param ratio Fraction of the updates to send in each message, in range (0, 1]. For example, 0.01 sends the
+     *              largest 1% of the updates
+     */
+    public TopKGradientCodec(double ratio) {
+        Preconditions.checkArgument(ratio > 0 && ratio <= 1, "Ratio must be in range (0, 1], got %s", ratio);
+        this.ratio = ratio;
+    }
+
+    /**
+     * @return Number of values sent per message, for updates of the specified length
+     */
+    public int numElements(long length) {
+        return (int) Math.max(1, Math.min(length, Math.ceil(ratio * length)));
+    }
+
+    @Override
+    public INDArray encode(int iteration, int epoch, INDArray updatesPlusResidual) {
+        INDArray flat = flatView(updatesPlusResidual);
+        if (flat == null)
+            return super.encode(iteration, epoch, updatesPlusResidual);
+
+        // no dense array of decoded values: the sent values are subtracted from the updates directly
+        int[] message = encode(toFloatArray(updatesPlusResidual), null);
+        if (message == null)
+            return null;
+        scatter("scatter_sub", flat, message);
+        return Nd4j.createFromArray(message);
+    }
+
+    @Override
+    protected int[] encode(float[] values, float[] decoded) {
+        int k = numElements(values.length);
+        float[] abs = new float[values.length];
+        for (int i = 0; i < values.length; i++)
+            abs[i] = Math.abs(values[i]);
+        float threshold = select(abs, values.length - k);
+
+        // at most k - 1 values are strictly larger than the k-th largest: fill the rest with ties, but never send zeros
+        int[] indices = new int[k];
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (Math.abs(values[i]) > threshold)
+                indices[count++] = i;
+        }
+        if (threshold > 0) {
+            for (int i = 0; i < values.length && count < k; i++) {
+                if (Math.abs(values[i]) == threshold)
+                    indices[count++] = i;
+            }
+            Arrays.sort(indices, 0, count);
+        }
+        if (count == 0)
+            return null;
+
+        int[] message = header(2 * count, count, values.length, threshold);
+        for (int j = 0; j < count; j++) {
+            int idx = indices[j];
+            message[HEADER_LENGTH + j] = idx;
+            message[HEADER_LENGTH + count + j] = Float.floatToIntBits(values[idx]);
+            if (decoded != null)
+                decoded[idx] = values[idx];
+        }
+        return message;
+    }
+
+    @Override
+    protected void decode(int[] message, float[] decoded) {
+        int count = message[0];
+        for (int j = 0; j < count; j++)
+            decoded[message[HEADER_LENGTH + j]] += Float.intBitsToFloat(message[HEADER_LENGTH + count + j]);
+    }
+
+    @Override
+    public void decode(INDArray encoded, INDArray target) {
+        INDArray flat = flatView(target);
+        if (flat == null) {
+            super.decode(encoded, target);
+            return;
+        }
+
+        // sparse update in place, no need to decode into a dense array first
+        scatter("scatter_add", flat, readMessage(encoded, target));
+    }
+
+    /**
+     * Apply the k values of the message to the flat array, in place, with the specified native scatter op
+     */
+    protected static void scatter(String opName, INDArray flat, int[] message) {
+        int count = message[0];
+        INDArray indices = Nd4j.createFromArray(Arrays.copyOfRange(message, HEADER_LENGTH, HEADER_LENGTH + count));
+        float[] values = new float[count];
+        for (int j = 0; j < count; j++)
+            values[j] = Float.intBitsToFloat(message[HEADER_LENGTH + count + j]);
+        INDArray updates = Nd4j.createFromArray(values).castTo(flat.dataType());
+
+        Nd4j.exec(DynamicCustomOp.builder(opName)
+                .addInputs(flat, indices, updates)
+                .addOutputs(flat)
+                .build());
+    }
+
+    /**
+     * Quickselect: partially sorts the array, and returns the element that would be at the specified position if it
+     * was fully sorted
+     */
+    protected static float select(float[] a, int position) {
+        int left = 0;
+        int right = a.length - 1;
+        while (right > left) {
+            float pivot = a[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (a[i] < pivot)
+                    i++;
+                while (a[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    float t = a[i];
+                    a[i++] = a[j];
+                    a[j--] = t;
+                }
+            }
+            if (position <= j)
+                right = j;
+            else if (position >= i)
+                left = i;
+            else
+                break;
+        }
+        return a[position];
+    }
+
+    @Override
+    public int encodingType() {
+        return GradientCodecs.TOPK_ENCODING;
+    }
+
+    @Override
+    public long maxEncodedLength(long length) {
+        return HEADER_LENGTH + 2L * numElements(length);
+    }
+
+    @Override
+    public TopKGradientCodec clone() {
+        return new TopKGradientCodec(ratio);
+    }
+}
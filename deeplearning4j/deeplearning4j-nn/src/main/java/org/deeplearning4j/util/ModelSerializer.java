@@ -27,6 +27,8 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Updater;
@@ -35,6 +37,10 @@ import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.pointers.ByteBufferPointer;
+import org.nd4j.linalg.api.memory.pointers.PagedPointer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.preprocessor.DataNormalization;
@@ -42,10 +48,17 @@ import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
 import org.nd4j.linalg.dataset.api.preprocessor.serializer.NormalizerSerializer;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.heartbeat.reports.Task;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.common.primitives.Pair;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -65,6 +78,17 @@ public class ModelSerializer {
     public static final String NO_PARAMS_MARKER = "noParams.marker";
     public static final String PREPROCESSOR_BIN = "preprocessor.bin";
 
+    /**
+     * Magic bytes at the start of the footer and the end of the file, for the memory-mappable format written by
+     * {@link #writeModelMapped(Model, File)}
+     */
+    private static final byte[] MAPPED_MODEL_MAGIC = "DL4JMMAP".getBytes(StandardCharsets.US_ASCII);
+    public static final int MAPPED_MODEL_VERSION = 1;
+    public static final int MAPPED_MODEL_ALIGNMENT = 4096;
+    private static final long MAPPED_WRITE_CHUNK = 1 << 26;
+    //Chunk size for copying the parameters of mapped models that can't be mapped copy-on-write
+    private static final long MAPPED_MODEL_COPY_CHUNK = 1L << 30;
+
     private ModelSerializer() {}
 
     /**
@@ -647,6 +671,212 @@ public class ModelSerializer {
     	return restoreComputationGraph(new FileInputStream(file), loadUpdater);
     }
 
+    /**
+     * Write a model to a file in the uncompressed, memory-mappable format.<br>
+     * The flattened parameters are written first, as raw data in native byte order starting at offset 0 of the file
+     * (and hence page aligned). The configuration and other metadata follow, padded to start at a page boundary.
+     * Models written with this method can be loaded with {@link #restoreMultiLayerNetworkMapped(File)} and
+     * {@link #restoreComputationGraphMapped(File)} without copying the parameters.<br>
+     * Note that the updater state and normalizers are not saved in this format.
+     *
+     * @param model the model to write
+     * @param file  the file to write to
+     * @throws IOException
+     */
+    public static void writeModelMapped(@NonNull Model model, @NonNull File file) throws IOException {
+        String json;
+        String type;
+        if (model instanceof MultiLayerNetwork) {
+            json = ((MultiLayerNetwork) model).getLayerWiseConfigurations().toJson();
+            type = MultiLayerNetwork.class.getSimpleName();
+        } else if (model instanceof ComputationGraph) {
+            json = ((ComputationGraph) model).getConfiguration().toJson();
+            type = ComputationGraph.class.getSimpleName();
+        } else {
+            throw new IllegalArgumentException("Only MultiLayerNetwork and ComputationGraph models are supported, got "
+                    + model.getClass().getName());
+        }
+
+        INDArray params = model.params();
+        long numParams = params == null ? 0 : params.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            if (numParams > 0) {
+                try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                    INDArray flat = params.reshape('c', numParams);
+                    long width = params.dataType().width();
+                    for (long start = 0; start < numParams; start += MAPPED_WRITE_CHUNK) {
+                        long end = Math.min(numParams, start + MAPPED_WRITE_CHUNK);
+                        INDArray chunk = flat.get(NDArrayIndex.interval(start, end)).dup('c');
+                        ByteBuffer bb = chunk.data().asNio().duplicate();
+                        bb.clear();
+                        bb.limit((int) ((end - start) * width));
+                        while (bb.hasRemaining()) {
+                            channel.write(bb);
+                        }
+                    }
+                }
+            }
+
+            long footerOffset = alignUp(channel.position(), MAPPED_MODEL_ALIGNMENT);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (DataOutputStream dos = new DataOutputStream(bos)) {
+                byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+                dos.write(MAPPED_MODEL_MAGIC);
+                dos.writeInt(MAPPED_MODEL_VERSION);
+                dos.writeUTF(type);
+                dos.writeUTF(params == null ? "" : params.dataType().name());
+                dos.writeLong(numParams);
+                dos.writeUTF(ByteOrder.nativeOrder().toString());
+                dos.writeInt(jsonBytes.length);
+                dos.write(jsonBytes);
+                dos.writeLong(footerOffset);
+                dos.write(MAPPED_MODEL_MAGIC);
+            }
+            ByteBuffer footer = ByteBuffer.wrap(bos.toByteArray());
+            channel.position(footerOffset);
+            while (footer.hasRemaining()) {
+                channel.write(footer);
+            }
+        }
+    }
+
+    /**
+     * Load a MultiLayerNetwork written by {@link #writeModelMapped(Model, File)}.<br>
+     * On CPU, the parameters are not read into memory: the file is memory mapped, and the network's flattened
+     * parameters array is a view of the mapped file. Pages are loaded on first access, and are shared with any other
+     * process that maps the same file.<br>
+     * The mapping is copy-on-write: changes to the parameters (for example, by fitting the network) are never written
+     * to the file - modified pages are copied into this process' memory instead. Parameters larger than 2GB, and
+     * files that aren't writable (which copy-on-write mapping requires), are copied into a regular array, as are the
+     * parameters on other backends.
+     *
+     * @param file the file to load from
+     * @return the loaded multi layer network
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetworkMapped(@NonNull File file) throws IOException {
+        MappedModel m = readMappedModel(file, MultiLayerNetwork.class.getSimpleName());
+        MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(m.json);
+        if (m.params != null)
+            conf.setDataType(m.params.dataType());
+        MultiLayerNetwork network = new MultiLayerNetwork(conf);
+        network.init(m.params, false);
+        return network;
+    }
+
+    /**
+     * Load a ComputationGraph written by {@link #writeModelMapped(Model, File)}.<br>
+     * See {@link #restoreMultiLayerNetworkMapped(File)} for details.
+     *
+     * @param file the file to load from
+     * @return the loaded computation graph
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraphMapped(@NonNull File file) throws IOException {
+        MappedModel m = readMappedModel(file, ComputationGraph.class.getSimpleName());
+        ComputationGraphConfiguration conf = ComputationGraphConfiguration.fromJson(m.json);
+        if (m.params != null)
+            conf.setDataType(m.params.dataType());
+        ComputationGraph network = new ComputationGraph(conf);
+        network.init(m.params, false);
+        return network;
+    }
+
+    /**
+     * @return True if the file is in the memory-mappable format written by {@link #writeModelMapped(Model, File)}
+     */
+    public static boolean isMappedModel(@NonNull File file) {
+        if (!file.isFile() || file.length() < MAPPED_MODEL_MAGIC.length + 8)
+            return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - MAPPED_MODEL_MAGIC.length);
+            byte[] magic = new byte[MAPPED_MODEL_MAGIC.length];
+            raf.readFully(magic);
+            return Arrays.equals(magic, MAPPED_MODEL_MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class MappedModel {
+        private String json;
+        private INDArray params;
+    }
+
+    private static MappedModel readMappedModel(File file, String expectedType) throws IOException {
+        Preconditions.checkState(isMappedModel(file), "File %s is not a memory-mappable model file written by " +
+                "ModelSerializer.writeModelMapped", file);
+
+        MappedModel out = new MappedModel();
+        DataType dataType = null;
+        long numParams;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - MAPPED_MODEL_MAGIC.length - 8);
+            long footerOffset = raf.readLong();
+            raf.seek(footerOffset + MAPPED_MODEL_MAGIC.length);
+            int version = raf.readInt();
+            if (version > MAPPED_MODEL_VERSION)
+                throw new IllegalStateException("Unsupported memory-mapped model format version " + version
+                        + ", this version of DL4J supports up to version " + MAPPED_MODEL_VERSION);
+            String type = raf.readUTF();
+            if (!expectedType.equals(type))
+                throw new IllegalStateException("Expected a " + expectedType + " model, but file " + file
+                        + " contains a " + type + " - use ModelSerializer.restore" + type + "Mapped instead");
+            String dt = raf.readUTF();
+            if (!dt.isEmpty())
+                dataType = DataType.valueOf(dt);
+            numParams = raf.readLong();
+            String byteOrder = raf.readUTF();
+            if (numParams > 0 && !ByteOrder.nativeOrder().toString().equals(byteOrder))
+                throw new IllegalStateException("Memory-mapped model file " + file + " was written with byte order " +
+                        byteOrder + ", but native byte order is " + ByteOrder.nativeOrder());
+            byte[] json = new byte[raf.readInt()];
+            raf.readFully(json);
+            out.json = new String(json, StandardCharsets.UTF_8);
+        }
+
+        if (numParams > 0) {
+            long bytes = numParams * dataType.width();
+            if (Nd4j.getEnvironment().isCPU() && bytes <= Integer.MAX_VALUE && file.canWrite()) {
+                //Copy-on-write mapping: changes to the parameters (for example, by fitting the network) are private to
+                // this process and never written to the file. PRIVATE mode requires a channel opened for writing
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                    ByteBuffer bb = channel.map(FileChannel.MapMode.PRIVATE, 0, bytes).order(ByteOrder.nativeOrder());
+                    //The mapping stays valid after the channel is closed, for as long as the parameters array uses it
+                    out.params = Nd4j.create(Nd4j.createBuffer(new ByteBufferPointer(bb), numParams, dataType), 1, numParams);
+                }
+            } else if (Nd4j.getEnvironment().isCPU()) {
+                log.warn("Parameters of memory-mapped model {} are larger than 2GB or the file is read-only - parameters will be copied", file);
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    out.params = Nd4j.createUninitializedDetached(dataType, 1, numParams);
+                    Pointer params = out.params.data().addressPointer();
+                    for (long pos = 0; pos < bytes; pos += MAPPED_MODEL_COPY_CHUNK) {
+                        long n = Math.min(MAPPED_MODEL_COPY_CHUNK, bytes - pos);
+                        ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, pos, n);
+                        Pointer.memcpy(new PagedPointer(params, bytes - pos, pos), new BytePointer(bb), n);
+                    }
+                }
+            } else {
+                Preconditions.checkState(bytes <= Integer.MAX_VALUE, "Memory-mapped models " +
+                        "larger than 2GB can only be loaded on CPU");
+                log.warn("Memory mapped model loading is only supported on CPU - parameters will be copied");
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                     MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                    ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes)
+                            .order(ByteOrder.nativeOrder());
+                    out.params = Nd4j.create(Nd4j.createBuffer(bb, dataType, (int) numParams), 1, numParams);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static long alignUp(long value, long alignment) {
+        return ((value + alignment - 1) / alignment) * alignment;
+    }
+
     /**
      *
      * @param model
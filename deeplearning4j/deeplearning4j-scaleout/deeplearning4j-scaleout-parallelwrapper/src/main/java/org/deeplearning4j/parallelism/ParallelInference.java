@@ -29,12 +29,15 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.DynamicBatchScheduler;
+import org.deeplearning4j.parallelism.inference.DynamicBatchingStats;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.DynamicInferenceRequest;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -46,6 +49,7 @@ import java.util.List;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -59,6 +63,8 @@ public class ParallelInference {
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+    protected long maxQueueDelayNanos;
+    protected int[] preferredBatchSizes;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
@@ -67,6 +73,7 @@ public class ParallelInference {
 
     private InferenceWorker[] zoo;
     private ObservablesProvider provider;
+    private DynamicBatchScheduler scheduler;
 
 
 
@@ -74,6 +81,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_MAX_QUEUE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
 
 
 
@@ -117,6 +125,9 @@ public class ParallelInference {
 
     protected void init() {
         observables = new LinkedBlockingQueue<>(queueLimit);
+        if (inferenceMode == InferenceMode.DYNAMIC_BATCHED) {
+            scheduler = new DynamicBatchScheduler(workers, queueLimit, maxQueueDelayNanos, batchLimit, preferredBatchSizes);
+        }
 
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
@@ -128,7 +139,7 @@ public class ParallelInference {
             boolean cRoot = !assignedRoot.get() && cDevice == currentDevice;
             assignedRoot.compareAndSet(false, cRoot);
 
-            zoo[i] = new InferenceWorker(i, model, observables, cRoot, cDevice);
+            zoo[i] = new InferenceWorker(i, model, observables, scheduler, cRoot, cDevice);
 
             zoo[i].setDaemon(true);
             zoo[i].start();
@@ -145,6 +156,15 @@ public class ParallelInference {
         return zoo[workerIdx].getCounterValue();
     }
 
+    /**
+     * Queue wait time, batch size and execution time statistics for {@link InferenceMode#DYNAMIC_BATCHED} inference
+     *
+     * @return Batching statistics, or null if the inference mode is not DYNAMIC_BATCHED
+     */
+    public DynamicBatchingStats getDynamicBatchingStats() {
+        return scheduler == null ? null : scheduler.getStats();
+    }
+
     /**
      * This method gracefully shuts down ParallelInference instance
      */
@@ -232,7 +252,16 @@ public class ParallelInference {
         BasicInferenceObserver observer = new BasicInferenceObserver();
         InferenceObservable observable;
 
-        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+        if (inferenceMode == InferenceMode.DYNAMIC_BATCHED) {
+            observable = new DynamicInferenceRequest(input, inputMasks);
+            observable.addObserver(observer);
+            try {
+                scheduler.submit((DynamicInferenceRequest) observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        } else if (inferenceMode == InferenceMode.SEQUENTIAL) {
             observable = new BasicInferenceObservable(input, inputMasks);
             observable.addObserver(observer);
             try {
@@ -290,6 +319,8 @@ public class ParallelInference {
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+        private long maxQueueDelayNanos = DEFAULT_MAX_QUEUE_DELAY_NANOS;
+        private int[] preferredBatchSizes;
 
         public Builder(@NonNull Model model) {
             this.model = model;
@@ -302,6 +333,8 @@ public class ParallelInference {
          * SEQUENTIAL: Input will be sent to last-used worker unmodified.
          * BATCHED: Multiple inputs will be packed into single batch, and
          * sent to last-used device.
+         * DYNAMIC_BATCHED: Inputs will be queued for up to {@link #maxQueueDelay(long, TimeUnit)}, and packed into
+         * batches of {@link #preferredBatchSizes(int...)}.
          *
          * @param inferenceMode
          * @return
@@ -359,6 +392,46 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines the maximum time an input may be queued, waiting for other inputs to be batched with.
+         * Lower values reduce latency, higher values allow larger batches and increase throughput.
+         *
+         * PLEASE NOTE: This value only has effect in DYNAMIC_BATCHED inference mode
+         *
+         * Default value: 2 ms
+         *
+         * @param delay    Maximum queueing delay
+         * @param timeUnit Time unit of the delay
+         * @return
+         */
+        public Builder maxQueueDelay(long delay, @NonNull TimeUnit timeUnit) {
+            if (delay < 0)
+                throw new IllegalStateException("Maximum queue delay should be non-negative value");
+
+            this.maxQueueDelayNanos = timeUnit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * This method defines preferred batch sizes - for example, batch sizes the model was tuned or compiled for.
+         * Batches are padded up to the smallest preferred size that fits them, and batches larger than the largest
+         * preferred size are split. If not set, batches are limited to {@link #batchLimit(int)} and never padded.
+         *
+         * PLEASE NOTE: This value only has effect in DYNAMIC_BATCHED inference mode
+         *
+         * @param batchSizes Preferred batch sizes
+         * @return
+         */
+        public Builder preferredBatchSizes(@NonNull int... batchSizes) {
+            for (int b : batchSizes) {
+                if (b < 1)
+                    throw new IllegalStateException("Preferred batch sizes should be positive values");
+            }
+
+            this.preferredBatchSizes = batchSizes.clone();
+            return this;
+        }
+
         /**
          * This method defines buffer queue size.
          *
@@ -399,6 +472,8 @@ public class ParallelInference {
                 inference.model = this.model;
                 inference.workers = this.workers;
                 inference.loadBalanceMode = this.loadBalanceMode;
+                inference.maxQueueDelayNanos = this.maxQueueDelayNanos;
+                inference.preferredBatchSizes = this.preferredBatchSizes;
 
                 inference.init();
 
@@ -414,6 +489,8 @@ public class ParallelInference {
      */
     private class InferenceWorker extends Thread implements Runnable {
         private BlockingQueue<InferenceObservable> inputQueue;
+        private DynamicBatchScheduler scheduler;
+        private int id;
         private AtomicBoolean shouldWork = new AtomicBoolean(true);
         private AtomicBoolean isStopped = new AtomicBoolean(false);
         private Model protoModel;
@@ -424,8 +501,11 @@ public class ParallelInference {
 
         private ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
 
-        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice, int deviceId) {
+        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue,
+                                DynamicBatchScheduler scheduler, boolean rootDevice, int deviceId) {
             this.inputQueue = inputQueue;
+            this.scheduler = scheduler;
+            this.id = id;
             this.protoModel = model;
             this.rootDevice = rootDevice;
             this.deviceId = deviceId;
@@ -497,7 +577,7 @@ public class ParallelInference {
                 boolean isMLN = replicatedModel instanceof  MultiLayerNetwork;
 
                 while (shouldWork.get()) {
-                    InferenceObservable request = inputQueue.take();
+                    InferenceObservable request = scheduler != null ? scheduler.nextBatch(id) : inputQueue.take();
 
                     if (request != null) {
                         counter.incrementAndGet();
@@ -43,6 +43,7 @@ import org.deeplearning4j.optimize.listeners.SharedGradient;
 import org.deeplearning4j.optimize.solvers.accumulation.EncodedGradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.Registerable;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.parallelism.factory.DefaultTrainerContext;
@@ -685,6 +686,7 @@ public class ParallelWrapper implements AutoCloseable {
         protected Supplier<INDArray> updaterParamsSupplier;
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
+        protected GradientCodec gradientCodec;
         protected Long encoderMemory = -1L;
 
         protected GradientsAccumulator accumulator;
@@ -870,6 +872,17 @@ public class ParallelWrapper implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Set the codec used to compress shared updates in {@link TrainingMode#SHARED_GRADIENTS} mode - for example,
+         * top-k sparsification or 1-bit quantization. If set, it is used instead of threshold encoding, and the
+         * threshold algorithm and residual post processor are ignored.
+         * @param gradientCodec Gradient codec to use
+         */
+        public Builder gradientCodec(GradientCodec gradientCodec){
+            this.gradientCodec = gradientCodec;
+            return this;
+        }
+
         /**
          * This method allows to define amount of temporary memory that will be used for gradients sharing.
          * Typically it's safe to keep default value.
@@ -929,12 +942,17 @@ public class ParallelWrapper implements AutoCloseable {
                         // we're limiting max size of updates for Sparse encoding to the size of bitmap encoded message
                         val maxUpdate = (int) (numParams / 16 + 5);
 
+                        // codecs have their own upper bound for message size
+                        val maxMessage = gradientCodec == null ? maxUpdate : Math.max(maxUpdate, gradientCodec.maxEncodedLength(numParams));
+
                         // memory sie in number of bytes
                         long memorySize = encoderMemory == null || encoderMemory < 0
-                                            ? maxUpdate * 4 * (workers + 3)
+                                            ? maxMessage * 4 * (workers + 3)
                                             : encoderMemory;
 
-                        this.accumulator = new EncodedGradientsAccumulator(workers, new EncodingHandler(thresholdAlgorithm, residualPostProcessor, maxUpdate, false), memorySize, workers + 2, Integer.MAX_VALUE, false);
+                        val handler = gradientCodec == null ? new EncodingHandler(thresholdAlgorithm, residualPostProcessor, maxUpdate, false)
+                                            : new EncodingHandler(gradientCodec, false);
+                        this.accumulator = new EncodedGradientsAccumulator(workers, handler, memorySize, workers + 2, Integer.MAX_VALUE, false);
                     }
                 }
                     break;
@@ -0,0 +1,214 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.observers.DynamicBatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.DynamicInferenceRequest;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request scheduler for {@link InferenceMode#DYNAMIC_BATCHED} inference.<br>
+ * Each worker has its own request queue; requests are assigned to the queues round robin. A worker takes the oldest
+ * request from its own queue, or steals the oldest request from another worker's queue if its own is empty. It then
+ * keeps adding compatible requests to the batch until either the batch holds the largest preferred batch size, or the
+ * first request in the batch has been waiting for the maximum queueing delay.<br>
+ * Queue wait times and batch sizes are recorded in {@link #getStats()}.
+ */
+@Slf4j
+public class DynamicBatchScheduler {
+    /**
+     * Maximum time an idle worker waits on its own queue before trying to steal work again
+     */
+    protected static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LinkedBlockingDeque<DynamicInferenceRequest>[] queues;
+    //Per worker: request that couldn't be batched with the previous batch, and couldn't be returned to the queue
+    private final DynamicInferenceRequest[] carried;
+    private final AtomicInteger nextQueue = new AtomicInteger();
+    @Getter
+    private final long maxQueueDelayNanos;
+    @Getter
+    private final int[] preferredBatchSizes;
+    private final int maxBatchSize;
+    @Getter
+    private final DynamicBatchingStats stats = new DynamicBatchingStats();
+
+    /**
+     * @param workers             Number of workers
+     * @param queueLimit          Maximum number of requests queued per worker
+     * @param maxQueueDelayNanos  Maximum time a request may wait for other requests to be batched with, in nanoseconds
+     * @param batchLimit          Maximum batch size, used if no preferred batch sizes are set
+     * @param preferredBatchSizes Preferred batch sizes. May be null: if set, batches are padded or split to these sizes
+     */
+    @SuppressWarnings("unchecked")
+    public DynamicBatchScheduler(int workers, int queueLimit, long maxQueueDelayNanos, int batchLimit,
+                                 int[] preferredBatchSizes) {
+        if (workers < 1)
+            throw new IllegalArgumentException("Workers should be positive value");
+        if (maxQueueDelayNanos < 0)
+            throw new IllegalArgumentException("Maximum queue delay should be non-negative");
+        this.queues = new LinkedBlockingDeque[workers];
+        this.carried = new DynamicInferenceRequest[workers];
+        for (int i = 0; i < workers; i++) {
+            queues[i] = new LinkedBlockingDeque<>(queueLimit);
+        }
+        this.maxQueueDelayNanos = maxQueueDelayNanos;
+        if (preferredBatchSizes == null || preferredBatchSizes.length == 0) {
+            this.preferredBatchSizes = null;
+            this.maxBatchSize = batchLimit;
+        } else {
+            this.preferredBatchSizes = preferredBatchSizes.clone();
+            Arrays.sort(this.preferredBatchSizes);
+            if (this.preferredBatchSizes[0] < 1)
+                throw new IllegalArgumentException("Preferred batch sizes should be positive values, got "
+                        + Arrays.toString(preferredBatchSizes));
+            this.maxBatchSize = this.preferredBatchSizes[this.preferredBatchSizes.length - 1];
+        }
+    }
+
+    /**
+     * Submit a request. Blocks if the queue the request is assigned to is full
+     */
+    public void submit(@NonNull DynamicInferenceRequest request) throws InterruptedException {
+        int idx = Math.floorMod(nextQueue.getAndIncrement(), queues.length);
+        queues[idx].putLast(request);
+    }
+
+    /**
+     * Get the next batch for the specified worker, blocking until at least one request is available
+     *
+     * @param worker Index of the worker
+     * @return Next batch to execute
+     */
+    public DynamicBatchedInferenceObservable nextBatch(int worker) throws InterruptedException {
+        LinkedBlockingDeque<DynamicInferenceRequest> own = queues[worker];
+
+        DynamicInferenceRequest first = carried[worker];
+        carried[worker] = null;
+        while (first == null) {
+            first = own.pollFirst();
+            if (first == null)
+                first = steal(worker, null);
+            if (first == null)
+                first = own.pollFirst(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS);
+        }
+
+        List<DynamicInferenceRequest> batch = new ArrayList<>();
+        batch.add(first);
+        long examples = first.getNumExamples();
+        long deadline = first.getSubmitTimeNanos() + maxQueueDelayNanos;
+        while (examples < maxBatchSize) {
+            DynamicInferenceRequest next = own.pollFirst();
+            if (next == null)
+                next = steal(worker, first);
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                next = own.pollFirst(Math.min(remaining, IDLE_POLL_NANOS), TimeUnit.NANOSECONDS);
+                if (next == null)
+                    continue;
+            }
+            if (!canBatch(first, next)) {
+                //Can't be batched with the current batch: leave it for the next batch
+                if (!own.offerFirst(next))
+                    carried[worker] = next;
+                break;
+            }
+            batch.add(next);
+            examples += next.getNumExamples();
+        }
+
+        long now = System.nanoTime();
+        for (DynamicInferenceRequest r : batch) {
+            stats.getQueueWaitNanos().record(now - r.getSubmitTimeNanos());
+        }
+        stats.getBatchSize().record(examples);
+        return new DynamicBatchedInferenceObservable(batch, preferredBatchSizes, stats);
+    }
+
+    /**
+     * Steal the oldest request from another worker's queue
+     *
+     * @param worker Index of the worker stealing
+     * @param first  If non-null: only steal requests that can be batched with this request
+     */
+    protected DynamicInferenceRequest steal(int worker, DynamicInferenceRequest first) {
+        for (int i = 1; i < queues.length; i++) {
+            LinkedBlockingDeque<DynamicInferenceRequest> victim = queues[(worker + i) % queues.length];
+            DynamicInferenceRequest r = victim.peekFirst();
+            if (r != null && (first == null || canBatch(first, r)) && victim.remove(r)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Requests can be batched if all their inputs and masks have the same shape, other than the example dimension
+     */
+    public static boolean canBatch(DynamicInferenceRequest first, DynamicInferenceRequest candidate) {
+        if (!sameShape(first.getInputs(), candidate.getInputs()))
+            return false;
+        if ((first.getMasks() == null) != (candidate.getMasks() == null))
+            return false;
+        return first.getMasks() == null || sameShape(first.getMasks(), candidate.getMasks());
+    }
+
+    private static boolean sameShape(INDArray[] first, INDArray[] candidate) {
+        if (first.length != candidate.length)
+            return false;
+        for (int i = 0; i < first.length; i++) {
+            if ((first[i] == null) != (candidate[i] == null))
+                return false;
+            if (first[i] == null)
+                continue;
+            if (first[i].rank() != candidate[i].rank() || first[i].dataType() != candidate[i].dataType())
+                return false;
+            for (int j = 1; j < first[i].rank(); j++) {
+                if (first[i].size(j) != candidate[i].size(j))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Total number of requests currently queued, over all workers
+     */
+    public int getQueuedRequests() {
+        int n = 0;
+        for (LinkedBlockingDeque<DynamicInferenceRequest> q : queues) {
+            n += q.size();
+        }
+        return n;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.Getter;
+
+/**
+ * Statistics for {@link InferenceMode#DYNAMIC_BATCHED} inference, used to tune the maximum queueing delay and preferred
+ * batch sizes - i.e., to trade throughput against tail latency.
+ */
+@Getter
+public class DynamicBatchingStats {
+    /**
+     * Time between a request being submitted and being assigned to a batch, in nanoseconds
+     */
+    private final Histogram queueWaitNanos = new Histogram();
+    /**
+     * Number of examples per batch, excluding padding
+     */
+    private final Histogram batchSize = new Histogram();
+    /**
+     * Time taken to execute each batch (including splitting and padding), in nanoseconds
+     */
+    private final Histogram executionNanos = new Histogram();
+    /**
+     * Number of padding examples added per batch
+     */
+    private final Histogram paddingSize = new Histogram();
+
+    public void reset() {
+        queueWaitNanos.reset();
+        batchSize.reset();
+        executionNanos.reset();
+        paddingSize.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "DynamicBatchingStats(queueWaitNanos=" + queueWaitNanos + ", batchSize=" + batchSize +
+                ", executionNanos=" + executionNanos + ", paddingSize=" + paddingSize + ")";
+    }
+}
@@ -35,4 +35,10 @@ public enum InferenceMode {
      * Inference will applied in the calling thread instead of workers. Worker models will be using shared parameters on per-device basis.
      */
     INPLACE,
+
+    /**
+     * Inputs will be queued for up to a maximum delay, and packed into batches of preferred sizes (padding or splitting
+     * as required). Each worker has its own queue, and idle workers steal requests from other workers' queues.
+     */
+    DYNAMIC_BATCHED,
 }
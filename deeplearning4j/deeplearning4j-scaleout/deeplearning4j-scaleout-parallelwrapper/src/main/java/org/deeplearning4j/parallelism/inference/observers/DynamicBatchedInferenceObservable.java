@@ -0,0 +1,215 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.DynamicBatchingStats;
+import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of {@link DynamicInferenceRequest}s that is executed as one or more model calls.<br>
+ * All requests in the batch must have inputs (and masks, if present) with the same shape, other than the example
+ * dimension. The examples of all requests are concatenated and then split into chunks: each chunk has the size of the
+ * smallest preferred batch size that can hold the remaining examples (or the largest preferred size, if none can).
+ * Chunks smaller than their batch size are padded by repeating the last example. If no preferred batch sizes are
+ * set, all examples are executed as a single batch without padding.<br>
+ * After execution, the padding is removed and the outputs are split back into one output per request.
+ */
+@Slf4j
+public class DynamicBatchedInferenceObservable extends BasicInferenceObservable implements InferenceObservable {
+    @Getter
+    private final List<DynamicInferenceRequest> requests;
+    private final int[] preferredBatchSizes;
+    private final DynamicBatchingStats stats;
+
+    //Number of actual (not padding) examples in each chunk
+    private final List<Long> chunkExamples = new ArrayList<>();
+    private long startTimeNanos;
+
+    /**
+     * @param requests            Requests to execute. Must all be batchable with each other
+     * @param preferredBatchSizes Preferred batch sizes, in ascending order. May be null or empty
+     * @param stats               Statistics to update. May be null
+     */
+    public DynamicBatchedInferenceObservable(@NonNull List<DynamicInferenceRequest> requests, int[] preferredBatchSizes,
+                                             DynamicBatchingStats stats) {
+        this.requests = requests;
+        this.preferredBatchSizes = preferredBatchSizes;
+        this.stats = stats;
+    }
+
+    /**
+     * @return Total number of examples in this batch, excluding padding
+     */
+    public long getNumExamples() {
+        long n = 0;
+        for (DynamicInferenceRequest r : requests) {
+            n += r.getNumExamples();
+        }
+        return n;
+    }
+
+    @Override
+    public List<Pair<INDArray[], INDArray[]>> getInputBatches() {
+        startTimeNanos = System.nanoTime();
+        chunkExamples.clear();
+
+        DynamicInferenceRequest first = requests.get(0);
+        int numInputs = first.getInputs().length;
+        INDArray[] merged = new INDArray[numInputs];
+        INDArray[] mergedMasks = first.getMasks() == null ? null : new INDArray[first.getMasks().length];
+        for (int i = 0; i < numInputs; i++) {
+            merged[i] = concat(requests, i, false);
+        }
+        if (mergedMasks != null) {
+            for (int i = 0; i < mergedMasks.length; i++) {
+                mergedMasks[i] = first.getMasks()[i] == null ? null : concat(requests, i, true);
+            }
+        }
+
+        long total = getNumExamples();
+        if (preferredBatchSizes == null || preferredBatchSizes.length == 0) {
+            chunkExamples.add(total);
+            return Collections.singletonList(new Pair<>(merged, mergedMasks));
+        }
+
+        List<Pair<INDArray[], INDArray[]>> out = new ArrayList<>();
+        long padding = 0;
+        long offset = 0;
+        while (offset < total) {
+            long remaining = total - offset;
+            long size = chunkSize(remaining);
+            long take = Math.min(size, remaining);
+            INDArray[] f = new INDArray[numInputs];
+            for (int i = 0; i < numInputs; i++) {
+                f[i] = chunk(merged[i], offset, take, size);
+            }
+            INDArray[] fm = null;
+            if (mergedMasks != null) {
+                fm = new INDArray[mergedMasks.length];
+                for (int i = 0; i < fm.length; i++) {
+                    fm[i] = mergedMasks[i] == null ? null : chunk(mergedMasks[i], offset, take, size);
+                }
+            }
+            out.add(new Pair<>(f, fm));
+            chunkExamples.add(take);
+            padding += size - take;
+            offset += take;
+        }
+
+        if (stats != null) {
+            stats.getPaddingSize().record(padding);
+        }
+        return out;
+    }
+
+    private long chunkSize(long remaining) {
+        for (int s : preferredBatchSizes) {
+            if (s >= remaining)
+                return s;
+        }
+        return preferredBatchSizes[preferredBatchSizes.length - 1];
+    }
+
+    private static INDArray concat(List<DynamicInferenceRequest> requests, int idx, boolean masks) {
+        if (requests.size() == 1) {
+            DynamicInferenceRequest r = requests.get(0);
+            return masks ? r.getMasks()[idx] : r.getInputs()[idx];
+        }
+        INDArray[] toConcat = new INDArray[requests.size()];
+        for (int j = 0; j < toConcat.length; j++) {
+            DynamicInferenceRequest r = requests.get(j);
+            toConcat[j] = masks ? r.getMasks()[idx] : r.getInputs()[idx];
+        }
+        return Nd4j.concat(0, toConcat);
+    }
+
+    private static INDArray chunk(INDArray arr, long offset, long take, long size) {
+        INDArray c = (offset == 0 && take == arr.size(0)) ? arr : rows(arr, offset, offset + take);
+        if (take == size)
+            return c;
+        INDArray last = rows(arr, offset + take - 1, offset + take);
+        return Nd4j.concat(0, c, last.repeat(0, size - take));
+    }
+
+    private static INDArray rows(INDArray arr, long from, long to) {
+        INDArrayIndex[] indices = new INDArrayIndex[arr.rank()];
+        indices[0] = NDArrayIndex.interval(from, to);
+        for (int i = 1; i < indices.length; i++) {
+            indices[i] = NDArrayIndex.all();
+        }
+        return arr.get(indices);
+    }
+
+    @Override
+    public void setOutputBatches(@NonNull List<INDArray[]> output) {
+        if (stats != null) {
+            stats.getExecutionNanos().record(System.nanoTime() - startTimeNanos);
+        }
+
+        int numOutputs = output.get(0).length;
+        INDArray[] merged = new INDArray[numOutputs];
+        for (int i = 0; i < numOutputs; i++) {
+            INDArray[] trimmed = new INDArray[output.size()];
+            for (int c = 0; c < trimmed.length; c++) {
+                INDArray o = output.get(c)[i];
+                long n = chunkExamples.get(c);
+                trimmed[c] = o.size(0) == n ? o : rows(o, 0, n);
+            }
+            merged[i] = trimmed.length == 1 ? trimmed[0] : Nd4j.concat(0, trimmed);
+        }
+
+        long offset = 0;
+        for (DynamicInferenceRequest r : requests) {
+            INDArray[] rOut = new INDArray[numOutputs];
+            for (int i = 0; i < numOutputs; i++) {
+                rOut[i] = requests.size() == 1 && merged[i].size(0) == r.getNumExamples() ? merged[i] :
+                        rows(merged[i], offset, offset + r.getNumExamples()).dup();
+            }
+            offset += r.getNumExamples();
+            r.setOutputBatches(Collections.singletonList(rOut));
+        }
+
+        this.setChanged();
+        notifyObservers();
+    }
+
+    @Override
+    public void setOutputException(Exception exception) {
+        this.exception = exception;
+        for (DynamicInferenceRequest r : requests) {
+            r.setOutputException(exception);
+        }
+        this.setChanged();
+        notifyObservers();
+    }
+}
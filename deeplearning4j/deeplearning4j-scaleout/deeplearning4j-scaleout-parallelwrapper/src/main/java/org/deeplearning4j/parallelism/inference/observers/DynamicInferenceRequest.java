@@ -0,0 +1,49 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * A single inference request for {@link org.deeplearning4j.parallelism.inference.InferenceMode#DYNAMIC_BATCHED}
+ * inference. Requests are combined into {@link DynamicBatchedInferenceObservable}s by
+ * {@link org.deeplearning4j.parallelism.inference.DynamicBatchScheduler}; the output for this request is set once the
+ * batch it is part of has been executed.
+ */
+public class DynamicInferenceRequest extends BasicInferenceObservable {
+    @Getter
+    private final INDArray[] inputs;
+    @Getter
+    private final INDArray[] masks;
+    @Getter
+    private final long submitTimeNanos;
+    @Getter
+    private final long numExamples;
+
+    public DynamicInferenceRequest(INDArray[] inputs, INDArray[] masks) {
+        super(inputs, masks);
+        this.inputs = inputs;
+        this.masks = masks;
+        this.submitTimeNanos = System.nanoTime();
+        this.numExamples = inputs[0].size(0);
+    }
+}
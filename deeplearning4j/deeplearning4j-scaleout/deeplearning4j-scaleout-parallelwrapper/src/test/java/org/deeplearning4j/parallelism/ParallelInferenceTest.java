@@ -39,6 +39,7 @@ import org.nd4j.linalg.activations.Activation;
 import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
 import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.DynamicBatchingStats;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
@@ -57,6 +58,7 @@ import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -881,6 +883,61 @@ public class ParallelInferenceTest extends BaseDL4JTest {
 
     }
 
+    @Test()
+    @Timeout(60000)
+    public void testDynamicBatching() throws Exception {
+        int nIn = 10;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(nIn).nOut(20).build())
+                .layer(new OutputLayer.Builder().nIn(20).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        Nd4j.getRandom().setSeed(12345);
+        Random r = new Random(12345);
+        List<INDArray> arrs = new ArrayList<>();
+        List<INDArray> exp = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            INDArray in = Nd4j.rand(1 + r.nextInt(5), nIn);
+            arrs.add(in);
+            exp.add(net.output(in));
+        }
+
+        for (int w : new int[]{1, 3}) {
+            for (int[] preferred : new int[][]{null, {4, 8}}) {
+                ParallelInference.Builder b = new ParallelInference.Builder(net)
+                        .inferenceMode(InferenceMode.DYNAMIC_BATCHED)
+                        .maxQueueDelay(2, TimeUnit.MILLISECONDS)
+                        .batchLimit(16)
+                        .workers(w);
+                if (preferred != null)
+                    b.preferredBatchSizes(preferred);
+                ParallelInference inf = b.build();
+
+                testParallelInference(inf, arrs, exp);
+
+                DynamicBatchingStats stats = inf.getDynamicBatchingStats();
+                assertNotNull(stats);
+                assertEquals(arrs.size(), stats.getQueueWaitNanos().getCount());
+                assertTrue(stats.getBatchSize().getCount() > 0);
+                assertEquals(stats.getBatchSize().getCount(), stats.getExecutionNanos().getCount());
+                if (preferred == null) {
+                    assertEquals(0, stats.getPaddingSize().getCount());
+                } else {
+                    assertTrue(stats.getPaddingSize().getCount() > 0);
+                }
+
+                inf.shutdown();
+            }
+        }
+    }
+
 
     private static void testParallelInference(ParallelInference inf, List<INDArray> in, List<INDArray> exp) throws Exception {
         testParallelInference(inf, in, null, exp);
@@ -0,0 +1,66 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistogramTest extends BaseDL4JTest {
+
+    @Test
+    public void testPercentiles() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMax());
+        assertEquals(500.5, h.getMean(), 1e-6);
+
+        //Percentiles are accurate to within 1/SUB_BUCKETS of the actual value
+        double tol = 1.0 / Histogram.SUB_BUCKETS;
+        for (double p : new double[]{1, 10, 50, 90, 99, 100}) {
+            long actual = h.getPercentile(p);
+            long expected = (long) Math.ceil(p * 10);
+            assertTrue(actual >= expected, "p" + p + ": " + actual);
+            assertTrue(actual <= expected * (1 + tol), "p" + p + ": " + actual);
+        }
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+
+    @Test
+    public void testBuckets() {
+        int last = -1;
+        for (long v = 0; v < 100_000; v++) {
+            int idx = Histogram.bucketIndex(v);
+            assertTrue(idx == last || idx == last + 1);
+            assertTrue(Histogram.bucketUpperBound(idx) >= v);
+            last = idx;
+        }
+        assertTrue(Histogram.bucketIndex(Long.MAX_VALUE) < (64 - Histogram.SUB_BUCKET_BITS + 1) * Histogram.SUB_BUCKETS);
+    }
+}
@@ -23,8 +23,10 @@ package org.deeplearning4j.spark.parameterserver.conf;
 import lombok.*;
 import org.deeplearning4j.nn.conf.WorkspaceMode;
 import org.deeplearning4j.optimize.solvers.accumulation.MessageHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.spark.parameterserver.networking.v2.UpdatesConsumer;
 import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
 
 import java.io.Serializable;
@@ -57,6 +59,19 @@ public class SharedTrainingConfiguration implements Serializable {
 
     protected ThresholdAlgorithm thresholdAlgorithm;
     protected ResidualPostProcessor residualPostProcessor;
+
+    /**
+     * If set, updates are encoded with this codec instead of threshold encoding
+     */
+    protected GradientCodec gradientCodec;
+
+    /**
+     * Number of slots in the ring buffer incoming updates are stored in on each worker. Must be a power of 2.
+     * Each slot is preallocated, so this is a trade-off between memory use and how far workers can lag behind before
+     * their pending updates are collapsed
+     */
+    @Builder.Default
+    protected int updatesRingCapacity = UpdatesConsumer.DEFAULT_UPDATES_RING_CAPACITY;
     protected String messageHandlerClass;
 
 
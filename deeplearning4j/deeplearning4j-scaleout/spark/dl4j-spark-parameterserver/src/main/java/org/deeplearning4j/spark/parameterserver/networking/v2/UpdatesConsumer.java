@@ -28,6 +28,9 @@ import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.optimize.api.StepFunction;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.IndexedTail;
+import org.deeplearning4j.optimize.solvers.accumulation.UpdatesRingBuffer;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -43,14 +46,26 @@ import java.util.concurrent.atomic.AtomicLong;
 @Builder
 @Slf4j
 public class UpdatesConsumer implements UpdatesHandler {
+    public static final int DEFAULT_UPDATES_RING_CAPACITY = 32;
+
     protected int numWorkers;
 
+    /**
+     * Number of slots in the updates ring. Must be a power of 2. Each slot is preallocated off-heap, so memory use is
+     * roughly capacity * max message length * 4 bytes
+     */
+    @Builder.Default
+    protected int updatesRingCapacity = DEFAULT_UPDATES_RING_CAPACITY;
+
     protected transient INDArray params;
     protected transient INDArray updates;
     protected transient StepFunction stepFunction;
 
     protected transient GradientsAccumulator accumulator;
 
+    // codec updates are encoded with, if any: used to size the ring slots
+    protected transient GradientCodec gradientCodec;
+
     protected transient final AtomicLong updatesCount = new AtomicLong(0);
     protected transient final AtomicBoolean hasSomething = new AtomicBoolean(false);
     protected transient final AtomicBoolean bypassMode = new AtomicBoolean(false);
@@ -81,11 +96,26 @@ public class UpdatesConsumer implements UpdatesHandler {
         return bypassMode.get();
     }
 
+    /**
+     * Encoded updates are stored in a preallocated ring, each slot is large enough for a bitmap encoded update, or
+     * for the largest message of the configured gradient codec. Messages that don't fit in a slot, and workers lagging
+     * more than a full ring behind, get their pending updates collapsed.
+     */
+    protected IndexedTail createUpdatesBuffer() {
+        long maxMessageLength = params.length() / 16 + 5;
+        if (gradientCodec != null)
+            maxMessageLength = Math.max(maxMessageLength, gradientCodec.maxEncodedLength(params.length()));
+        if (maxMessageLength > Integer.MAX_VALUE)
+            throw new DL4JInvalidConfigException("Encoded updates of " + maxMessageLength + " ints don't fit in an updates ring slot");
+
+        return new UpdatesRingBuffer(numWorkers, updatesRingCapacity, (int) maxMessageLength, params.shape());
+    }
+
     public IndexedTail getUpdatesQueue() {
         if (updatesBuffer == null && accumulator != null) {
             synchronized (this) {
                 if (updatesBuffer == null) {
-                    updatesBuffer = new IndexedTail(numWorkers, true, params.shape());
+                    updatesBuffer = createUpdatesBuffer();
                 }
             }
         }
@@ -98,7 +128,7 @@ public class UpdatesConsumer implements UpdatesHandler {
         if (updatesBuffer == null && accumulator != null) {
             synchronized (this) {
                 if (updatesBuffer == null) {
-                    updatesBuffer = new IndexedTail(numWorkers, true, params.shape());
+                    updatesBuffer = createUpdatesBuffer();
                 }
             }
         }
@@ -125,6 +155,8 @@ public class UpdatesConsumer implements UpdatesHandler {
                     } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
                         Nd4j.getExecutioner().bitmapDecode(array, updates);
                         denseCounter.incrementAndGet();
+                    } else if (GradientCodecs.isRegistered(encoding)) {
+                        GradientCodecs.decode(array, updates);
                     } else
                         throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
 
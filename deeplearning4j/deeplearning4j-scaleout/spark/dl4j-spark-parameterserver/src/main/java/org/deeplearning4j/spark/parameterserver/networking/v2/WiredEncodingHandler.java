@@ -24,6 +24,7 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
@@ -46,6 +47,15 @@ public class WiredEncodingHandler extends EncodingHandler {
         super(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
     }
 
+    /**
+     * This method builds new WiredEncodingHandler instance
+     *
+     * @param gradientCodec The codec to encode updates with
+     */
+    public WiredEncodingHandler(@NonNull GradientCodec gradientCodec, boolean encodingDebugMode) {
+        super(gradientCodec, encodingDebugMode);
+    }
+
     /**
      * This method sends given message to all registered recipients
      *
@@ -250,7 +250,9 @@ public class SharedTrainingWrapper {
                     }
                 }
 
-                val handler = new WiredEncodingHandler(trainingConfiguration.getThresholdAlgorithm(), trainingConfiguration.getResidualPostProcessor(), null, trainingConfiguration.isEncodingDebugMode());
+                val gradientCodec = trainingConfiguration.getGradientCodec();
+                val handler = gradientCodec != null ? new WiredEncodingHandler(gradientCodec, trainingConfiguration.isEncodingDebugMode())
+                                : new WiredEncodingHandler(trainingConfiguration.getThresholdAlgorithm(), trainingConfiguration.getResidualPostProcessor(), null, trainingConfiguration.isEncodingDebugMode());
 
                 // TODO: if there will be no code difference - use the same class instead of 2 different classes
                 val modelParamsSupplier = new ModelParamsConsumer();
@@ -269,6 +271,7 @@ public class SharedTrainingWrapper {
                     int queueSize = numWorkers * 2;
 
                     val bufferSize = trainingConfiguration.getBufferSize() > 0 ? trainingConfiguration.getBufferSize()
+                                    : gradientCodec != null ? EncodedGradientsAccumulator.getOptimalBufferSize(gradientCodec, model.params().length(), numWorkers, 2)
                                     : EncodedGradientsAccumulator.getOptimalBufferSize(model, numWorkers, 2);
 
                     accumulator = new EncodedGradientsAccumulator.Builder(numWorkers).messageHandler(handler)
@@ -320,6 +323,8 @@ public class SharedTrainingWrapper {
                                 .numWorkers(numWorkers)
                                 .accumulator(accumulator)
                                 .params(model.params())
+                                .gradientCodec(gradientCodec)
+                                .updatesRingCapacity(trainingConfiguration.getUpdatesRingCapacity())
                                 .build();
 
                         accumulator.setExternalSource(consumer.getUpdatesQueue());
@@ -42,6 +42,7 @@ import org.deeplearning4j.core.storage.StorageMetaData;
 import org.deeplearning4j.config.DL4JEnvironmentVars;
 import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor;
@@ -115,6 +116,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
 
     protected ThresholdAlgorithm thresholdAlgorithm;
     protected ResidualPostProcessor residualPostProcessor;
+    protected GradientCodec gradientCodec;
+    protected int updatesRingCapacity = UpdatesConsumer.DEFAULT_UPDATES_RING_CAPACITY;
 
     protected Repartition repartition;
     protected RepartitionStrategy repartitionStrategy;
@@ -259,6 +262,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         SharedTrainingConfiguration configuration = SharedTrainingConfiguration.builder()
                 .thresholdAlgorithm(thresholdAlgorithm)
                 .residualPostProcessor(residualPostProcessor)
+                .gradientCodec(gradientCodec)
+                .updatesRingCapacity(updatesRingCapacity)
                 .voidConfiguration(voidConfiguration)
                 .debugLongerIterations(debugLongerIterations)
                 .numberOfWorkersPerNode(numWorkersPerNode)
@@ -290,6 +295,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         SharedTrainingConfiguration configuration = SharedTrainingConfiguration.builder()
                 .thresholdAlgorithm(thresholdAlgorithm)
                 .residualPostProcessor(residualPostProcessor)
+                .gradientCodec(gradientCodec)
+                .updatesRingCapacity(updatesRingCapacity)
                 .voidConfiguration(voidConfiguration).debugLongerIterations(debugLongerIterations)
                 .numberOfWorkersPerNode(numWorkersPerNode)
                 .prefetchSize(workerPrefetchBatches)
@@ -892,6 +899,8 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
     public static class Builder {
         protected ThresholdAlgorithm thresholdAlgorithm = new AdaptiveThresholdAlgorithm();
         protected ResidualPostProcessor residualPostProcessor = new ResidualClippingPostProcessor(5.0, 5);
+        protected GradientCodec gradientCodec;
+        protected int updatesRingCapacity = UpdatesConsumer.DEFAULT_UPDATES_RING_CAPACITY;
         protected int rddDataSetNumExamples = 1;
         @Deprecated
         protected Repartition repartition = Repartition.Always;
@@ -1116,6 +1125,36 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
             return this;
         }
 
+        /**
+         * Codec to compress the updates shared between workers with, instead of threshold encoding. Built-in codecs
+         * are top-k sparsification ({@link org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.TopKGradientCodec}),
+         * 1-bit quantization ({@link org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.SignGradientCodec})
+         * and stochastic quantization ({@link org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.QsgdGradientCodec}).
+         * If set, the threshold algorithm and residual post processor are not used.<br><br>
+         * Default: null (threshold encoding)
+         *
+         * @param gradientCodec Gradient codec to use
+         */
+        public Builder gradientCodec(GradientCodec gradientCodec){
+            this.gradientCodec = gradientCodec;
+            return this;
+        }
+
+        /**
+         * Number of slots in the ring buffer that incoming updates are stored in on each worker, until they are
+         * applied. Each slot is preallocated off-heap and holds one encoded message, so larger values use more memory
+         * (about 8 bytes per parameter with the default of 32 slots), while smaller values mean workers that lag
+         * behind get their pending updates collapsed sooner.<br><br>
+         * Default: 32
+         *
+         * @param capacity Number of slots. Must be a power of 2
+         */
+        public Builder updatesRingCapacity(int capacity){
+            Preconditions.checkArgument(capacity > 0 && (capacity & (capacity - 1)) == 0, "Updates ring capacity must be a positive power of 2, got %s", capacity);
+            this.updatesRingCapacity = capacity;
+            return this;
+        }
+
         /**
          * Minibatch size to use when training workers. In principle, the source data (i.e., {@code RDD<DataSet>} etc)
          * can have a different number of examples in each {@code DataSet} than we want to use when training.
@@ -1255,6 +1294,9 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
             if (transport != null)
                 master.transport = this.transport;
 
+            master.gradientCodec = this.gradientCodec;
+            master.updatesRingCapacity = this.updatesRingCapacity;
+
             return master;
         }
     }
@@ -249,7 +249,10 @@ public abstract class BaseStatsListener implements RoutingIterationListener {
             int count = 0;
             for (INDArray arr : activations) {
                 String layerName = (count == 0 ? "input" : String.valueOf(count - 1));
-                activationsMap.put(layerName, arr);
+                if (arr != null) {
+                    //Null for activations discarded by activation checkpointing
+                    activationsMap.put(layerName, arr);
+                }
                 count++;
             }
             onForwardPass(model, activationsMap);
@@ -206,7 +206,8 @@ public class ConvolutionalIterationListener extends BaseTrainingListener {
                 if(layers.length != activations.size())
                     throw new RuntimeException();
                 for( int i=0; i<layers.length; i++ ){
-                    if(layers[i].type() == Layer.Type.CONVOLUTIONAL){
+                    //Activations may be null if discarded by activation checkpointing
+                    if(layers[i].type() == Layer.Type.CONVOLUTIONAL && activations.get(i+1) != null){
                         INDArray output = activations.get(i+1); //Offset by 1 - activations list includes input
 
                         if (output.shape()[0] - 1 > Integer.MAX_VALUE)
@@ -29,6 +29,7 @@ import lombok.val;
 import org.apache.commons.collections4.trie.PatriciaTrie;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
+import org.bytedeco.javacpp.Pointer;
 import org.nd4j.autodiff.execution.conf.ExecutorConfiguration;
 import org.nd4j.autodiff.execution.conf.OutputMode;
 import org.nd4j.autodiff.functions.DifferentialFunction;
@@ -38,10 +39,13 @@ import org.nd4j.autodiff.listeners.impl.HistoryListener;
 import org.nd4j.autodiff.listeners.records.History;
 import org.nd4j.autodiff.listeners.records.LossCurve;
 import org.nd4j.autodiff.samediff.api.OutAndGrad;
+import org.nd4j.autodiff.samediff.array.LazyArrayHolder;
 import org.nd4j.autodiff.samediff.array.SingleThreadArrayHolder;
 import org.nd4j.autodiff.samediff.array.ThreadSafeArrayHolder;
 import org.nd4j.autodiff.samediff.config.*;
 import org.nd4j.autodiff.samediff.internal.*;
+import org.nd4j.autodiff.samediff.internal.memory.MemoryPlan;
+import org.nd4j.autodiff.samediff.internal.memory.MemoryPlanner;
 import org.nd4j.autodiff.samediff.ops.*;
 import org.nd4j.autodiff.samediff.serde.FlatBuffersMapper;
 import org.nd4j.common.base.Preconditions;
@@ -55,8 +59,11 @@ import org.nd4j.evaluation.classification.Evaluation;
 import org.nd4j.evaluation.classification.ROC;
 import org.nd4j.graph.*;
 import org.nd4j.imports.graphmapper.tf.TFGraphMapper;
+import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.pointers.ByteBufferPointer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.BaseOp;
 import org.nd4j.linalg.api.ops.CustomOp;
@@ -93,8 +100,11 @@ import org.tensorflow.framework.GraphDef;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -111,6 +121,11 @@ import org.nd4j.common.config.ND4JClassLoading;
 public class SameDiff extends SDBaseOps {
     protected static final String GRAD_FN_KEY = "grad";
 
+    /**
+     * Alignment, in bytes, of array buffers in files saved with {@link #save(File, boolean, boolean)}
+     */
+    public static final int MAPPED_ARRAY_ALIGNMENT = 64;
+
     //Fields for graph structure and execution
     //Use trie to guarantee iteration order based on order they were added. Used in inputs() and flatbuffers serde, a trie also
     // handles prefix lookups for ops when creating new ones and we need to determine prefixes
@@ -152,6 +167,25 @@ public class SameDiff extends SDBaseOps {
     @Setter
     private boolean eagerMode = false;
 
+    //Static memory planning for inference - see setEnableMemoryPlanning
+    @Getter
+    private boolean enableMemoryPlanning = false;
+    @Getter
+    private final Map<String, MemoryPlan> memoryPlans = new ConcurrentHashMap<>();   //Key: execution signature
+
+    //Replay of recorded execution steps for repeated output calls - see AbstractSession#getCompiledExecutions()
+    @Getter
+    @Setter
+    private boolean enableCompiledExecution = false;
+    //Incremented whenever ops are added, removed or rewired - see markStructureChanged()
+    @Getter
+    private volatile long structureVersion;
+
+    //Inter-op parallel execution for inference - see setInterOpParallelism
+    @Getter
+    private int interOpThreads = 1;
+    private ForkJoinPool interOpPool;
+
     ///////////////////////////////////////
     //Fields related to training
     @Getter
@@ -211,6 +245,78 @@ public class SameDiff extends SDBaseOps {
     public final static String INFERENCE_FACTORY_CLASS = "inferencefactory.class";
     private static InferenceFactory INFERENCE_FACTORY;
 
+    /**
+     * Enable or disable static memory planning for inference.<br>
+     * When enabled, the first execution of the graph for a given set of requested outputs and placeholder shapes
+     * records the order and lifetime of every intermediate array. A {@link MemoryPlan} is then computed that assigns
+     * each intermediate array an offset in a single preallocated arena, reusing space between arrays whose lifetimes
+     * don't overlap. Later executions with the same outputs and placeholder shapes use the plan and don't allocate
+     * memory for intermediate arrays.<br>
+     * Plans are cached in {@link #getMemoryPlans()}, keyed by execution signature. Graphs with control flow,
+     * TensorArrays or invoked subgraphs are executed without planning, as per {@link MemoryPlanner#supportsPlanning(SameDiff)}.
+     *
+     * @param enableMemoryPlanning Whether to enable static memory planning
+     */
+    public void setEnableMemoryPlanning(boolean enableMemoryPlanning) {
+        if (this.enableMemoryPlanning != enableMemoryPlanning) {
+            this.enableMemoryPlanning = enableMemoryPlanning;
+            //Sessions pick their memory manager when created
+            sessions.clear();
+            memoryPlans.clear();
+        }
+    }
+
+    /**
+     * Enable or disable inter-op parallel execution for inference.<br>
+     * By default, ops are executed one at a time on the calling thread. With more than one inter-op thread, ops that
+     * don't depend on each other - such as the parallel branches of Inception-style networks, or the heads of
+     * multi-head networks - are executed concurrently on a shared thread pool of the specified size.<br>
+     * Each op may itself use multiple threads (intra-op parallelism): to avoid oversubscribing the available cores,
+     * the product of the inter-op and intra-op thread counts should not exceed the number of cores.<br>
+     * Graphs with control flow, and executions with listeners or static memory planning, are always executed
+     * sequentially.<br>
+     * Only the native execution of ops happens concurrently: the session bookkeeping between ops (resolving
+     * dependencies, allocating arrays and storing outputs) is done under a single lock. This pays off for graphs whose
+     * independent branches contain large ops; graphs made of many small ops will see little benefit.
+     *
+     * @param interOpThreads Number of ops to execute concurrently. 1 to disable inter-op parallel execution
+     * @param intraOpThreads Maximum number of threads used to execute a single op, as per
+     *                       {@link org.nd4j.linalg.factory.Environment#setMaxThreads(int)}. Note that this is a
+     *                       process wide setting. 0 to leave unchanged
+     */
+    public void setInterOpParallelism(int interOpThreads, int intraOpThreads) {
+        Preconditions.checkArgument(interOpThreads >= 1, "Number of inter-op threads must be 1 or more, got %s", interOpThreads);
+        Preconditions.checkArgument(intraOpThreads >= 0, "Number of intra-op threads must be 0 or more, got %s", intraOpThreads);
+        synchronized (this) {
+            if (this.interOpThreads != interOpThreads && interOpPool != null) {
+                interOpPool.shutdown();
+                interOpPool = null;
+            }
+            this.interOpThreads = interOpThreads;
+        }
+        if (intraOpThreads > 0) {
+            Nd4j.getEnvironment().setMaxThreads(intraOpThreads);
+        }
+    }
+
+    /**
+     * As per {@link #setInterOpParallelism(int, int)}, leaving the number of intra-op threads unchanged
+     */
+    public void setInterOpParallelism(int interOpThreads) {
+        setInterOpParallelism(interOpThreads, 0);
+    }
+
+    /**
+     * @return The thread pool used for inter-op parallel execution, with {@link #getInterOpThreads()} threads.
+     * Created when first used
+     */
+    public synchronized ForkJoinPool getInterOpPool() {
+        if (interOpPool == null) {
+            interOpPool = new ForkJoinPool(interOpThreads);
+        }
+        return interOpPool;
+    }
+
     /**
      * Op creator object for math operations
      */
@@ -773,9 +879,21 @@ public class SameDiff extends SDBaseOps {
 
         if (!ops.containsKey(id)) {
             ops.put(id, SameDiffOp.builder().name(id).op(function).build());
+            markStructureChanged();
         }
     }
 
+    /**
+     * Record that the structure of the graph (its ops, or their inputs, outputs or control dependencies) has changed.
+     * Sessions use {@link #getStructureVersion()} to discard state derived from the graph structure, such as
+     * compiled executions.<br>
+     * Called by all SameDiff methods that modify the graph structure. Code that modifies the ops returned by
+     * {@link #getOps()} directly (for example, graph optimizers) must call this method after doing so.
+     */
+    public void markStructureChanged() {
+        structureVersion++;
+    }
+
 
     /**
      * Returns the name(s) of the inputs for the given function
@@ -1196,6 +1314,7 @@ public class SameDiff extends SDBaseOps {
         for (String resultName : varNames) {
             variables.get(resultName).setOutputOfOp(function.getOwnName());
         }
+        markStructureChanged();
     }
 
     /**
@@ -1314,6 +1433,7 @@ public class SameDiff extends SDBaseOps {
 
         //Update variable 'inputs to op' accounting for repeated inputs (like y = x+x)
         ops.get(function.getOwnName()).setInputsToOp(Arrays.asList(variables));     //Duplicate variables OK/required here
+        markStructureChanged();
 
         for (String variableName : variables) {
             if(this.variables.containsKey(variableName)) {
@@ -1363,6 +1483,7 @@ public class SameDiff extends SDBaseOps {
         oldArgs = new ArrayList<>(oldArgs);
         oldArgs.set(i, newName);
         ops.get(function.getOwnName()).setInputsToOp(oldArgs);
+        markStructureChanged();
 
         List<String> funcs = this.variables.get(newName).getInputsForOp();
 
@@ -3554,6 +3675,7 @@ public class SameDiff extends SDBaseOps {
 
         //Remove all sessions in case they have any cached arrays/state
         sessions.clear();
+        memoryPlans.clear();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3652,6 +3774,7 @@ public class SameDiff extends SDBaseOps {
 
         //Remove all sessions in case they have any cached arrays/state
         sessions.clear();
+        memoryPlans.clear();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3764,6 +3887,7 @@ public class SameDiff extends SDBaseOps {
 
         if (anyChanged) {
             sessions.clear();
+            memoryPlans.clear();
 
             //Recalculate datatypes of outputs, and dynamically update them
             Set<String> allSeenOps = new HashSet<>();
@@ -3830,6 +3954,7 @@ public class SameDiff extends SDBaseOps {
             log.debug("Failed to rename variable {} to {}, no variable found",from,to);
             return;
         }
+        markStructureChanged();
         Preconditions.checkState(variables.containsKey(from), "Cannot rename variable \"%s\": no variable with this name exists", from);
         Preconditions.checkState(!variables.containsKey(to), "Cannot rename variable \"%s\" to name \"%s\": a variable with name \"%s\" already exists", from, to, to);
 
@@ -4011,6 +4136,7 @@ public class SameDiff extends SDBaseOps {
                 }
 
                 ops.get(function.getOwnName()).setInputsToOp(newArgs);
+                markStructureChanged();
                 break;
             }
         }
@@ -5475,6 +5601,22 @@ public class SameDiff extends SDBaseOps {
      * @return a ByteBuffer holding the exported FlatBuffers representation of the graph
      */
     public ByteBuffer asFlatBuffers(long graphId, @NonNull ExecutorConfiguration configuration, boolean includeUpdaterState) {
+        return asFlatBuffers(graphId, configuration, includeUpdaterState, false);
+    }
+
+    /**
+     * This method exports the current SameDiff instance into FlatBuffers format, returning the array ops and
+     * all arrays as a ByteBuffer containing the FlatBuffers format data
+     *
+     * @param configuration       - ExecutorConfiguration to be embedded into serialized graph
+     * @param includeUpdaterState If true: include the updater state (state for updaters such as Adam, Nesterov, AdaGrad etc)
+     * @param memoryMappable      If true: write the constant, variable and updater state arrays in native byte order,
+     *                            aligned to {@link #MAPPED_ARRAY_ALIGNMENT} bytes, so that they can be used without
+     *                            copying when loaded with {@link #load(File, boolean, boolean)}
+     * @return a ByteBuffer holding the exported FlatBuffers representation of the graph
+     */
+    public ByteBuffer asFlatBuffers(long graphId, @NonNull ExecutorConfiguration configuration, boolean includeUpdaterState,
+                                    boolean memoryMappable) {
         Nd4j.getExecutioner().commit();
         val bufferBuilder = new FlatBufferBuilder(1024);
         val idCounter = new AtomicInteger(0);
@@ -5554,7 +5696,7 @@ public class SameDiff extends SDBaseOps {
             byte varType = (byte) variable.getVariableType().ordinal();
             if (variable.isConstant() || variable.isPlaceHolder() || variable.getVariableType() == VariableType.VARIABLE) {
                 //Don't export array type (i.e., activations), these are always replaced/re-calculated on each step
-                array = arr == null ? 0 : arr.toFlatArray(bufferBuilder);
+                array = arr == null ? 0 : toFlatArray(bufferBuilder, arr, memoryMappable);
             }
 
             if (variable.getVariableType() == VariableType.PLACEHOLDER) {
@@ -5657,7 +5799,7 @@ public class SameDiff extends SDBaseOps {
                     int i = 0;
                     for (Map.Entry<String, INDArray> e : state.entrySet()) {
                         keysOffsets[i] = bufferBuilder.createString(e.getKey());
-                        valuesOffsets[i] = e.getValue().toFlatArray(bufferBuilder);
+                        valuesOffsets[i] = toFlatArray(bufferBuilder, e.getValue(), memoryMappable);
                         i++;
                     }
 
@@ -5691,6 +5833,28 @@ public class SameDiff extends SDBaseOps {
         return bufferBuilder.dataBuffer();
     }
 
+    /**
+     * Serialize the specified array. If memoryMappable is true, the array buffer is written in native byte order and
+     * aligned, so it can be used as-is from a memory-mapped file.
+     */
+    protected static int toFlatArray(FlatBufferBuilder builder, INDArray arr, boolean memoryMappable) {
+        if (!memoryMappable || arr.isEmpty() || arr.dataType() == DataType.UTF8)
+            return arr.toFlatArray(builder);
+
+        if (arr.isView() || arr.data().offset() != 0 || arr.data().length() != arr.length())
+            arr = arr.dup(arr.ordering());
+        Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+
+        int shape = FlatArray.createShapeVector(builder, arr.shapeInfoDataBuffer().asLong());
+        int numBytes = (int) (arr.length() * arr.dataType().width());
+        ByteBuffer src = arr.data().asNio().duplicate().order(java.nio.ByteOrder.nativeOrder());
+        src.position(0).limit(numBytes);
+        builder.createUnintializedVector(1, numBytes, MAPPED_ARRAY_ALIGNMENT).put(src);
+        int buffer = builder.endVector();
+        return FlatArray.createFlatArray(builder, shape, buffer, FlatBuffersMapper.getDataTypeAsByte(arr.dataType()),
+                FlatBuffersMapper.getOrderAsByte());
+    }
+
     /**
      * See {@link #asFlatGraph(long, ExecutorConfiguration, boolean)}.
      *
@@ -5745,8 +5909,24 @@ public class SameDiff extends SDBaseOps {
      *                         If the network is to be used for inference only, set this to false to save space
      */
     public void save(@NonNull File file, boolean saveUpdaterState) {
+        save(file, saveUpdaterState, false);
+    }
+
+    /**
+     * Save the SameDiff instance to a file. Files can be loaded using {@link #load(File, boolean)} or
+     * {@link #load(File, boolean, boolean)}
+     *
+     * @param file             File to save to
+     * @param saveUpdaterState If true: save the updater state (arrays etc for Adam, Nesterov, RmsProp etc). If false: don't save
+     *                         the updater state.
+     * @param memoryMappable   If true: write all arrays in native byte order, aligned to {@link #MAPPED_ARRAY_ALIGNMENT} bytes.
+     *                         The file remains readable by {@link #load(File, boolean)}, and when loaded with
+     *                         {@link #load(File, boolean, boolean)} with memoryMapped set to true, the arrays are views
+     *                         of the memory-mapped file instead of copies
+     */
+    public void save(@NonNull File file, boolean saveUpdaterState, boolean memoryMappable) {
         try {
-            asFlatFile(file, saveUpdaterState);
+            asFlatFile(file, saveUpdaterState, memoryMappable);
         } catch (IOException e) {
             throw new RuntimeException("Error saving SameDiff instance to file", e);
         }
@@ -5792,8 +5972,22 @@ public class SameDiff extends SDBaseOps {
      * @return The loaded SameDiff network
      */
     public static SameDiff load(@NonNull File file, boolean loadUpdaterState) {
+        return load(file, loadUpdaterState, false);
+    }
+
+    /**
+     * Load the SameDiff instance previously saved with {@link #save(File, boolean)} or {@link #save(File, boolean, boolean)}
+     *
+     * @param file             The file to load the network from
+     * @param loadUpdaterState If true - load the updater state (history etc for updaters such as Adam, Nesterov momentum, RMSProp etc).
+     *                         For inference only, this should be false.
+     * @param memoryMapped     If true - memory-map the file instead of reading it into memory (see {@link #fromFlatFileMapped(File, boolean)}).
+     *                         Constant and variable arrays are created lazily, the first time they are used
+     * @return The loaded SameDiff network
+     */
+    public static SameDiff load(@NonNull File file, boolean loadUpdaterState, boolean memoryMapped) {
         try {
-            return fromFlatFile(file, loadUpdaterState);
+            return memoryMapped ? fromFlatFileMapped(file, loadUpdaterState) : fromFlatFile(file, loadUpdaterState);
         } catch (IOException e) {
             throw new RuntimeException("Error loading SameDiff instance from file", e);
         }
@@ -5846,7 +6040,27 @@ public class SameDiff extends SDBaseOps {
      * with profiling disabled and gather timings enabled.
      */
     public void asFlatFile(@NonNull File file, boolean withUpdaterState) throws IOException {
-        val fb = asFlatBuffers(withUpdaterState);
+        asFlatFile(file, withUpdaterState, false);
+    }
+
+    /**
+     * See {@link #asFlatFile(File, ExecutorConfiguration, boolean)}.
+     *
+     * Uses the default {@link ExecutorConfiguration} with output mode as
+     * {@link OutputMode#VARIABLE_SPACE}, execution mode as {@link ExecutionMode#SEQUENTIAL},
+     * with profiling disabled and gather timings enabled.
+     *
+     * @param memoryMappable If true: write the arrays so that they can be used without copying when the file is loaded
+     *                       with {@link #load(File, boolean, boolean)}. See {@link #save(File, boolean, boolean)}
+     */
+    public void asFlatFile(@NonNull File file, boolean withUpdaterState, boolean memoryMappable) throws IOException {
+        val configuration = ExecutorConfiguration.builder()
+                .outputMode(OutputMode.VARIABLE_SPACE)
+                .executionMode(org.nd4j.autodiff.execution.conf.ExecutionMode.SEQUENTIAL)
+                .profilingMode(OpExecutioner.ProfilingMode.DISABLED)
+                .gatherTimings(true)
+                .build();
+        val fb = asFlatBuffers(0, configuration, withUpdaterState, memoryMappable);
         val offset = fb.position();
 
         val array = fb.array();
@@ -5905,6 +6119,31 @@ public class SameDiff extends SDBaseOps {
         return fromFlatBuffers(bbIn, loadUpdaterState);
     }
 
+    /**
+     * Create a {@link SameDiff} instance from a memory-mapped file, optionally also loading the updater state.<br>
+     * The file is mapped copy-on-write ({@link FileChannel.MapMode#PRIVATE}): changes to arrays (for example, by training)
+     * are never written back to the file. The graph structure is loaded immediately, but constant and variable arrays
+     * are only created the first time they are used. For files saved with {@link #save(File, boolean, boolean)} with
+     * memoryMappable set to true, these arrays are views of the mapped file on the CPU backend: the operating system
+     * reads them from disk on demand, and shares their pages between all SameDiff instances that map the same file.
+     * Arrays in other files are copied from the mapped file when first used.<br>
+     * Note that the FlatBuffers format uses 32-bit offsets, so files are limited to 2GB.
+     *
+     * @param file             the file to load from
+     * @param loadUpdaterState If true, load the updater state (Adam etc state). For training, use true. For inference, use false
+     * @return the loaded same diff instance
+     * @throws IOException
+     */
+    public static SameDiff fromFlatFileMapped(@NonNull File file, boolean loadUpdaterState) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Preconditions.checkState(fc.size() <= Integer.MAX_VALUE, "Cannot map file %s of size %s bytes: FlatBuffers files are limited to 2GB",
+                    file, fc.size());
+            mapped = fc.map(FileChannel.MapMode.PRIVATE, 0, fc.size());
+        }
+        return fromFlatBuffers(mapped, loadUpdaterState, true);
+    }
+
     /**
      * Create a {@link SameDiff}
      * instance from a byte buffers
@@ -5931,6 +6170,22 @@ public class SameDiff extends SDBaseOps {
      * @throws IOException
      */
     public static SameDiff fromFlatBuffers(ByteBuffer bbIn, boolean loadUpdaterState) throws IOException {
+        return fromFlatBuffers(bbIn, loadUpdaterState, false);
+    }
+
+    /**
+     * Create a {@link SameDiff}
+     * instance from a byte buffers
+     * instance.
+     *
+     * @param bbIn             the input byte buffer
+     * @param loadUpdaterState If true, load the updater state (Adam etc state). For training, use true. For inference, use false
+     * @param lazyArrays       If true, constant and variable arrays are created the first time they are used, as views
+     *                         of the input buffer where possible. The input buffer must not be modified after this call
+     * @return the created samediff instance
+     * @throws IOException
+     */
+    public static SameDiff fromFlatBuffers(ByteBuffer bbIn, boolean loadUpdaterState, boolean lazyArrays) throws IOException {
 
         FlatGraph fg = FlatGraph.getRootAsFlatGraph(bbIn);
 
@@ -5953,6 +6208,14 @@ public class SameDiff extends SDBaseOps {
          */
 
         SameDiff sd = SameDiff.create();
+        LazyArrayHolder lazyConstants = null;
+        LazyArrayHolder lazyVariables = null;
+        if (lazyArrays) {
+            lazyConstants = new LazyArrayHolder();
+            lazyVariables = new LazyArrayHolder();
+            sd.constantArrays = lazyConstants;
+            sd.variablesArrays = lazyVariables;
+        }
 
         //Reconstruct placeholders
         int numPlaceholders = fg.placeholdersLength();
@@ -6013,7 +6276,9 @@ public class SameDiff extends SDBaseOps {
 
 
             FlatArray fa = v.ndarray();
-            if (fa != null && vt != VariableType.ARRAY) {
+            if (fa != null && lazyArrays && (vt == VariableType.CONSTANT || vt == VariableType.VARIABLE)) {
+                (vt == VariableType.CONSTANT ? lazyConstants : lazyVariables).setSupplier(n, () -> arrayFromFlatArray(fa, true));
+            } else if (fa != null && vt != VariableType.ARRAY) {
                 INDArray arr;
                 try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
                     arr = Nd4j.createFromFlatArray(fa);
@@ -6214,6 +6479,38 @@ public class SameDiff extends SDBaseOps {
         return sd;
     }
 
+    /**
+     * Create an array from a FlatArray. If allowView is true, and the FlatArray buffer is in native byte order and
+     * suitably aligned, the returned array on the CPU backend is a view of the FlatArray's underlying (direct) buffer
+     * instead of a copy. The view keeps that buffer from being garbage collected for as long as it is in use.
+     */
+    protected static INDArray arrayFromFlatArray(FlatArray fa, boolean allowView) {
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            DataType dt = FlatBuffersMapper.getDataTypeFromByte(fa.dtype());
+            ByteBuffer bb = fa.bufferAsByteBuffer();
+            long[] shapeInfo = new long[Shape.shapeInfoLength((int) fa.shape(0))];
+            for (int i = 0; i < shapeInfo.length; i++) {
+                shapeInfo[i] = fa.shape(i);
+            }
+            boolean canView = allowView && bb != null && bb.isDirect() && Nd4j.getEnvironment().isCPU()
+                    && dt != DataType.UTF8 && dt != DataType.COMPRESSED && !Shape.isEmpty(shapeInfo)
+                    && fa.byteOrder() == FlatBuffersMapper.getOrderAsByte();
+            if (canView) {
+                ByteBuffer data = bb.slice();
+                long length = Shape.length(shapeInfo);
+                //Keeps the (mapped) buffer reachable while the array is in use
+                Pointer p = new ByteBufferPointer(data);
+                canView = p.address() % dt.width() == 0 && data.capacity() >= length * dt.width();
+                if (canView) {
+                    DataBuffer buffer = Nd4j.createBuffer(p, length, dt);
+                    return Nd4j.create(buffer, Shape.shapeOf(shapeInfo), Shape.stridesOf(shapeInfo), 0,
+                            Shape.order(shapeInfo), dt);
+                }
+            }
+            return Nd4j.createFromFlatArray(fa);
+        }
+    }
+
     /**
      * This method returns a text representation of the "flattened" graph.
      *
@@ -0,0 +1,139 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.autodiff.samediff.array;
+
+import lombok.NonNull;
+import org.nd4j.autodiff.samediff.ArrayHolder;
+import org.nd4j.common.function.Supplier;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread safe ArrayHolder where arrays can be registered as suppliers, to be created only when they are first
+ * accessed. Used when loading a SameDiff instance from a memory-mapped file, where each supplier creates a view of the
+ * mapped file: arrays that are never used are never read from disk.<br>
+ * Unlike {@link ThreadSafeArrayHolder}, arrays are stored as-is: they are not copied or replicated to each device.
+ */
+public class LazyArrayHolder implements ArrayHolder {
+
+    private final Map<String, INDArray> arrays = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<INDArray>> suppliers = new ConcurrentHashMap<>();
+
+    /**
+     * Register a supplier for the specified array, replacing any existing array with that name.
+     * The supplier is called at most once, the first time the array is accessed.
+     *
+     * @param name     Name of the array
+     * @param supplier Supplier to create the array
+     */
+    public void setSupplier(@NonNull String name, @NonNull Supplier<INDArray> supplier) {
+        arrays.remove(name);
+        suppliers.put(name, supplier);
+    }
+
+    /**
+     * @return True if the array with the specified name exists and has been created
+     */
+    public boolean isMaterialized(@NonNull String name) {
+        return arrays.containsKey(name);
+    }
+
+    /**
+     * @return Number of arrays that have been registered but not yet created
+     */
+    public int numPending() {
+        return suppliers.size();
+    }
+
+    protected synchronized void materialize(String name) {
+        Supplier<INDArray> s = suppliers.get(name);
+        if (s == null)
+            return;     //Created by another thread
+        arrays.put(name, s.get());
+        suppliers.remove(name);
+    }
+
+    @Override
+    public boolean hasArray(@NonNull String name) {
+        return arrays.containsKey(name) || suppliers.containsKey(name);
+    }
+
+    @Override
+    public INDArray getArray(@NonNull String name) {
+        if (suppliers.containsKey(name))
+            materialize(name);
+        return arrays.get(name);
+    }
+
+    @Override
+    public synchronized void setArray(@NonNull String name, @NonNull INDArray array) {
+        suppliers.remove(name);
+        arrays.put(name, array);
+    }
+
+    @Override
+    public synchronized INDArray removeArray(@NonNull String name) {
+        Supplier<INDArray> s = suppliers.remove(name);
+        if (s != null)
+            return s.get();
+        return arrays.remove(name);
+    }
+
+    @Override
+    public int size() {
+        return arrays.size() + suppliers.size();
+    }
+
+    @Override
+    public synchronized void initFrom(ArrayHolder arrayHolder) {
+        arrays.clear();
+        suppliers.clear();
+        for (String n : arrayHolder.arrayNames()) {
+            arrays.put(n, arrayHolder.getArray(n));
+        }
+    }
+
+    @Override
+    public Collection<String> arrayNames() {
+        Set<String> names = new LinkedHashSet<>(arrays.keySet());
+        names.addAll(suppliers.keySet());
+        return Collections.unmodifiableCollection(names);
+    }
+
+    @Override
+    public synchronized void rename(@NonNull String from, @NonNull String to) {
+        Supplier<INDArray> s = suppliers.remove(from);
+        if (s != null) {
+            suppliers.put(to, s);
+        } else {
+            INDArray arr = arrays.remove(from);
+            if (arr != null)
+                arrays.put(to, arr);
+        }
+    }
+}
@@ -424,6 +424,13 @@ public abstract class AbstractDependencyTracker<T, D> {
         return ret;
     }
 
+    /**
+     * @return All new/unprocessed "all satisfied" values, without removing them from the queue
+     */
+    public List<T> peekNewAllSatisfiedList() {
+        return new ArrayList<>(allSatisfiedQueue);
+    }
+
     /**
      * As per {@link #getNewAllSatisfied()} but instead of returning the first
      * dependee, it returns the first that matches
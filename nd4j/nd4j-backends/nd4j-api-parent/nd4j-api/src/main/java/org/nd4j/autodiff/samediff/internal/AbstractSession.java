@@ -31,13 +31,18 @@ import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.autodiff.samediff.config.ExecutionResult;
 import org.nd4j.autodiff.samediff.config.SDValue;
 import org.nd4j.autodiff.samediff.config.SDValueType;
+import org.nd4j.autodiff.samediff.internal.memory.MemoryPlanner;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.common.function.Predicate;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import static org.nd4j.imports.VariableUtils.stripVarSuffix;
@@ -100,6 +105,25 @@ public abstract class AbstractSession<T, O> {
      */
     protected final Set<String> zeroInputOpsInSubgraph = new HashSet<>();
 
+    /**
+     * Compiled executions, keyed by execution signature (requested outputs, placeholder shapes and data types).
+     * Only used if {@link SameDiff#isEnableCompiledExecution()} is true
+     */
+    @Getter
+    protected final Map<String, CompiledExecution> compiledExecutions = new HashMap<>();
+    //SameDiff#getStructureVersion() that compiledExecutions and compiledSupported were created for
+    private long compiledStructureVersion = -1;
+    private boolean compiledSupported;
+
+    /**
+     * Used for inter-op parallel execution: held by whichever thread is executing a step, and released only while an
+     * op is being executed natively. See {@link #executeParallel(StepContext)}
+     */
+    protected final ReentrantLock execLock = new ReentrantLock();
+    private final Condition stepDone = execLock.newCondition();
+    private int stepsInFlight;
+    private Throwable parallelFailure;
+
     public AbstractSession(@NonNull SameDiff sameDiff) {
         this.sameDiff = sameDiff;
     }
@@ -233,101 +257,48 @@ public abstract class AbstractSession<T, O> {
         subgraph.clear();
         subgraphOps.clear();
 
-        // Step 1: determine subgraph structure we actually need to execute
-        // Basic plan: work backwards from the variables we want, based on the graph
-        // structure, to work out what
-        // we actually need to execute
-        // TODO we'll optimize this and cache the results, only recalculating if the
-        // graph structure changes
         Set<String> userRequestedUnique = new LinkedHashSet<>(variables);
         Set<String> allRequired = new LinkedHashSet<>(requiredActivations);
         allRequired.addAll(variables);
-        initSubgraph(allRequired);
-
-        // Step 2: Check that we have required placeholders
-        List<String> phNames = sameDiff.inputs();
-        Set<String> presentPlaceholders = new HashSet<>();
-        // add all placeholder values together
-        if (placeholderValues != null && !placeholderValues.isEmpty())
-            presentPlaceholders.addAll(placeholderValues.keySet());
-        if (otherPlaceHolderValues != null && !otherPlaceHolderValues.isEmpty())
-            presentPlaceholders.addAll(otherPlaceHolderValues.keySet());
 
-        if (presentPlaceholders.isEmpty() || !presentPlaceholders.containsAll(phNames)) {
-            /*
-             * We only have a subset of all placeholders
-             * Validate that we have all *required* placeholder values. Some might not be
-             * needed to calculate the requested outputs
-             * A placeholder is required if:
-             * (a) It's one of the requested outputs
-             * (b) It's required to calculate any of the ops in the subgraph
-             * For example, we might have a label placeholder, and we're doing inference not
-             * training
-             */
-            for (String s : phNames) {
-                boolean required = false;
-                if (variables.contains(s)) {
-                    required = true;
-                }
-                if (!required) {
-                    Variable v = sameDiff.getVariables().get(s);
-                    if (v.getInputsForOp() != null) {
-                        for (String s2 : v.getInputsForOp()) {
-                            if (subgraph.contains(s2)) {
-                                // Placeholder is required
-                                required = true;
-                                break;
-                            }
-                        }
-                    }
-                }
-
-                if (required && (presentPlaceholders.isEmpty() || !presentPlaceholders.contains(s))) {
-                    throw new IllegalStateException(
-                            "An input placeholder \"" + s + "\" is required to calculate the requested outputs," +
-                                    " but a placeholder value was not provided");
-                }
+        // If enabled, look up the compiled execution for this signature: if present, we replay the recorded
+        // execution steps directly, skipping subgraph calculation and dependency tracking.
+        // Otherwise, we record the execution steps (if the graph supports compiled execution)
+        CompiledExecution compiled = null;
+        String compiledKey = null;
+        List<CompiledStep> recording = null;
+        // Inter-op parallel execution doesn't execute ops in a fixed order, so it's not combined with compiled execution
+        boolean parallel = supportsParallelExecution(listeners);
+        if (!parallel && sameDiff.isEnableCompiledExecution()) {
+            long version = sameDiff.getStructureVersion();
+            if (version != compiledStructureVersion) {
+                // Graph structure has changed: previously compiled executions are no longer valid
+                compiledExecutions.clear();
+                compiledSupported = supportsCompiledExecution();
+                compiledStructureVersion = version;
             }
         }
-
-        // Step 3: Mark the (required) variables, constants and placeholders as
-        // available via dependency tracker
-        // And also any "zero dependency" ops - i.e., those without any inputs
-        ExecStep start = new ExecStep(ExecType.EXEC_START, "", null); // Dummy dependency to trigger the variables and
-                                                                      // constants
-        for (SDVariable v : sameDiff.variables()) {
-            VariableType vt = v.getVariableType();
-            if (vt == VariableType.VARIABLE || vt == VariableType.CONSTANT) {
-                ExecType et = vt == VariableType.VARIABLE ? ExecType.VARIABLE : ExecType.CONSTANT;
-                ExecStep es = new ExecStep(et, v.name(), new FrameIter(OUTER_FRAME, 0, null));
-                dt.addDependency(es, start);
-
-                Variable var = sameDiff.getVariables().get(v.name());
-                if (var.getControlDeps() != null) {
-                    addVarControlDeps(es, var); // Before this variable can be considered available for use, we need
-                                                // specified op to be executed
-                }
+        if (!parallel && sameDiff.isEnableCompiledExecution() && compiledSupported) {
+            // otherPlaceHolderValues contains all placeholders, including the array placeholders
+            compiledKey = MemoryPlanner.signature(sameDiff, allRequired, null, otherPlaceHolderValues);
+            compiled = compiledExecutions.get(compiledKey);
+            if (compiled == null) {
+                recording = new ArrayList<>();
             }
         }
 
-        for (String s : phNames) {
-            ExecStep es = new ExecStep(ExecType.PLACEHOLDER, s, new FrameIter(OUTER_FRAME, 0, null));
-            dt.addDependency(es, start);
-
-            Variable var = sameDiff.getVariables().get(s);
-            if (var.getControlDeps() != null) {
-                addVarControlDeps(es, var); // Before this variable can be considered available for use, we need
-                                            // specified op to be executed
-            }
+        if (compiled != null) {
+            // Replay: the subgraph was recorded on the first execution, and the dependency tracker isn't used
+            subgraph.addAll(compiled.getSubgraph());
+            subgraphOps.addAll(compiled.getSubgraphOps());
+        } else {
+            initExecution(allRequired);
         }
 
-        for (String s : zeroInputOpsInSubgraph) {
-            ExecStep es = new ExecStep(ExecType.OP, s, new FrameIter(OUTER_FRAME, 0, null));
-            dt.addDependency(es, start);
-        }
-        dt.markSatisfied(start, true);
+        // Check that we have the required placeholders
+        validatePlaceholders(variables, placeholderValues, otherPlaceHolderValues);
 
-        // Step 4: execute in any order, but not switching to new frame/iteration until
+        // Execute in any order, but not switching to new frame/iteration until
         // all from current frame/iter ops
         // are done - until we have all required nodeOutputs
         /*
@@ -356,14 +327,20 @@ public abstract class AbstractSession<T, O> {
 
         Map<String, SDValue> outValues = new LinkedHashMap<>();
         Set<String> allExecuted = new LinkedHashSet<>();
+        StepContext<T> ctx = new StepContext<>(placeholderValues, otherPlaceHolderValues, userRequestedUnique,
+                allRequired, reqOutputVariablesSet, outValues, allExecuted, recording, listeners, at, batch);
         int step = 0; // Number of execution steps
         // Next 3: current execution frame
         String currentFrame = OUTER_FRAME;
         int currentFrameIter = 0;
         FrameIter currParentFrame = null;
         ExecStepPredicate predicate = new ExecStepPredicate();
-        while (allExecuted.size() < allRequired.size()) {
-            if (!dt.hasNewAllSatisfied()) {
+        if (parallel) {
+            executeParallel(ctx);
+        }
+        while (!parallel && (compiled != null ? step < compiled.getSteps().size() : allExecuted.size() < allRequired.size())) {
+            CompiledStep compiledStep = compiled == null ? null : compiled.getSteps().get(step);
+            if (compiled == null && !dt.hasNewAllSatisfied()) {
                 execFailed(userRequestedUnique, outValues, allRequired, allExecuted, step);
                 // note execFailed will not always throw an exception if a user required all
                 // variables from
@@ -380,341 +357,619 @@ public abstract class AbstractSession<T, O> {
             // The idea is to not mix the order of execution of ops in different
             // frames/iters - i.e., finish the current
             // frame/iter before starting the next one
-            predicate.setCurrentFrame(currentFrame);
-            predicate.setCurrentFrameIter(currentFrameIter);
-            predicate.setCurrParentFrame(currParentFrame);
-
-            ExecStep es = dt.getFirstNewAllSatisfiedMatching(predicate);
-            if (es == null) {
-                // We must have finished the current frame/iter, and are switching to the next
-                // one
-                es = dt.getNewAllSatisfied();
+            ExecStep es;
+            if (compiled != null) {
+                es = compiledStep.getExecStep();
+            } else {
+                predicate.setCurrentFrame(currentFrame);
+                predicate.setCurrentFrameIter(currentFrameIter);
+                predicate.setCurrParentFrame(currParentFrame);
+
+                es = dt.getFirstNewAllSatisfiedMatching(predicate);
+                if (es == null) {
+                    // We must have finished the current frame/iter, and are switching to the next
+                    // one
+                    es = dt.getNewAllSatisfied();
+                }
             }
 
             currentFrame = es.getFrameIter().getFrame();
             currentFrameIter = es.getFrameIter().getIteration();
             currParentFrame = es.getFrameIter().getParentFrame();
 
-            log.trace("Beginning execution step {}: {}", step, es);
-
-            FrameIter outFrameIter;
-            boolean skipDepUpdate = false; // Only used for Switch ops, which have slightly different handling...
-            boolean skipMarkSatisfied = false; // Only for enter ops, because of different frame/iter
-            if (es.getType() == ExecType.CONSTANT || es.getType() == ExecType.VARIABLE) {
-                VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
-                T arr = getConstantOrVariable(es.getName());
-                Preconditions.checkNotNull(arr, "Encountered null placeholder array for constant: %s", vid);
-                putNodeValue(SDValue.create((INDArray) arr), vid);
-                outFrameIter = new FrameIter(OUTER_FRAME, 0, null);
-                if (userRequestedUnique.contains(es.getName())) {
-                    // User requested const/variable as one of the outputs
-                    outValues.put(es.getName(), SDValue.create((INDArray) arr));
+            executeStep(es, compiledStep, compiled, step, ctx);
+
+            step++;
+        }
+
+        if (recording != null && allExecuted.size() >= allRequired.size()) {
+            // Steps that became available but weren't needed for the requested outputs. These are handled in
+            // postProcessOutputValues, so have to be put back in the dependency tracker's queue on replay
+            List<ExecStep> pending = dt.peekNewAllSatisfiedList();
+            compiledExecutions.put(compiledKey, new CompiledExecution(recording, new LinkedHashSet<>(subgraph),
+                    new LinkedHashSet<>(subgraphOps), pending));
+        } else if (compiled != null && !compiled.getPending().isEmpty()) {
+            ExecStep done = new ExecStep(ExecType.EXEC_START, "", null);
+            for (ExecStep es : compiled.getPending()) {
+                dt.addDependency(es, done);
+            }
+            dt.markSatisfied(done, true);
+        }
+
+        // TODO we should clear the node outputs map to get rid of the invalid (closed,
+        // out of workspace, etc) arrays
+
+        outValues = postProcessOutputValues(outValues);
+        return ExecutionResult.builder()
+                .valueOutputs(outValues).build();
+    }
+
+    /**
+     * Initialize an interpreted (i.e., not replayed) execution: determine the subgraph that needs to be executed for
+     * the required outputs, and mark the variables, constants, placeholders and zero-input ops as available via the
+     * dependency tracker
+     *
+     * @param allRequired All variables that are required: requested outputs plus required activations
+     */
+    protected void initExecution(Set<String> allRequired) {
+        // Determine subgraph structure we actually need to execute
+        // Basic plan: work backwards from the variables we want, based on the graph
+        // structure, to work out what
+        // we actually need to execute
+        initSubgraph(allRequired);
+
+        // Mark the (required) variables, constants and placeholders as
+        // available via dependency tracker
+        // And also any "zero dependency" ops - i.e., those without any inputs
+        ExecStep start = new ExecStep(ExecType.EXEC_START, "", null); // Dummy dependency to trigger the variables and
+                                                                      // constants
+        for (SDVariable v : sameDiff.variables()) {
+            VariableType vt = v.getVariableType();
+            if (vt == VariableType.VARIABLE || vt == VariableType.CONSTANT) {
+                ExecType et = vt == VariableType.VARIABLE ? ExecType.VARIABLE : ExecType.CONSTANT;
+                ExecStep es = new ExecStep(et, v.name(), new FrameIter(OUTER_FRAME, 0, null));
+                dt.addDependency(es, start);
+
+                Variable var = sameDiff.getVariables().get(v.name());
+                if (var.getControlDeps() != null) {
+                    addVarControlDeps(es, var); // Before this variable can be considered available for use, we need
+                                                // specified op to be executed
                 }
+            }
+        }
+
+        for (String s : sameDiff.inputs()) {
+            ExecStep es = new ExecStep(ExecType.PLACEHOLDER, s, new FrameIter(OUTER_FRAME, 0, null));
+            dt.addDependency(es, start);
+
+            Variable var = sameDiff.getVariables().get(s);
+            if (var.getControlDeps() != null) {
+                addVarControlDeps(es, var); // Before this variable can be considered available for use, we need
+                                            // specified op to be executed
+            }
+        }
+
+        for (String s : zeroInputOpsInSubgraph) {
+            ExecStep es = new ExecStep(ExecType.OP, s, new FrameIter(OUTER_FRAME, 0, null));
+            dt.addDependency(es, start);
+        }
+        dt.markSatisfied(start, true);
+    }
+
+    /**
+     * Validate that a value was provided for every placeholder required to calculate the requested outputs.
+     * Must be called after the subgraph has been determined.
+     *
+     * @param variables              Requested output variables
+     * @param placeholderValues      Placeholder array values. May be null
+     * @param otherPlaceHolderValues Other placeholder values. May be null
+     */
+    protected void validatePlaceholders(List<String> variables, Map<String, T> placeholderValues,
+                                    Map<String, SDValue> otherPlaceHolderValues) {
+        List<String> phNames = sameDiff.inputs();
+        Set<String> presentPlaceholders = new HashSet<>();
+        // add all placeholder values together
+        if (placeholderValues != null && !placeholderValues.isEmpty())
+            presentPlaceholders.addAll(placeholderValues.keySet());
+        if (otherPlaceHolderValues != null && !otherPlaceHolderValues.isEmpty())
+            presentPlaceholders.addAll(otherPlaceHolderValues.keySet());
 
-                if (allRequired.contains(es.getName())) {
-                    allExecuted.add(es.getName());
+        if (presentPlaceholders.isEmpty() || !presentPlaceholders.containsAll(phNames)) {
+            /*
+             * We only have a subset of all placeholders
+             * Validate that we have all *required* placeholder values. Some might not be
+             * needed to calculate the requested outputs
+             * A placeholder is required if:
+             * (a) It's one of the requested outputs
+             * (b) It's required to calculate any of the ops in the subgraph
+             * For example, we might have a label placeholder, and we're doing inference not
+             * training
+             */
+            for (String s : phNames) {
+                boolean required = false;
+                if (variables.contains(s)) {
+                    required = true;
                 }
-            } else if (es.getType() == ExecType.PLACEHOLDER) {
-                VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
-                if (placeholderValues != null && placeholderValues.containsKey(es.getName())) {
-                    T phVal = placeholderValues == null ? null : placeholderValues.get(es.getName());
-                    SDValue valueCreate = SDValue.create((INDArray) phVal);
-                    putNodeValue(valueCreate, vid);
-                } else if (otherPlaceHolderValues != null && otherPlaceHolderValues.containsKey(es.getName())) {
-                    SDValue value = otherPlaceHolderValues.get(es.getName());
-                    switch (value.getSdValueType()) {
-                        default:
-                            putNodeValue(value, vid);
-                            break;
-                        case DICT:
-                            throw new UnsupportedOperationException("Unable to process dictionary types.");
+                if (!required) {
+                    Variable v = sameDiff.getVariables().get(s);
+                    if (v.getInputsForOp() != null) {
+                        for (String s2 : v.getInputsForOp()) {
+                            if (subgraph.contains(s2)) {
+                                // Placeholder is required
+                                required = true;
+                                break;
+                            }
+                        }
                     }
-                } else {
-                    putNodeValue(null, vid);
                 }
 
-                outFrameIter = new FrameIter(OUTER_FRAME, 0, null);
-                if (allRequired.contains(es.getName())) {
-                    Preconditions.checkState(placeholderValues != null
-                            && !placeholderValues.containsKey(es.getName())
-                            || otherPlaceHolderValues != null &&
-                                    otherPlaceHolderValues.containsKey(es.getName()),
-                            "No array was provided for the placeholder variable \"%s\" that is required for execution",
-                            es.getName());
-                    // User requested placeholder value as one of the outputs
-                    if (placeholderValues.containsKey(es.getName()))
-                        outValues.put(es.getName(), SDValue.create((INDArray) placeholderValues.get(es.getName())));
-                    else if (otherPlaceHolderValues.containsKey(es.getName())) {
-                        outValues.put(es.getName(), otherPlaceHolderValues.get(es.getName()));
-                    }
+                if (required && (presentPlaceholders.isEmpty() || !presentPlaceholders.contains(s))) {
+                    throw new IllegalStateException(
+                            "An input placeholder \"" + s + "\" is required to calculate the requested outputs," +
+                                    " but a placeholder value was not provided");
                 }
+            }
+        }
+    }
 
-                if (allRequired.contains(es.getName())) {
-                    allExecuted.add(es.getName());
+    /**
+     * Execute a single step: look up the value for a constant, variable or placeholder, or execute an op, then store
+     * the output values and (unless replaying a compiled execution) update the dependency tracker
+     *
+     * @param es           Step to execute
+     * @param compiledStep The recorded step, if replaying a compiled execution. Null otherwise
+     * @param compiled     The compiled execution being replayed, or null
+     * @param step         Index of the step in this execution, for logging
+     * @param ctx          The state of the current execution
+     */
+    protected void executeStep(ExecStep es, CompiledStep compiledStep, CompiledExecution compiled, int step,
+                               StepContext<T> ctx) {
+        Map<String, T> placeholderValues = ctx.getPlaceholderValues();
+        Map<String, SDValue> otherPlaceHolderValues = ctx.getOtherPlaceHolderValues();
+        Set<String> userRequestedUnique = ctx.getUserRequestedUnique();
+        Set<String> allRequired = ctx.getAllRequired();
+        Set<String> reqOutputVariablesSet = ctx.getReqOutputVariablesSet();
+        Map<String, SDValue> outValues = ctx.getOutValues();
+        Set<String> allExecuted = ctx.getAllExecuted();
+        List<CompiledStep> recording = ctx.getRecording();
+        List<Listener> listeners = ctx.getListeners();
+        At at = ctx.getAt();
+        MultiDataSet batch = ctx.getBatch();
+
+        log.trace("Beginning execution step {}: {}", step, es);
+
+        FrameIter outFrameIter;
+        boolean skipDepUpdate = false; // Only used for Switch ops, which have slightly different handling...
+        boolean skipMarkSatisfied = false; // Only for enter ops, because of different frame/iter
+        if (es.getType() == ExecType.CONSTANT || es.getType() == ExecType.VARIABLE) {
+            VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
+            T arr = getConstantOrVariable(es.getName());
+            Preconditions.checkNotNull(arr, "Encountered null placeholder array for constant: %s", vid);
+            putNodeValue(SDValue.create((INDArray) arr), vid);
+            outFrameIter = new FrameIter(OUTER_FRAME, 0, null);
+            if (userRequestedUnique.contains(es.getName())) {
+                // User requested const/variable as one of the outputs
+                outValues.put(es.getName(), SDValue.create((INDArray) arr));
+            }
+
+            if (allRequired.contains(es.getName())) {
+                allExecuted.add(es.getName());
+            }
+        } else if (es.getType() == ExecType.PLACEHOLDER) {
+            VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
+            if (placeholderValues != null && placeholderValues.containsKey(es.getName())) {
+                T phVal = placeholderValues == null ? null : placeholderValues.get(es.getName());
+                SDValue valueCreate = SDValue.create((INDArray) phVal);
+                putNodeValue(valueCreate, vid);
+            } else if (otherPlaceHolderValues != null && otherPlaceHolderValues.containsKey(es.getName())) {
+                SDValue value = otherPlaceHolderValues.get(es.getName());
+                switch (value.getSdValueType()) {
+                    default:
+                        putNodeValue(value, vid);
+                        break;
+                    case DICT:
+                        throw new UnsupportedOperationException("Unable to process dictionary types.");
                 }
-            } else if (es.getType() == ExecType.OP) {
-                String opName = es.getName();
-                SameDiffOp op = sameDiff.getOps().get(opName);
-                DifferentialFunction o = op.getOp();
-
-                if (o instanceof Enter) {
-                    // Enter op: output is variable in a new (specified) frame, iteration 0.
-                    // Parent is current (input) frame
-                    String outFrame = ((Enter) o).getFrameName();
-                    outFrameIter = new FrameIter(outFrame, 0, es.getFrameIter());
-
-                } else if (o instanceof Exit) {
-                    outFrameIter = getExitIter(es);
-                } else if (o instanceof NextIteration) {
-                    // NextIteration op: forwards its single input to its output variable in the
-                    // current frame, but increments the iteration number
-                    outFrameIter = es.getFrameIter().clone();
-                    outFrameIter.setIteration(outFrameIter.getIteration());
-                } else {
-                    // Standard ops - output variable has same frame and iteration number as the
-                    // input(s)
-                    // Also loopCond, merge, while, etc
-                    outFrameIter = es.getFrameIter();
+            } else {
+                putNodeValue(null, vid);
+            }
+
+            outFrameIter = new FrameIter(OUTER_FRAME, 0, null);
+            if (allRequired.contains(es.getName())) {
+                Preconditions.checkState(placeholderValues != null
+                        && !placeholderValues.containsKey(es.getName())
+                        || otherPlaceHolderValues != null &&
+                                otherPlaceHolderValues.containsKey(es.getName()),
+                        "No array was provided for the placeholder variable \"%s\" that is required for execution",
+                        es.getName());
+                // User requested placeholder value as one of the outputs
+                if (placeholderValues.containsKey(es.getName()))
+                    outValues.put(es.getName(), SDValue.create((INDArray) placeholderValues.get(es.getName())));
+                else if (otherPlaceHolderValues.containsKey(es.getName())) {
+                    outValues.put(es.getName(), otherPlaceHolderValues.get(es.getName()));
                 }
+            }
 
-                // Resolve the inputs to this execution step (op) to actual arrays
-                Set<VarId> inputs = null;
-                Set<VarId> allIterInputs = null;
-                Set<String> constAndPhInputs = null;
-                DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
+            if (allRequired.contains(es.getName())) {
+                allExecuted.add(es.getName());
+            }
+        } else if (es.getType() == ExecType.OP) {
+            String opName = es.getName();
+            SameDiffOp op = compiled != null ? compiledStep.getOp() : sameDiff.getOps().get(opName);
+            DifferentialFunction o = op.getOp();
+
+            if (o instanceof Enter) {
+                // Enter op: output is variable in a new (specified) frame, iteration 0.
+                // Parent is current (input) frame
+                String outFrame = ((Enter) o).getFrameName();
+                outFrameIter = new FrameIter(outFrame, 0, es.getFrameIter());
+
+            } else if (o instanceof Exit) {
+                outFrameIter = getExitIter(es);
+            } else if (o instanceof NextIteration) {
+                // NextIteration op: forwards its single input to its output variable in the
+                // current frame, but increments the iteration number
+                outFrameIter = es.getFrameIter().clone();
+                outFrameIter.setIteration(outFrameIter.getIteration());
+            } else {
+                // Standard ops - output variable has same frame and iteration number as the
+                // input(s)
+                // Also loopCond, merge, while, etc
+                outFrameIter = es.getFrameIter();
+            }
 
-                List<String> inputNames = op.getInputsToOp();
-                if (inputNames != null && !inputNames.isEmpty()) {
-                    inputs = new LinkedHashSet<>();
-                    allIterInputs = new LinkedHashSet<>();
-                    constAndPhInputs = new LinkedHashSet<>();
-                    Iterable<ExecStep> deps = dl.getDependencies();
-                    if (deps != null) {
-                        for (ExecStep dep : deps) {
-                            switch (dep.getType()) {
-                                case OP:
-                                case SWITCH_L:
-                                case SWITCH_R:
-                                    // The current execution step depends on one output of the op "dep"
-                                    SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
-                                    List<String> inputsToExecOp = toExecOp.getInputsToOp();
-                                    SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
-                                    List<String> inputOpOutNames = inputOp.getOutputsOfOp();
-                                    for (String s : inputsToExecOp) {
-                                        if (inputOpOutNames.contains(s)) {
-                                            VarId vid = new VarId(s, dep.getFrameIter().getFrame(),
-                                                    dep.getFrameIter().getIteration(),
-                                                    dep.getFrameIter().getParentFrame());
-                                            inputs.add(vid);
-                                        }
+            // Resolve the inputs to this execution step (op) to actual arrays
+            Set<VarId> inputs = null;
+            Set<VarId> allIterInputs = null;
+            Set<String> constAndPhInputs = null;
+
+            List<String> inputNames = op.getInputsToOp();
+            if (compiled != null) {
+                inputs = compiledStep.getInputs();
+                allIterInputs = compiledStep.getAllIterInputs();
+                constAndPhInputs = compiledStep.getConstAndPhInputs();
+            } else if (inputNames != null && !inputNames.isEmpty()) {
+                DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
+                inputs = new LinkedHashSet<>();
+                allIterInputs = new LinkedHashSet<>();
+                constAndPhInputs = new LinkedHashSet<>();
+                Iterable<ExecStep> deps = dl.getDependencies();
+                if (deps != null) {
+                    for (ExecStep dep : deps) {
+                        switch (dep.getType()) {
+                            case OP:
+                            case SWITCH_L:
+                            case SWITCH_R:
+                                // The current execution step depends on one output of the op "dep"
+                                SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
+                                List<String> inputsToExecOp = toExecOp.getInputsToOp();
+                                SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
+                                List<String> inputOpOutNames = inputOp.getOutputsOfOp();
+                                for (String s : inputsToExecOp) {
+                                    if (inputOpOutNames.contains(s)) {
+                                        VarId vid = new VarId(s, dep.getFrameIter().getFrame(),
+                                                dep.getFrameIter().getIteration(),
+                                                dep.getFrameIter().getParentFrame());
+                                        inputs.add(vid);
                                     }
-                                    break;
-                                case VARIABLE:
-                                    inputs.add(new VarId(dep.getName(), dep.getFrameIter().getFrame(),
-                                            dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame()));
-                                    break;
-                                case CONSTANT:
-                                case PLACEHOLDER:
-                                    constAndPhInputs.add(dep.getName());
-                                    break;
-                                default:
-                                    throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
-                            }
+                                }
+                                break;
+                            case VARIABLE:
+                                inputs.add(new VarId(dep.getName(), dep.getFrameIter().getFrame(),
+                                        dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame()));
+                                break;
+                            case CONSTANT:
+                            case PLACEHOLDER:
+                                constAndPhInputs.add(dep.getName());
+                                break;
+                            default:
+                                throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
                         }
                     }
                 }
+            }
 
-                // Do execution of the op, in 2 steps
-                // (a) "Parameterize" the op - i.e., find and set the arrays on the op, allocate
-                // outputs, etc ready for execution
-                // (b) actually execute the operation
-                O parameterizedOp = getAndParameterizeOp(opName, outFrameIter, inputs, allIterInputs, constAndPhInputs,
-                        placeholderValues, reqOutputVariablesSet, otherPlaceHolderValues);
-                ExecutionResult opOutputValues = getOutputs(parameterizedOp, outFrameIter, inputs, allIterInputs,
-                        constAndPhInputs, listeners, at, batch, reqOutputVariablesSet, otherPlaceHolderValues);
-                List<String> opOutVarNames = op.getOutputsOfOp();
-
-                int lengthToCheck = opOutputValues.numResults();
-                if (!opOutVarNames.isEmpty() && opOutputValues.hasSingle()) {
-                    Preconditions.checkState(lengthToCheck == opOutVarNames.size(),
-                            "Unexpected number of outputs from executed op %s:" +
-                                    " got %s outputs when %s outputs were expected (%s)",
-                            parameterizedOp.getClass().getSimpleName(), opOutputValues.numResults(),
-                            opOutVarNames.size(), opOutVarNames);
+            if (recording != null) {
+                recording.add(new CompiledStep(es, op, inputs, allIterInputs, constAndPhInputs));
+            }
+
+            // Do execution of the op, in 2 steps
+            // (a) "Parameterize" the op - i.e., find and set the arrays on the op, allocate
+            // outputs, etc ready for execution
+            // (b) actually execute the operation
+            O parameterizedOp = compiled != null
+                    ? getAndParameterizeOp(compiledStep, outFrameIter, placeholderValues, reqOutputVariablesSet, otherPlaceHolderValues)
+                    : getAndParameterizeOp(opName, outFrameIter, inputs, allIterInputs, constAndPhInputs,
+                    placeholderValues, reqOutputVariablesSet, otherPlaceHolderValues);
+            ExecutionResult opOutputValues = getOutputs(parameterizedOp, outFrameIter, inputs, allIterInputs,
+                    constAndPhInputs, listeners, at, batch, reqOutputVariablesSet, otherPlaceHolderValues);
+            List<String> opOutVarNames = op.getOutputsOfOp();
+
+            int lengthToCheck = opOutputValues.numResults();
+            if (!opOutVarNames.isEmpty() && opOutputValues.hasSingle()) {
+                Preconditions.checkState(lengthToCheck == opOutVarNames.size(),
+                        "Unexpected number of outputs from executed op %s:" +
+                                " got %s outputs when %s outputs were expected (%s)",
+                        parameterizedOp.getClass().getSimpleName(), opOutputValues.numResults(),
+                        opOutVarNames.size(), opOutVarNames);
+            }
+            // Store the op outputs
+            for (int i = 0; i < lengthToCheck; i++) {
+                if (opOutputValues.hasSingle() && opOutputValues.resultAt(i) == null
+                        || opOutputValues.hasValues() && !opOutputValues.valueExistsAtIndex(i)
+                                && op.getOp() instanceof Switch) {
+                    // Switch op only forwards the input to one of the outputs
+                    continue;
                 }
-                // Store the op outputs
-                for (int i = 0; i < lengthToCheck; i++) {
-                    if (opOutputValues.hasSingle() && opOutputValues.resultAt(i) == null
-                            || opOutputValues.hasValues() && !opOutputValues.valueExistsAtIndex(i)
-                                    && op.getOp() instanceof Switch) {
-                        // Switch op only forwards the input to one of the outputs
-                        continue;
-                    }
 
-                    // control flow ops are actually variables from the input forwarding to the next
-                    // frame
-                    String n = opOutVarNames.get(i);
-
-                    VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(),
-                            outFrameIter.getParentFrame());
-                    if (opOutputValues.hasValues()) {
-                        SDValue sdValue = opOutputValues.valueWithKeyAtIndex(i, false);
-                        // values can be null
-                        if (sdValue != null)
-                            switch (sdValue.getSdValueType()) {
-                                case LIST:
-                                    // tensor array op
-                                    // note: we leave this out since we already update node value outputs earlier
-                                    putNodeValue(sdValue, vid);
-                                    break;
+                // control flow ops are actually variables from the input forwarding to the next
+                // frame
+                String n = opOutVarNames.get(i);
+
+                VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(),
+                        outFrameIter.getParentFrame());
+                if (opOutputValues.hasValues()) {
+                    SDValue sdValue = opOutputValues.valueWithKeyAtIndex(i, false);
+                    // values can be null
+                    if (sdValue != null)
+                        switch (sdValue.getSdValueType()) {
+                            case LIST:
+                                // tensor array op
+                                // note: we leave this out since we already update node value outputs earlier
+                                putNodeValue(sdValue, vid);
+                                break;
 
-                                case TENSOR:
+                            case TENSOR:
+                                putNodeValue(sdValue, vid);
+                                // tensorflow import case where 2 input names are the same and 1 output will be
+                                // null
+                                if (op.getOp() instanceof Switch && inputNames.size() > 1
+                                        && inputNames.get(0).equals(inputNames.get(1))) {
                                     putNodeValue(sdValue, vid);
-                                    // tensorflow import case where 2 input names are the same and 1 output will be
-                                    // null
-                                    if (op.getOp() instanceof Switch && inputNames.size() > 1
-                                            && inputNames.get(0).equals(inputNames.get(1))) {
-                                        putNodeValue(sdValue, vid);
-                                        putNodeValue(sdValue, outFrameIter.toVarId(vid.getVariable() + ":1"));
-                                    } else {
-                                        putNodeValue(sdValue, vid);
-                                    }
-                                    break;
-                            }
-
-                        if (userRequestedUnique.contains(n)) {
-                            outValues.put(n, sdValue);
-                        }
-
-                    } else {
-                        SDValue currValueOutput = SDValue.create(opOutputValues.resultAt(i));
-                        putNodeValue(currValueOutput, vid);
-                        // ensure a singular value is populated in case the user uses the node value
-                        // outputs
-                        if (userRequestedUnique.contains(n)) {
-                            outValues.put(n, currValueOutput);
+                                    putNodeValue(sdValue, outFrameIter.toVarId(vid.getVariable() + ":1"));
+                                } else {
+                                    putNodeValue(sdValue, vid);
+                                }
+                                break;
                         }
 
+                    if (userRequestedUnique.contains(n)) {
+                        outValues.put(n, sdValue);
                     }
 
-                    if (allRequired.contains(n)) {
-                        allExecuted.add(n);
+                } else {
+                    SDValue currValueOutput = SDValue.create(opOutputValues.resultAt(i));
+                    putNodeValue(currValueOutput, vid);
+                    // ensure a singular value is populated in case the user uses the node value
+                    // outputs
+                    if (userRequestedUnique.contains(n)) {
+                        outValues.put(n, currValueOutput);
                     }
-                }
 
-                // Post execution: update dependency tracker so we know what is available to
-                // execute next, given we now
-                // have these new values
-                if (o instanceof Switch) {
-                    /*
-                     * Switch is a special case: only one output/branch is considered to exist post
-                     * execution.
-                     * Unlike every other type of op, only 1 of 2 output arrays is actually
-                     * executed.
-                     * For dependency tracking purposes, this is why we have SWITCH_L and _R
-                     * execution types.
-                     * If we just depended on the op, the dependency tracker would incorrectly
-                     * conclude that ops relying on
-                     * both branches (i.e., including the unavailable one) can now be executed
-                     */
-                    skipDepUpdate = true;
-                    skipMarkSatisfied = true;
-                    String[] argNames = o.argNames();
-                    // tensorflow import case: this means we output a list with a single name and
-                    // need to extract the null value from that singular list
-                    if (argNames[0].equals(argNames[1])) {
-                        SDValue sdValue = opOutputValues.getValueOutputs().get(argNames[0]);
-                        List<INDArray> inputList = sdValue.getListValue();
-                        int nullCount = (inputList.get(0) != null ? 1 : 0) + (inputList.get(1) != null ? 1 : 0);
-                        Preconditions.checkState(nullCount == 1,
-                                "Expected exactly one output to be present for switch ops, got %s", nullCount);
-                        boolean left = inputList.get(0) != null;
-
-                        ExecStep branch;
-                        if (left) {
-                            branch = new ExecStep(ExecType.SWITCH_L, es.getName(), es.getFrameIter());
-                        } else {
-                            branch = new ExecStep(ExecType.SWITCH_R, es.getName(), es.getFrameIter());
-                        }
-                        updateDescendantDeps(branch, outFrameIter);
-                        dt.markSatisfied(branch, true);
-                    } else {
-                        int nullCount = (opOutputValues.valueExistsAtIndex(0) ? 1 : 0)
-                                + (opOutputValues.valueExistsAtIndex(1) ? 1 : 0);
-                        Preconditions.checkState(nullCount == 1,
-                                "Expected exactly one output to be present for switch ops, got %s", nullCount);
-                        boolean left = opOutputValues.valueExistsAtIndex(0);
-                        ExecStep branch;
-                        if (left) {
-                            branch = new ExecStep(ExecType.SWITCH_L, es.getName(), es.getFrameIter());
-                        } else {
-                            branch = new ExecStep(ExecType.SWITCH_R, es.getName(), es.getFrameIter());
-                        }
-                        updateDescendantDeps(branch, outFrameIter);
-                        dt.markSatisfied(branch, true);
-                    }
+                }
 
-                } else if (o instanceof Enter) {
-                    // Enter op: we want to say that the inner frame is executed...
-                    skipDepUpdate = true;
-                    skipMarkSatisfied = true;
-                    Enter e = (Enter) o;
-                    FrameIter fi = new FrameIter(e.getFrameName(), 0, es.getFrameIter());
-                    ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
-                    updateDescendantDeps(exec, fi);
-                    dt.markSatisfied(exec, true);
-                } else if (o instanceof Exit) {
-                    // Exit op: we want to say that the parent frame is executed...
-                    skipDepUpdate = true;
-                    skipMarkSatisfied = true;
-                    FrameIter fi = es.getFrameIter().getParentFrame();
-                    ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
-                    updateDescendantDeps(exec, fi);
-                    dt.markSatisfied(exec, true);
+                if (allRequired.contains(n)) {
+                    allExecuted.add(n);
                 }
+            }
 
+            // Post execution: update dependency tracker so we know what is available to
+            // execute next, given we now
+            // have these new values
+            if (o instanceof Switch) {
                 /*
-                 * Edge case for TensorFlow import control dependencies: for some reason, TF
-                 * allows op control dependencies
-                 * like /while/x -> SomeConstant - i.e., a constant depending on something
-                 * inside a scope.
-                 * This should be handled with an enter op, but TF doesn't always use this :/
-                 * Note that this is equivalent to marking the control dependency as satisfied
-                 * on the first iteration
-                 * TODO double check that this is exactly the same behaviour as TF - otherwise
-                 * this approach might fail in
-                 * some rare cases that rely on the constant/variable not being available
+                 * Switch is a special case: only one output/branch is considered to exist post
+                 * execution.
+                 * Unlike every other type of op, only 1 of 2 output arrays is actually
+                 * executed.
+                 * For dependency tracking purposes, this is why we have SWITCH_L and _R
+                 * execution types.
+                 * If we just depended on the op, the dependency tracker would incorrectly
+                 * conclude that ops relying on
+                 * both branches (i.e., including the unavailable one) can now be executed
                  */
-                List<String> cdFor = op.getControlDepFor();
-                if (cdFor != null) {
-                    ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, opName, null);
-                    if (!dt.isSatisfied(cdEs)) {
-                        dt.markSatisfied(cdEs, true);
+                skipDepUpdate = true;
+                skipMarkSatisfied = true;
+                String[] argNames = o.argNames();
+                // tensorflow import case: this means we output a list with a single name and
+                // need to extract the null value from that singular list
+                if (argNames[0].equals(argNames[1])) {
+                    SDValue sdValue = opOutputValues.getValueOutputs().get(argNames[0]);
+                    List<INDArray> inputList = sdValue.getListValue();
+                    int nullCount = (inputList.get(0) != null ? 1 : 0) + (inputList.get(1) != null ? 1 : 0);
+                    Preconditions.checkState(nullCount == 1,
+                            "Expected exactly one output to be present for switch ops, got %s", nullCount);
+                    boolean left = inputList.get(0) != null;
+
+                    ExecStep branch;
+                    if (left) {
+                        branch = new ExecStep(ExecType.SWITCH_L, es.getName(), es.getFrameIter());
+                    } else {
+                        branch = new ExecStep(ExecType.SWITCH_R, es.getName(), es.getFrameIter());
                     }
+                    updateDescendantDeps(branch, outFrameIter);
+                    dt.markSatisfied(branch, true);
+                } else {
+                    int nullCount = (opOutputValues.valueExistsAtIndex(0) ? 1 : 0)
+                            + (opOutputValues.valueExistsAtIndex(1) ? 1 : 0);
+                    Preconditions.checkState(nullCount == 1,
+                            "Expected exactly one output to be present for switch ops, got %s", nullCount);
+                    boolean left = opOutputValues.valueExistsAtIndex(0);
+                    ExecStep branch;
+                    if (left) {
+                        branch = new ExecStep(ExecType.SWITCH_L, es.getName(), es.getFrameIter());
+                    } else {
+                        branch = new ExecStep(ExecType.SWITCH_R, es.getName(), es.getFrameIter());
+                    }
+                    updateDescendantDeps(branch, outFrameIter);
+                    dt.markSatisfied(branch, true);
                 }
 
-            } else {
-                // Should never happen
-                throw new RuntimeException("Unknown ExecStep: " + es);
+            } else if (o instanceof Enter) {
+                // Enter op: we want to say that the inner frame is executed...
+                skipDepUpdate = true;
+                skipMarkSatisfied = true;
+                Enter e = (Enter) o;
+                FrameIter fi = new FrameIter(e.getFrameName(), 0, es.getFrameIter());
+                ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
+                updateDescendantDeps(exec, fi);
+                dt.markSatisfied(exec, true);
+            } else if (o instanceof Exit) {
+                // Exit op: we want to say that the parent frame is executed...
+                skipDepUpdate = true;
+                skipMarkSatisfied = true;
+                FrameIter fi = es.getFrameIter().getParentFrame();
+                ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
+                updateDescendantDeps(exec, fi);
+                dt.markSatisfied(exec, true);
             }
 
-            // Standard ops
+            /*
+             * Edge case for TensorFlow import control dependencies: for some reason, TF
+             * allows op control dependencies
+             * like /while/x -> SomeConstant - i.e., a constant depending on something
+             * inside a scope.
+             * This should be handled with an enter op, but TF doesn't always use this :/
+             * Note that this is equivalent to marking the control dependency as satisfied
+             * on the first iteration
+             * TODO double check that this is exactly the same behaviour as TF - otherwise
+             * this approach might fail in
+             * some rare cases that rely on the constant/variable not being available
+             */
+            List<String> cdFor = op.getControlDepFor();
+            if (cdFor != null && compiled == null) {
+                ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, opName, null);
+                if (!dt.isSatisfied(cdEs)) {
+                    dt.markSatisfied(cdEs, true);
+                }
+            }
+
+        } else {
+            // Should never happen
+            throw new RuntimeException("Unknown ExecStep: " + es);
+        }
+
+        if (recording != null && es.getType() != ExecType.OP) {
+            recording.add(new CompiledStep(es, null, null, null, null));
+        }
+
+        // Standard ops
+        if (compiled == null) {
             if (!skipDepUpdate) {
                 updateDescendantDeps(es, outFrameIter);
             }
             if (!skipMarkSatisfied) {
                 dt.markSatisfied(es, true);
             }
+        }
+    }
 
-            step++;
+    /**
+     * Inter-op parallel execution: executes independent ops (for example, the branches of a multi-tower or
+     * multi-head network) concurrently on the {@link SameDiff#getInterOpPool()} thread pool.<br>
+     * Resolving dependencies, allocating and releasing arrays, and storing the results of each op happens while
+     * holding {@link #execLock}, so none of the session state needs to be thread safe. Only the native execution of
+     * each op (see {@link #execUnlocked(Runnable)}) happens without the lock, which is where nearly all of the time
+     * is spent for graphs with large ops.<br>
+     * This is a deliberate trade-off against making the session state itself thread safe. Constant and variable arrays
+     * are only read, and are already held in {@link org.nd4j.autodiff.samediff.array.ThreadSafeArrayHolder}s. The node
+     * outputs, the dependency tracker and the memory manager, however, have to be updated consistently with each other:
+     * storing an op's outputs, marking its dependents satisfied and releasing its inputs happen as one step under the
+     * lock. The sequential execution path also stays free of any synchronization. The cost is that this bookkeeping is
+     * serialized: graphs made of many small ops, where the bookkeeping rather than native execution dominates, will
+     * see little or no speedup from inter-op parallelism.<br>
+     * Not used for graphs with control flow, as the frames and iterations of loops must be executed in order.
+     */
+    protected void executeParallel(StepContext<T> ctx) {
+        ForkJoinPool pool = sameDiff.getInterOpPool();
+        int deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        Set<String> allExecuted = ctx.getAllExecuted();
+        Set<String> allRequired = ctx.getAllRequired();
+        int step = 0;
+        execLock.lock();
+        try {
+            stepsInFlight = 0;
+            parallelFailure = null;
+            while (parallelFailure == null && allExecuted.size() < allRequired.size()) {
+                if (!dt.hasNewAllSatisfied()) {
+                    if (stepsInFlight == 0) {
+                        execFailed(ctx.getUserRequestedUnique(), ctx.getOutValues(), allRequired, allExecuted, step);
+                        break;
+                    }
+                    stepDone.awaitUninterruptibly();
+                    continue;
+                }
+
+                ExecStep es = dt.getNewAllSatisfied();
+                int thisStep = step++;
+                if (es.getType() != ExecType.OP) {
+                    // Constants, variables and placeholders: just a lookup
+                    executeStep(es, null, null, thisStep, ctx);
+                    continue;
+                }
+
+                stepsInFlight++;
+                pool.execute(() -> {
+                    execLock.lock();
+                    try {
+                        if (parallelFailure == null) {
+                            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+                            executeStep(es, null, null, thisStep, ctx);
+                        }
+                    } catch (Throwable t) {
+                        parallelFailure = t;
+                    } finally {
+                        stepsInFlight--;
+                        stepDone.signalAll();
+                        execLock.unlock();
+                    }
+                });
+            }
+
+            // Wait for ops that are still executing, even if they aren't required: they modify the session state
+            while (stepsInFlight > 0) {
+                stepDone.awaitUninterruptibly();
+            }
+        } finally {
+            execLock.unlock();
         }
 
-        // TODO we should clear the node outputs map to get rid of the invalid (closed,
-        // out of workspace, etc) arrays
+        if (parallelFailure != null) {
+            Throwable t = parallelFailure;
+            parallelFailure = null;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException("Error during inter-op parallel execution", t);
+        }
+    }
 
-        outValues = postProcessOutputValues(outValues);
-        return ExecutionResult.builder()
-                .valueOutputs(outValues).build();
+    /**
+     * Run the specified (native) op execution. During inter-op parallel execution, the session lock is released while
+     * it runs, so that other threads can prepare and execute other ops at the same time
+     */
+    protected void execUnlocked(@NonNull Runnable exec) {
+        if (!execLock.isHeldByCurrentThread()) {
+            exec.run();
+            return;
+        }
+        execLock.unlock();
+        try {
+            exec.run();
+        } finally {
+            execLock.lock();
+        }
+    }
+
+    /**
+     * Whether inter-op parallel execution (see {@link #executeParallel(StepContext)}) should be used.
+     * Not supported by default
+     *
+     * @param listeners Listeners for the current execution
+     */
+    protected boolean supportsParallelExecution(List<Listener> listeners) {
+        return false;
     }
 
     private FrameIter getExitIter(ExecStep es) {
@@ -1131,6 +1386,23 @@ public abstract class AbstractSession<T, O> {
         }
     }
 
+    /**
+     * Compiled execution (replaying the execution steps recorded on the first execution) requires that the same ops
+     * are executed in the same order every time, for a given set of requested outputs and placeholder shapes.
+     * This is not the case for graphs with control flow (Switch, Merge, loops etc).<br>
+     * Only evaluated when the graph structure changes, as per {@link SameDiff#getStructureVersion()}; compiled
+     * executions are discarded at the same time.
+     *
+     * @return True if the graph supports compiled execution
+     */
+    protected boolean supportsCompiledExecution() {
+        for (SameDiffOp op : sameDiff.getOps().values()) {
+            if (op.getOp() instanceof BaseCompatOp)
+                return false;
+        }
+        return true;
+    }
+
     /**
      * Preprocess the placeholder values, if required.
      * Mainly reserved for casting in the case of InferenceSession
@@ -1210,6 +1482,21 @@ public abstract class AbstractSession<T, O> {
             Set<VarId> allIterInputs, Set<String> constAndPhInputs,
             Map<String, T> placeholderValues, Set<String> allReqVariables, Map<String, SDValue> otherPlaceholders);
 
+    /**
+     * Get the parameterized op to execute for a step of a compiled execution that is being replayed.<br>
+     * Sessions may store whatever they can reuse between executions of the step (for example, where each op input
+     * comes from) in {@link CompiledStep#setResolvedArgs(Object)}. By default, this is the same as
+     * {@link #getAndParameterizeOp(String, FrameIter, Set, Set, Set, Map, Set, Map)}
+     *
+     * @param step The recorded step
+     * @see #getAndParameterizeOp(String, FrameIter, Set, Set, Set, Map, Set, Map)
+     */
+    protected O getAndParameterizeOp(CompiledStep step, FrameIter frameIter, Map<String, T> placeholderValues,
+                                     Set<String> allReqVariables, Map<String, SDValue> otherPlaceholders) {
+        return getAndParameterizeOp(step.getExecStep().getName(), frameIter, step.getInputs(), step.getAllIterInputs(),
+                step.getConstAndPhInputs(), placeholderValues, allReqVariables, otherPlaceholders);
+    }
+
     /**
      * Execute the op - calculate INDArrays, or shape info, etc
      *
@@ -1408,6 +1695,54 @@ public abstract class AbstractSession<T, O> {
 
     }
 
+    /**
+     * The state of one execution (call to output), shared by all of its steps
+     */
+    @Getter
+    @AllArgsConstructor
+    protected static class StepContext<T> {
+        protected final Map<String, T> placeholderValues;
+        protected final Map<String, SDValue> otherPlaceHolderValues;
+        protected final Set<String> userRequestedUnique;
+        protected final Set<String> allRequired;
+        protected final Set<String> reqOutputVariablesSet;
+        protected final Map<String, SDValue> outValues;
+        protected final Set<String> allExecuted;
+        protected final List<CompiledStep> recording;
+        protected final List<Listener> listeners;
+        protected final At at;
+        protected final MultiDataSet batch;
+    }
+
+    /**
+     * A single recorded execution step, with the op and its inputs already resolved
+     */
+    @Getter
+    @RequiredArgsConstructor
+    protected static class CompiledStep {
+        protected final ExecStep execStep;
+        protected final SameDiffOp op;
+        protected final Set<VarId> inputs;
+        protected final Set<VarId> allIterInputs;
+        protected final Set<String> constAndPhInputs;
+        //Session specific: op arguments resolved on the first replay of this step, if any
+        @Setter
+        protected Object resolvedArgs;
+    }
+
+    /**
+     * The execution steps recorded for one execution signature, in execution order, along with the subgraph that
+     * was calculated for it
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CompiledExecution {
+        protected final List<CompiledStep> steps;
+        protected final Set<String> subgraph;
+        protected final Set<String> subgraphOps;
+        protected final List<ExecStep> pending;
+    }
+
     /**
      * Used in getting the next ExecStep that matches the specified (current)
      * frame/iteration
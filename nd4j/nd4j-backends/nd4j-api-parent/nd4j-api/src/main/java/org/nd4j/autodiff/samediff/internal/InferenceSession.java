@@ -32,8 +32,13 @@ import org.nd4j.autodiff.samediff.config.ExecutionResult;
 import org.nd4j.autodiff.samediff.config.SDValue;
 import org.nd4j.autodiff.samediff.config.SDValueType;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.ConcurrentArrayCacheMemoryMgr;
 import org.nd4j.autodiff.samediff.internal.memory.HashDependencyTracker;
+import org.nd4j.autodiff.samediff.internal.memory.MemoryPlan;
+import org.nd4j.autodiff.samediff.internal.memory.MemoryPlanner;
+import org.nd4j.autodiff.samediff.internal.memory.PlanningMemoryMgr;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.config.ND4JSystemProperties;
 import org.nd4j.common.primitives.Pair;
 import org.nd4j.common.util.ArrayUtil;
 import org.nd4j.imports.VariableUtils;
@@ -91,7 +96,51 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
 
     public InferenceSession(@NonNull SameDiff sameDiff) {
         super(sameDiff);
-        mmgr = new ArrayCacheMemoryMgr();
+        if (Boolean.parseBoolean(System.getProperty(ND4JSystemProperties.SAMEDIFF_CONCURRENT_MEMORY_MGR, "false"))) {
+            mmgr = new ConcurrentArrayCacheMemoryMgr();
+        } else {
+            mmgr = new ArrayCacheMemoryMgr();
+        }
+        if (sameDiff.isEnableMemoryPlanning() && MemoryPlanner.supportsPlanning(sameDiff)) {
+            mmgr = new PlanningMemoryMgr(mmgr);
+        }
+    }
+
+    @Override
+    public ExecutionResult output(@NonNull List<String> variables, Map<String, INDArray> placeholderValues,
+                                  Map<String, SDValue> otherPlaceHolderValues, MultiDataSet batch,
+                                  Collection<String> requiredActivations, List<Listener> listeners, At at) {
+        if (!(mmgr instanceof PlanningMemoryMgr)) {
+            return super.output(variables, placeholderValues, otherPlaceHolderValues, batch, requiredActivations, listeners, at);
+        }
+
+        //Static memory planning: use the cached plan for this signature if one exists, or record a new one
+        PlanningMemoryMgr pmm = (PlanningMemoryMgr) mmgr;
+        Set<String> allRequired = new LinkedHashSet<>(variables);
+        if (requiredActivations != null)
+            allRequired.addAll(requiredActivations);
+        String signature = MemoryPlanner.signature(sameDiff, allRequired, placeholderValues, otherPlaceHolderValues);
+        pmm.beginRun(signature, sameDiff.getMemoryPlans().get(signature));
+        boolean success = false;
+        try {
+            ExecutionResult ret = super.output(variables, placeholderValues, otherPlaceHolderValues, batch, requiredActivations, listeners, at);
+            success = true;
+            return ret;
+        } finally {
+            MemoryPlan plan = pmm.endRun(success);
+            if (plan != null) {
+                sameDiff.getMemoryPlans().put(signature, plan);
+            } else {
+                sameDiff.getMemoryPlans().remove(signature);
+            }
+        }
+    }
+
+    @Override
+    protected boolean supportsParallelExecution(List<Listener> listeners) {
+        //Listeners expect ops to be executed one at a time, and memory plans expect a fixed allocation order
+        return sameDiff.getInterOpThreads() > 1 && (listeners == null || listeners.isEmpty())
+                && !(mmgr instanceof PlanningMemoryMgr) && supportsCompiledExecution();
     }
 
     @Override
@@ -312,6 +361,21 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         if(opPair.getSecond() != null)
             opPair.getSecond().purge();
 
+        //Memory planning: outputs that are views of a planned array (reshape, permute, CreateView etc) keep that
+        // array in use until the views have been released too
+        if (mmgr instanceof PlanningMemoryMgr) {
+            PlanningMemoryMgr pmm = (PlanningMemoryMgr) mmgr;
+            for (int i = 0; i < out.numResults(); i++) {
+                if (out.hasSingle()) {
+                    if (out.resultAt(i) != null)
+                        pmm.registerOutput(out.resultAt(i));
+                } else {
+                    SDValue value = out.valueWithKeyAtIndex(i, false);
+                    if (value != null && value.getSdValueType() == SDValueType.TENSOR && value.getTensorValue() != null)
+                        pmm.registerOutput(value.getTensorValue());
+                }
+            }
+        }
 
         //Record array uses for memory management/deallocation
         SameDiffOp o = sameDiff.getOps().get(op.getName());
@@ -797,11 +861,11 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
             return ExecutionResult.createFrom(a,opContext);
         } else if (op instanceof CustomOp) {
             CustomOp c = (CustomOp) op;
-            Nd4j.exec(c, opContext);
+            execUnlocked(() -> Nd4j.exec(c, opContext));
             return ExecutionResult.createFrom((DifferentialFunction) c,opContext);
         } else if (op instanceof Op) {
             Op o = (Op) op;
-            Nd4j.exec(o, opContext);
+            execUnlocked(() -> Nd4j.exec(o, opContext));
             return ExecutionResult.createFrom((DifferentialFunction)o,opContext);
         } else {
             throw new UnsupportedOperationException("Execution not yet implemented for: " + op.getClass().getName());
@@ -1340,32 +1404,16 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
 
             oc.setArgs(args, customOp.iArgs(), customOp.dArgs() , customOp.tArgs(), customOp.bArgs() );
 
-
-            List<LongShapeDescriptor> outShape = customOp.calculateOutputShape(oc);
-            Preconditions.checkState(outShape != null && outShape.size() > 0, "Failed to calculate output shapes for op %s (%s) - no shapes were returned by calculateOutputShape()", customOp.opName(), customOp.getOwnName());
+            //Issue: many ops have multiple valid output datatypes, and output shape calc can't at present know which: https://github.com/eclipse/deeplearning4j/issues/6872
+            //As a workaround, we'll use the output variable datatype instead.
             String[] outNames = df.outputVariablesNames();
-            Preconditions.checkState(outNames.length == outShape.size(), "Error in operation shape calculation for op \"%s\": Got %s op output shapes for an operation" +
-                    " with %s outputs (number of shapes and outputs must be equal)", df.opName(), outShape.size(), outNames.length);
-            for (int i = 0; i < outShape.size(); i++) {
-                LongShapeDescriptor reqShape = outShape.get(i);
-
-                //Issue: many ops have multiple valid output datatypes, and output shape calc can't at present know which: https://github.com/eclipse/deeplearning4j/issues/6872
-                //As a workaround, we'll use the output variable datatype instead.
-                DataType dt = sameDiff.getVariable(outNames[i]).dataType();
-                DataType currDT = reqShape.dataType();
-                if (dt != currDT) {
-                    reqShape = reqShape.asDataType(dt);
-                }
-
-                //Always allocate new output array, rely on memory manager for efficient memory management and array reuse etc
-                boolean isOutput = allReqVariables.contains(outNames[i]);
-                INDArray out = mmgr.allocate(isOutput, reqShape);
-                if(reqShape.isEmpty() && !out.isEmpty()) {
-                    throw new IllegalStateException("Output shape was empty, but created array was not.");
-                }
-
-                oc.setOutputArray(i, out);
+            DataType[] outTypes = new DataType[outNames.length];
+            boolean[] isOutput = new boolean[outNames.length];
+            for (int i = 0; i < outNames.length; i++) {
+                outTypes[i] = sameDiff.getVariable(outNames[i]).dataType();
+                isOutput[i] = allReqVariables.contains(outNames[i]);
             }
+            allocateOutputs(customOp, oc, outTypes, isOutput);
 
         } else if (df instanceof Op) {
             Op op = (Op) df;
@@ -1428,6 +1476,125 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         return new Pair<>(sdo, oc);
     }
 
+    /**
+     * Calculate the output shapes of a custom op, and allocate its output arrays
+     *
+     * @param outTypes Data types of the op outputs
+     * @param isOutput For each op output, whether it is requested by the user
+     */
+    protected void allocateOutputs(DynamicCustomOp customOp, OpContext oc, DataType[] outTypes, boolean[] isOutput) {
+        List<LongShapeDescriptor> outShape = customOp.calculateOutputShape(oc);
+        Preconditions.checkState(outShape != null && outShape.size() > 0, "Failed to calculate output shapes for op %s (%s) - no shapes were returned by calculateOutputShape()", customOp.opName(), customOp.getOwnName());
+        Preconditions.checkState(outTypes.length == outShape.size(), "Error in operation shape calculation for op \"%s\": Got %s op output shapes for an operation" +
+                " with %s outputs (number of shapes and outputs must be equal)", customOp.opName(), outShape.size(), outTypes.length);
+        for (int i = 0; i < outShape.size(); i++) {
+            LongShapeDescriptor reqShape = outShape.get(i);
+            if (outTypes[i] != reqShape.dataType()) {
+                reqShape = reqShape.asDataType(outTypes[i]);
+            }
+
+            //Always allocate new output array, rely on memory manager for efficient memory management and array reuse etc
+            INDArray out = mmgr.allocate(isOutput[i], reqShape);
+            if(reqShape.isEmpty() && !out.isEmpty()) {
+                throw new IllegalStateException("Output shape was empty, but created array was not.");
+            }
+
+            oc.setOutputArray(i, out);
+        }
+    }
+
+    /**
+     * Replay of a compiled step: for custom ops, where each input comes from, and the output data types, are resolved
+     * on the first replay of the step and reused afterwards. Only the input arrays and the output shapes (which may
+     * depend on input values) are looked up or calculated on each execution.
+     */
+    @Override
+    protected Pair<SameDiffOp, OpContext> getAndParameterizeOp(CompiledStep step, FrameIter frameIter, Map<String, INDArray> placeholderValues,
+                                                            Set<String> allReqVariables, Map<String, SDValue> otherPlaceholders) {
+        SameDiffOp sdo = step.getOp();
+        DifferentialFunction df = sdo.getOp();
+        if (!(df instanceof DynamicCustomOp) || df instanceof Identity || df instanceof CreateView || df instanceof BaseTensorOp
+                || df instanceof Invoke || !frameIter.getFrame().equals(OUTER_FRAME)) {
+            return super.getAndParameterizeOp(step, frameIter, placeholderValues, allReqVariables, otherPlaceholders);
+        }
+
+        ResolvedArgs r = (ResolvedArgs) step.getResolvedArgs();
+        if (r == null) {
+            r = resolveArgs(step, df, allReqVariables);
+            step.setResolvedArgs(r);
+        }
+
+        INDArray[] args = new INDArray[r.argNames.length];
+        for (int i = 0; i < args.length; i++) {
+            String s = r.argNames[i];
+            if (r.argIds[i] != null) {
+                SDValue value = getSdValue(r.argIds[i]);
+                if (value == null || value.getSdValueType() != SDValueType.TENSOR) {
+                    //Not a plain array input: use the general case
+                    return super.getAndParameterizeOp(step, frameIter, placeholderValues, allReqVariables, otherPlaceholders);
+                }
+                args[i] = value.getTensorValue();
+            } else if (r.placeholder[i]) {
+                if (placeholderValues != null && placeholderValues.containsKey(s))
+                    args[i] = placeholderValues.get(s);
+                else if (otherPlaceholders != null && otherPlaceholders.containsKey(s))
+                    args[i] = otherPlaceholders.get(s).getTensorValue();
+            } else {
+                args[i] = sameDiff.getArrForVarName(s);
+            }
+            Preconditions.checkNotNull(args[i], "Could not parameterize op %s: array %s (variable %s) is null", sdo.getName(), i, s);
+        }
+
+        OpContext oc = opContexts.get(sdo.getName());
+        if (oc == null) {
+            oc = Nd4j.getExecutioner().buildContext();
+            opContexts.put(sdo.getName(), oc);
+        }
+        DynamicCustomOp customOp = (DynamicCustomOp) df;
+        oc.setArgs(args, customOp.iArgs(), customOp.dArgs(), customOp.tArgs(), customOp.bArgs());
+        allocateOutputs(customOp, oc, r.outTypes, r.isOutput);
+        return new Pair<>(sdo, oc);
+    }
+
+    protected ResolvedArgs resolveArgs(CompiledStep step, DifferentialFunction df, Set<String> allReqVariables) {
+        String[] argNames = df.argNames();
+        if (argNames == null)
+            argNames = new String[0];
+        VarId[] argIds = new VarId[argNames.length];
+        boolean[] placeholder = new boolean[argNames.length];
+        for (int i = 0; i < argNames.length; i++) {
+            SDVariable v = sameDiff.getVariable(argNames[i]);
+            if (v.isPlaceHolder()) {
+                placeholder[i] = true;
+            } else if (!v.isConstant() && v.getVariableType() != VariableType.VARIABLE) {
+                argIds[i] = lookup(argNames[i], step.getInputs(), step.getAllIterInputs(), true);
+            }
+        }
+
+        String[] outNames = df.outputVariablesNames();
+        DataType[] outTypes = new DataType[outNames.length];
+        boolean[] isOutput = new boolean[outNames.length];
+        for (int i = 0; i < outNames.length; i++) {
+            outTypes[i] = sameDiff.getVariable(outNames[i]).dataType();
+            isOutput[i] = allReqVariables.contains(outNames[i]);
+        }
+        return new ResolvedArgs(argNames, argIds, placeholder, outTypes, isOutput);
+    }
+
+    /**
+     * Custom op arguments of a compiled step, as resolved by {@link #resolveArgs(CompiledStep, DifferentialFunction, Set)}:
+     * for each input, the VarId of the array it is the output of, or whether it is a placeholder (otherwise it is a
+     * constant or variable); and for each output, its data type and whether it is requested by the user
+     */
+    @AllArgsConstructor
+    protected static class ResolvedArgs {
+        private final String[] argNames;
+        private final VarId[] argIds;
+        private final boolean[] placeholder;
+        private final DataType[] outTypes;
+        private final boolean[] isOutput;
+    }
+
 
     protected INDArray getArray(SDVariable sdv, Collection<VarId> opInputs, Collection<VarId> allIterInputs) {
         String n = sdv.name();
@@ -156,6 +156,12 @@ public class TrainingSession extends InferenceSession {
         return loss;
     }
 
+    @Override
+    protected boolean supportsParallelExecution(List<Listener> listeners) {
+        //Gradients and updates are applied in execution order
+        return false;
+    }
+
     @Override
     public ExecutionResult getOutputs(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                                                 Set<String> constAndPhInputs, List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables, Map<String, SDValue> otherPlaceHolders) {
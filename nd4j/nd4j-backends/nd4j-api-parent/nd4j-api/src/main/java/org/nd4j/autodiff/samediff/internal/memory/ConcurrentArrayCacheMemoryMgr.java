@@ -0,0 +1,111 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.config.ND4JSystemProperties;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.shade.guava.primitives.Longs;
+
+/**
+ * A thread safe alternative to {@link ArrayCacheMemoryMgr}.<br>
+ * Released arrays are cached in a {@link SizeClassArrayPool}. By default all instances share the global
+ * {@link SizeClassArrayPool#getDefault()} pool, so many InferenceSessions (for example, one per thread) draw from
+ * and return to the same cache, with a single shared memory budget. Closing this memory manager does not clear the
+ * shared pool: arrays released by one session remain available to others.<br>
+ * This memory manager is used by InferenceSession when the {@link ND4JSystemProperties#SAMEDIFF_CONCURRENT_MEMORY_MGR}
+ * system property is set to true.
+ */
+public class ConcurrentArrayCacheMemoryMgr extends AbstractMemoryMgr {
+
+    @Getter
+    private final SizeClassArrayPool pool;
+    private final boolean ownsPool;
+
+    private final boolean enableCache = Boolean
+            .parseBoolean(System.getProperty(ND4JSystemProperties.SAMEDIFF_MEMORY_CACHE_DISABLE, "true"));
+
+    /**
+     * Create a memory manager backed by the global shared pool, {@link SizeClassArrayPool#getDefault()}
+     */
+    public ConcurrentArrayCacheMemoryMgr() {
+        this(SizeClassArrayPool.getDefault(), false);
+    }
+
+    /**
+     * @param pool     Pool to use for caching released arrays
+     * @param ownsPool If true: the pool is cleared when this memory manager is closed. Should be false for any
+     *                 pool that is shared with other memory managers
+     */
+    public ConcurrentArrayCacheMemoryMgr(@NonNull SizeClassArrayPool pool, boolean ownsPool) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        return allocate(dataType, shape, Nd4j.order());
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, LongShapeDescriptor descriptor) {
+        if (descriptor.isEmpty()) {
+            INDArray ret = Nd4j.create(descriptor);
+            if (detached) {
+                ret = ret.detach();
+            }
+            return ret;
+        }
+
+        return allocate(descriptor.dataType(), descriptor.getShape(), descriptor.getOrder());
+    }
+
+    protected INDArray allocate(DataType dataType, long[] shape, char order) {
+        if (enableCache && shape.length > 0 && !Longs.contains(shape, 0) && dataType != DataType.UTF8) {
+            INDArray arr = pool.get(dataType, shape, order);
+            if (arr != null)
+                return arr;
+        }
+        return Nd4j.createUninitializedDetached(dataType, order, shape);
+    }
+
+    @Override
+    public void release(@NonNull INDArray array) {
+        if (!enableCache) {
+            if (array.closeable()) {
+                array.close();
+            }
+            return;
+        }
+        pool.offer(array);
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.clear();
+        }
+    }
+}
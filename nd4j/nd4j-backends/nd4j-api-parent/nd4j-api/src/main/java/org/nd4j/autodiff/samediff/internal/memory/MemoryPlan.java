@@ -0,0 +1,130 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.linalg.api.buffer.DataType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A static memory plan for one execution of a SameDiff graph with a fixed set of requested outputs and fixed
+ * placeholder shapes.<br>
+ * The plan lists every allocation made by the session, in the order the session made them. Each planned allocation
+ * has an offset (in elements) into a single preallocated arena for its data type. Allocations whose lifetimes do not
+ * overlap may share arena space.<br>
+ * Plans are created by {@link MemoryPlanner} and used by {@link PlanningMemoryMgr}.
+ */
+@Getter
+public class MemoryPlan {
+
+    private final String signature;
+    private final List<Allocation> allocations;
+    private final Map<DataType, Long> arenaLengths;
+    private final long arenaBytes;
+    private final long unplannedBytes;
+
+    /**
+     * @param signature      Signature (outputs, placeholder shapes and data types) this plan is valid for
+     * @param allocations    All allocations in the order they are made by the session
+     * @param arenaLengths   Required arena length (in elements) for each data type
+     * @param arenaBytes     Total size of all arenas, in bytes
+     * @param unplannedBytes Total size of all planned allocations, in bytes, if no memory was reused
+     */
+    public MemoryPlan(@NonNull String signature, @NonNull List<Allocation> allocations,
+                      @NonNull Map<DataType, Long> arenaLengths, long arenaBytes, long unplannedBytes) {
+        this.signature = signature;
+        this.allocations = Collections.unmodifiableList(allocations);
+        this.arenaLengths = Collections.unmodifiableMap(arenaLengths);
+        this.arenaBytes = arenaBytes;
+        this.unplannedBytes = unplannedBytes;
+    }
+
+    /**
+     * @return The allocation with the given sequence number, or null if the session never made that many allocations
+     * when the plan was recorded
+     */
+    public Allocation get(int sequence) {
+        return sequence < allocations.size() ? allocations.get(sequence) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryPlan(allocations=" + allocations.size() + ", arenaBytes=" + arenaBytes +
+                ", unplannedBytes=" + unplannedBytes + ")";
+    }
+
+    /**
+     * A single allocation made by the session, with its lifetime in session memory events
+     */
+    @Getter
+    public static class Allocation {
+        private final int sequence;
+        private final DataType dataType;
+        private final long[] shape;
+        private final char order;
+        private final long length;
+        private final long start;
+        private long end = -1;
+        private boolean planned;
+        private long offset = -1;
+
+        public Allocation(int sequence, @NonNull DataType dataType, @NonNull long[] shape, char order, long length,
+                          long start, boolean planned) {
+            this.sequence = sequence;
+            this.dataType = dataType;
+            this.shape = shape;
+            this.order = order;
+            this.length = length;
+            this.start = start;
+            this.planned = planned;
+        }
+
+        /**
+         * @param end Memory event index at which the allocation was released
+         */
+        public void setEnd(long end) {
+            this.end = end;
+        }
+
+        protected void setPlanned(boolean planned) {
+            this.planned = planned;
+        }
+
+        protected void setOffset(long offset) {
+            this.offset = offset;
+        }
+
+        /**
+         * @return True if this allocation and the other allocation are alive at the same time
+         */
+        public boolean overlapsInTime(Allocation other) {
+            return start < other.end && other.start < end;
+        }
+
+        public long bytes() {
+            return length * dataType.width();
+        }
+    }
+}
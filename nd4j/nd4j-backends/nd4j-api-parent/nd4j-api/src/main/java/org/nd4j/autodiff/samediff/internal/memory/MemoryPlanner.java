@@ -0,0 +1,194 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.NonNull;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.config.SDValue;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.custom.Invoke;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.BaseCompatOp;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Creates {@link MemoryPlan}s from the allocations and releases recorded during one execution of a SameDiff graph.<br>
+ * Offsets are assigned with the "greedy by size" strategy (as used by TFLite and ONNX Runtime): allocations are
+ * placed largest first, each in the smallest gap between already placed allocations whose lifetimes overlap with it.
+ */
+public class MemoryPlanner {
+
+    /**
+     * Alignment of each planned array within its arena, in bytes
+     */
+    public static final int ALIGNMENT_BYTES = 64;
+
+    private MemoryPlanner() {
+    }
+
+    /**
+     * Static memory planning requires the graph to allocate the same arrays in the same order on every execution.
+     * Graphs with control flow (loops, conditionals), TensorArrays or invoked subgraphs don't meet this requirement.<br>
+     * Ops that return views of their inputs (reshape, permute, CreateView etc) are supported: the viewed array stays
+     * in use until all of its views have been released, see {@link PlanningMemoryMgr#registerOutput(INDArray)}.
+     *
+     * @return True if static memory planning can be used for the specified graph
+     */
+    public static boolean supportsPlanning(@NonNull SameDiff sameDiff) {
+        for (SameDiffOp op : sameDiff.getOps().values()) {
+            if (op.getOp() instanceof BaseCompatOp || op.getOp() instanceof BaseTensorOp || op.getOp() instanceof Invoke)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Create the signature that a memory plan is cached under: the requested outputs, plus the data type and shape of
+     * every placeholder. Plans are only reused for executions with exactly the same signature.
+     */
+    public static String signature(@NonNull SameDiff sameDiff, @NonNull Collection<String> outputs,
+                                   Map<String, INDArray> placeholders, Map<String, SDValue> otherPlaceholders) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sameDiff.getOps().size()).append(';').append(String.join(",", outputs)).append(';');
+        if (placeholders != null) {
+            for (Map.Entry<String, INDArray> e : new TreeMap<>(placeholders).entrySet()) {
+                appendArray(sb.append(e.getKey()).append('='), e.getValue());
+            }
+        }
+        if (otherPlaceholders != null) {
+            for (Map.Entry<String, SDValue> e : new TreeMap<>(otherPlaceholders).entrySet()) {
+                if (placeholders != null && placeholders.containsKey(e.getKey()))
+                    continue;
+                sb.append(e.getKey()).append('=');
+                SDValue v = e.getValue();
+                if (v.getTensorValue() != null) {
+                    appendArray(sb, v.getTensorValue());
+                } else if (v.getListValue() != null) {
+                    sb.append('[');
+                    for (INDArray arr : v.getListValue()) {
+                        appendArray(sb, arr);
+                    }
+                    sb.append(']');
+                } else {
+                    sb.append(v.getSdValueType()).append(';');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendArray(StringBuilder sb, INDArray arr) {
+        if (arr == null) {
+            sb.append("null;");
+        } else {
+            sb.append(arr.dataType()).append(Arrays.toString(arr.shape())).append(';');
+        }
+    }
+
+    /**
+     * Create a memory plan from recorded allocations. Allocations that are not marked as planned, or that were never
+     * released, are left unplanned and will be allocated normally.
+     *
+     * @param signature   Signature of the execution the allocations were recorded for
+     * @param allocations All allocations made by the session, in order
+     * @return The memory plan
+     */
+    public static MemoryPlan plan(@NonNull String signature, @NonNull List<MemoryPlan.Allocation> allocations) {
+        Map<DataType, List<MemoryPlan.Allocation>> byType = new HashMap<>();
+        long unplannedBytes = 0;
+        for (MemoryPlan.Allocation a : allocations) {
+            if (a.isPlanned() && a.getEnd() < 0) {
+                //Never released - for example, kept until the end of execution - can't reuse its memory
+                a.setPlanned(false);
+            }
+            if (a.isPlanned()) {
+                byType.computeIfAbsent(a.getDataType(), k -> new ArrayList<>()).add(a);
+                unplannedBytes += a.bytes();
+            }
+        }
+
+        Map<DataType, Long> arenaLengths = new HashMap<>();
+        long arenaBytes = 0;
+        for (Map.Entry<DataType, List<MemoryPlan.Allocation>> e : byType.entrySet()) {
+            long length = assignOffsets(e.getValue(), Math.max(1, ALIGNMENT_BYTES / e.getKey().width()));
+            arenaLengths.put(e.getKey(), length);
+            arenaBytes += length * e.getKey().width();
+        }
+
+        return new MemoryPlan(signature, allocations, arenaLengths, arenaBytes, unplannedBytes);
+    }
+
+    /**
+     * Assign offsets to the specified allocations (all of the same data type)
+     *
+     * @return The required arena length, in elements
+     */
+    protected static long assignOffsets(List<MemoryPlan.Allocation> allocations, long alignment) {
+        List<MemoryPlan.Allocation> toPlace = new ArrayList<>(allocations);
+        toPlace.sort(Comparator.comparingLong(MemoryPlan.Allocation::getLength).reversed()
+                .thenComparingLong(MemoryPlan.Allocation::getStart));
+
+        //Placed allocations, sorted by offset
+        List<MemoryPlan.Allocation> placed = new ArrayList<>();
+        long arenaLength = 0;
+        for (MemoryPlan.Allocation a : toPlace) {
+            long best = -1;
+            long bestGap = Long.MAX_VALUE;
+            long prevEnd = 0;
+            for (MemoryPlan.Allocation p : placed) {
+                if (!a.overlapsInTime(p))
+                    continue;
+                long gap = p.getOffset() - prevEnd;
+                if (gap >= a.getLength() && gap < bestGap) {
+                    best = prevEnd;
+                    bestGap = gap;
+                }
+                prevEnd = Math.max(prevEnd, alignUp(p.getOffset() + p.getLength(), alignment));
+            }
+            if (best < 0) {
+                best = prevEnd;
+            }
+            a.setOffset(best);
+            arenaLength = Math.max(arenaLength, best + a.getLength());
+
+            int idx = 0;
+            while (idx < placed.size() && placed.get(idx).getOffset() <= best) {
+                idx++;
+            }
+            placed.add(idx, a);
+        }
+        return arenaLength;
+    }
+
+    private static long alignUp(long value, long alignment) {
+        return ((value + alignment - 1) / alignment) * alignment;
+    }
+}
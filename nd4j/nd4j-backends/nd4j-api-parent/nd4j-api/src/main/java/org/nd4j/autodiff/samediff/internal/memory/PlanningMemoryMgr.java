@@ -0,0 +1,301 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.internal.SessionMemMgr;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link SessionMemMgr} that executes a static {@link MemoryPlan}.<br>
+ * Each execution of the graph is bracketed by {@link #beginRun(String, MemoryPlan)} and {@link #endRun(boolean)}:
+ * <ul>
+ *     <li>Without a plan, all allocations are passed to the underlying memory manager, and the order and lifetime of
+ *     every allocation is recorded. At the end of the run, a new plan is created from the recording.</li>
+ *     <li>With a plan, every planned allocation is returned as a view of a preallocated arena (one per data type) at
+ *     the planned offset, and releasing it is a no-op. Only allocations that can't be planned (for example, arrays
+ *     returned to the user) go to the underlying memory manager.</li>
+ * </ul>
+ * If an execution diverges from its plan (a different allocation sequence, or a planned region is still in use), the
+ * rest of that execution falls back to the underlying memory manager and the plan is discarded.<br>
+ * Op outputs that are views of an allocation (for example, from ops that return a view of their input) are registered
+ * via {@link #registerOutput(INDArray)}. The allocation then stays in use until it and all of its views have been
+ * released, so its lifetime in the plan covers the last use of any view.
+ */
+@Slf4j
+public class PlanningMemoryMgr extends AbstractMemoryMgr {
+
+    @Getter
+    private final SessionMemMgr underlying;
+
+    private String signature;
+    private MemoryPlan plan;
+    private boolean planValid;
+    private long step;
+    private int sequence;
+
+    //Recording mode: all allocations
+    private List<MemoryPlan.Allocation> recorded;
+
+    //Replay mode: arena per data type
+    private MemoryPlan arenaPlan;
+    private final Map<DataType, INDArray> arenas = new HashMap<>();
+
+    //Both modes: the not yet released allocations, by array and by (root buffer, offset), and views of them
+    private final Map<INDArray, LiveAllocation> live = new IdentityHashMap<>();
+    private final Map<DataBuffer, TreeMap<Long, LiveAllocation>> liveRegions = new IdentityHashMap<>();
+    private final Map<INDArray, LiveAllocation> views = new IdentityHashMap<>();
+
+    public PlanningMemoryMgr(@NonNull SessionMemMgr underlying) {
+        this.underlying = underlying;
+    }
+
+    /**
+     * Start a new execution
+     *
+     * @param signature Signature of the execution, as per {@link MemoryPlanner#signature}
+     * @param plan      Plan to execute. If null, allocations are recorded to create a new plan
+     */
+    public void beginRun(@NonNull String signature, MemoryPlan plan) {
+        this.signature = signature;
+        this.plan = plan;
+        this.planValid = true;
+        this.step = 0;
+        this.sequence = 0;
+        clearLive();
+        if (plan == null) {
+            recorded = new ArrayList<>();
+        } else {
+            recorded = null;
+            if (arenaPlan != plan) {
+                allocateArenas(plan);
+            }
+        }
+    }
+
+    /**
+     * End the current execution
+     *
+     * @param success True if the execution completed successfully
+     * @return The plan to use for the next execution with the same signature, or null if there is no valid plan
+     */
+    public MemoryPlan endRun(boolean success) {
+        MemoryPlan ret;
+        if (!success || !planValid) {
+            ret = null;
+        } else if (plan != null) {
+            ret = plan;
+        } else {
+            ret = MemoryPlanner.plan(signature, recorded);
+            log.debug("Created memory plan for {} allocations: arena size {} bytes, {} bytes without reuse",
+                    recorded.size(), ret.getArenaBytes(), ret.getUnplannedBytes());
+        }
+        recorded = null;
+        clearLive();
+        plan = null;
+        return ret;
+    }
+
+    protected void clearLive() {
+        live.clear();
+        liveRegions.clear();
+        views.clear();
+    }
+
+    protected void allocateArenas(MemoryPlan plan) {
+        closeArenas();
+        for (Map.Entry<DataType, Long> e : plan.getArenaLengths().entrySet()) {
+            arenas.put(e.getKey(), Nd4j.createUninitializedDetached(e.getKey(), e.getValue()));
+        }
+        arenaPlan = plan;
+    }
+
+    protected void closeArenas() {
+        for (INDArray arr : arenas.values()) {
+            if (arr.closeable())
+                arr.close();
+        }
+        arenas.clear();
+        arenaPlan = null;
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        return allocate(detached, dataType, shape, Nd4j.order(), null);
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, LongShapeDescriptor descriptor) {
+        return allocate(detached, descriptor.dataType(), descriptor.getShape(), descriptor.getOrder(), descriptor);
+    }
+
+    protected INDArray allocate(boolean detached, DataType dataType, long[] shape, char order, LongShapeDescriptor descriptor) {
+        boolean plannable = !detached && dataType != DataType.UTF8 && shape.length > 0
+                && (descriptor == null || !descriptor.isEmpty());
+        long length = 1;
+        for (long l : shape) {
+            length *= l;
+        }
+        plannable &= length > 0;
+        int seq = sequence++;
+
+        if (plan == null && recorded != null) {
+            //Recording mode
+            MemoryPlan.Allocation a = new MemoryPlan.Allocation(seq, dataType, shape.clone(), order, length, step++, plannable);
+            recorded.add(a);
+            INDArray out = allocateUnderlying(detached, dataType, shape, descriptor);
+            if (plannable) {
+                addLive(new LiveAllocation(a, out, root(out.data()), out.offset(), false));
+            }
+            return out;
+        }
+
+        if (plan != null && planValid) {
+            MemoryPlan.Allocation a = plan.get(seq);
+            if (a == null || a.getDataType() != dataType || a.getOrder() != order || !Arrays.equals(a.getShape(), shape)) {
+                log.debug("Execution diverged from memory plan at allocation {}, falling back to regular allocation", seq);
+                planValid = false;
+            } else if (a.isPlanned()) {
+                INDArray arena = arenas.get(dataType);
+                DataBuffer arenaBuffer = root(arena.data());
+                if (findLive(arenaBuffer, a.getOffset() + a.getLength() - 1, a.getOffset()) != null) {
+                    log.debug("Planned arena region for allocation {} is still in use, falling back to regular allocation", seq);
+                    planValid = false;
+                } else {
+                    INDArray out = Nd4j.create(arena.data(), shape, Nd4j.getStrides(shape, order), a.getOffset(), order, dataType);
+                    addLive(new LiveAllocation(a, out, arenaBuffer, a.getOffset(), true));
+                    return out;
+                }
+            }
+        }
+
+        return allocateUnderlying(detached, dataType, shape, descriptor);
+    }
+
+    protected INDArray allocateUnderlying(boolean detached, DataType dataType, long[] shape, LongShapeDescriptor descriptor) {
+        if (descriptor != null)
+            return underlying.allocate(detached, descriptor);
+        return underlying.allocate(detached, dataType, shape);
+    }
+
+    /**
+     * Register the output of an op. If the output is a view of a not yet released allocation (rather than the
+     * allocation itself), the allocation is kept in use until the view has been released too.
+     *
+     * @param array Output array of an op
+     */
+    public void registerOutput(@NonNull INDArray array) {
+        if (array.data() == null || live.containsKey(array) || views.containsKey(array))
+            return;
+        LiveAllocation owner = findLive(root(array.data()), array.offset(), array.offset());
+        if (owner != null) {
+            owner.uses++;
+            views.put(array, owner);
+        }
+    }
+
+    @Override
+    public void release(@NonNull INDArray array) {
+        LiveAllocation l = views.remove(array);
+        if (l == null) {
+            l = live.get(array);
+        }
+        if (l == null) {
+            underlying.release(array);
+            return;
+        }
+
+        if (--l.uses > 0) {
+            //Allocation is still in use by the allocation itself or by one of its views
+            return;
+        }
+        live.remove(l.array);
+        liveRegions.get(l.buffer).remove(l.offset);
+        if (!l.arena) {
+            //Recorded allocation: the memory is released once the allocation and all of its views are no longer in use.
+            //Arena memory: nothing to release, but the region may now be reused
+            l.allocation.setEnd(step++);
+            underlying.release(l.array);
+        }
+    }
+
+    protected void addLive(LiveAllocation l) {
+        live.put(l.array, l);
+        liveRegions.computeIfAbsent(l.buffer, k -> new TreeMap<>()).put(l.offset, l);
+    }
+
+    /**
+     * @return The live allocation in the specified buffer that starts at or before {@code floorOffset}, and ends
+     * after {@code minEnd}, or null if there is none
+     */
+    protected LiveAllocation findLive(DataBuffer buffer, long floorOffset, long minEnd) {
+        TreeMap<Long, LiveAllocation> regions = liveRegions.get(buffer);
+        if (regions == null)
+            return null;
+        Map.Entry<Long, LiveAllocation> e = regions.floorEntry(floorOffset);
+        return e == null || e.getKey() + e.getValue().allocation.getLength() <= minEnd ? null : e.getValue();
+    }
+
+    protected static DataBuffer root(DataBuffer buffer) {
+        DataBuffer original = buffer.originalDataBuffer();
+        return original == null ? buffer : original;
+    }
+
+    @Override
+    public void close() {
+        closeArenas();
+        underlying.close();
+    }
+
+    /**
+     * An allocation that hasn't been released yet: by the session, and by any views of it
+     */
+    protected static class LiveAllocation {
+        private final MemoryPlan.Allocation allocation;
+        private final INDArray array;
+        private final DataBuffer buffer;
+        private final long offset;
+        private final boolean arena;
+        private int uses = 1;
+
+        protected LiveAllocation(MemoryPlan.Allocation allocation, INDArray array, DataBuffer buffer, long offset, boolean arena) {
+            this.allocation = allocation;
+            this.array = array;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.arena = arena;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.BaseNDArray;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe pool of released arrays, shared between any number of {@link ConcurrentArrayCacheMemoryMgr}
+ * instances (and hence between any number of concurrently executing InferenceSessions).<br>
+ * Arrays are bucketed by data type and by a power-of-two byte size class: an array of 3000 bytes lives in the
+ * 4096 byte bucket. Each bucket is a lock-free free-list, so lookups only ever scan arrays of a similar size
+ * instead of the whole cache.<br>
+ * All buckets share a single byte budget. When a released array would exceed the budget, the least recently
+ * released arrays are closed (in approximately oldest-first order) until it fits.<br>
+ * Per-bucket hit, miss and eviction counters are available via {@link #getStats()}.
+ */
+@Slf4j
+public class SizeClassArrayPool {
+
+    private static final int NUM_SIZE_CLASSES = 64;
+    private static final DataType[] DATA_TYPES = DataType.values();
+
+    private static volatile SizeClassArrayPool defaultPool;
+
+    @Getter
+    private final long maxCacheBytes;
+    private final AtomicLong currentCacheBytes = new AtomicLong();
+
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(DATA_TYPES.length * NUM_SIZE_CLASSES);
+    //Release order of all cached arrays, used for approximately-LRU eviction. Entries that were handed out by
+    // allocate are marked as taken and purged lazily
+    private final ConcurrentLinkedQueue<Entry> lru = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger staleLruEntries = new AtomicInteger();
+    //Ids of arrays currently in the pool, for detecting multiple releases of the same array
+    private final Set<Long> pooledIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The pool shared by all {@link ConcurrentArrayCacheMemoryMgr} instances that were not given an explicit pool.
+     * Uses up to 25% of the available device (or off-heap, for CPU) memory.
+     */
+    public static SizeClassArrayPool getDefault() {
+        if (defaultPool == null) {
+            synchronized (SizeClassArrayPool.class) {
+                if (defaultPool == null) {
+                    defaultPool = new SizeClassArrayPool((long) (0.25 * totalMemBytes()));
+                }
+            }
+        }
+        return defaultPool;
+    }
+
+    /**
+     * @param maxCacheBytes Maximum total number of bytes of released arrays to keep cached, over all buckets
+     */
+    public SizeClassArrayPool(long maxCacheBytes) {
+        Preconditions.checkArgument(maxCacheBytes >= 0, "Maximum cache bytes must be >= 0, got %s", maxCacheBytes);
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    protected static long totalMemBytes() {
+        String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+        if (!"CUDA".equalsIgnoreCase(backend)) {
+            return Pointer.maxBytes();
+        } else {
+            Properties p = Nd4j.getExecutioner().getEnvironmentInformation();
+            List<?> devList = (List<?>) p.get("cuda.devicesInformation");
+            Map<?, ?> m = (Map<?, ?>) devList.get(0);
+            return (Long) m.get("cuda.totalMemory");
+        }
+    }
+
+    /**
+     * Size class (log2 of the bucket capacity in bytes) for the specified number of bytes
+     */
+    public static int sizeClass(long bytes) {
+        if (bytes <= 1)
+            return 0;
+        return NUM_SIZE_CLASSES - Long.numberOfLeadingZeros(bytes - 1);
+    }
+
+    /**
+     * Get an array with the specified data type, shape and order from the pool, or null if no suitable array is
+     * cached. Cached arrays with the same length but a different shape or order are returned as a new array
+     * backed by the cached buffer.
+     */
+    public INDArray get(@NonNull DataType dataType, @NonNull long[] shape, char order) {
+        long length = 1;
+        for (long l : shape) {
+            length *= l;
+        }
+        Bucket b = bucket(dataType, length * dataType.width());
+        Iterator<Entry> iter = b.free.iterator();
+        while (iter.hasNext()) {
+            Entry e = iter.next();
+            if (e.length != length || !e.taken.compareAndSet(false, true))
+                continue;
+            iter.remove();
+            INDArray arr = e.array;
+            e.array = null;
+            pooledIds.remove(arr.getId());
+            currentCacheBytes.addAndGet(-e.bytes);
+            b.cachedBytes.addAndGet(-e.bytes);
+            b.hits.increment();
+            if (staleLruEntries.incrementAndGet() > pooledIds.size() + 1024) {
+                staleLruEntries.set(0);
+                lru.removeIf(x -> x.taken.get());
+            }
+
+            if (Arrays.equals(arr.shape(), shape) && arr.ordering() == order) {
+                //Assign a new ID, to break any relationship the array had with the dependency tracker of
+                // the session that released it
+                ((BaseNDArray) arr).assignNewId();
+                return arr;
+            }
+            return Nd4j.create(arr.data(), shape, Nd4j.getStrides(shape, order), 0, order, dataType);
+        }
+        b.misses.increment();
+        return null;
+    }
+
+    /**
+     * Offer an array to the pool. If the array can't be cached (too large, a view, shared buffer, etc.) it is
+     * closed instead. The caller must not use the array after calling this method.
+     */
+    public void offer(@NonNull INDArray array) {
+        long id = array.getId();
+        Preconditions.checkState(!pooledIds.contains(id), "Array was released multiple times: id=%s, shape=%ndShape", id, array);
+
+        if (array.data() == null || array.dataType() == DataType.UTF8 || array.isView()
+                || array.data().length() != array.length() || Nd4j.getExecutioner().useCount(array.data()) > 1) {
+            //Don't cache string arrays (variable length buffers), views or buffers that are still used elsewhere
+            closeIfPossible(array);
+            return;
+        }
+
+        long bytes = array.data().length() * array.dataType().width();
+        if (bytes > maxCacheBytes) {
+            //Can't store even if we clear everything - too large
+            closeIfPossible(array);
+            return;
+        }
+
+        long current;
+        do {
+            current = currentCacheBytes.get();
+            if (current + bytes > maxCacheBytes) {
+                if (!evictOldest()) {
+                    closeIfPossible(array);
+                    return;
+                }
+                current = -1;
+            }
+        } while (current < 0 || !currentCacheBytes.compareAndSet(current, current + bytes));
+
+        Bucket b = bucket(array.dataType(), bytes);
+        Entry e = new Entry(array, b, array.length(), bytes);
+        pooledIds.add(id);
+        b.cachedBytes.addAndGet(bytes);
+        //Most recently released first: these are the most likely to still be in CPU cache
+        b.free.offerFirst(e);
+        lru.offer(e);
+    }
+
+    /**
+     * Close the oldest cached array
+     *
+     * @return False if there was nothing left to evict
+     */
+    protected boolean evictOldest() {
+        Entry e;
+        while ((e = lru.poll()) != null) {
+            if (!e.taken.compareAndSet(false, true))
+                continue;
+            e.bucket.free.remove(e);
+            INDArray arr = e.array;
+            e.array = null;
+            pooledIds.remove(arr.getId());
+            currentCacheBytes.addAndGet(-e.bytes);
+            e.bucket.cachedBytes.addAndGet(-e.bytes);
+            e.bucket.evictions.increment();
+            closeIfPossible(arr);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Close all cached arrays and empty the pool. Statistics are retained.
+     */
+    public void clear() {
+        while (evictOldest()) {
+            //Keep evicting
+        }
+        staleLruEntries.set(0);
+    }
+
+    /**
+     * @return Total number of bytes of arrays currently cached in this pool
+     */
+    public long getCurrentCacheBytes() {
+        return currentCacheBytes.get();
+    }
+
+    /**
+     * @return Number of arrays currently cached in this pool
+     */
+    public int getCachedArrayCount() {
+        return pooledIds.size();
+    }
+
+    /**
+     * @return A snapshot of the statistics of each bucket that has been used so far
+     */
+    public List<BucketStats> getStats() {
+        List<BucketStats> out = new ArrayList<>();
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket b = buckets.get(i);
+            if (b != null) {
+                out.add(new BucketStats(b.dataType, 1L << b.sizeClass, b.hits.sum(), b.misses.sum(),
+                        b.evictions.sum(), b.free.size(), b.cachedBytes.get()));
+            }
+        }
+        return out;
+    }
+
+    protected Bucket bucket(DataType dataType, long bytes) {
+        int sizeClass = sizeClass(bytes);
+        int idx = dataType.ordinal() * NUM_SIZE_CLASSES + sizeClass;
+        Bucket b = buckets.get(idx);
+        if (b == null) {
+            buckets.compareAndSet(idx, null, new Bucket(dataType, sizeClass));
+            b = buckets.get(idx);
+        }
+        return b;
+    }
+
+    protected static void closeIfPossible(INDArray array) {
+        if (array.closeable())
+            array.close();
+    }
+
+    protected static class Bucket {
+        private final DataType dataType;
+        private final int sizeClass;
+        private final ConcurrentLinkedDeque<Entry> free = new ConcurrentLinkedDeque<>();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final AtomicLong cachedBytes = new AtomicLong();
+
+        protected Bucket(DataType dataType, int sizeClass) {
+            this.dataType = dataType;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    protected static class Entry {
+        private INDArray array;
+        private final Bucket bucket;
+        private final long length;
+        private final long bytes;
+        private final AtomicBoolean taken = new AtomicBoolean();
+
+        protected Entry(INDArray array, Bucket bucket, long length, long bytes) {
+            this.array = array;
+            this.bucket = bucket;
+            this.length = length;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Point-in-time statistics for one (data type, size class) bucket of a {@link SizeClassArrayPool}
+     */
+    @Data
+    @AllArgsConstructor
+    public static class BucketStats {
+        private DataType dataType;
+        private long sizeClassBytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private int cachedArrays;
+        private long cachedBytes;
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : hits / (double) total;
+        }
+    }
+}
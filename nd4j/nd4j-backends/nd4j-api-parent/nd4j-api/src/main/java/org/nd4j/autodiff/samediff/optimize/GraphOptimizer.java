@@ -51,6 +51,23 @@ public class GraphOptimizer {
         );
     }
 
+    /**
+     * The default optimizations, plus {@link FusionOptimizations}. Some of the fusion optimizations (such as folding
+     * batch norm into convolution weights) overwrite parameter arrays, so these should only be used for graphs that
+     * will not be trained after optimization.
+     */
+    public static List<OptimizerSet> inferenceOptimizations() {
+        return Arrays.<OptimizerSet>asList(
+                new UnusedFunctionOptimizations(),
+                new ConstantFunctionOptimizations(),
+                new IdentityFunctionOptimizations(),
+                new ShapeFunctionOptimizations(),
+                new FusionOptimizations(),
+                new UnusedFunctionOptimizations(),
+                new CuDNNFunctionOptimizations()
+        );
+    }
+
     public static SameDiff optimize(SameDiff graph, String... requiredOutputs){
         return optimize(graph, Arrays.asList(requiredOutputs));
     }
@@ -71,7 +88,7 @@ public class GraphOptimizer {
         ArrayHolder cArr = sd.getConstantArrays();
         ArrayHolder vArr = sd.getVariablesArrays();
 
-        OptimizationHelper h = new OptimizationHelper(graph, new OptimizationConfig());    //TODO defaults for config
+        OptimizationHelper h = new OptimizationHelper(graph, new OptimizationConfig(), requiredOutputs);    //TODO defaults for config
 
         for( int i=0; i<3; i++ ) {  //Run multiple times - one run isn't enough, as some more optimizations may need to be applied to the output of earlier optimizations
             for (OptimizerSet s : optimizations) {
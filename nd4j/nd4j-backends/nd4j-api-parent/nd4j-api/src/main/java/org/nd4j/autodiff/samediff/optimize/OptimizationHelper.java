@@ -31,19 +31,36 @@ import org.nd4j.common.base.Preconditions;
 import org.nd4j.common.function.Supplier;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
 public class OptimizationHelper {
 
     private final SameDiff originalGraph;
     @Getter
     private final Properties properties;
+    @Getter
+    private final Set<String> requiredOutputs;
     private boolean setConstantHolder = false;
     private boolean setVariableHolder = false;
 
     public OptimizationHelper(SameDiff originalGraph, Properties properties){
+        this(originalGraph, properties, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param originalGraph   Original (unoptimized) graph
+     * @param properties      Optimization configuration
+     * @param requiredOutputs Outputs the user will request from the optimized graph. Optimizations must not remove
+     *                        or rename these variables
+     */
+    public OptimizationHelper(SameDiff originalGraph, Properties properties, Collection<String> requiredOutputs){
         this.originalGraph = originalGraph;
         this.properties = properties;
+        this.requiredOutputs = requiredOutputs == null ? Collections.<String>emptySet() : new HashSet<>(requiredOutputs);
     }
 
     public OptimizationHelper arrayRecoveryFunction(String arrayName, Supplier<INDArray> fn){
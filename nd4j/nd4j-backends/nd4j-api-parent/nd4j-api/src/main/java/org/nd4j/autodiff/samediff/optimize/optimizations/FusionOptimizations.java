@@ -0,0 +1,612 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.autodiff.samediff.optimize.optimizations;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.ArrayHolder;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.optimize.OptimizationHelper;
+import org.nd4j.autodiff.samediff.optimize.Optimizer;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.BaseScalarOp;
+import org.nd4j.linalg.api.ops.BaseTransformOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Mean;
+import org.nd4j.linalg.api.ops.impl.scalar.Pow;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarDivision;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarSubtraction;
+import org.nd4j.linalg.api.ops.impl.shape.Reshape;
+import org.nd4j.linalg.api.ops.impl.transforms.BaseDynamicTransformOp;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.LayerNorm;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.api.ops.impl.transforms.floating.Sqrt;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.DivOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.RealDivOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.SubOp;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Square;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Sigmoid;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Swish;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This set of optimizations fuses common patterns of ops - as found in imported TensorFlow and ONNX graphs - into single
+ * ops with native implementations. This reduces the number of ops executed, and the number of intermediate arrays that
+ * have to be written and read back.<br>
+ * Note that some of these optimizations (such as folding batch norm into convolution weights) change the values of the
+ * graph's weights, and are only valid for inference. For this reason they are not part of
+ * {@link org.nd4j.autodiff.samediff.optimize.GraphOptimizer#defaultOptimizations()}; use
+ * {@link org.nd4j.autodiff.samediff.optimize.GraphOptimizer#inferenceOptimizations()} to include them.
+ */
+public class FusionOptimizations extends BaseOptimizerSet {
+
+    /**
+     * The native layer_norm op does not add an epsilon to the variance. The layer norm fusion is only applied if the
+     * epsilon of the original subgraph is at most this value, so that the outputs are equal within numerical precision
+     */
+    public static final String LAYER_NORM_MAX_EPSILON = "optimizer.fusion.layernorm.max.epsilon";
+    public static final double LAYER_NORM_MAX_EPSILON_DEFAULT = 1e-5;
+
+    protected static final int MAX_RANK_SEARCH_DEPTH = 8;
+
+    /**
+     * Fuse mmul(x, w) + b into xw_plus_b(x, w, b), where x and w are matrices and b is a vector, added with either
+     * a bias add op or a (broadcast) add op
+     */
+    public static class FuseMatMulBiasAdd implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!(op.getOp() instanceof Mmul) || op.getInputsToOp().size() != 2)
+                return false;
+
+            long[] iArgs = ((Mmul) op.getOp()).iArgs();
+            double[] tArgs = ((Mmul) op.getOp()).tArgs();
+            boolean transposeX = iArgs.length > 0 && iArgs[0] != 0;
+            boolean transposeW = iArgs.length > 1 && iArgs[1] != 0;
+            boolean transposeZ = iArgs.length > 2 && iArgs[2] != 0;
+            if(transposeX || transposeZ || (tArgs.length > 0 && tArgs[0] != 1.0) || (tArgs.length > 1 && tArgs[1] != 0.0))
+                return false;
+
+            String mmulOut = op.getOutputsOfOp().get(0);
+            if(!OptimizationUtils.isReplaceableIntermediate(sd, helper, mmulOut, 1))
+                return false;
+            SameDiffOp addOp = sd.getOps().get(OptimizationUtils.consumers(sd, mmulOut).iterator().next());
+            String bName = biasInput(addOp, mmulOut);
+            if(bName == null)
+                return false;
+
+            String xName = op.getInputsToOp().get(0);
+            String wName = op.getInputsToOp().get(1);
+            INDArray w = paramArray(sd, wName);
+            INDArray b = paramArray(sd, bName);
+            if(w == null || b == null || w.rank() != 2 || b.rank() != 1 || b.length() != w.size(transposeW ? 0 : 1))
+                return false;
+            DataType dt = sd.getVariable(xName).dataType();
+            if(dt == null || !dt.isFPType() || w.dataType() != dt || b.dataType() != dt || rank(sd, xName, 0) != 2)
+                return false;
+            if(transposeW) {
+                //xw_plus_b has no gradient for transposed weights: transpose the weights array instead, if it's not shared
+                if(sd.getVariable(wName).getVariableType() != VariableType.CONSTANT || OptimizationUtils.consumers(sd, wName).size() != 1)
+                    return false;
+                constantArrays.setArray(wName, w.transpose().dup('c'));
+            }
+
+            SDVariable out = new XwPlusB(sd, sd.getVariable(xName), sd.getVariable(wName), sd.getVariable(bName)).outputVariable();
+            OptimizationUtils.replaceSubgraph(sd, Arrays.asList(op.getName(), addOp.getName()), addOp.getOutputsOfOp().get(0), out.name());
+            return true;
+        }
+
+        protected static String biasInput(SameDiffOp addOp, String input) {
+            List<String> in = addOp.getInputsToOp();
+            if(in.size() != 2)
+                return null;
+            if(addOp.getOp() instanceof BiasAdd)
+                return in.get(0).equals(input) ? in.get(1) : null;
+            if(addOp.getOp() instanceof AddOp && !in.get(0).equals(in.get(1)))
+                return in.get(0).equals(input) ? in.get(1) : in.get(0);
+            return null;
+        }
+    }
+
+    /**
+     * Fuse relu(xw_plus_b(x, w, b)) into relu_layer(x, w, b)
+     */
+    public static class FuseLinearRelu implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(op.getOp().getClass() != XwPlusB.class || ((XwPlusB) op.getOp()).iArgs().length > 0 || op.getInputsToOp().size() != 3)
+                return false;
+
+            String linearOut = op.getOutputsOfOp().get(0);
+            if(!OptimizationUtils.isReplaceableIntermediate(sd, helper, linearOut, 1))
+                return false;
+            SameDiffOp reluOp = sd.getOps().get(OptimizationUtils.consumers(sd, linearOut).iterator().next());
+            if(!(reluOp.getOp() instanceof RectifiedLinear) || reluOp.getInputsToOp().size() != 1)
+                return false;
+            INDArray cutoff = ((RectifiedLinear) reluOp.getOp()).scalar();
+            if(cutoff == null)
+                return false;
+
+            List<String> in = op.getInputsToOp();
+            ReluLayer relu = new ReluLayer(sd, sd.getVariable(in.get(0)), sd.getVariable(in.get(1)), sd.getVariable(in.get(2)));
+            relu.addTArgument(cutoff.getDouble(0));
+            SDVariable out = relu.outputVariable();
+            OptimizationUtils.replaceSubgraph(sd, Arrays.asList(op.getName(), reluOp.getName()), reluOp.getOutputsOfOp().get(0), out.name());
+            return true;
+        }
+    }
+
+    /**
+     * Fold batchnorm(conv2d(x, w, b)) into conv2d(x, w', b'): the batch norm scale is folded into the convolution
+     * weights, and the batch norm shift into the convolution bias (which is added if the convolution has none).
+     * Only applied when the convolution weights and bias are not used by any other op.
+     */
+    public static class FoldConv2dBatchNorm implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!(op.getOp() instanceof BatchNorm))
+                return false;
+            BatchNorm bn = (BatchNorm) op.getOp();
+            List<String> bnIn = op.getInputsToOp();
+            String convOut = bnIn.get(0);
+            String convOpName = sd.getVariables().get(convOut).getOutputOfOp();
+            if(convOpName == null || !(sd.getOps().get(convOpName).getOp() instanceof Conv2D)
+                    || !OptimizationUtils.isReplaceableIntermediate(sd, helper, convOut, 1))
+                return false;
+            SameDiffOp convOp = sd.getOps().get(convOpName);
+            Conv2DConfig config = ((Conv2D) convOp.getOp()).getConfig();
+            List<String> convIn = convOp.getInputsToOp();
+            if(config == null || convIn.size() < 2)
+                return false;
+
+            //Batch norm must normalize over the channels dimension of the convolution output
+            long[] iArgs = bn.iArgs();
+            int channelAxis = config.isNHWC() ? 3 : 1;
+            if(iArgs.length > 3 || (iArgs.length == 3 && iArgs[2] != channelAxis && !(config.isNHWC() && iArgs[2] == -1))
+                    || (iArgs.length < 3 && !config.isNHWC()))
+                return false;
+
+            boolean applyGamma = iArgs.length > 0 && iArgs[0] != 0;
+            boolean applyBeta = iArgs.length > 1 && iArgs[1] != 0;
+            if(bnIn.size() != 3 + (applyGamma ? 1 : 0) + (applyBeta ? 1 : 0))
+                return false;
+            INDArray mean = paramArray(sd, bnIn.get(1));
+            INDArray var = paramArray(sd, bnIn.get(2));
+            INDArray gamma = applyGamma ? paramArray(sd, bnIn.get(3)) : null;
+            INDArray beta = applyBeta ? paramArray(sd, bnIn.get(applyGamma ? 4 : 3)) : null;
+
+            String wName = convIn.get(1);
+            String bName = convIn.size() > 2 ? convIn.get(2) : null;
+            INDArray w = paramArray(sd, wName);
+            INDArray b = bName == null ? null : paramArray(sd, bName);
+            if(w == null || w.rank() != 4 || !w.dataType().isFPType() || OptimizationUtils.consumers(sd, wName).size() != 1
+                    || (bName != null && (b == null || OptimizationUtils.consumers(sd, bName).size() != 1)))
+                return false;
+            int outChannelDim = config.getWeightsFormat() == WeightsFormat.YXIO ? 3 : 0;
+            long nOut = w.size(outChannelDim);
+            //mean and var (and gamma and beta, if used) must be constants or variables, to be folded at optimization time
+            if(mean == null || var == null || (applyGamma && gamma == null) || (applyBeta && beta == null))
+                return false;
+            for(INDArray arr : new INDArray[]{mean, var, gamma, beta, b}) {
+                if(arr != null && (arr.rank() != 1 || arr.length() != nOut || arr.dataType() != w.dataType()))
+                    return false;
+            }
+
+            //scale = gamma / sqrt(var + eps);  w' = w * scale;  b' = (b - mean) * scale + beta
+            INDArray scale = Transforms.sqrt(var.add(bn.getEpsilon()), false).rdivi(1.0);
+            if(gamma != null)
+                scale.muli(gamma);
+            INDArray newW = Nd4j.createUninitialized(w.dataType(), w.shape(), w.ordering());
+            Nd4j.exec(new BroadcastMulOp(w, scale, newW, outChannelDim));
+            INDArray newB = (b == null ? mean.neg() : b.sub(mean)).muli(scale);
+            if(beta != null)
+                newB.addi(beta);
+
+            setParamArray(sd, wName, newW, constantArrays, variablesArrays);
+            if(bName != null) {
+                setParamArray(sd, bName, newB, constantArrays, variablesArrays);
+            } else {
+                SDVariable bias = sd.constant(newB);
+                List<String> newConvIn = new ArrayList<>(convIn);
+                newConvIn.add(bias.name());
+                convOp.setInputsToOp(newConvIn);
+                sd.getVariables().get(bias.name()).setInputsForOp(new ArrayList<>(Arrays.asList(convOpName)));
+            }
+
+            OptimizationUtils.replaceSubgraph(sd, Arrays.asList(op.getName()), op.getOutputsOfOp().get(0), convOut);
+            return true;
+        }
+    }
+
+    /**
+     * Fuse x * sigmoid(x) into swish(x)
+     */
+    public static class FuseSwish implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!(op.getOp() instanceof MulOp) || op.getInputsToOp().size() != 2)
+                return false;
+
+            List<String> in = op.getInputsToOp();
+            for(int i = 0; i < 2; i++) {
+                String x = in.get(1 - i);
+                SameDiffOp sigmoidOp = producer(sd, in.get(i));
+                if(sigmoidOp == null || !(sigmoidOp.getOp() instanceof Sigmoid) || !sigmoidOp.getInputsToOp().get(0).equals(x)
+                        || !OptimizationUtils.isReplaceableIntermediate(sd, helper, in.get(i), 1))
+                    continue;
+
+                SDVariable out = new Swish(sd, sd.getVariable(x)).outputVariable();
+                OptimizationUtils.replaceSubgraph(sd, Arrays.asList(sigmoidOp.getName(), op.getName()), op.getOutputsOfOp().get(0), out.name());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Fuse a chain of elementwise scalar additions/subtractions, or of scalar multiplications/divisions, into a single
+     * scalar op: for example {@code (x - 0.5) + 1.0} into {@code x + 0.5}, or {@code x / 8.0 * 0.5} (as in attention score
+     * scaling) into {@code x * 0.0625}. Both scalar ops and pairwise ops with a scalar constant are fused.<br>
+     * The op being checked is the last op of the chain; the chain is followed back for as long as the intermediate
+     * results have no other use. Only applied for floating point inputs: the output can differ from the original graph
+     * by rounding error only.
+     */
+    public static class FuseScalarChain implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            ScalarStep last = ScalarStep.of(sd, op);
+            if(last == null)
+                return false;
+
+            List<String> chain = new ArrayList<>();
+            chain.add(op.getName());
+            String input = last.input;
+            double value = last.value;
+            SameDiffOp p;
+            ScalarStep step;
+            while((p = producer(sd, input)) != null && (step = ScalarStep.of(sd, p)) != null && step.additive == last.additive
+                    && OptimizationUtils.isReplaceableIntermediate(sd, helper, input, 1)) {
+                value = last.additive ? value + step.value : value * step.value;
+                chain.add(p.getName());
+                input = step.input;
+            }
+            if(chain.size() < 2)
+                return false;
+
+            SDVariable x = sd.getVariable(input);
+            SDVariable out = last.additive ? new ScalarAdd(sd, x, value).outputVariable() : new ScalarMultiplication(sd, x, value).outputVariable();
+            OptimizationUtils.replaceSubgraph(sd, chain, op.getOutputsOfOp().get(0), out.name());
+            return true;
+        }
+
+        /**
+         * One step of a chain: {@code input + value} (additive) or {@code input * value}
+         */
+        protected static class ScalarStep {
+            protected final boolean additive;
+            protected final String input;
+            protected final double value;
+
+            protected ScalarStep(boolean additive, String input, double value) {
+                this.additive = additive;
+                this.input = input;
+                this.value = value;
+            }
+
+            /**
+             * @return The step computed by the op, or null if the op is not a scalar add/sub/mul/div of a floating
+             * point array
+             */
+            protected static ScalarStep of(SameDiff sd, SameDiffOp op) {
+                Class<?> c = op.getOp().getClass();
+                List<String> in = op.getInputsToOp();
+                ScalarStep step = null;
+                if(in.size() == 1 && (c == ScalarAdd.class || c == ScalarSubtraction.class || c == ScalarMultiplication.class || c == ScalarDivision.class)) {
+                    INDArray s = ((BaseScalarOp) op.getOp()).scalar();
+                    if(s == null)
+                        return null;
+                    double v = s.getDouble(0);
+                    if(c == ScalarAdd.class || c == ScalarSubtraction.class) {
+                        step = new ScalarStep(true, in.get(0), c == ScalarAdd.class ? v : -v);
+                    } else {
+                        step = new ScalarStep(false, in.get(0), c == ScalarMultiplication.class ? v : 1.0 / v);
+                    }
+                } else if(in.size() == 2 && (c == AddOp.class || c == SubOp.class || c == MulOp.class || c == DivOp.class || c == RealDivOp.class)) {
+                    boolean commutative = c == AddOp.class || c == MulOp.class;
+                    Double s1 = scalarConstant(sd, in.get(1));
+                    Double s0 = commutative && s1 == null ? scalarConstant(sd, in.get(0)) : null;
+                    if(s1 == null && s0 == null)
+                        return null;
+                    String x = s1 != null ? in.get(0) : in.get(1);
+                    double v = s1 != null ? s1 : s0;
+                    if(c == AddOp.class || c == SubOp.class) {
+                        step = new ScalarStep(true, x, c == AddOp.class ? v : -v);
+                    } else {
+                        step = new ScalarStep(false, x, c == MulOp.class ? v : 1.0 / v);
+                    }
+                    if(sd.getVariable(x).dataType() != sd.getVariable(s1 != null ? in.get(1) : in.get(0)).dataType())
+                        return null;
+                }
+                //x / 0 can't be rewritten as x * (1 / 0) for x = 0
+                if(step == null || Double.isInfinite(step.value))
+                    return null;
+                DataType dt = sd.getVariable(step.input).dataType();
+                return dt != null && dt.isFPType() ? step : null;
+            }
+
+            //The value of a rank 0 constant: pairwise ops with rank 1+ constants may broadcast, changing the output shape
+            private static Double scalarConstant(SameDiff sd, String varName) {
+                SDVariable v = sd.getVariable(varName);
+                if(v.getVariableType() != VariableType.CONSTANT)
+                    return null;
+                INDArray arr = v.getArr();
+                return arr == null || arr.rank() != 0 ? null : arr.getDouble(0);
+            }
+        }
+    }
+
+    /**
+     * Fuse the layer normalization subgraph<br>
+     * {@code d = x - mean(x, -1); out = d / sqrt(mean(d^2, -1) + eps) * gamma + beta}<br>
+     * (as exported to ONNX by PyTorch and Keras, for example) into layer_norm(x, gamma, beta) over the last dimension.
+     * Squaring may be done with square(d), pow(d, 2) or d * d. See {@link #LAYER_NORM_MAX_EPSILON} for the epsilon
+     * values this is applied for.
+     */
+    public static class FuseLayerNorm implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!(op.getOp() instanceof Mean))
+                return false;
+            String x = op.getInputsToOp().get(0);
+            if(!isMeanOf(op, x) || !isLastDimMean(sd, op, x))
+                return false;
+            List<String> subgraph = new ArrayList<>();
+            subgraph.add(op.getName());
+
+            //d = x - mean
+            String mean = op.getOutputsOfOp().get(0);
+            SameDiffOp sub = singleConsumer(sd, helper, mean);
+            if(sub == null || !(sub.getOp() instanceof SubOp) || !sub.getInputsToOp().equals(Arrays.asList(x, mean)))
+                return false;
+            subgraph.add(sub.getName());
+            String d = sub.getOutputsOfOp().get(0);
+            if(!OptimizationUtils.isReplaceableIntermediate(sd, helper, d, 2))
+                return false;
+            SameDiffOp square = null;
+            SameDiffOp div = null;
+            for(String s : OptimizationUtils.consumers(sd, d)) {
+                SameDiffOp o = sd.getOps().get(s);
+                if(o.getOp() instanceof DivOp || o.getOp() instanceof RealDivOp) {
+                    div = o;
+                } else {
+                    square = o;
+                }
+            }
+            if(div == null || square == null || !isSquare(square, d) || !div.getInputsToOp().get(0).equals(d))
+                return false;
+            subgraph.add(square.getName());
+
+            //var = mean(d^2)
+            SameDiffOp var = singleConsumer(sd, helper, square.getOutputsOfOp().get(0));
+            if(var == null || !isMeanOf(var, square.getOutputsOfOp().get(0)) || !isLastDimMean(sd, var, x))
+                return false;
+            subgraph.add(var.getName());
+
+            //std = sqrt(var + eps)
+            SameDiffOp addEps = singleConsumer(sd, helper, var.getOutputsOfOp().get(0));
+            Double eps = addEps == null ? null : scalarAddend(sd, addEps, var.getOutputsOfOp().get(0));
+            double maxEps = Double.parseDouble(helper.getProperties().getProperty(LAYER_NORM_MAX_EPSILON, String.valueOf(LAYER_NORM_MAX_EPSILON_DEFAULT)));
+            if(eps == null || eps < 0 || eps > maxEps)
+                return false;
+            subgraph.add(addEps.getName());
+            SameDiffOp sqrt = singleConsumer(sd, helper, addEps.getOutputsOfOp().get(0));
+            if(sqrt == null || !(sqrt.getOp() instanceof Sqrt))
+                return false;
+            subgraph.add(sqrt.getName());
+            if(singleConsumer(sd, helper, sqrt.getOutputsOfOp().get(0)) != div || !div.getInputsToOp().get(1).equals(sqrt.getOutputsOfOp().get(0)))
+                return false;
+            subgraph.add(div.getName());
+
+            //out = normalized * gamma (+ beta)
+            String normalized = div.getOutputsOfOp().get(0);
+            SameDiffOp mulGamma = singleConsumer(sd, helper, normalized);
+            String gamma = mulGamma == null || !(mulGamma.getOp() instanceof MulOp) ? null : FuseMatMulBiasAdd.biasInput(addAsBias(mulGamma), normalized);
+            if(gamma == null || !isNormParam(sd, x, gamma))
+                return false;
+            subgraph.add(mulGamma.getName());
+            String out = mulGamma.getOutputsOfOp().get(0);
+            String beta = null;
+            SameDiffOp addBeta = singleConsumer(sd, helper, out);
+            if(addBeta != null && addBeta.getOp() instanceof AddOp) {
+                String b = FuseMatMulBiasAdd.biasInput(addBeta, out);
+                if(b != null && isNormParam(sd, x, b)) {
+                    beta = b;
+                    subgraph.add(addBeta.getName());
+                    out = addBeta.getOutputsOfOp().get(0);
+                }
+            }
+
+            int xRank = rank(sd, x, 0);
+            SDVariable ln = new LayerNorm(sd, sd.getVariable(x), sd.getVariable(gamma), beta == null ? null : sd.getVariable(beta),
+                    false, xRank > 0 ? xRank - 1 : -1).outputVariable();
+            OptimizationUtils.replaceSubgraph(sd, subgraph, out, ln.name());
+            return true;
+        }
+
+        protected static boolean isMeanOf(SameDiffOp op, String input) {
+            return op.getOp() instanceof Mean && op.getInputsToOp().get(0).equals(input);
+        }
+
+        /**
+         * @param rankOf The variable to check the reduction axis against: the mean input itself, or a variable of the
+         *               same shape
+         */
+        protected static boolean isLastDimMean(SameDiff sd, SameDiffOp op, String rankOf) {
+            if(!(op.getOp() instanceof Mean) || !((Mean) op.getOp()).isKeepDims())
+                return false;
+            int[] dims = op.getOp().getDimensions();
+            if(op.getInputsToOp().size() == 2) {
+                INDArray dimArr = paramArray(sd, op.getInputsToOp().get(1));
+                dims = dimArr == null ? null : dimArr.toIntVector();
+            }
+            if(dims == null || dims.length != 1)
+                return false;
+            return dims[0] == -1 || (dims[0] > 0 && dims[0] == rank(sd, rankOf, 0) - 1);
+        }
+
+        protected static boolean isSquare(SameDiffOp op, String input) {
+            List<String> in = op.getInputsToOp();
+            if(op.getOp() instanceof Square)
+                return in.get(0).equals(input);
+            if(op.getOp() instanceof Pow) {
+                INDArray p = ((Pow) op.getOp()).scalar();
+                return in.size() == 1 && in.get(0).equals(input) && p != null && p.getDouble(0) == 2.0;
+            }
+            return op.getOp() instanceof MulOp && in.size() == 2 && in.get(0).equals(input) && in.get(1).equals(input);
+        }
+
+        protected static Double scalarAddend(SameDiff sd, SameDiffOp op, String input) {
+            if(op.getOp() instanceof ScalarAdd && op.getInputsToOp().size() == 1) {
+                INDArray s = ((ScalarAdd) op.getOp()).scalar();
+                return s == null ? null : s.getDouble(0);
+            }
+            if(op.getOp() instanceof AddOp) {
+                String other = FuseMatMulBiasAdd.biasInput(op, input);
+                INDArray s = other == null || sd.getVariable(other).getVariableType() != VariableType.CONSTANT ? null : sd.getVariable(other).getArr();
+                return s == null || s.length() != 1 ? null : s.getDouble(0);
+            }
+            return null;
+        }
+
+        protected static boolean isNormParam(SameDiff sd, String x, String param) {
+            INDArray p = paramArray(sd, param);
+            DataType dt = sd.getVariable(x).dataType();
+            return p != null && p.rank() == 1 && p.length() > 1 && dt != null && dt.isFPType() && p.dataType() == dt;
+        }
+
+        //Treat mul(a, b) like add(a, b) when looking for the "other" input
+        private static SameDiffOp addAsBias(SameDiffOp mulOp) {
+            SameDiffOp o = new SameDiffOp();
+            o.setOp(new AddOp());
+            o.setInputsToOp(mulOp.getInputsToOp());
+            return o;
+        }
+    }
+
+    /**
+     * @return The single op that uses the specified variable, or null if it is used by more than one op (or can't be
+     * replaced for another reason)
+     */
+    protected static SameDiffOp singleConsumer(SameDiff sd, OptimizationHelper helper, String varName) {
+        if(!OptimizationUtils.isReplaceableIntermediate(sd, helper, varName, 1))
+            return null;
+        return sd.getOps().get(OptimizationUtils.consumers(sd, varName).iterator().next());
+    }
+
+    protected static SameDiffOp producer(SameDiff sd, String varName) {
+        String opName = sd.getVariables().get(varName).getOutputOfOp();
+        return opName == null ? null : sd.getOps().get(opName);
+    }
+
+    /**
+     * @return The array for a constant or variable, or null for any other variable type
+     */
+    protected static INDArray paramArray(SameDiff sd, String varName) {
+        SDVariable v = sd.getVariable(varName);
+        if(v.getVariableType() != VariableType.CONSTANT && v.getVariableType() != VariableType.VARIABLE)
+            return null;
+        return v.getArr();
+    }
+
+    protected static void setParamArray(SameDiff sd, String varName, INDArray arr, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+        if(sd.getVariable(varName).getVariableType() == VariableType.CONSTANT) {
+            constantArrays.setArray(varName, arr);
+        } else {
+            variablesArrays.setArray(varName, arr);
+        }
+    }
+
+    /**
+     * Infer the rank of a variable from the graph structure, for the cases where it can be inferred without executing
+     * the graph: variables, constants and placeholders with a known shape, and the outputs of a few common ops.
+     *
+     * @return The rank of the variable, or -1 if it can't be inferred
+     */
+    protected static int rank(SameDiff sd, String varName, int depth) {
+        SDVariable v = sd.getVariable(varName);
+        switch (v.getVariableType()) {
+            case PLACEHOLDER:
+                return v.getShape() == null ? -1 : v.getShape().length;
+            case CONSTANT:
+            case VARIABLE:
+                INDArray arr = v.getArr();
+                return arr == null ? -1 : arr.rank();
+            case ARRAY:
+                break;
+            default:
+                return -1;
+        }
+
+        SameDiffOp op = producer(sd, varName);
+        if(op == null || depth >= MAX_RANK_SEARCH_DEPTH)
+            return -1;
+        DifferentialFunction df = op.getOp();
+        List<String> in = op.getInputsToOp();
+        if(df instanceof XwPlusB) {
+            return 2;
+        } else if(df instanceof Reshape && in.size() == 2) {
+            INDArray shape = paramArray(sd, in.get(1));
+            return shape == null || shape.rank() != 1 ? -1 : (int) shape.length();
+        } else if(df instanceof Mmul && in.size() == 2) {
+            return rank(sd, in.get(0), depth + 1) == 2 && rank(sd, in.get(1), depth + 1) == 2 ? 2 : -1;
+        } else if(df instanceof BaseDynamicTransformOp && in.size() == 2) {
+            //Broadcastable pairwise op: the output has the larger rank of the two inputs
+            int r0 = rank(sd, in.get(0), depth + 1);
+            int r1 = rank(sd, in.get(1), depth + 1);
+            return r0 < 0 || r1 < 0 ? -1 : Math.max(r0, r1);
+        } else if((df instanceof BaseTransformOp || df instanceof BaseScalarOp || df instanceof BiasAdd) && !in.isEmpty()) {
+            return rank(sd, in.get(0), depth + 1);
+        }
+        return -1;
+    }
+}
@@ -22,12 +22,17 @@ package org.nd4j.autodiff.samediff.optimize.optimizations;
 
 import lombok.NonNull;
 import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.autodiff.samediff.internal.SameDiffOp;
 import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.optimize.OptimizationHelper;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class OptimizationUtils {
 
@@ -53,6 +58,7 @@ public class OptimizationUtils {
         //NOTE: this only works if we carefully control the order in which replaceOpInputsWith is called!
         v2.setInputsForOp(v.getInputsForOp());
         v.setInputsForOp(new ArrayList<String>());
+        sd.markStructureChanged();
     }
 
     public static void removeOp(@NonNull SameDiff sd, @NonNull String opToRemove){
@@ -61,10 +67,74 @@ public class OptimizationUtils {
             Variable v = sd.getVariables().get(s);
             v.getInputsForOp().remove(op.getName());
         }
+        sd.markStructureChanged();
     }
 
     public static void removeVariable(@NonNull SameDiff sd, @NonNull String varToRemove){
         sd.getVariables().remove(varToRemove);
     }
 
+    /**
+     * @return The names of the ops that use the specified variable as an input (without duplicates)
+     */
+    public static Set<String> consumers(@NonNull SameDiff sd, @NonNull String varName){
+        List<String> l = sd.getVariables().get(varName).getInputsForOp();
+        return l == null ? Collections.<String>emptySet() : new LinkedHashSet<>(l);
+    }
+
+    /**
+     * Whether the specified variable can be removed when the ops that produce and use it are replaced: that is, it is
+     * an intermediate (ARRAY type) variable that is used only by the specified number of ops, has no control dependencies,
+     * and is neither a loss variable nor a required output of the graph.
+     */
+    public static boolean isReplaceableIntermediate(@NonNull SameDiff sd, @NonNull OptimizationHelper helper,
+                                                    @NonNull String varName, int numConsumers){
+        Variable v = sd.getVariables().get(varName);
+        if(v == null || v.getVariable().getVariableType() != VariableType.ARRAY)
+            return false;
+        if(helper.getRequiredOutputs().contains(varName) || sd.getLossVariables().contains(varName))
+            return false;
+        if(!isEmpty(v.getControlDeps()) || !isEmpty(v.getControlDepsForOp()) || !isEmpty(v.getControlDepsForVar()))
+            return false;
+        return consumers(sd, varName).size() == numConsumers;
+    }
+
+    private static boolean isEmpty(List<String> l){
+        return l == null || l.isEmpty();
+    }
+
+    /**
+     * Replace a subgraph by a single variable, usually the output of a newly added op that computes the same values.
+     * The ops in the subgraph and all of their output variables are removed, and the new variable is renamed to the
+     * subgraph's output name, taking over all uses of the old output. The caller is responsible for checking that all
+     * other outputs of the removed ops are used only within the subgraph (see {@link #isReplaceableIntermediate}).
+     *
+     * @param opsToRemove   Names of the ops in the subgraph
+     * @param outputName    Name of the subgraph's output variable
+     * @param newOutputName Name of the variable that replaces the subgraph's output. It must not be an output of any
+     *                      of the removed ops
+     */
+    public static void replaceSubgraph(@NonNull SameDiff sd, @NonNull Collection<String> opsToRemove,
+                                       @NonNull String outputName, @NonNull String newOutputName){
+        Variable out = sd.getVariables().get(outputName);
+        List<String> consumers = out.getInputsForOp();
+        List<String> cdForOp = out.getControlDepsForOp();
+        List<String> cdForVar = out.getControlDepsForVar();
+
+        List<String> toRemove = new ArrayList<>();
+        for(String opName : opsToRemove){
+            toRemove.addAll(sd.getOps().get(opName).getOutputsOfOp());
+            removeOp(sd, opName);
+        }
+        for(String s : toRemove){
+            removeVariable(sd, s);
+        }
+
+        sd.renameVariable(newOutputName, outputName);
+        Variable v = sd.getVariables().get(outputName);
+        v.setInputsForOp(consumers);
+        v.setControlDepsForOp(cdForOp);
+        v.setControlDepsForVar(cdForVar);
+    }
+
 }
@@ -0,0 +1,76 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.autodiff.samediff.quantize;
+
+import org.nd4j.autodiff.listeners.At;
+import org.nd4j.autodiff.listeners.BaseListener;
+import org.nd4j.autodiff.listeners.Operation;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.OpContext;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A listener that records the range (minimum and maximum values) of the input activations of every op that
+ * {@link PostTrainingQuantizer} can quantize, over all inference calls it is used for.<br>
+ * Usually used via {@link PostTrainingQuantizer#calibrate(SameDiff, org.nd4j.linalg.dataset.api.iterator.DataSetIterator, String...)}
+ */
+public class CalibrationListener extends BaseListener {
+
+    private final Map<String, double[]> ranges = new LinkedHashMap<>();
+
+    @Override
+    public boolean isActive(Operation operation) {
+        return operation == Operation.INFERENCE;
+    }
+
+    @Override
+    public void preOpExecution(SameDiff sd, At at, SameDiffOp op, OpContext opContext) {
+        if (opContext == null || PostTrainingQuantizer.weightChannelAxis(op) == PostTrainingQuantizer.NOT_QUANTIZABLE)
+            return;
+        INDArray in = opContext.getInputArray(0);
+        if (in == null || in.isEmpty() || !in.dataType().isFPType())
+            return;
+
+        String name = op.getInputsToOp().get(0);
+        double min = in.minNumber().doubleValue();
+        double max = in.maxNumber().doubleValue();
+        double[] r = ranges.get(name);
+        if (r == null) {
+            ranges.put(name, new double[]{min, max});
+        } else {
+            r[0] = Math.min(r[0], min);
+            r[1] = Math.max(r[1], max);
+        }
+    }
+
+    /**
+     * @return The recorded activation ranges, as [min, max], keyed by activation (variable) name
+     */
+    public Map<String, double[]> getRanges() {
+        return Collections.unmodifiableMap(ranges);
+    }
+}
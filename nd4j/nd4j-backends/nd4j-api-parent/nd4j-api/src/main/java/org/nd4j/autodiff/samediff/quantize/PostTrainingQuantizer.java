@@ -0,0 +1,302 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.autodiff.samediff.quantize;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.listeners.Listener;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.evaluation.IEvaluation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.FakeQuantWithMinMaxArgs;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Post-training quantization of SameDiff graphs to 8-bit weights.<br>
+ * The weights of matrix multiplication ({@link Mmul}, {@link XwPlusB}) and 2D convolution ({@link Conv2D}) ops are
+ * replaced by 8-bit constants plus a (per-channel, by default) scale, and are dequantized by the graph when it is
+ * executed. This reduces the memory needed to store and load the weights (and the size of the saved model) by about
+ * 4x. Optionally, the input activations of these ops can also be quantized, using activation ranges recorded with
+ * {@link #calibrate(SameDiff, DataSetIterator, String...)}.<br>
+ * Typical use:
+ * <pre>
+ * {@code
+ * Map<String,double[]> ranges = PostTrainingQuantizer.calibrate(sd, calibrationData, "output");
+ * SameDiff quantized = PostTrainingQuantizer.quantize(sd, QuantizationConfig.builder().quantizeActivations(true).build(), ranges);
+ * QuantizationReport r = PostTrainingQuantizer.report(sd, quantized, testData, "output", new Evaluation(), new Evaluation());
+ * quantized.save(new File("quantized.fb"), false);
+ * }
+ * </pre>
+ */
+@Slf4j
+public class PostTrainingQuantizer {
+
+    /**
+     * Returned by {@link #weightChannelAxis(SameDiffOp)} for ops that can't be quantized
+     */
+    public static final int NOT_QUANTIZABLE = Integer.MIN_VALUE;
+
+    private PostTrainingQuantizer() {
+    }
+
+    /**
+     * Record the ranges of the input activations of all quantizable ops, using {@link CalibrationListener}
+     *
+     * @param sd      Graph to calibrate. Must have a TrainingConfig, to map the data to placeholders
+     * @param data    Representative data - for example, a few hundred examples from the training set
+     * @param outputs Outputs of the graph to compute
+     * @return Activation ranges as [min, max], keyed by variable name
+     */
+    public static Map<String, double[]> calibrate(@NonNull SameDiff sd, @NonNull DataSetIterator data, @NonNull String... outputs) {
+        CalibrationListener l = new CalibrationListener();
+        if (data.resetSupported())
+            data.reset();
+        sd.outputBatches(data, Collections.<Listener>singletonList(l), outputs);
+        return l.getRanges();
+    }
+
+    /**
+     * Quantize the weights of all supported ops in a copy of the graph. Weights are only quantized if they are
+     * floating point variables or constants with at least {@link QuantizationConfig#getMinElements()} elements, and
+     * are used only as the weights of supported ops.
+     *
+     * @param sd               Graph to quantize. Not modified
+     * @param config           Quantization configuration
+     * @param activationRanges Activation ranges from {@link #calibrate(SameDiff, DataSetIterator, String...)}. Only
+     *                         required if {@link QuantizationConfig#isQuantizeActivations()} is true
+     * @return The quantized copy of the graph, for inference
+     */
+    public static SameDiff quantize(@NonNull SameDiff sd, @NonNull QuantizationConfig config, Map<String, double[]> activationRanges) {
+        Preconditions.checkArgument(config.getWeightType() == DataType.INT8 || config.getWeightType() == DataType.UINT8,
+                "Weights can only be quantized to INT8 or UINT8, got %s", config.getWeightType());
+        Preconditions.checkArgument(!config.isQuantizeActivations() || activationRanges != null,
+                "Activation ranges must be provided when quantizing activations");
+
+        SameDiff out = sd.dup();
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (SDVariable v : out.variables()) {
+            Integer axis = weightAxis(out, v, config);
+            if (axis != null)
+                weights.put(v.name(), axis);
+        }
+
+        Map<String, SDVariable> quantizedActivations = new HashMap<>();
+        for (Map.Entry<String, Integer> e : weights.entrySet()) {
+            String name = e.getKey();
+            SDVariable w = out.getVariable(name);
+            INDArray arr = w.getArr();
+            QuantizedArray q = quantizeArray(arr, config.isPerChannel() ? e.getValue() : -1, config.getWeightType());
+
+            SDVariable deq = out.constant(uniqueName(out, name + "_quantized"), q.getValues()).castTo(arr.dataType());
+            if (q.getZeroPoint() != null)
+                deq = deq.sub(out.constant(uniqueName(out, name + "_zero_point"), q.getZeroPoint()));
+            deq = deq.mul(uniqueName(out, name + "_dequantized"), out.constant(uniqueName(out, name + "_scale"), q.getScale()));
+
+            List<String> consumers = new ArrayList<>(out.getVariables().get(name).getInputsForOp());
+            for (String opName : consumers) {
+                SameDiffOp op = out.getOps().get(opName);
+                out.replaceArgFor(1, deq, op.getOp());
+
+                if (config.isQuantizeActivations()) {
+                    String in = op.getInputsToOp().get(0);
+                    double[] range = activationRanges.get(in);
+                    if (range == null) {
+                        log.warn("No calibrated range for activation \"{}\" (input to op \"{}\"): activation will not be quantized", in, opName);
+                        continue;
+                    }
+                    SDVariable qdq = quantizedActivations.get(in);
+                    if (qdq == null) {
+                        qdq = new FakeQuantWithMinMaxArgs(out, out.getVariable(in), (float) range[0], (float) range[1], false, 8).outputVariable();
+                        quantizedActivations.put(in, qdq);
+                    }
+                    out.replaceArgFor(0, qdq, op.getOp());
+                }
+            }
+
+            out.getVariables().remove(name);
+            if (w.getVariableType() == VariableType.CONSTANT) {
+                out.getConstantArrays().removeArray(name);
+            } else {
+                out.getVariablesArrays().removeArray(name);
+            }
+        }
+
+        log.info("Quantized {} weight arrays to {}, {} activations", weights.size(), config.getWeightType(), quantizedActivations.size());
+        return out;
+    }
+
+    /**
+     * Compare the original and quantized graphs on the same data
+     *
+     * @param original       Original graph. Must have a TrainingConfig
+     * @param quantized      Quantized graph, from {@link #quantize(SameDiff, QuantizationConfig, Map)}
+     * @param data           Data to evaluate on
+     * @param outputVariable Output variable to evaluate
+     * @param originalEval   Evaluation for the original graph
+     * @param quantizedEval  Evaluation for the quantized graph. Should be of the same type as originalEval
+     */
+    public static QuantizationReport report(@NonNull SameDiff original, @NonNull SameDiff quantized, @NonNull DataSetIterator data,
+                                            @NonNull String outputVariable, @NonNull IEvaluation originalEval,
+                                            @NonNull IEvaluation quantizedEval) {
+        Preconditions.checkArgument(data.resetSupported(), "Data iterator must support resetting");
+        data.reset();
+        original.evaluate(data, outputVariable, originalEval);
+        data.reset();
+        quantized.evaluate(data, outputVariable, quantizedEval);
+        return new QuantizationReport(parameterBytes(original), parameterBytes(quantized), originalEval, quantizedEval);
+    }
+
+    /**
+     * Quantize an array to 8 bits
+     *
+     * @param arr  Array to quantize. Must be floating point
+     * @param axis Channel axis to use a separate scale for each index of, or -1 to use a single scale
+     * @param type {@link DataType#INT8} for symmetric quantization to [-127, 127], or {@link DataType#UINT8} for
+     *             asymmetric quantization to [0, 255] with a zero point
+     */
+    public static QuantizedArray quantizeArray(@NonNull INDArray arr, int axis, @NonNull DataType type) {
+        Preconditions.checkArgument(arr.dataType().isFPType(), "Only floating point arrays can be quantized, got %s", arr.dataType());
+        Preconditions.checkArgument(axis >= -1 && axis < arr.rank(), "Invalid axis %s for array of rank %s", axis, arr.rank());
+        Preconditions.checkArgument(type == DataType.INT8 || type == DataType.UINT8, "Can only quantize to INT8 or UINT8, got %s", type);
+
+        int[] reduceDims = new int[axis < 0 ? arr.rank() : arr.rank() - 1];
+        long[] bShape = new long[arr.rank()];
+        for (int i = 0, j = 0; i < arr.rank(); i++) {
+            bShape[i] = i == axis ? arr.size(i) : 1;
+            if (i != axis)
+                reduceDims[j++] = i;
+        }
+
+        INDArray scale;
+        INDArray zeroPoint = null;
+        INDArray q;
+        if (type == DataType.INT8) {
+            scale = Transforms.abs(arr).max(true, reduceDims).divi(127.0);
+            BooleanIndexing.replaceWhere(scale, 1.0, Conditions.equals(0.0));
+            q = Transforms.round(arr.div(scale), false);
+            Transforms.min(Transforms.max(q, -127.0, false), 127.0, false);
+        } else {
+            //Range must include 0, so that 0 is represented exactly
+            INDArray min = Transforms.min(arr.min(true, reduceDims), 0.0, false);
+            INDArray max = Transforms.max(arr.max(true, reduceDims), 0.0, false);
+            scale = max.sub(min).divi(255.0);
+            BooleanIndexing.replaceWhere(scale, 1.0, Conditions.equals(0.0));
+            zeroPoint = Transforms.round(min.neg().divi(scale), false);
+            q = Transforms.round(arr.div(scale), false).addi(zeroPoint);
+            Transforms.min(Transforms.max(q, 0.0, false), 255.0, false);
+        }
+
+        return new QuantizedArray(q.castTo(type), scale.reshape(bShape), zeroPoint == null ? null : zeroPoint.reshape(bShape), axis);
+    }
+
+    /**
+     * @return The output channel axis of the weights (input 1) of the specified op, -1 if the op's weights can only be
+     * quantized with a single scale, or {@link #NOT_QUANTIZABLE} if the op is not supported
+     */
+    public static int weightChannelAxis(@NonNull SameDiffOp op) {
+        if (op.getInputsToOp() == null || op.getInputsToOp().size() < 2)
+            return NOT_QUANTIZABLE;
+        if (op.getOp() instanceof XwPlusB) {
+            long[] iArgs = ((XwPlusB) op.getOp()).iArgs();
+            return iArgs.length > 0 && iArgs[0] != 0 ? 0 : 1;
+        } else if (op.getOp() instanceof Mmul) {
+            long[] iArgs = ((Mmul) op.getOp()).iArgs();
+            boolean transposeZ = iArgs.length > 2 && iArgs[2] != 0;
+            if (transposeZ)
+                return -1;
+            return iArgs.length > 1 && iArgs[1] != 0 ? 0 : 1;
+        } else if (op.getOp() instanceof Conv2D) {
+            Conv2DConfig c = ((Conv2D) op.getOp()).getConfig();
+            return c == null || c.getWeightsFormat() == WeightsFormat.YXIO ? 3 : 0;
+        }
+        return NOT_QUANTIZABLE;
+    }
+
+    /**
+     * @return The channel axis to quantize the variable with, or null if it should not be quantized
+     */
+    protected static Integer weightAxis(SameDiff sd, SDVariable v, QuantizationConfig config) {
+        if (v.getVariableType() != VariableType.CONSTANT && v.getVariableType() != VariableType.VARIABLE)
+            return null;
+        INDArray arr = v.getArr();
+        if (arr == null || !arr.dataType().isFPType() || arr.rank() < 2 || arr.length() < config.getMinElements())
+            return null;
+        Variable var = sd.getVariables().get(v.name());
+        if (var.getInputsForOp() == null || var.getInputsForOp().isEmpty() || var.getControlDepsForOp() != null && !var.getControlDepsForOp().isEmpty())
+            return null;
+
+        Integer axis = null;
+        for (String opName : var.getInputsForOp()) {
+            SameDiffOp op = sd.getOps().get(opName);
+            int a = weightChannelAxis(op);
+            List<String> in = op.getInputsToOp();
+            //Only quantize weights that are used as weights (input 1) only
+            if (a == NOT_QUANTIZABLE || !in.get(1).equals(v.name()) || in.indexOf(v.name()) != 1 || in.lastIndexOf(v.name()) != 1)
+                return null;
+            if (a >= arr.rank())
+                return null;
+            axis = axis == null || axis == a ? a : -1;
+        }
+        return axis;
+    }
+
+    protected static long parameterBytes(SameDiff sd) {
+        long bytes = 0;
+        for (SDVariable v : sd.variables()) {
+            if (v.getVariableType() == VariableType.CONSTANT || v.getVariableType() == VariableType.VARIABLE) {
+                INDArray arr = v.getArr();
+                if (arr != null)
+                    bytes += arr.length() * arr.dataType().width();
+            }
+        }
+        return bytes;
+    }
+
+    private static String uniqueName(SameDiff sd, String base) {
+        String name = base;
+        for (int i = 1; sd.hasVariable(name); i++) {
+            name = base + "_" + i;
+        }
+        return name;
+    }
+}
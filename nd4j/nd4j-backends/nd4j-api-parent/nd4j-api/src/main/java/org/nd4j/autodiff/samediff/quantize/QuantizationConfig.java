@@ -0,0 +1,63 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.autodiff.samediff.quantize;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nd4j.linalg.api.buffer.DataType;
+
+/**
+ * Configuration for {@link PostTrainingQuantizer}
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuantizationConfig {
+
+    /**
+     * Data type to store quantized weights as: {@link DataType#INT8} (symmetric quantization, no zero point) or
+     * {@link DataType#UINT8} (asymmetric quantization, with a zero point)
+     */
+    @Builder.Default
+    private DataType weightType = DataType.INT8;
+    /**
+     * If true: use a separate scale (and zero point) for each output channel of the weights. If false: use a single
+     * scale for the whole weights array
+     */
+    @Builder.Default
+    private boolean perChannel = true;
+    /**
+     * If true: also quantize the input activations of each op with quantized weights, using the activation ranges
+     * from calibration. This inserts a quantize-dequantize op before each such op, which simulates 8-bit activations
+     * when evaluating the accuracy of the quantized model
+     */
+    @Builder.Default
+    private boolean quantizeActivations = false;
+    /**
+     * Weights with fewer elements than this are not quantized
+     */
+    @Builder.Default
+    private long minElements = 1024;
+}
@@ -0,0 +1,76 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.autodiff.samediff.quantize;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.nd4j.evaluation.IEvaluation;
+import org.nd4j.evaluation.IMetric;
+
+/**
+ * Compares the size and accuracy of a graph before and after quantization with {@link PostTrainingQuantizer}.
+ * See {@link PostTrainingQuantizer#report(org.nd4j.autodiff.samediff.SameDiff, org.nd4j.autodiff.samediff.SameDiff,
+ * org.nd4j.linalg.dataset.api.iterator.DataSetIterator, String, IEvaluation, IEvaluation)}
+ */
+@Getter
+@AllArgsConstructor
+public class QuantizationReport {
+    /**
+     * Total size of all variables and constants of the original graph, in bytes
+     */
+    private final long originalParameterBytes;
+    /**
+     * Total size of all variables and constants of the quantized graph, in bytes
+     */
+    private final long quantizedParameterBytes;
+    private final IEvaluation originalEvaluation;
+    private final IEvaluation quantizedEvaluation;
+
+    /**
+     * @return The change in the specified metric due to quantization: quantized value minus original value
+     */
+    public double delta(IMetric metric) {
+        return quantizedEvaluation.getValue(metric) - originalEvaluation.getValue(metric);
+    }
+
+    /**
+     * @return Ratio of original to quantized parameter size
+     */
+    public double compressionRatio() {
+        return quantizedParameterBytes == 0 ? 0.0 : originalParameterBytes / (double) quantizedParameterBytes;
+    }
+
+    /**
+     * @return A report of the parameter sizes, and the evaluation stats for both graphs
+     */
+    public String stats() {
+        return "Parameter bytes: " + originalParameterBytes + " original, " + quantizedParameterBytes + " quantized (" +
+                String.format("%.2f", compressionRatio()) + "x smaller)\n" +
+                "Original graph:\n" + originalEvaluation.stats() + "\n" +
+                "Quantized graph:\n" + quantizedEvaluation.stats();
+    }
+
+    @Override
+    public String toString() {
+        return stats();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.autodiff.samediff.quantize;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * An array quantized to 8 bits by {@link PostTrainingQuantizer#quantizeArray(INDArray, int, DataType)}.<br>
+ * The original values are approximated by {@code (values - zeroPoint) * scale}. The scale and zero point have the same
+ * rank as the values, with size 1 in every dimension other than the channel axis, so they broadcast against them.
+ */
+@Getter
+@AllArgsConstructor
+public class QuantizedArray {
+    /**
+     * The quantized values, INT8 or UINT8
+     */
+    private final INDArray values;
+    /**
+     * The scale for each channel, with the data type of the original array
+     */
+    private final INDArray scale;
+    /**
+     * The zero point for each channel, or null for symmetric (INT8) quantization
+     */
+    private final INDArray zeroPoint;
+    /**
+     * The channel axis, or -1 if a single scale is used for the whole array
+     */
+    private final int axis;
+
+    /**
+     * @return The approximation of the original array
+     */
+    public INDArray dequantize() {
+        INDArray out = values.castTo(scale.dataType());
+        if (zeroPoint != null)
+            out.subi(zeroPoint);
+        return out.muli(scale);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.api.memory.pointers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pointer to the memory of a direct {@link ByteBuffer}, for example a memory mapped file, that keeps the buffer
+ * reachable for as long as the pointer is in use.<br>
+ * Pointers created from this one with the {@link Pointer#Pointer(Pointer)} copy constructor (as done by
+ * {@link org.nd4j.linalg.factory.Nd4j#createBuffer(Pointer, long, org.nd4j.linalg.api.buffer.DataType)}) reference it
+ * through their deallocator, so the buffer can't be garbage collected (or unmapped) while any DataBuffer uses it.
+ * The memory itself is owned by the buffer: it isn't counted as memory allocated by JavaCPP, and isn't freed when the
+ * pointer is deallocated.
+ */
+public class ByteBufferPointer extends BytePointer {
+
+    @Getter
+    private final ByteBuffer buffer;
+
+    public ByteBufferPointer(@NonNull ByteBuffer buffer) {
+        super(buffer);
+        this.buffer = buffer;
+        //JavaCPP counts capacity() as allocated memory when a deallocator is registered
+        long capacity = capacity();
+        capacity(0);
+        deallocator(new BufferReference(buffer));
+        capacity(capacity);
+    }
+
+    /**
+     * Holds the buffer until the pointer (and all pointers copied from it) are deallocated
+     */
+    private static class BufferReference implements Deallocator {
+        private final ByteBuffer buffer;
+
+        private BufferReference(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void deallocate() {
+            //Nothing to do: the buffer's memory is released by the JVM once the buffer is no longer reachable
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.linalg.dataset;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A single memory-mapped shard file, as written by {@link DataSetShardWriter}.<br>
+ * A shard stores a fixed number of examples. Each example is stored as one contiguous record: the example's row of the
+ * features, then (if present) its row of the labels, features mask and labels mask. The layout of a shard file is:
+ * <ul>
+ *     <li>Header (big endian): magic number, format version, byte order of the data, number of examples, offset of
+ *     the index, and then the data type and per-example shape of each of the 4 arrays (or absent)</li>
+ *     <li>Example records, starting at a {@link #ALIGNMENT} byte aligned offset, in the byte order given in the
+ *     header</li>
+ *     <li>The index: the byte offset of each example record within the file, as one long per example</li>
+ * </ul>
+ * Reading an example is a single copy of its bytes from the mapped file: there is no deserialization. Instances are
+ * thread safe, as all reads use independent views of the mapped buffer.<br>
+ * Note that each shard is mapped as a single buffer, and hence is limited to 2GB.
+ */
+public class DataSetShard {
+
+    public static final long MAGIC = 0x4E44345348415244L;   //"ND4SHARD"
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 64;
+
+    public static final int FEATURES = 0;
+    public static final int LABELS = 1;
+    public static final int FEATURES_MASK = 2;
+    public static final int LABELS_MASK = 3;
+    public static final int NUM_ARRAYS = 4;
+
+    /** Position of the number of examples in the header; written last, when the shard is complete */
+    protected static final int NUM_EXAMPLES_POSITION = 16;
+    /** Position of the first array descriptor in the header */
+    protected static final int ARRAYS_POSITION = 32;
+
+    @Getter
+    private final File file;
+    @Getter
+    private final ByteOrder byteOrder;
+    @Getter
+    private final long numExamples;
+    private final DataType[] dataTypes = new DataType[NUM_ARRAYS];
+    private final long[][] shapes = new long[NUM_ARRAYS][];
+    private final int[] rowBytes = new int[NUM_ARRAYS];
+    private final int[] rowOffsets = new int[NUM_ARRAYS];
+    private final ByteBuffer data;
+    private final LongBuffer index;
+
+    /**
+     * Memory-map the specified shard file
+     *
+     * @param file Shard file to open
+     */
+    public DataSetShard(@NonNull File file) throws IOException {
+        this.file = file;
+        ByteBuffer mapped;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Preconditions.checkState(fc.size() <= Integer.MAX_VALUE, "Cannot map shard file %s of size %s bytes: shards are limited to 2GB",
+                    file, fc.size());
+            mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+
+        ByteBuffer header = mapped.duplicate().order(ByteOrder.BIG_ENDIAN);
+        Preconditions.checkState(header.remaining() >= ARRAYS_POSITION && header.getLong(0) == MAGIC,
+                "File %s is not a DataSet shard file", file);
+        int version = header.getInt(8);
+        Preconditions.checkState(version == VERSION, "Unsupported DataSet shard format version %s in file %s", version, file);
+        byteOrder = header.get(12) == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        numExamples = header.getLong(NUM_EXAMPLES_POSITION);
+        long indexOffset = header.getLong(NUM_EXAMPLES_POSITION + 8);
+        Preconditions.checkState(numExamples >= 0 && indexOffset > 0, "Shard file %s was not closed after writing", file);
+
+        header.position(ARRAYS_POSITION);
+        int recordOffset = 0;
+        for (int i = 0; i < NUM_ARRAYS; i++) {
+            boolean present = header.get() != 0;
+            int type = header.get();
+            int rank = header.getShort();
+            if (!present)
+                continue;
+            dataTypes[i] = DataType.fromInt(type);
+            shapes[i] = new long[rank];
+            long length = 1;
+            for (int j = 0; j < rank; j++) {
+                shapes[i][j] = header.getLong();
+                length *= shapes[i][j];
+            }
+            rowBytes[i] = (int) (length * dataTypes[i].width());
+            rowOffsets[i] = recordOffset;
+            recordOffset += rowBytes[i];
+        }
+        Preconditions.checkState(shapes[FEATURES] != null, "Shard file %s has no features", file);
+
+        data = mapped.duplicate().order(byteOrder);
+        ByteBuffer indexBytes = mapped.duplicate().order(byteOrder);
+        indexBytes.position((int) indexOffset);
+        indexBytes.limit((int) (indexOffset + 8 * numExamples));
+        index = indexBytes.slice().order(byteOrder).asLongBuffer();
+    }
+
+    /**
+     * @param array One of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK} or {@link #LABELS_MASK}
+     * @return True if the array is stored in this shard
+     */
+    public boolean hasArray(int array) {
+        return shapes[array] != null;
+    }
+
+    /**
+     * @param array One of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK} or {@link #LABELS_MASK}
+     * @return Data type of the array, or null if it is not present
+     */
+    public DataType dataType(int array) {
+        return dataTypes[array];
+    }
+
+    /**
+     * @param array One of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK} or {@link #LABELS_MASK}
+     * @return Shape of one example of the array (i.e., without the minibatch dimension), or null if it is not present
+     */
+    public long[] exampleShape(int array) {
+        return shapes[array] == null ? null : shapes[array].clone();
+    }
+
+    /**
+     * @param array One of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK} or {@link #LABELS_MASK}
+     * @return Size in bytes of one example of the array
+     */
+    public int exampleBytes(int array) {
+        return rowBytes[array];
+    }
+
+    /**
+     * @return True if this shard has the same arrays, with the same data types and example shapes, as the other shard.
+     * The byte order of the shards may differ
+     */
+    public boolean isCompatible(@NonNull DataSetShard other) {
+        for (int i = 0; i < NUM_ARRAYS; i++) {
+            if (dataTypes[i] != other.dataTypes[i] || !Arrays.equals(shapes[i], other.shapes[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copy the bytes of one example of one array into the destination buffer, at the destination buffer's current
+     * position. The position of the destination buffer is advanced by {@link #exampleBytes(int)}.
+     *
+     * @param example Index of the example in this shard
+     * @param array   One of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK} or {@link #LABELS_MASK}
+     * @param dst     Destination buffer
+     */
+    public void copyExample(long example, int array, @NonNull ByteBuffer dst) {
+        Preconditions.checkArgument(example >= 0 && example < numExamples, "Invalid example index %s: shard has %s examples",
+                example, numExamples);
+        int start = (int) (index.get((int) example) + rowOffsets[array]);
+        ByteBuffer src = data.duplicate();
+        src.position(start);
+        src.limit(start + rowBytes[array]);
+        dst.put(src);
+    }
+
+    @Override
+    public String toString() {
+        return "DataSetShard(file=" + file + ", numExamples=" + numExamples + ")";
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.linalg.dataset;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes DataSets to a directory of {@link DataSetShard} files, for reading with {@link ShardedDataSetIterator}.<br>
+ * Examples are appended to the current shard until it reaches the maximum shard size, after which a new shard is
+ * started. All DataSets written must have the same arrays (features, labels, and optionally masks) with the same data
+ * types and the same per-example shapes. Shard files are named using {@link #DEFAULT_PATTERN} by default.<br>
+ * The writer must be closed after the last DataSet is written: a shard file is only readable once it is complete.
+ */
+public class DataSetShardWriter implements Closeable {
+
+    public static final String DEFAULT_PATTERN = "shard-%d.bin";
+    public static final long DEFAULT_MAX_SHARD_BYTES = 1L << 30;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    @Getter
+    private final File rootDir;
+    private final String pattern;
+    private final long maxShardBytes;
+
+    private DataType[] dataTypes;
+    private long[][] shapes;
+    private int[] rowBytes;
+    private int recordBytes;
+    private int headerBytes;
+
+    private final List<File> shardFiles = new ArrayList<>();
+    @Getter
+    private long numExamples;
+    private FileChannel channel;
+    private long position;
+    private long bufferStart;
+    private long[] index = new long[1024];
+    private int shardExamples;
+    private ByteBuffer buffer;
+
+    /**
+     * Create a writer with the default maximum shard size ({@link #DEFAULT_MAX_SHARD_BYTES}) and file name pattern
+     *
+     * @param rootDir Directory to write the shard files to. Created if it does not exist
+     */
+    public DataSetShardWriter(@NonNull File rootDir) {
+        this(rootDir, DEFAULT_MAX_SHARD_BYTES, DEFAULT_PATTERN);
+    }
+
+    /**
+     * @param rootDir       Directory to write the shard files to. Created if it does not exist
+     * @param maxShardBytes Maximum size of each shard file, in bytes. At most 2GB, as shards are mapped as a single buffer
+     * @param pattern       The filename pattern to use. Used with {@code String.format(pattern,idx)}, where idx is an
+     *                      integer, starting at 0.
+     */
+    public DataSetShardWriter(@NonNull File rootDir, long maxShardBytes, @NonNull String pattern) {
+        Preconditions.checkArgument(maxShardBytes > 0 && maxShardBytes <= Integer.MAX_VALUE,
+                "Maximum shard size must be between 1 and %s bytes, got %s", Integer.MAX_VALUE, maxShardBytes);
+        Preconditions.checkState(rootDir.isDirectory() || rootDir.mkdirs(), "Could not create directory %s", rootDir);
+        this.rootDir = rootDir;
+        this.maxShardBytes = maxShardBytes;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Write all DataSets from the iterator
+     *
+     * @param iterator Iterator to write. Not reset before or after writing
+     */
+    public void write(@NonNull DataSetIterator iterator) throws IOException {
+        while (iterator.hasNext()) {
+            write(iterator.next());
+        }
+    }
+
+    /**
+     * Write all examples of the DataSet
+     *
+     * @param dataSet DataSet to write
+     */
+    public void write(@NonNull DataSet dataSet) throws IOException {
+        if (dataSet.isEmpty())
+            return;
+        INDArray[] arrays = {dataSet.getFeatures(), dataSet.getLabels(), dataSet.getFeaturesMaskArray(), dataSet.getLabelsMaskArray()};
+        if (dataTypes == null) {
+            init(arrays);
+        } else {
+            for (int i = 0; i < DataSetShard.NUM_ARRAYS; i++) {
+                boolean ok = arrays[i] == null ? shapes[i] == null :
+                        shapes[i] != null && arrays[i].dataType() == dataTypes[i] && Arrays.equals(exampleShape(arrays[i]), shapes[i]);
+                Preconditions.checkArgument(ok, "DataSet does not match previously written DataSets: all DataSets must " +
+                        "have the same arrays, data types and per-example shapes. Got %s with shape %s, expected %s with shape %s",
+                        arrays[i] == null ? null : arrays[i].dataType(), arrays[i] == null ? null : arrays[i].shape(),
+                        dataTypes[i], shapes[i]);
+            }
+        }
+
+        //Contiguous c order copies, so that each example is a single contiguous range of the array's buffer
+        ByteBuffer[] src = new ByteBuffer[DataSetShard.NUM_ARRAYS];
+        for (int i = 0; i < DataSetShard.NUM_ARRAYS; i++) {
+            if (arrays[i] == null)
+                continue;
+            INDArray arr = arrays[i];
+            if (arr.isView() || arr.ordering() != 'c' || arr.data().offset() != 0 || arr.data().length() != arr.length())
+                arr = arr.dup('c');
+            Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+            src[i] = arr.data().asNio().duplicate().order(ByteOrder.nativeOrder());
+        }
+
+        int n = (int) dataSet.getFeatures().size(0);
+        for (int e = 0; e < n; e++) {
+            //The index follows the (aligned) end of the last record
+            if (channel == null || (shardExamples > 0 && alignUp(position + recordBytes) + 8L * (shardExamples + 1) > maxShardBytes)) {
+                finishShard();
+                startShard();
+            }
+            if (shardExamples == index.length)
+                index = Arrays.copyOf(index, 2 * index.length);
+            index[shardExamples++] = position;
+            for (int i = 0; i < DataSetShard.NUM_ARRAYS; i++) {
+                if (src[i] == null)
+                    continue;
+                src[i].limit((e + 1) * rowBytes[i]);
+                src[i].position(e * rowBytes[i]);
+                put(src[i]);
+            }
+            position += recordBytes;
+            numExamples++;
+        }
+    }
+
+    private void init(INDArray[] arrays) {
+        Preconditions.checkArgument(arrays[DataSetShard.FEATURES] != null, "Cannot write DataSet without features");
+        dataTypes = new DataType[DataSetShard.NUM_ARRAYS];
+        shapes = new long[DataSetShard.NUM_ARRAYS][];
+        rowBytes = new int[DataSetShard.NUM_ARRAYS];
+        int header = DataSetShard.ARRAYS_POSITION;
+        for (int i = 0; i < DataSetShard.NUM_ARRAYS; i++) {
+            header += 4;
+            if (arrays[i] == null)
+                continue;
+            Preconditions.checkArgument(arrays[i].dataType().isNumerical() || arrays[i].dataType() == DataType.BOOL,
+                    "Cannot write arrays of type %s to a DataSet shard", arrays[i].dataType());
+            dataTypes[i] = arrays[i].dataType();
+            shapes[i] = exampleShape(arrays[i]);
+            long bytes = dataTypes[i].width();
+            for (long l : shapes[i]) {
+                bytes *= l;
+            }
+            Preconditions.checkArgument(bytes <= maxShardBytes / 2, "Example of %s bytes is too large for maximum shard size of %s bytes",
+                    bytes, maxShardBytes);
+            rowBytes[i] = (int) bytes;
+            recordBytes += rowBytes[i];
+            header += 8 * shapes[i].length;
+        }
+        headerBytes = (int) alignUp(header);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static long[] exampleShape(INDArray arr) {
+        return Arrays.copyOfRange(arr.shape(), 1, arr.rank());
+    }
+
+    private static long alignUp(long value) {
+        return (value + DataSetShard.ALIGNMENT - 1) / DataSetShard.ALIGNMENT * DataSetShard.ALIGNMENT;
+    }
+
+    private void startShard() throws IOException {
+        File f = new File(rootDir, String.format(pattern, shardFiles.size()));
+        channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        shardFiles.add(f);
+
+        //Number of examples and index offset are written when the shard is finished
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.BIG_ENDIAN);
+        header.putLong(DataSetShard.MAGIC);
+        header.putInt(DataSetShard.VERSION);
+        header.put((byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1));
+        header.position(DataSetShard.NUM_EXAMPLES_POSITION);
+        header.putLong(-1);
+        header.putLong(-1);
+        for (int i = 0; i < DataSetShard.NUM_ARRAYS; i++) {
+            header.put((byte) (shapes[i] == null ? 0 : 1));
+            header.put((byte) (shapes[i] == null ? 0 : dataTypes[i].toInt()));
+            header.putShort((short) (shapes[i] == null ? 0 : shapes[i].length));
+            if (shapes[i] != null) {
+                for (long l : shapes[i]) {
+                    header.putLong(l);
+                }
+            }
+        }
+        header.clear();
+        writeFully(header, 0);
+        position = headerBytes;
+        bufferStart = headerBytes;
+        shardExamples = 0;
+    }
+
+    private void finishShard() throws IOException {
+        if (channel == null)
+            return;
+        flush();
+        long indexOffset = alignUp(position);
+        ByteBuffer indexBuffer = ByteBuffer.allocate(8 * shardExamples).order(ByteOrder.nativeOrder());
+        indexBuffer.asLongBuffer().put(index, 0, shardExamples);
+        writeFully(indexBuffer, indexOffset);
+
+        ByteBuffer counts = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+        counts.putLong(shardExamples).putLong(indexOffset);
+        counts.flip();
+        writeFully(counts, DataSetShard.NUM_EXAMPLES_POSITION);
+        channel.close();
+        channel = null;
+    }
+
+    private void put(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (!buffer.hasRemaining())
+                flush();
+            if (src.remaining() <= buffer.remaining()) {
+                buffer.put(src);
+            } else {
+                int limit = src.limit();
+                src.limit(src.position() + buffer.remaining());
+                buffer.put(src);
+                src.limit(limit);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        int n = buffer.remaining();
+        writeFully(buffer, bufferStart);
+        bufferStart += n;
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src, long pos) throws IOException {
+        while (src.hasRemaining()) {
+            pos += channel.write(src, pos);
+        }
+    }
+
+    /**
+     * @return The shard files written so far, in order
+     */
+    public List<File> getShardFiles() {
+        return Collections.unmodifiableList(shardFiles);
+    }
+
+    @Override
+    public void close() throws IOException {
+        finishShard();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.linalg.dataset;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A DataSetIterator over a directory of {@link DataSetShard} files, as written by {@link DataSetShardWriter}.<br>
+ * All shards are memory-mapped. Each minibatch is assembled by copying the bytes of its examples directly from the
+ * mapped files into the minibatch arrays: there is no deserialization, so iterating over a dataset much larger than
+ * memory is limited by I/O rather than CPU.<br>
+ * With shuffling enabled, the examples of all shards are shuffled together (a global shuffle) on each reset, so every
+ * epoch uses a different order and different minibatches. Within each minibatch, examples are read in file order to
+ * make disk access as sequential as possible; this does not change which examples make up the minibatch.<br>
+ * Shards may have been written with different byte orders (for example, on different machines): examples are converted
+ * to the native byte order as they are read.
+ */
+public class ShardedDataSetIterator implements DataSetIterator {
+
+    private final DataSetShard[] shards;
+    private final long[] shardStarts;
+    private final int totalExamples;
+    private final int batchSize;
+    private final boolean shuffle;
+    private final Random rng;
+    private final int[] order;
+    private int cursor;
+
+    @Getter
+    private DataSetPreProcessor preProcessor;
+    @Getter @Setter
+    private List<String> labels;
+
+    /**
+     * Create an iterator over shards in the given root directory with the default filename pattern
+     * {@link DataSetShardWriter#DEFAULT_PATTERN}, without shuffling
+     *
+     * @param rootDir   Directory containing the shard files
+     * @param batchSize Minibatch size
+     */
+    public ShardedDataSetIterator(@NonNull File rootDir, int batchSize) throws IOException {
+        this(rootDir, DataSetShardWriter.DEFAULT_PATTERN, batchSize, false, 0);
+    }
+
+    /**
+     * Create an iterator over shards in the given root directory
+     *
+     * @param rootDir   Directory containing the shard files
+     * @param pattern   The filename pattern to use. Used with {@code String.format(pattern,idx)}, where idx is an
+     *                  integer, starting at 0. Shards are opened until no file exists for the next index
+     * @param batchSize Minibatch size
+     * @param shuffle   If true: shuffle all examples on every epoch
+     * @param seed      Seed for shuffling
+     */
+    public ShardedDataSetIterator(@NonNull File rootDir, @NonNull String pattern, int batchSize, boolean shuffle,
+                                  long seed) throws IOException {
+        this(shardFiles(rootDir, pattern), batchSize, shuffle, seed);
+    }
+
+    /**
+     * @param shardFiles Shard files to iterate over. All shards must have the same arrays, data types and shapes
+     * @param batchSize  Minibatch size
+     * @param shuffle    If true: shuffle all examples on every epoch
+     * @param seed       Seed for shuffling
+     */
+    public ShardedDataSetIterator(@NonNull List<File> shardFiles, int batchSize, boolean shuffle, long seed) throws IOException {
+        Preconditions.checkArgument(!shardFiles.isEmpty(), "No shard files provided");
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive, got %s", batchSize);
+        this.batchSize = batchSize;
+        this.shuffle = shuffle;
+        this.rng = new Random(seed);
+
+        shards = new DataSetShard[shardFiles.size()];
+        shardStarts = new long[shards.length];
+        long total = 0;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new DataSetShard(shardFiles.get(i));
+            Preconditions.checkState(shards[i].isCompatible(shards[0]), "Shard %s has different arrays, data types or shapes to shard %s",
+                    shards[i], shards[0]);
+            shardStarts[i] = total;
+            total += shards[i].getNumExamples();
+        }
+        Preconditions.checkState(total <= Integer.MAX_VALUE, "Too many examples: %s", total);
+        totalExamples = (int) total;
+
+        order = new int[totalExamples];
+        for (int i = 0; i < totalExamples; i++) {
+            order[i] = i;
+        }
+        reset();
+    }
+
+    private static List<File> shardFiles(File rootDir, String pattern) {
+        List<File> out = new ArrayList<>();
+        File f;
+        while ((f = new File(rootDir, String.format(pattern, out.size()))).isFile()) {
+            out.add(f);
+        }
+        Preconditions.checkState(!out.isEmpty(), "No shard files matching pattern %s found in directory %s", pattern, rootDir);
+        return out;
+    }
+
+    /**
+     * @return Total number of examples in all shards
+     */
+    public int totalExamples() {
+        return totalExamples;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+        int n = Math.min(num, totalExamples - cursor);
+        int[] examples = Arrays.copyOfRange(order, cursor, cursor + n);
+        cursor += n;
+        if (shuffle)
+            Arrays.sort(examples);
+
+        DataSetShard first = shards[0];
+        INDArray[] out = new INDArray[DataSetShard.NUM_ARRAYS];
+        for (int a = 0; a < DataSetShard.NUM_ARRAYS; a++) {
+            if (first.hasArray(a))
+                out[a] = gather(a, examples);
+        }
+
+        DataSet ds = new DataSet(out[DataSetShard.FEATURES], out[DataSetShard.LABELS], out[DataSetShard.FEATURES_MASK],
+                out[DataSetShard.LABELS_MASK]);
+        if (labels != null)
+            ds.setLabelNames(labels);
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+        return ds;
+    }
+
+    protected INDArray gather(int array, int[] examples) {
+        DataSetShard first = shards[0];
+        DataType dt = first.dataType(array);
+        long[] shape = ArrayUtil.combine(new long[]{examples.length}, first.exampleShape(array));
+        INDArray arr = Nd4j.createUninitialized(dt, shape, 'c');
+        ByteBuffer dst = arr.data().asNio().duplicate().order(ByteOrder.nativeOrder());
+        dst.position(0);
+        dst.limit(examples.length * first.exampleBytes(array));
+
+        int s = 0;
+        for (int e : examples) {
+            if (e < shardStarts[s] || (s + 1 < shards.length && e >= shardStarts[s + 1])) {
+                s = Arrays.binarySearch(shardStarts, e);
+                if (s < 0) {
+                    s = -s - 2;
+                }
+                //Skip over empty shards
+                while (s + 1 < shards.length && shardStarts[s + 1] == e) {
+                    s++;
+                }
+            }
+            int start = dst.position();
+            shards[s].copyExample(e - shardStarts[s], array, dst);
+            if (shards[s].getByteOrder() != ByteOrder.nativeOrder())
+                swapBytes(dst, start, dst.position(), dt.width());
+        }
+
+        Nd4j.getAffinityManager().tagLocation(arr, AffinityManager.Location.HOST);
+        return arr;
+    }
+
+    /**
+     * Reverse the byte order of every element in the buffer, from position start (inclusive) to end (exclusive)
+     */
+    protected static void swapBytes(ByteBuffer buffer, int start, int end, int width) {
+        if (width <= 1)
+            return;
+        for (int i = start; i < end; i += width) {
+            for (int j = 0; j < width / 2; j++) {
+                byte b = buffer.get(i + j);
+                buffer.put(i + j, buffer.get(i + width - 1 - j));
+                buffer.put(i + width - 1 - j, b);
+            }
+        }
+    }
+
+    @Override
+    public int inputColumns() {
+        return (int) ArrayUtil.prodLong(shards[0].exampleShape(DataSetShard.FEATURES));
+    }
+
+    @Override
+    public int totalOutcomes() {
+        long[] shape = shards[0].exampleShape(DataSetShard.LABELS);
+        if (shape == null || shape.length == 0)
+            return 0;
+        return (int) shape[0];
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+        if (shuffle) {
+            for (int i = totalExamples - 1; i > 0; i--) {
+                int j = rng.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+        }
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < totalExamples;
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
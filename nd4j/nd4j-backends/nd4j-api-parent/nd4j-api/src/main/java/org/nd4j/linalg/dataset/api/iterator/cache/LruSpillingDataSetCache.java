@@ -0,0 +1,459 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.linalg.dataset.api.iterator.cache;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@link DataSetCache} with a memory budget, that spills the least recently used DataSets to disk.<br>
+ * DataSets are stored in a compact binary form (data type, shape and raw data of each array) in off-heap buffers. When
+ * the total size of the buffers exceeds the memory budget, the least recently used DataSets are evicted from memory.
+ * Evicted DataSets that are not yet on disk are appended to a single store file by a background writer thread
+ * (write-behind), so a put never waits for disk I/O unless the writer falls more than the memory budget behind.<br>
+ * The cache also records which key was accessed after each key. When a DataSet is retrieved, the DataSet that
+ * followed it last time is read from disk in the background (read-ahead), so that sequential access - as by
+ * {@link org.nd4j.linalg.dataset.api.iterator.CachingDataSetIterator} over multiple epochs - is mostly served from
+ * memory. Hit rates are available from {@link #getHitRate()} and the other counters.<br>
+ * Space in the store file is not reclaimed when a key is replaced: the store is intended for write-once data such as
+ * preprocessed minibatches. The store file is deleted when the cache is closed.
+ */
+@Slf4j
+public class LruSpillingDataSetCache implements DataSetCache, Closeable {
+
+    @Getter
+    private final long maxMemoryBytes;
+    @Getter
+    private final File storeFile;
+    private final FileChannel channel;
+    private final ExecutorService writer;
+    private final ExecutorService reader;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final LinkedHashMap<String, Entry> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String> successors = new HashMap<>();
+    private final Set<String> completeNamespaces = new HashSet<>();
+    private String lastKey;
+    private long storeEnd;
+    private IOException writeError;
+    private boolean closed;
+
+    @Getter
+    private long residentBytes;
+    @Getter
+    private long pendingBytes;
+    @Getter
+    private long memoryHits;
+    @Getter
+    private long diskHits;
+    @Getter
+    private long misses;
+    @Getter
+    private long readAheads;
+    @Getter
+    private long spills;
+
+    /**
+     * @param cacheDirectory Directory to create the store file in
+     * @param maxMemoryBytes Memory budget in bytes, for DataSets held in memory
+     */
+    public LruSpillingDataSetCache(@NonNull File cacheDirectory, long maxMemoryBytes) throws IOException {
+        Preconditions.checkArgument(maxMemoryBytes > 0, "Memory budget must be positive, got %s", maxMemoryBytes);
+        if (cacheDirectory.exists() && !cacheDirectory.isDirectory()) {
+            throw new IllegalArgumentException("can't use path " + cacheDirectory + " as file cache directory "
+                    + "because it already exists, but is not a directory");
+        }
+        Preconditions.checkState(cacheDirectory.isDirectory() || cacheDirectory.mkdirs(), "Could not create directory %s", cacheDirectory);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.storeFile = File.createTempFile("dataset-cache-", ".bin", cacheDirectory);
+        this.storeFile.deleteOnExit();
+        this.channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writer = Executors.newSingleThreadExecutor(r -> daemon(r, "DataSetCache-writer"));
+        this.reader = Executors.newSingleThreadExecutor(r -> daemon(r, "DataSetCache-reader"));
+    }
+
+    public LruSpillingDataSetCache(@NonNull Path cacheDirectory, long maxMemoryBytes) throws IOException {
+        this(cacheDirectory.toFile(), maxMemoryBytes);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    @Override
+    public synchronized boolean isComplete(String namespace) {
+        return completeNamespaces.contains(namespace);
+    }
+
+    @Override
+    public synchronized void setComplete(String namespace, boolean value) {
+        if (value) {
+            completeNamespaces.add(namespace);
+        } else {
+            completeNamespaces.remove(namespace);
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public void put(String key, DataSet dataSet) {
+        ByteBuffer encoded = encode(dataSet);
+        synchronized (this) {
+            checkState();
+            Entry old = entries.remove(key);
+            if (old != null && resident.remove(key) != null) {
+                residentBytes -= old.length;
+            }
+
+            Entry e = new Entry(key, encoded.remaining());
+            e.memory = encoded;
+            entries.put(key, e);
+            resident.put(key, e);
+            residentBytes += e.length;
+            recordAccess(key);
+            evict();
+
+            //Back pressure: don't let the DataSets waiting to be written grow beyond the memory budget
+            while (pendingBytes > maxMemoryBytes && !closed && writeError == null) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for DataSet cache writes", ex);
+                }
+            }
+            checkState();
+        }
+    }
+
+    @Override
+    public DataSet get(String key) {
+        Entry e;
+        ByteBuffer buffer;
+        synchronized (this) {
+            checkState();
+            e = entries.get(key);
+            if (e == null) {
+                misses++;
+                return null;
+            }
+            recordAccess(key);
+
+            while (e.loading) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for DataSet cache read", ex);
+                }
+            }
+            if (e.memory != null) {
+                resident.get(key);     //Mark as most recently used
+                buffer = e.memory;
+                memoryHits++;
+            } else if (e.writing != null) {
+                buffer = e.writing;
+                memoryHits++;
+            } else {
+                buffer = null;
+                diskHits++;
+            }
+            readAhead(successors.get(key));
+        }
+
+        if (buffer == null) {
+            try {
+                buffer = read(e);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Error reading DataSet for key " + key + " from cache file " + storeFile, ex);
+            }
+            synchronized (this) {
+                if (e.memory == null && entries.get(key) == e) {
+                    promote(e, buffer);
+                }
+            }
+        }
+        return decode(buffer.duplicate());
+    }
+
+    /**
+     * @return Fraction of {@link #get(String)} calls that were served from memory, including DataSets loaded by
+     * read-ahead
+     */
+    public synchronized double getHitRate() {
+        long total = memoryHits + diskHits + misses;
+        return total == 0 ? 0.0 : memoryHits / (double) total;
+    }
+
+    /**
+     * @return Number of bytes written to the store file
+     */
+    public synchronized long getSpilledBytes() {
+        return storeEnd;
+    }
+
+    private void checkState() {
+        Preconditions.checkState(!closed, "DataSet cache has been closed");
+        if (writeError != null)
+            throw new IllegalStateException("Error writing to DataSet cache file " + storeFile, writeError);
+    }
+
+    private void recordAccess(String key) {
+        if (lastKey != null && !lastKey.equals(key))
+            successors.put(lastKey, key);
+        lastKey = key;
+    }
+
+    private void promote(Entry e, ByteBuffer buffer) {
+        e.memory = buffer;
+        resident.put(e.key, e);
+        residentBytes += e.length;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> iter = resident.values().iterator();
+        while (residentBytes > maxMemoryBytes && iter.hasNext()) {
+            Entry e = iter.next();
+            iter.remove();
+            ByteBuffer buffer = e.memory;
+            e.memory = null;
+            residentBytes -= e.length;
+            if (e.offset < 0 && e.writing == null)
+                spill(e, buffer);
+        }
+    }
+
+    private void spill(final Entry e, final ByteBuffer buffer) {
+        final long offset = storeEnd;
+        storeEnd += e.length;
+        e.writing = buffer;
+        pendingBytes += e.length;
+        spills++;
+        writer.execute(() -> {
+            IOException error = null;
+            try {
+                ByteBuffer src = buffer.duplicate();
+                long pos = offset;
+                while (src.hasRemaining()) {
+                    pos += channel.write(src, pos);
+                }
+            } catch (IOException ex) {
+                error = ex;
+            }
+            synchronized (LruSpillingDataSetCache.this) {
+                pendingBytes -= e.length;
+                if (error == null) {
+                    e.offset = offset;
+                    e.writing = null;
+                } else if (!closed) {
+                    //Keep the data in memory so that it is not lost; subsequent calls will fail
+                    log.error("Error writing DataSet for key {} to cache file {}", e.key, storeFile, error);
+                    writeError = error;
+                }
+                LruSpillingDataSetCache.this.notifyAll();
+            }
+        });
+    }
+
+    private void readAhead(String key) {
+        if (key == null)
+            return;
+        final Entry e = entries.get(key);
+        if (e == null || e.memory != null || e.writing != null || e.loading || e.offset < 0)
+            return;
+        e.loading = true;
+        readAheads++;
+        reader.execute(() -> {
+            ByteBuffer buffer = null;
+            try {
+                buffer = read(e);
+            } catch (IOException ex) {
+                log.warn("Error reading ahead DataSet for key {} from cache file {}", e.key, storeFile, ex);
+            }
+            synchronized (LruSpillingDataSetCache.this) {
+                e.loading = false;
+                if (buffer != null && e.memory == null && entries.get(e.key) == e) {
+                    promote(e, buffer);
+                }
+                LruSpillingDataSetCache.this.notifyAll();
+            }
+        });
+    }
+
+    private ByteBuffer read(Entry e) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(e.length).order(ByteOrder.nativeOrder());
+        long pos = e.offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos);
+            if (n < 0)
+                throw new IOException("Unexpected end of cache file " + storeFile + " at position " + pos);
+            pos += n;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encode the DataSet as: for each of features, labels, features mask and labels mask, a presence flag, and if
+     * present the data type, rank, shape and raw data (c order, native byte order)
+     */
+    protected ByteBuffer encode(@NonNull DataSet dataSet) {
+        INDArray[] arrays = {dataSet.getFeatures(), dataSet.getLabels(), dataSet.getFeaturesMaskArray(), dataSet.getLabelsMaskArray()};
+        long size = 0;
+        for (int i = 0; i < arrays.length; i++) {
+            INDArray arr = arrays[i];
+            size += 1;
+            if (arr == null)
+                continue;
+            Preconditions.checkArgument(arr.dataType() != DataType.UTF8, "Cannot cache arrays of type %s", arr.dataType());
+            if (arr.isView() || arr.ordering() != 'c' || arr.data().offset() != 0 || arr.data().length() != arr.length())
+                arrays[i] = arr = arr.dup('c');
+            size += 8 + 8L * arr.rank() + arr.length() * arr.dataType().width();
+        }
+        Preconditions.checkState(size <= Integer.MAX_VALUE, "DataSet of %s bytes is too large to cache", size);
+
+        ByteBuffer out = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+        for (INDArray arr : arrays) {
+            out.put((byte) (arr == null ? 0 : 1));
+            if (arr == null)
+                continue;
+            out.putInt(arr.dataType().toInt());
+            out.putInt(arr.rank());
+            for (long l : arr.shape()) {
+                out.putLong(l);
+            }
+            if (arr.length() > 0) {
+                Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+                ByteBuffer src = arr.data().asNio().duplicate();
+                src.position(0);
+                src.limit((int) (arr.length() * arr.dataType().width()));
+                out.put(src);
+            }
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Decode a DataSet encoded by {@link #encode(DataSet)}. Returns new arrays, so that changes to the returned DataSet
+     * don't change the cached copy
+     */
+    protected DataSet decode(@NonNull ByteBuffer in) {
+        in.order(ByteOrder.nativeOrder());
+        INDArray[] arrays = new INDArray[4];
+        for (int i = 0; i < arrays.length; i++) {
+            if (in.get() == 0)
+                continue;
+            DataType dt = DataType.fromInt(in.getInt());
+            long[] shape = new long[in.getInt()];
+            long length = 1;
+            for (int j = 0; j < shape.length; j++) {
+                shape[j] = in.getLong();
+                length *= shape[j];
+            }
+            if (length == 0) {
+                arrays[i] = Nd4j.create(dt, shape);
+                continue;
+            }
+            INDArray arr = Nd4j.createUninitialized(dt, shape, 'c');
+            int bytes = (int) (length * dt.width());
+            ByteBuffer src = in.duplicate();
+            src.limit(src.position() + bytes);
+            ByteBuffer dst = arr.data().asNio().duplicate();
+            dst.position(0);
+            dst.put(src);
+            in.position(in.position() + bytes);
+            Nd4j.getAffinityManager().tagLocation(arr, AffinityManager.Location.HOST);
+            arrays[i] = arr;
+        }
+        return new DataSet(arrays[0], arrays[1], arrays[2], arrays[3]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LruSpillingDataSetCache(hitRate=%.3f, memoryHits=%d, diskHits=%d, misses=%d, readAheads=%d, " +
+                "residentBytes=%d, spilledBytes=%d)", getHitRate(), memoryHits, diskHits, misses, readAheads, residentBytes, storeEnd);
+    }
+
+    /**
+     * Close the cache: stop the background threads, and delete the store file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        writer.shutdownNow();
+        reader.shutdownNow();
+        channel.close();
+        if (!storeFile.delete())
+            log.warn("Could not delete DataSet cache file {}", storeFile);
+    }
+
+    private static class Entry {
+        private final String key;
+        private final int length;
+        private ByteBuffer memory;      //In memory copy, or null if evicted
+        private ByteBuffer writing;     //Copy being written to disk by the writer thread
+        private long offset = -1;       //Position in the store file, or -1 if not (yet) on disk
+        private boolean loading;        //True while being read by the reader thread
+
+        private Entry(String key, int length) {
+            this.key = key;
+            this.length = length;
+        }
+    }
+}
@@ -174,6 +174,15 @@ public class ND4JSystemProperties {
      */
     public final static String SAMEDIFF_MEMORY_CACHE_DISABLE = "org.nd4j.autodiff.samediff";
 
+    /**
+     * Applicability: SameDiff InferenceSession<br>
+     * Description: If set to true, InferenceSession instances use the thread safe ConcurrentArrayCacheMemoryMgr
+     * instead of the default ArrayCacheMemoryMgr. All sessions then share a single, size-bucketed pool of released
+     * arrays with one global memory budget. Useful when running many inference sessions concurrently.<br>
+     * Default: false
+     */
+    public final static String SAMEDIFF_CONCURRENT_MEMORY_MGR = "org.nd4j.autodiff.samediff.memory.concurrent";
+
     /**
      * Used to trigger loading the import reflection cache. This allows the user to control the initial scan
      * of the ImportReflectionCache in samediff-import-onnx and samediff-import-tensorflow.
@@ -28,6 +28,7 @@ import org.nd4j.parameterserver.distributed.enums.FaultToleranceStrategy;
 import org.nd4j.parameterserver.distributed.enums.NodeRole;
 import org.nd4j.parameterserver.distributed.enums.TransportType;
 import org.nd4j.parameterserver.distributed.v2.enums.MeshBuildMode;
+import org.nd4j.parameterserver.distributed.v2.enums.PropagationMode;
 import org.nd4j.parameterserver.distributed.v2.transport.PortSupplier;
 import org.nd4j.parameterserver.distributed.v2.transport.impl.StaticPortSupplier;
 
@@ -180,6 +181,13 @@ public class VoidConfiguration implements Serializable {
     @Builder.Default
     private int maxChunkSize = 65536;
 
+    /**
+     * This variable defines how gradient updates are shared between nodes: {@link PropagationMode#BOTH_WAYS} to
+     * broadcast them over the mesh tree, or {@link PropagationMode#RING} for ring all-reduce
+     */
+    @Builder.Default
+    private PropagationMode propagationMode = PropagationMode.BOTH_WAYS;
+
     /**
      * This variable defines max number of allowed reconnects per node
      */
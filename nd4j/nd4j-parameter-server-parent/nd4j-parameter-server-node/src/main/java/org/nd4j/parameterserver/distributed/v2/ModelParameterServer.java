@@ -419,7 +419,8 @@ public final class ModelParameterServer {
             msg.setOriginatorId(transport.id());
             msg.setIteration(iteration);
             msg.setEpoch(epoch);
-            transport.propagateMessage(msg, PropagationMode.BOTH_WAYS);
+            val mode = configuration == null ? PropagationMode.BOTH_WAYS : configuration.getPropagationMode();
+            transport.propagateMessage(msg, mode);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
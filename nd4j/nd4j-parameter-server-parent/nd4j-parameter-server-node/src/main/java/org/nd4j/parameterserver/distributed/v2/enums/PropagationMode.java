@@ -34,5 +34,13 @@ public enum PropagationMode {
     /**
      * Propagate to downstreams only
      */
-    ONLY_DOWN
+    ONLY_DOWN,
+
+    /**
+     * Ring all-reduce across all non-root nodes, independent of the mesh tree. Dense (floating point) updates are
+     * summed with a reduce-scatter followed by an all-gather, so each node sends and receives about 2x the update size
+     * per round regardless of cluster size. Encoded updates can't be summed, and are relayed once around the ring instead.
+     * Applies to gradient updates only; other messages are propagated as with {@link #BOTH_WAYS}
+     */
+    RING
 }
@@ -0,0 +1,103 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.parameterserver.distributed.v2.messages.impl;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.base.BaseINDArrayMessage;
+
+/**
+ * This message carries one step of a ring all-reduce, as performed by
+ * {@link org.nd4j.parameterserver.distributed.v2.util.RingAllReducer}
+ */
+@NoArgsConstructor
+public final class RingAllReduceMessage extends BaseINDArrayMessage {
+    private static final long serialVersionUID = 1L;
+
+    public enum Phase {
+        /**
+         * Payload is a partial sum of one piece, to be added to the receiver's own piece
+         */
+        REDUCE_SCATTER,
+
+        /**
+         * Payload is the final sum of one piece
+         */
+        ALL_GATHER,
+
+        /**
+         * Payload is a complete (encoded) update of another node, relayed around the ring
+         */
+        RELAY
+    }
+
+    @Getter
+    private Phase phase;
+
+    /**
+     * All-reduce round this message belongs to
+     */
+    @Getter
+    private long round;
+
+    /**
+     * Index of the piece of the update carried by this message
+     */
+    @Getter
+    private int piece;
+
+    /**
+     * Number of ring hops made by this piece so far, including this one
+     */
+    @Getter
+    private int hop;
+
+    @Getter
+    private int ringSize;
+
+    /**
+     * Total length of the update being reduced
+     */
+    @Getter
+    private long length;
+
+    @Getter
+    private int iteration;
+
+    @Getter
+    private int epoch;
+
+    public RingAllReduceMessage(@NonNull String messageId, INDArray payload, @NonNull Phase phase, long round, int piece,
+                                int hop, int ringSize, long length, int iteration, int epoch) {
+        super(messageId, payload);
+        this.phase = phase;
+        this.round = round;
+        this.piece = piece;
+        this.hop = hop;
+        this.ringSize = ringSize;
+        this.length = length;
+        this.iteration = iteration;
+        this.epoch = epoch;
+    }
+}
@@ -36,7 +36,9 @@ import org.nd4j.parameterserver.distributed.v2.chunks.VoidChunk;
 import org.nd4j.parameterserver.distributed.v2.enums.PropagationMode;
 import org.nd4j.parameterserver.distributed.v2.messages.*;
 import org.nd4j.parameterserver.distributed.v2.messages.history.HashHistoryHolder;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.GradientsUpdateMessage;
 import org.nd4j.parameterserver.distributed.v2.messages.impl.MeshUpdateMessage;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.RingAllReduceMessage;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.HandshakeRequest;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.HandshakeResponse;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.ping.PingMessage;
@@ -45,6 +47,7 @@ import org.nd4j.parameterserver.distributed.v2.transport.RestartCallback;
 import org.nd4j.parameterserver.distributed.v2.transport.Transport;
 import org.nd4j.parameterserver.distributed.v2.util.MeshOrganizer;
 import org.nd4j.parameterserver.distributed.v2.util.MessageSplitter;
+import org.nd4j.parameterserver.distributed.v2.util.RingAllReducer;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
@@ -103,6 +106,9 @@ public abstract  class BaseTransport  implements Transport {
     // this flag is used to track status of handshake procedure at node side
     protected AtomicBoolean handshakeFlag = new AtomicBoolean(false);
 
+    // this instance handles gradients updates propagated in RING mode
+    protected final RingAllReducer ringAllReducer;
+
     protected final ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
         @Override
         public Thread newThread(@NonNull final Runnable r) {
@@ -133,6 +139,7 @@ public abstract  class BaseTransport  implements Transport {
         this.mesh.set(new MeshOrganizer(voidConfiguration.getMeshBuildMode()));
         this.rootId = rootId;
         this.voidConfiguration = voidConfiguration;
+        this.ringAllReducer = new RingAllReducer(this, mesh, incomingFlow, voidConfiguration.getMaxChunkSize());
     }
 
     protected BaseTransport(@NonNull String ownId, @NonNull String rootId, @NonNull VoidConfiguration voidConfiguration) {
@@ -140,6 +147,7 @@ public abstract  class BaseTransport  implements Transport {
         this.id = ownId;
         this.rootId = rootId;
         this.voidConfiguration = voidConfiguration;
+        this.ringAllReducer = new RingAllReducer(this, mesh, incomingFlow, voidConfiguration.getMaxChunkSize());
 
         masterMode = ownId.equalsIgnoreCase(rootId);
         if (masterMode) {
@@ -232,6 +240,7 @@ public abstract  class BaseTransport  implements Transport {
     public synchronized void shutdown() {
         // shuttng down
         executorService.shutdown();
+        ringAllReducer.shutdown();
     }
 
     protected void propagateArrayMessage(INDArrayMessage message, PropagationMode mode) throws IOException  {
@@ -267,6 +276,16 @@ public abstract  class BaseTransport  implements Transport {
             return;
         }
 
+        // gradients are reduced along the ring, everything else goes through the tree as usual
+        if (PropagationMode.RING == mode) {
+            if (voidMessage instanceof GradientsUpdateMessage) {
+                ringAllReducer.allReduce((GradientsUpdateMessage) voidMessage);
+                return;
+            }
+
+            mode = PropagationMode.BOTH_WAYS;
+        }
+
         val root = mesh.get().getRootNode();
         val upstream = node.getUpstreamNode();
         val downstreams = node.getDownstreamNodes();
@@ -373,6 +392,9 @@ public abstract  class BaseTransport  implements Transport {
             // if this chunk was the last message, we'll forward it to parameter server for actual use
             if (opt.isPresent())
                 this.internalProcessMessage(opt.get());
+        } else if (message instanceof RingAllReduceMessage) {
+            // ring all-reduce steps are never forwarded as is, RingAllReducer takes care of them
+            ringAllReducer.process((RingAllReduceMessage) message);
         } else if (message instanceof INDArrayMessage) {
             // just forward message, but ONLY if it's not a Response message, since it's probably processed separately
             if (!(message instanceof ResponseMessage)) {
@@ -0,0 +1,331 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.parameterserver.distributed.v2.util;
+
+import io.reactivex.functions.Consumer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.nd4j.common.primitives.Atomic;
+import org.nd4j.common.util.SerializationUtils;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.parameterserver.distributed.v2.messages.INDArrayMessage;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.GradientsUpdateMessage;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.RingAllReduceMessage;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.RingAllReduceMessage.Phase;
+import org.nd4j.parameterserver.distributed.v2.transport.Transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements ring all-reduce of gradient updates, for {@link org.nd4j.parameterserver.distributed.v2.enums.PropagationMode#RING}.
+ *
+ * All nodes except the root form a ring, ordered by node id. Each call to {@link #allReduce(GradientsUpdateMessage)}
+ * starts a new round; every node in the ring must take part in every round, i.e. training must be synchronous.
+ * Dense updates are split into pieces small enough that each serialized piece message fits into maxChunkSize bytes,
+ * so the transport sends every piece as a single chunk. Every piece is reduced independently:
+ * it travels once around the ring being summed (reduce-scatter), and then once more carrying the final sum (all-gather).
+ * Since pieces start at different nodes, all links of the ring are used at the same time, and pieces are pipelined.
+ * Pipelining is done by the pieces themselves rather than by
+ * {@link org.nd4j.parameterserver.distributed.v2.chunks.ChunksTracker}: each piece is a complete message
+ * that can be summed as soon as it arrives, while chunks can only be used once all chunks of a message have arrived.
+ * Once all pieces are complete, the sum of the updates of all other nodes is passed to the parameter server, as if it
+ * was a single update received from the network.
+ *
+ * Encoded (integer) updates can't be summed, so they are relayed around the ring: each node passes the update on to
+ * its successor, and to its own parameter server.
+ *
+ * PLEASE NOTE: ring membership is taken from the mesh when each round starts, so nodes must not join or leave during training
+ */
+@Slf4j
+public class RingAllReducer {
+    private final Transport transport;
+    private final Atomic<MeshOrganizer> mesh;
+    private final Consumer<INDArrayMessage> receiver;
+    private final int maxChunkSize;
+
+    // sends are done from a separate thread, so message processing never blocks on the next node in the ring
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(r -> {
+        val t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong rounds = new AtomicLong(0);
+    private final Map<Long, Round> states = new ConcurrentHashMap<>();
+    private final Map<DataType, Long> pieceLengths = new ConcurrentHashMap<>();
+
+    /**
+     * @param transport    Transport used to send messages to the next node in the ring
+     * @param mesh         Mesh of the transport, used to determine ring membership
+     * @param receiver     Consumer for reduced updates, i.e. the parameter server side of the transport
+     * @param maxChunkSize Maximal size of each serialized piece message, in bytes
+     */
+    public RingAllReducer(@NonNull Transport transport, @NonNull Atomic<MeshOrganizer> mesh,
+                          @NonNull Consumer<INDArrayMessage> receiver, int maxChunkSize) {
+        this.transport = transport;
+        this.mesh = mesh;
+        this.receiver = receiver;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * This method returns ids of the nodes in the ring, in ring order
+     *
+     * @param mesh
+     * @return
+     */
+    public static List<String> ringMembers(@NonNull MeshOrganizer mesh) {
+        val list = new ArrayList<String>();
+        for (val n : mesh.flatNodes())
+            list.add(n.getId());
+
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * This method starts new all-reduce round for the given update
+     *
+     * @param message update of this node
+     */
+    public void allReduce(@NonNull GradientsUpdateMessage message) {
+        val ring = ringMembers(mesh.get());
+        val rank = ring.indexOf(transport.id());
+        if (rank < 0)
+            throw new ND4JIllegalStateException("Node [" + transport.id() + "] is not a member of the ring: root node can't send updates in RING mode");
+
+        // there's no one to share updates with
+        if (ring.size() == 1)
+            return;
+
+        val array = message.getPayload();
+        val next = ring.get((rank + 1) % ring.size());
+        if (!array.dataType().isFPType()) {
+            send(new RingAllReduceMessage(java.util.UUID.randomUUID().toString(), array, Phase.RELAY, -1, 0, 1,
+                    ring.size(), array.length(), message.getIteration(), message.getEpoch()), next);
+            return;
+        }
+
+        val round = states.computeIfAbsent(rounds.getAndIncrement(), Round::new);
+        synchronized (round) {
+            round.start(array, ring, rank, message.getIteration(), message.getEpoch());
+
+            // each node starts the pieces assigned to it
+            for (int p = rank; p < round.numPieces; p += ring.size())
+                send(round.message(Phase.REDUCE_SCATTER, p, 1, round.piece(p).dup()), round.next);
+
+            for (val m : round.pending)
+                process(round, m);
+            round.pending.clear();
+            checkComplete(round);
+        }
+    }
+
+    /**
+     * This method processes message received from the previous node in the ring
+     *
+     * @param message
+     */
+    public void process(@NonNull RingAllReduceMessage message) {
+        if (message.getPhase() == Phase.RELAY) {
+            deliver(message.getPayload(), message.getIteration(), message.getEpoch());
+
+            if (message.getHop() < message.getRingSize() - 1) {
+                val ring = ringMembers(mesh.get());
+                val next = ring.get((ring.indexOf(transport.id()) + 1) % ring.size());
+                send(new RingAllReduceMessage(java.util.UUID.randomUUID().toString(), message.getPayload(), Phase.RELAY, -1, 0,
+                        message.getHop() + 1, message.getRingSize(), message.getLength(), message.getIteration(), message.getEpoch()), next);
+            }
+            return;
+        }
+
+        val round = states.computeIfAbsent(message.getRound(), Round::new);
+        synchronized (round) {
+            // we can't do anything before own update for this round is available
+            if (!round.started) {
+                round.pending.add(message);
+                return;
+            }
+
+            process(round, message);
+            checkComplete(round);
+        }
+    }
+
+    protected void process(Round round, RingAllReduceMessage message) {
+        if (message.getRingSize() != round.ring.size() || message.getLength() != round.length)
+            throw new ND4JIllegalStateException("Ring all-reduce mismatch in round " + round.id + ": got update of length "
+                    + message.getLength() + " for ring of size " + message.getRingSize() + ", expected length " + round.length
+                    + " and ring size " + round.ring.size());
+
+        val piece = round.piece(message.getPiece());
+        val last = message.getHop() == round.ring.size() - 1;
+        if (message.getPhase() == Phase.REDUCE_SCATTER) {
+            piece.addi(message.getPayload());
+            if (last) {
+                // sum of this piece is complete now, so it goes around the ring once more
+                round.done++;
+                send(round.message(Phase.ALL_GATHER, message.getPiece(), 1, piece.dup()), round.next);
+            } else {
+                send(round.message(Phase.REDUCE_SCATTER, message.getPiece(), message.getHop() + 1, piece.dup()), round.next);
+            }
+        } else {
+            piece.assign(message.getPayload());
+            round.done++;
+            if (!last)
+                send(round.message(Phase.ALL_GATHER, message.getPiece(), message.getHop() + 1, message.getPayload()), round.next);
+        }
+    }
+
+    protected void checkComplete(Round round) {
+        if (round.done < round.numPieces)
+            return;
+
+        states.remove(round.id);
+
+        // we pass sum of updates of all other nodes, own update was already applied locally
+        val result = round.sum.subi(round.own);
+        deliver(result, round.iteration, round.epoch);
+    }
+
+    protected void deliver(INDArray array, int iteration, int epoch) {
+        val msg = new GradientsUpdateMessage(java.util.UUID.randomUUID().toString(), array);
+        msg.setOriginatorId(transport.id());
+        msg.setIteration(iteration);
+        msg.setEpoch(epoch);
+        try {
+            receiver.accept(msg);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void send(RingAllReduceMessage message, String id) {
+        sender.execute(() -> {
+            try {
+                transport.sendMessage(message, id);
+            } catch (Exception e) {
+                log.error("Wasn't able to send RingAllReduceMessage to [{}]", id, e);
+            }
+        });
+    }
+
+    /**
+     * This method returns number of elements in each piece of an update of the given data type: as many as possible,
+     * while the serialized piece message still fits into maxChunkSize bytes. The serialization overhead is measured
+     * once per data type, with a message of the same size as actual piece messages.
+     *
+     * @param dataType
+     * @return
+     */
+    protected long pieceLength(@NonNull DataType dataType) {
+        return pieceLengths.computeIfAbsent(dataType, dt -> {
+            long n = Math.max(1, maxChunkSize / dt.width());
+            while (n > 1) {
+                val size = serializedSize(dt, n);
+                if (size <= maxChunkSize)
+                    break;
+
+                // overhead is (nearly) independent of the payload size, so this converges within a few steps
+                n = Math.max(1, n - (size - maxChunkSize + dt.width() - 1) / dt.width());
+            }
+            return n;
+        });
+    }
+
+    protected long serializedSize(DataType dataType, long length) {
+        // all numeric fields are serialized with fixed width, so their values don't matter
+        val probe = new RingAllReduceMessage(java.util.UUID.randomUUID().toString(), Nd4j.create(dataType, length),
+                Phase.REDUCE_SCATTER, Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                Integer.MAX_VALUE, Integer.MAX_VALUE);
+        probe.setOriginatorId(transport.id());
+        return SerializationUtils.toByteArray(probe).length;
+    }
+
+    /**
+     * This method stops sender thread
+     */
+    public void shutdown() {
+        sender.shutdownNow();
+        states.clear();
+    }
+
+    /**
+     * State of a single all-reduce round on this node
+     */
+    protected class Round {
+        protected final long id;
+        protected final List<RingAllReduceMessage> pending = new ArrayList<>();
+        protected boolean started;
+        protected List<String> ring;
+        protected String next;
+        protected INDArray own;
+        protected INDArray sum;
+        protected INDArray flat;
+        protected long length;
+        protected long pieceLength;
+        protected int numPieces;
+        protected int done;
+        protected int iteration;
+        protected int epoch;
+
+        protected Round(long id) {
+            this.id = id;
+        }
+
+        protected void start(INDArray array, List<String> ring, int rank, int iteration, int epoch) {
+            this.ring = ring;
+            this.next = ring.get((rank + 1) % ring.size());
+            this.own = array.dup('c');
+            this.sum = own.dup('c');
+            this.length = own.length();
+            this.flat = sum.reshape('c', length);
+            this.pieceLength = pieceLength(own.dataType());
+            this.numPieces = (int) ((length + pieceLength - 1) / pieceLength);
+            this.iteration = iteration;
+            this.epoch = epoch;
+            this.started = true;
+        }
+
+        protected INDArray piece(int p) {
+            val start = p * pieceLength;
+            return flat.get(NDArrayIndex.interval(start, Math.min(length, start + pieceLength)));
+        }
+
+        protected RingAllReduceMessage message(Phase phase, int piece, int hop, INDArray payload) {
+            return new RingAllReduceMessage(java.util.UUID.randomUUID().toString(), payload, phase, id, piece, hop,
+                    ring.size(), length, iteration, epoch);
+        }
+    }
+}
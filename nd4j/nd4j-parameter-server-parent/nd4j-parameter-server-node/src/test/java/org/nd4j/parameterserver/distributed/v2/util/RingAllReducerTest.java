@@ -0,0 +1,198 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.nd4j.parameterserver.distributed.v2.util;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nd4j.common.primitives.Atomic;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.common.util.SerializationUtils;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
+import org.nd4j.parameterserver.distributed.v2.ModelParameterServer;
+import org.nd4j.parameterserver.distributed.v2.enums.PropagationMode;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.RingAllReduceMessage;
+import org.nd4j.parameterserver.distributed.v2.transport.impl.DummyTransport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+@Tag(TagNames.DIST_SYSTEMS)
+@NativeTag
+public class RingAllReducerTest extends BaseND4JTest {
+    private static final String rootId = "ROOT_NODE";
+
+    @Test
+    @Timeout(30000L)
+    public void testRingAllReduce_1() throws Exception {
+        // 64 bytes is less than the message overhead: every element of each 10x10 float update is a separate piece,
+        // so many pieces are pipelined around the ring
+        val config = VoidConfiguration.builder().propagationMode(PropagationMode.RING).maxChunkSize(64).build();
+        val numClients = 4;
+        val servers = launch(config, numClients);
+
+        for (int round = 0; round < 3; round++) {
+            val updates = new ArrayList<INDArray>();
+            for (int e = 0; e < numClients; e++)
+                updates.add(Nd4j.linspace(DataType.FLOAT, 1, 100, 1).reshape(10, 10).muli(e + 1 + round * numClients));
+
+            val threads = new ArrayList<Thread>();
+            for (int e = 0; e < numClients; e++) {
+                val server = servers.get(e + 1);
+                val update = updates.get(e).dup();
+                threads.add(new Thread(() -> server.sendUpdate(update)));
+            }
+            for (val t : threads)
+                t.start();
+            for (val t : threads)
+                t.join();
+
+            // every client gets exactly one update: the sum of all other clients' updates
+            for (int e = 0; e < numClients; e++) {
+                val received = await(servers.get(e + 1), 1);
+                assertEquals(1, received.size());
+
+                val expected = Nd4j.create(DataType.FLOAT, 10, 10);
+                for (int o = 0; o < numClients; o++)
+                    if (o != e)
+                        expected.addi(updates.get(o));
+
+                assertEquals(expected, received.get(0));
+            }
+
+            // root isn't a ring member
+            assertEquals(0, servers.get(0).getUpdates().size());
+        }
+
+        for (val server : servers)
+            server.shutdown();
+    }
+
+    @Test
+    @Timeout(30000L)
+    public void testRingRelay_1() throws Exception {
+        val config = VoidConfiguration.builder().propagationMode(PropagationMode.RING).build();
+        val numClients = 3;
+        val servers = launch(config, numClients);
+
+        // encoded updates can't be summed, so they're relayed around the ring as is
+        val encoded = Nd4j.createFromArray(new int[]{0, 0, 3, 0, 5, -7});
+        servers.get(1).sendUpdate(encoded);
+
+        assertEquals(0, await(servers.get(1), 0).size());
+        for (int e = 1; e < numClients; e++) {
+            val received = await(servers.get(e + 1), 1);
+            assertEquals(1, received.size());
+            assertEquals(encoded, received.get(0));
+        }
+
+        for (val server : servers)
+            server.shutdown();
+    }
+
+    @Test
+    public void testPieceSize_1() throws Exception {
+        val maxChunkSize = 65536;
+        val config = VoidConfiguration.builder().propagationMode(PropagationMode.RING).maxChunkSize(maxChunkSize).build();
+        val transport = new DummyTransport("client-0", new DummyTransport.Connector(), rootId, config);
+        val reducer = new RingAllReducer(transport, new Atomic<>(new MeshOrganizer()), m -> {}, maxChunkSize);
+
+        try {
+            for (val dataType : new DataType[]{DataType.FLOAT, DataType.DOUBLE, DataType.HALF}) {
+                val pieceLength = reducer.pieceLength(dataType);
+
+                // pieces leave room for the serialization overhead, but not much more
+                assertTrue(pieceLength * dataType.width() < maxChunkSize);
+                assertTrue(pieceLength * dataType.width() > maxChunkSize * 0.9);
+
+                val message = new RingAllReduceMessage(java.util.UUID.randomUUID().toString(), Nd4j.create(dataType, pieceLength),
+                        RingAllReduceMessage.Phase.REDUCE_SCATTER, 123, 45, 3, 16, 1_000_000_000L, 100, 2);
+                message.setOriginatorId(transport.id());
+                assertTrue(SerializationUtils.toByteArray(message).length <= maxChunkSize);
+
+                // so every piece is sent as a single chunk
+                assertEquals(1, new MessageSplitter().split(message, maxChunkSize).size());
+            }
+        } finally {
+            reducer.shutdown();
+        }
+    }
+
+    @Test
+    public void testRingMembers_1() throws Exception {
+        val mesh = new MeshOrganizer();
+        mesh.addNode("node-c");
+        mesh.addNode("node-a");
+        mesh.addNode("node-b");
+
+        val members = RingAllReducer.ringMembers(mesh);
+        assertEquals(3, members.size());
+        assertEquals("node-a", members.get(0));
+        assertEquals("node-b", members.get(1));
+        assertEquals("node-c", members.get(2));
+    }
+
+    protected List<ModelParameterServer> launch(VoidConfiguration config, int numClients) throws Exception {
+        val connector = new DummyTransport.Connector();
+        val transports = new ArrayList<DummyTransport>();
+        transports.add(new DummyTransport(rootId, connector, rootId, config));
+        for (int e = 0; e < numClients; e++)
+            transports.add(new DummyTransport("client-" + e, connector, rootId, config));
+
+        for (val t : transports)
+            connector.register(t);
+
+        val servers = new ArrayList<ModelParameterServer>();
+        for (int e = 0; e < transports.size(); e++) {
+            val server = new ModelParameterServer(config, transports.get(e), e == 0);
+            server.launch();
+            servers.add(server);
+        }
+
+        for (val t : transports)
+            assertEquals(numClients + 1, t.getMesh().totalNodes());
+
+        return servers;
+    }
+
+    protected List<INDArray> await(ModelParameterServer server, int expected) throws Exception {
+        val received = new ArrayList<INDArray>();
+        for (int e = 0; e < 50 && received.size() < Math.max(expected, 1); e++) {
+            Collection<INDArray> updates = server.getUpdates();
+            received.addAll(updates);
+            if (received.size() < Math.max(expected, 1))
+                Thread.sleep(100);
+        }
+        return received;
+    }
+}
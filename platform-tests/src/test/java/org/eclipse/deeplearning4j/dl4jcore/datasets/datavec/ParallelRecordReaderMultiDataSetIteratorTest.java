@@ -0,0 +1,269 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.dl4jcore.datasets.datavec;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.InputSplit;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.datavec.ParallelRecordReaderMultiDataSetIterator;
+import org.deeplearning4j.datasets.datavec.ParallelRecordReaderMultiDataSetIterator.Ordering;
+import org.deeplearning4j.datasets.datavec.RecordReaderMultiDataSetIterator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Parallel Record Reader Multi Data Set Iterator Test")
+@NativeTag
+@Tag(TagNames.FILE_IO)
+class ParallelRecordReaderMultiDataSetIteratorTest extends BaseDL4JTest {
+
+    private static final int NUM_FILES = 6;
+    private static final int LINES_PER_FILE = 10;
+
+    @TempDir
+    public Path testDir;
+
+    private File writeFiles() throws Exception {
+        File dir = testDir.toFile();
+        for (int f = 0; f < NUM_FILES; f++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < LINES_PER_FILE; i++) {
+                int id = f * LINES_PER_FILE + i;
+                sb.append(id).append(',').append(2 * id).append(',').append(id % 3).append('\n');
+            }
+            FileUtils.writeStringToFile(new File(dir, "data_" + f + ".csv"), sb.toString(), StandardCharsets.UTF_8);
+        }
+        return dir;
+    }
+
+    private ParallelRecordReaderMultiDataSetIterator build(File dir, Ordering ordering) {
+        return new ParallelRecordReaderMultiDataSetIterator.Builder()
+                .split(new FileSplit(dir, new String[] {"csv"}), 3)
+                .iteratorFactory((shard, idx) -> {
+                    RecordReader rr = new CSVRecordReader();
+                    rr.initialize(shard);
+                    return new RecordReaderMultiDataSetIterator.Builder(4)
+                            .addReader("csv", rr)
+                            .addInput("csv", 0, 1)
+                            .addOutputOneHot("csv", 2, 3)
+                            .build();
+                })
+                .ordering(ordering)
+                .prefetch(2)
+                .build();
+    }
+
+    private static List<Integer> ids(ParallelRecordReaderMultiDataSetIterator iter) {
+        List<Integer> ids = new ArrayList<>();
+        while (iter.hasNext()) {
+            MultiDataSet mds = iter.next();
+            INDArray f = mds.getFeatures(0);
+            INDArray l = mds.getLabels(0);
+            for (int i = 0; i < f.size(0); i++) {
+                int id = f.getInt(i, 0);
+                assertEquals(2 * id, f.getInt(i, 1));
+                assertEquals(1, l.getInt(i, id % 3));
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("Test Shard")
+    void testShard() throws Exception {
+        File dir = writeFiles();
+        InputSplit[] shards = ParallelRecordReaderMultiDataSetIterator.shard(new FileSplit(dir), 4);
+        assertEquals(4, shards.length);
+        Set<String> all = new HashSet<>();
+        int total = 0;
+        for (InputSplit s : shards) {
+            assertTrue(s.locations().length == 1 || s.locations().length == 2);
+            for (java.net.URI u : s.locations()) {
+                all.add(u.toString());
+            }
+            total += s.locations().length;
+        }
+        assertEquals(NUM_FILES, total);
+        assertEquals(NUM_FILES, all.size());
+    }
+
+    @Test
+    @DisplayName("Test Round Robin Deterministic")
+    void testRoundRobinDeterministic() throws Exception {
+        File dir = writeFiles();
+        ParallelRecordReaderMultiDataSetIterator iter = build(dir, Ordering.ROUND_ROBIN);
+
+        List<Integer> first = ids(iter);
+        assertEquals(NUM_FILES * LINES_PER_FILE, first.size());
+        assertEquals(NUM_FILES * LINES_PER_FILE, new HashSet<>(first).size());
+
+        for (int i = 0; i < 3; i++) {
+            iter.reset();
+            assertEquals(first, ids(iter));
+        }
+
+        ParallelRecordReaderMultiDataSetIterator.Stats stats = iter.getStats();
+        assertEquals(3, stats.numWorkers());
+        long examples = 0;
+        for (int i = 0; i < stats.numWorkers(); i++) {
+            assertTrue(stats.produced(i) > 0);
+            examples += stats.examples(i);
+        }
+        assertEquals(4 * NUM_FILES * LINES_PER_FILE, examples);
+        assertEquals(stats.consumed(), stats.produced(0) + stats.produced(1) + stats.produced(2));
+        iter.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test Arrival Order")
+    void testArrivalOrder() throws Exception {
+        File dir = writeFiles();
+        ParallelRecordReaderMultiDataSetIterator iter = build(dir, Ordering.ARRIVAL);
+        for (int epoch = 0; epoch < 2; epoch++) {
+            List<Integer> ids = ids(iter);
+            assertEquals(NUM_FILES * LINES_PER_FILE, ids.size());
+            assertEquals(NUM_FILES * LINES_PER_FILE, new HashSet<>(ids).size());
+            iter.reset();
+        }
+        iter.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test Arrival Order Slow And Fast Workers")
+    void testArrivalOrderSlowAndFastWorkers() throws Exception {
+        //The fast worker must not overwrite MultiDataSets in its workspace that haven't been consumed yet
+        int numBatches = 64;
+        List<MultiDataSetIterator> shards = new ArrayList<>();
+        shards.add(new SequenceIterator(0, numBatches, 20));
+        shards.add(new SequenceIterator(1, numBatches, 0));
+        ParallelRecordReaderMultiDataSetIterator iter = new ParallelRecordReaderMultiDataSetIterator(shards, Ordering.ARRIVAL, 2, true);
+
+        //Give the fast worker time to get as far ahead as it is allowed to
+        Thread.sleep(500);
+        int[] next = new int[2];
+        while (iter.hasNext()) {
+            MultiDataSet mds = iter.next();
+            int worker = (int) mds.getLabels(0).getDouble(0);
+            double expected = worker * numBatches + next[worker]++;
+            INDArray f = mds.getFeatures(0);
+            assertEquals(expected, f.minNumber().doubleValue(), 0.0);
+            assertEquals(expected, f.maxNumber().doubleValue(), 0.0);
+        }
+        assertArrayEquals(new int[] {numBatches, numBatches}, next);
+        iter.shutdown();
+    }
+
+    /**
+     * Returns numBatches MultiDataSets: features filled with (worker * numBatches + batch index), labels with the worker
+     * index. Sleeps delayMs before each MultiDataSet
+     */
+    private static class SequenceIterator implements MultiDataSetIterator {
+        private final int worker;
+        private final int numBatches;
+        private final long delayMs;
+        private int count;
+
+        private SequenceIterator(int worker, int numBatches, long delayMs) {
+            this.worker = worker;
+            this.numBatches = numBatches;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public MultiDataSet next(int num) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultiDataSetPreProcessor getPreProcessor() {
+            return null;
+        }
+
+        @Override
+        public boolean resetSupported() {
+            return true;
+        }
+
+        @Override
+        public boolean asyncSupported() {
+            return false;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return count < numBatches;
+        }
+
+        @Override
+        public MultiDataSet next() {
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            INDArray features = Nd4j.valueArrayOf(new long[] {64, 1024}, worker * numBatches + count++, DataType.FLOAT);
+            INDArray labels = Nd4j.valueArrayOf(new long[] {64, 1}, worker, DataType.FLOAT);
+            return new org.nd4j.linalg.dataset.MultiDataSet(features, labels);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
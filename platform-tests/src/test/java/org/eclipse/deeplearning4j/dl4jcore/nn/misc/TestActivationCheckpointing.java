@@ -0,0 +1,266 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.dl4jcore.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.BackpropType;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.workspace.ActivationCheckpointStats;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.WORKSPACES)
+@Tag(TagNames.DL4J_OLD_API)
+public class TestActivationCheckpointing extends BaseDL4JTest {
+
+    private static NeuralNetConfiguration.ListBuilder getDenseConf(int numHidden) {
+        NeuralNetConfiguration.ListBuilder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .dropOut(0.8)
+                .list();
+        for (int i = 0; i < numHidden; i++) {
+            b.layer(new DenseLayer.Builder().nIn(i == 0 ? 4 : 6).nOut(6).activation(Activation.TANH).build());
+        }
+        return b.layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(6).nOut(3)
+                .activation(Activation.SOFTMAX).build());
+    }
+
+    private static DataSet getData(int minibatch, long... featureShape) {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.DOUBLE, featureShape);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, minibatch, 3);
+        for (int i = 0; i < minibatch; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+        return new DataSet(f, l);
+    }
+
+    private static void assertSameTraining(MultiLayerNetwork net, MultiLayerNetwork netCheckpointed, DataSet ds) {
+        assertEquals(net.params(), netCheckpointed.params());
+        for (int i = 0; i < 3; i++) {
+            //Same RNG state for both networks: dropout masks must be the same for the original and recomputed forward pass
+            Nd4j.getRandom().setSeed(100 + i);
+            net.fit(ds);
+            Nd4j.getRandom().setSeed(100 + i);
+            netCheckpointed.fit(ds);
+            assertEquals(net.score(), netCheckpointed.score(), 1e-10);
+            assertEquals(net.params(), netCheckpointed.params());
+        }
+    }
+
+    @Test
+    public void testMultiLayerNetworkMatchesStandardBackprop() {
+        DataSet ds = getData(10, 10, 4);
+
+        MultiLayerNetwork net = new MultiLayerNetwork(getDenseConf(8).build());
+        net.init();
+
+        //Default: checkpoint every sqrt(N) layers
+        MultiLayerNetwork netSqrt = new MultiLayerNetwork(getDenseConf(8).activationCheckpointing(true).build());
+        netSqrt.init();
+        assertSameTraining(net, netSqrt, ds);
+
+        ActivationCheckpointStats stats = netSqrt.getActivationCheckpointStats();
+        assertNotNull(stats);
+        assertEquals(4, stats.getNumSegments());        //Layers 0-2, 3-5, 6-7, output layer
+        assertEquals(8, stats.getForwardOps());
+        assertEquals(8, stats.getRecomputedOps());
+        assertEquals(1.0, stats.getRecomputeOverhead(), 1e-10);
+        assertTrue(stats.getBytesSaved() > 0);
+        assertTrue(stats.getPeakBytes() < stats.getActivationBytes());
+        assertNull(net.getActivationCheckpointStats());
+
+        //Explicit checkpoints
+        MultiLayerNetwork net2 = new MultiLayerNetwork(getDenseConf(8).build());
+        net2.init();
+        MultiLayerNetwork netExplicit = new MultiLayerNetwork(getDenseConf(8).activationCheckpoints(4).build());
+        netExplicit.init();
+        assertSameTraining(net2, netExplicit, ds);
+        assertEquals(3, netExplicit.getActivationCheckpointStats().getNumSegments());
+
+        //Configuration should survive JSON round trip
+        MultiLayerConfiguration fromJson = MultiLayerConfiguration.fromJson(netExplicit.getLayerWiseConfigurations().toJson());
+        assertEquals(netExplicit.getLayerWiseConfigurations(), fromJson);
+        assertTrue(fromJson.isActivationCheckpointing());
+        assertArrayEquals(new int[]{4}, fromJson.getActivationCheckpoints());
+    }
+
+    @Test
+    public void testMultiLayerNetworkCnnWithPreprocessors() {
+        DataSet ds = getData(5, 5, 1, 8, 8);
+
+        MultiLayerNetwork[] nets = new MultiLayerNetwork[2];
+        for (int i = 0; i < 2; i++) {
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                    .dataType(DataType.DOUBLE)
+                    .seed(12345)
+                    .updater(new Sgd(0.1))
+                    .list()
+                    .activationCheckpointing(i == 1)
+                    .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(3).activation(Activation.RELU).build())
+                    .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(3).activation(Activation.TANH).build())
+                    .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(1, 1).build())
+                    .layer(new DenseLayer.Builder().nOut(6).activation(Activation.TANH).dropOut(0.5).build())
+                    .layer(new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build())
+                    .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(3)
+                            .activation(Activation.SOFTMAX).build())
+                    .setInputType(InputType.convolutional(8, 8, 1))
+                    .build();
+            nets[i] = new MultiLayerNetwork(conf);
+            nets[i].init();
+        }
+
+        assertSameTraining(nets[0], nets[1], ds);
+        assertTrue(nets[1].getActivationCheckpointStats().getBytesSaved() > 0);
+    }
+
+    @Test
+    public void testComputationGraphMatchesStandardBackprop() {
+        DataSet ds = getData(10, 10, 4);
+
+        ComputationGraph[] graphs = new ComputationGraph[2];
+        for (int i = 0; i < 2; i++) {
+            ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
+                    .dataType(DataType.DOUBLE)
+                    .seed(12345)
+                    .updater(new Sgd(0.1))
+                    .dropOut(0.8)
+                    .graphBuilder()
+                    .addInputs("in")
+                    .addLayer("d0", new DenseLayer.Builder().nIn(4).nOut(6).activation(Activation.TANH).build(), "in")
+                    .addLayer("d1", new DenseLayer.Builder().nIn(6).nOut(6).activation(Activation.TANH).build(), "d0")
+                    .addLayer("d2", new DenseLayer.Builder().nIn(6).nOut(6).activation(Activation.TANH).build(), "d1")
+                    .addLayer("d3", new DenseLayer.Builder().nIn(6).nOut(6).activation(Activation.TANH).build(), "d2")
+                    //Skip connection spanning segments
+                    .addVertex("merge", new MergeVertex(), "d0", "d3")
+                    .addLayer("d4", new DenseLayer.Builder().nIn(12).nOut(6).activation(Activation.TANH).build(), "merge")
+                    .addLayer("d5", new DenseLayer.Builder().nIn(6).nOut(6).activation(Activation.TANH).build(), "d4")
+                    .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(6).nOut(3)
+                            .activation(Activation.SOFTMAX).build(), "d5")
+                    .setOutputs("out");
+            if (i == 1) {
+                b.activationCheckpoints("d2", "d4");
+            }
+            graphs[i] = new ComputationGraph(b.build());
+            graphs[i].init();
+        }
+
+        assertEquals(graphs[0].params(), graphs[1].params());
+        for (int i = 0; i < 3; i++) {
+            Nd4j.getRandom().setSeed(100 + i);
+            graphs[0].fit(ds);
+            Nd4j.getRandom().setSeed(100 + i);
+            graphs[1].fit(ds);
+            assertEquals(graphs[0].score(), graphs[1].score(), 1e-10);
+            assertEquals(graphs[0].params(), graphs[1].params());
+        }
+
+        ActivationCheckpointStats stats = graphs[1].getActivationCheckpointStats();
+        assertEquals(3, stats.getNumSegments());
+        assertEquals(7, stats.getForwardOps());         //All vertices except the input and output vertices
+        assertTrue(stats.getRecomputedOps() > 0);
+        assertTrue(stats.getBytesSaved() > 0);
+
+        ComputationGraphConfiguration fromJson = ComputationGraphConfiguration.fromJson(graphs[1].getConfiguration().toJson());
+        assertEquals(graphs[1].getConfiguration(), fromJson);
+    }
+
+    @Test
+    public void testDefaultSegmentsSameForGraphAndMultiLayerNetwork() {
+        DataSet ds = getData(10, 10, 4);
+
+        MultiLayerNetwork net = new MultiLayerNetwork(getDenseConf(5).activationCheckpointing(true).build());
+        net.init();
+        net.fit(ds);
+        //Layers 0-2, 3-4, output layer
+        assertEquals(3, net.getActivationCheckpointStats().getNumSegments());
+
+        ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .graphBuilder()
+                .addInputs("in")
+                .activationCheckpointing(true);
+        String last = "in";
+        for (int i = 0; i < 5; i++) {
+            b.addLayer("d" + i, new DenseLayer.Builder().nIn(i == 0 ? 4 : 6).nOut(6).activation(Activation.TANH).build(), last);
+            last = "d" + i;
+        }
+        b.addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(6).nOut(3)
+                .activation(Activation.SOFTMAX).build(), last).setOutputs("out");
+        ComputationGraph graph = new ComputationGraph(b.build());
+        graph.init();
+        graph.fit(ds);
+        //Same segments as the MultiLayerNetwork: d0-d2, d3-d4 (the output vertex is part of the last segment)
+        assertEquals(2, graph.getActivationCheckpointStats().getNumSegments());
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        //Checkpoint index out of range
+        assertThrows(IllegalStateException.class, () -> getDenseConf(2).activationCheckpoints(5).build());
+
+        //Unknown vertex name
+        assertThrows(IllegalStateException.class, () -> new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("out", new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX).build(), "in")
+                .setOutputs("out")
+                .activationCheckpoints("nonexistent")
+                .build());
+
+        assertThrows(IllegalStateException.class, () -> new NeuralNetConfiguration.Builder()
+                .list()
+                .activationCheckpointing(true)
+                .layer(new LSTM.Builder().nIn(4).nOut(5).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX).build())
+                .backpropType(BackpropType.TruncatedBPTT)
+                .build());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.dl4jcore.nn.updater;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.BackpropType;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestGradientAccumulation extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(int microBatchSize, int accumulationSteps, boolean batchNorm) {
+        NeuralNetConfiguration.ListBuilder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .list()
+                .microBatchSize(microBatchSize)
+                .gradientAccumulationSteps(accumulationSteps)
+                .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build());
+        if (batchNorm) {
+            b.layer(new BatchNormalization.Builder().nOut(5).build());
+        }
+        return b.layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(5).nOut(3)
+                        .activation(Activation.SOFTMAX).build())
+                .build();
+    }
+
+    private static DataSet getData(int minibatch) {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.DOUBLE, minibatch, 4);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, minibatch, 3);
+        for (int i = 0; i < minibatch; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+        return new DataSet(f, l);
+    }
+
+    @Test
+    public void testMicroBatchingMatchesFullBatch() {
+        DataSet ds = getData(10);
+
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(0, 1, false));
+        net.init();
+        MultiLayerNetwork netMicro = new MultiLayerNetwork(getConf(3, 1, false));
+        netMicro.init();
+        assertEquals(3, netMicro.getLayerWiseConfigurations().getMicroBatchSize());
+        assertEquals(net.params(), netMicro.params());
+
+        for (int i = 0; i < 3; i++) {
+            net.fit(ds);
+            netMicro.fit(ds);
+            assertEquals(net.params(), netMicro.params());
+            assertEquals(net.score(), netMicro.score(), 1e-10);
+        }
+        assertEquals(3, netMicro.getIterationCount());
+
+        //Configuration should survive JSON round trip
+        MultiLayerConfiguration fromJson = MultiLayerConfiguration.fromJson(netMicro.getLayerWiseConfigurations().toJson());
+        assertEquals(netMicro.getLayerWiseConfigurations(), fromJson);
+    }
+
+    @Test
+    public void testAccumulationStepsMatchFullBatch() {
+        DataSet ds = getData(10);
+        DataSet first = new DataSet(ds.getFeatures().get(NDArrayIndex.interval(0, 4)), ds.getLabels().get(NDArrayIndex.interval(0, 4)));
+        DataSet second = new DataSet(ds.getFeatures().get(NDArrayIndex.interval(4, 10)), ds.getLabels().get(NDArrayIndex.interval(4, 10)));
+
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(0, 1, false));
+        net.init();
+        MultiLayerNetwork netAccum = new MultiLayerNetwork(getConf(0, 2, false));
+        netAccum.init();
+
+        INDArray initialParams = netAccum.params().dup();
+        netAccum.fit(first);
+        assertEquals(initialParams, netAccum.params());
+        assertEquals(0, netAccum.getIterationCount());
+
+        netAccum.fit(second);
+        net.fit(ds);
+        assertEquals(1, netAccum.getIterationCount());
+        assertEquals(net.params(), netAccum.params());
+        assertEquals(net.score(), netAccum.score(), 1e-10);
+    }
+
+    @Test
+    public void testBatchNormStatisticsAveraged() {
+        //Same minibatch twice, with 2 accumulation steps: gradients and BatchNorm mean/variance updates should be
+        // identical to fitting the minibatch once
+        DataSet ds = getData(8);
+
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(0, 1, true));
+        net.init();
+        MultiLayerNetwork netAccum = new MultiLayerNetwork(getConf(0, 2, true));
+        netAccum.init();
+
+        net.fit(ds);
+        netAccum.fit(ds);
+        netAccum.fit(ds);
+        assertEquals(net.params(), netAccum.params());
+    }
+
+    @Test
+    public void testComputationGraphMicroBatching() {
+        DataSet ds = getData(10);
+
+        ComputationGraph[] graphs = new ComputationGraph[2];
+        for (int i = 0; i < 2; i++) {
+            ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                    .dataType(DataType.DOUBLE)
+                    .seed(12345)
+                    .updater(new Sgd(0.1))
+                    .graphBuilder()
+                    .microBatchSize(i == 0 ? 0 : 4)
+                    .addInputs("in")
+                    .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build(), "in")
+                    .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(5).nOut(3)
+                            .activation(Activation.SOFTMAX).build(), "dense")
+                    .setOutputs("out")
+                    .build();
+            graphs[i] = new ComputationGraph(conf);
+            graphs[i].init();
+        }
+
+        for (int i = 0; i < 3; i++) {
+            graphs[0].fit(ds);
+            graphs[1].fit(ds);
+            assertEquals(graphs[0].params(), graphs[1].params());
+            assertEquals(graphs[0].score(), graphs[1].score(), 1e-10);
+        }
+    }
+
+    @Test
+    public void testTbpttNotSupported() {
+        assertThrows(IllegalStateException.class, () -> new NeuralNetConfiguration.Builder()
+                .list()
+                .microBatchSize(4)
+                .layer(new LSTM.Builder().nIn(4).nOut(5).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX).build())
+                .backpropType(BackpropType.TruncatedBPTT)
+                .build());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.dl4jcore.optimize.solver.accumulation;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodedGradientsAccumulator;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.GradientCodecs;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.QsgdGradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.SignGradientCodec;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.codec.TopKGradientCodec;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class GradientCodecTests extends BaseDL4JTest {
+
+    @Test
+    public void testErrorFeedback() {
+        Nd4j.getRandom().setSeed(12345);
+        GradientCodec[] codecs = {new TopKGradientCodec(0.05), new SignGradientCodec(), new QsgdGradientCodec(4, 12345)};
+        for (GradientCodec codec : codecs) {
+            for (long[] shape : new long[][]{{1, 1000}, {10, 33}}) {
+                INDArray updates = Nd4j.randn(DataType.FLOAT, shape);
+                INDArray original = updates.dup();
+
+                INDArray encoded = codec.encode(0, 0, updates);
+                assertNotNull(encoded);
+                assertEquals(codec.encodingType(), encoded.data().getInt(3));
+                assertTrue(encoded.length() <= codec.maxEncodedLength(updates.length()));
+
+                //Decoded message plus the residual left in the updates array must give the original updates
+                INDArray decoded = Nd4j.create(DataType.FLOAT, shape);
+                GradientCodecs.decode(encoded, decoded);
+                assertEquals(original, decoded.add(updates), codec.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testTopK() {
+        INDArray updates = Nd4j.createFromArray(new float[]{0.1f, -5.0f, 0.2f, 3.0f, 0.0f, -0.3f, 1.0f, 0.0f, 0.05f, 2.0f});
+        INDArray encoded = new TopKGradientCodec(0.3).encode(0, 0, updates);
+        assertEquals(3, encoded.data().getInt(0));
+
+        INDArray decoded = Nd4j.create(DataType.FLOAT, 10);
+        GradientCodecs.decode(encoded, decoded);
+        assertEquals(Nd4j.createFromArray(new float[]{0, -5.0f, 0, 3.0f, 0, 0, 0, 0, 0, 2.0f}), decoded);
+        assertEquals(Nd4j.createFromArray(new float[]{0.1f, 0, 0.2f, 0, 0, -0.3f, 1.0f, 0, 0.05f, 0}), updates);
+
+        //Nothing left to send
+        assertNull(new TopKGradientCodec(0.3).encode(0, 0, Nd4j.create(DataType.FLOAT, 10)));
+    }
+
+    @Test
+    public void testTopKLayouts() {
+        Nd4j.getRandom().setSeed(12345);
+        TopKGradientCodec codec = new TopKGradientCodec(0.1);
+        INDArray expUpdates = Nd4j.randn(DataType.FLOAT, 10, 33);
+        INDArray expEncoded = codec.encode(0, 0, expUpdates.dup());
+
+        //Not contiguous in c order (dense fallback), and double precision (scatter with cast values)
+        INDArray transposed = expUpdates.transpose().dup('c').transpose();
+        INDArray asDouble = expUpdates.castTo(DataType.DOUBLE);
+        for (INDArray updates : new INDArray[]{transposed, asDouble}) {
+            INDArray original = updates.dup();
+            INDArray encoded = codec.encode(0, 0, updates);
+            assertEquals(expEncoded, encoded);
+
+            INDArray decoded = Nd4j.create(updates.dataType(), new long[]{10, 33}, updates.ordering());
+            codec.decode(encoded, decoded);
+            assertEquals(original, decoded.add(updates));
+        }
+    }
+
+    @Test
+    public void testSign() {
+        INDArray updates = Nd4j.createFromArray(new float[]{1.0f, -2.0f, 3.0f, -6.0f});
+        INDArray encoded = new SignGradientCodec().encode(0, 0, updates);
+
+        //Compressed 32x: one bit per value
+        assertEquals(5, encoded.length());
+
+        INDArray decoded = Nd4j.create(DataType.FLOAT, 4);
+        GradientCodecs.decode(encoded, decoded);
+        assertEquals(Nd4j.createFromArray(new float[]{3.0f, -3.0f, 3.0f, -3.0f}), decoded);
+        assertEquals(Nd4j.createFromArray(new float[]{-2.0f, 1.0f, 0.0f, -3.0f}), updates);
+    }
+
+    @Test
+    public void testQsgdUnbiased() {
+        INDArray updates = Nd4j.createFromArray(new float[]{0.3f, -0.1f, 0.9f, 0.05f});
+        QsgdGradientCodec codec = new QsgdGradientCodec(2, 12345);
+        INDArray sum = Nd4j.create(DataType.FLOAT, 4);
+        int n = 10000;
+        for (int i = 0; i < n; i++) {
+            codec.decode(codec.encode(0, 0, updates.dup()), sum);
+        }
+        INDArray mean = sum.divi(n);
+        assertTrue(Transforms.abs(mean.sub(updates)).maxNumber().doubleValue() < 0.02, mean.toString());
+    }
+
+    @Test
+    public void testEncodingHandlerStatistics() {
+        int numParams = 10000;
+        GradientCodec codec = new SignGradientCodec();
+        EncodingHandler handler = new EncodingHandler(codec, false);
+        long bufferSize = EncodedGradientsAccumulator.getOptimalBufferSize(codec, numParams, 1, 2);
+        EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator(1, handler, bufferSize, 2, null, false);
+        accumulator.fallbackToSingleConsumerMode(true);
+
+        assertEquals(-1, handler.getLastEncodedBytes());
+        for (int i = 0; i < 3; i++) {
+            accumulator.storeUpdate(Nd4j.randn(DataType.FLOAT, 1, numParams), i, 0);
+            assertEquals(4 * (4 + numParams / 32 + 1), handler.getLastEncodedBytes());
+            assertEquals(4.0 * numParams / handler.getLastEncodedBytes(), handler.getLastCompressionRatio(), 1e-6);
+            accumulator.getMessages().get(0).clear();
+        }
+        assertEquals(3L * 4 * numParams, handler.getOriginalBytes());
+        assertEquals(3 * handler.getLastEncodedBytes(), handler.getEncodedBytes());
+        assertTrue(handler.getCompressionRatio() > 30);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.dl4jcore.optimize.solver.accumulation;
+
+import lombok.val;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.optimize.solvers.accumulation.UpdatesRingBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Updates Ring Buffer Test")
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+class UpdatesRingBufferTest extends BaseDL4JTest {
+
+    private static INDArray encoded(INDArray sum) {
+        val update = Nd4j.create(5, 5).assign(1.0);
+        val original = update.dup();
+        val encoded = Nd4j.getExecutioner().thresholdEncode(update, 1.0 / 1024);
+
+        // encoding leaves the residual in the update array. power of 2 threshold keeps all sums exact
+        sum.addi(original.subi(update));
+        return encoded;
+    }
+
+    @Test
+    @DisplayName("Test Deltas _ 1")
+    void testDeltas_1() {
+        val ring = new UpdatesRingBuffer(2, 8, 32, new long[]{5, 5});
+        val sum = Nd4j.create(5, 5);
+        assertFalse(ring.hasAnything(11));
+        assertFalse(ring.hasAnything(22));
+
+        for (int e = 0; e < 3; e++)
+            ring.put(encoded(sum));
+        assertEquals(3, ring.getDelta(11));
+        assertEquals(3, ring.getDelta(22));
+
+        val target = Nd4j.create(5, 5);
+        assertTrue(ring.drainTo(22, target));
+        assertEquals(sum, target);
+        assertEquals(3, ring.getDelta(11));
+        assertEquals(0, ring.getDelta(22));
+        assertEquals(3, ring.updatesSize());
+
+        ring.drainTo(11, Nd4j.create(5, 5));
+        assertEquals(0, ring.updatesSize());
+        assertFalse(ring.drainTo(11, Nd4j.create(5, 5)));
+    }
+
+    @Test
+    @DisplayName("Test Collapse _ 1")
+    void testCollapse_1() {
+        val ring = new UpdatesRingBuffer(2, 4, 32, new long[]{5, 5});
+        val sum = Nd4j.create(5, 5);
+        val fast = Nd4j.create(5, 5);
+        ring.hasAnything(11);
+
+        // consumer 22 keeps up, consumer 11 falls more than a full ring behind
+        for (int e = 0; e < 10; e++) {
+            ring.put(encoded(sum));
+            ring.drainTo(22, fast);
+        }
+
+        // dense update doesn't fit into a slot, and goes straight to both consumers
+        val dense = Nd4j.create(5, 5).assign(2.0);
+        sum.addi(dense);
+        ring.put(dense);
+        ring.drainTo(22, fast);
+
+        val slow = Nd4j.create(5, 5);
+        assertTrue(ring.drainTo(11, slow));
+        assertEquals(sum, fast);
+        assertEquals(sum, slow);
+        assertEquals(0, ring.getDelta(11));
+    }
+
+    @Test
+    @DisplayName("Test Multi Threaded _ 1")
+    void testMultiThreaded_1() throws Exception {
+        val numConsumers = 4;
+        val ring = new UpdatesRingBuffer(numConsumers, 4, 32, new long[]{5, 5});
+        val sum = Nd4j.create(5, 5);
+        val running = new AtomicBoolean(true);
+        val targets = new ArrayList<INDArray>();
+        val threads = new ArrayList<Thread>();
+        for (int e = 0; e < numConsumers; e++) {
+            val target = Nd4j.create(5, 5);
+            targets.add(target);
+            val t = new Thread(() -> {
+                while (running.get())
+                    ring.drainTo(target);
+                ring.drainTo(target);
+            });
+            t.start();
+            threads.add(t);
+        }
+
+        for (int e = 0; e < 1000; e++)
+            ring.put(encoded(sum));
+
+        running.set(false);
+        for (val t : threads)
+            t.join();
+
+        for (val target : targets)
+            assertEquals(sum, target);
+    }
+}
@@ -58,6 +58,7 @@ import java.io.InputStream;
 import java.util.*;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.DisplayName;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 @DisplayName("Model Serializer Test")
@@ -112,6 +113,54 @@ class ModelSerializerTest extends BaseDL4JTest {
         assertEquals(net.getUpdater().getStateViewArray(), network.getUpdater().getStateViewArray());
     }
 
+    @Test
+    @DisplayName("Test Write Mapped MLN Model")
+    void testWriteMappedMLNModel() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1)).activation(Activation.TANH).weightInit(WeightInit.XAVIER).list().layer(0, new DenseLayer.Builder().nIn(5).nOut(20).build()).layer(1, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(20).nOut(6).build()).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        File tempFile = new File(tempDir.toFile(), "new-model.bin");
+        ModelSerializer.writeModelMapped(net, tempFile);
+        assertTrue(ModelSerializer.isMappedModel(tempFile));
+        MultiLayerNetwork network = ModelSerializer.restoreMultiLayerNetworkMapped(tempFile);
+        assertEquals(net.getLayerWiseConfigurations().toJson(), network.getLayerWiseConfigurations().toJson());
+        assertEquals(net.params(), network.params());
+        INDArray in = Nd4j.rand(3, 5);
+        assertEquals(net.output(in), network.output(in));
+        assertThrows(IllegalStateException.class, () -> ModelSerializer.restoreComputationGraphMapped(tempFile));
+    }
+
+    @Test
+    @DisplayName("Test Fit Mapped MLN Model Does Not Modify File")
+    void testFitMappedMLNModelDoesNotModifyFile() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1)).activation(Activation.TANH).weightInit(WeightInit.XAVIER).list().layer(0, new DenseLayer.Builder().nIn(5).nOut(20).build()).layer(1, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(20).nOut(6).build()).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        File tempFile = new File(tempDir.toFile(), "new-model.bin");
+        ModelSerializer.writeModelMapped(net, tempFile);
+        byte[] before = Files.readAllBytes(tempFile.toPath());
+
+        MultiLayerNetwork network = ModelSerializer.restoreMultiLayerNetworkMapped(tempFile);
+        network.fit(new DataSet(Nd4j.rand(3, 5), Nd4j.rand(3, 6)));
+        assertNotEquals(net.params(), network.params());
+        assertArrayEquals(before, Files.readAllBytes(tempFile.toPath()));
+        assertEquals(net.params(), ModelSerializer.restoreMultiLayerNetworkMapped(tempFile).params());
+    }
+
+    @Test
+    @DisplayName("Test Write Mapped CG Model")
+    void testWriteMappedCGModel() throws Exception {
+        ComputationGraphConfiguration config = new NeuralNetConfiguration.Builder().updater(new Sgd(0.1)).graphBuilder().addInputs("in").addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(2).build(), "in").addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(2).nOut(3).activation(Activation.SOFTMAX).build(), "dense").setOutputs("out").build();
+        ComputationGraph cg = new ComputationGraph(config);
+        cg.init();
+        File tempFile = new File(tempDir.toFile(), "new-model.bin");
+        ModelSerializer.writeModelMapped(cg, tempFile);
+        ComputationGraph network = ModelSerializer.restoreComputationGraphMapped(tempFile);
+        assertEquals(cg.getConfiguration().toJson(), network.getConfiguration().toJson());
+        assertEquals(cg.params(), network.params());
+        assertFalse(ModelSerializer.isMappedModel(new File(tempDir.toFile(), "does-not-exist.bin")));
+    }
+
     @Test
     @DisplayName("Test Write CG Model")
     void testWriteCGModel() throws Exception {
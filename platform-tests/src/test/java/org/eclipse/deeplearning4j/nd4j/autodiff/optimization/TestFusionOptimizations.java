@@ -0,0 +1,246 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.nd4j.autodiff.optimization;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.optimize.GraphOptimizer;
+import org.nd4j.autodiff.samediff.optimize.optimizations.FusionOptimizations;
+import org.nd4j.autodiff.validation.OpValidation;
+import org.nd4j.autodiff.validation.TestCase;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.SAMEDIFF)
+public class TestFusionOptimizations extends BaseNd4jTestWithBackends {
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testMatMulBiasAddRelu(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable w2 = sd.constant("w2", Nd4j.rand(DataType.FLOAT, 3, 5));
+        SDVariable b2 = sd.constant("b2", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable l1 = sd.nn.relu(in.mmul(w1).add(b1), 0.0);
+        //Transposed weights, and bias add instead of add
+        SDVariable l2 = sd.nn.biasAdd(sd.mmul(l1, w2, false, true, false), b2, true);
+        sd.nn.tanh("out", l2);
+
+        SameDiff optimized = optimize(sd, "out");
+        assertEquals(3, optimized.getOps().size());
+        List<String> opNames = opNames(optimized);
+        assertTrue(opNames.contains("relu_layer"), opNames.toString());
+        assertTrue(opNames.contains("xw_plus_b"), opNames.toString());
+
+        validate(sd, optimized, Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 3, 4)), "out");
+
+        //Original graph should be unchanged
+        assertEquals(6, sd.getOps().size());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testNoFusionForRequiredIntermediate(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 5));
+        in.mmul("mmul", w).add("out", b);
+
+        //The mmul output is requested, so can't be fused away
+        SameDiff optimized = GraphOptimizer.optimize(sd, Arrays.asList("mmul", "out"),
+                Collections.singletonList(new FusionOptimizations()));
+        assertEquals(2, optimized.getOps().size());
+        assertFalse(opNames(optimized).contains("xw_plus_b"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testFoldConv2dBatchNorm(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        for (boolean withBias : new boolean[]{false, true}) {
+            SameDiff sd = SameDiff.create();
+            SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 3, 8, 8);
+            SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 2, 2, 3, 4));
+            SDVariable b = withBias ? sd.constant("b", Nd4j.rand(DataType.FLOAT, 4)) : null;
+            Conv2DConfig c = Conv2DConfig.builder().kH(2).kW(2).build();
+            SDVariable conv = sd.cnn.conv2d(in, w, b, c);
+            SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.FLOAT, 4));
+            SDVariable var = sd.constant("var", Nd4j.rand(DataType.FLOAT, 4).addi(0.5));
+            SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.FLOAT, 4));
+            SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.FLOAT, 4));
+            SDVariable bn = sd.nn.batchNorm(conv, mean, var, gamma, beta, 1e-3, 1);
+            sd.nn.relu("out", bn, 0.0);
+
+            SameDiff optimized = optimize(sd, "out");
+            assertEquals(2, optimized.getOps().size());
+            assertFalse(opNames(optimized).contains("batchnorm"));
+
+            validate(sd, optimized, Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 2, 3, 8, 8)), "out");
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testNoFoldConv2dBatchNormPlaceholderStats(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 3, 8, 8);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 2, 2, 3, 4));
+        SDVariable conv = sd.cnn.conv2d(in, w, Conv2DConfig.builder().kH(2).kW(2).build());
+        SDVariable mean = sd.placeHolder("mean", DataType.FLOAT, 4);
+        SDVariable var = sd.placeHolder("var", DataType.FLOAT, 4);
+        SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.FLOAT, 4));
+        SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.FLOAT, 4));
+        sd.nn.batchNorm("out", conv, mean, var, gamma, beta, 1e-3, 1);
+
+        //Mean and variance are only known at runtime, so can't be folded
+        SameDiff optimized = optimize(sd, "out");
+        assertTrue(opNames(optimized).contains("batchnorm"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testFuseSwish(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable x = sd.math.tanh(in);
+        sd.nn.sigmoid(x).mul("out", x);
+
+        SameDiff optimized = optimize(sd, "out");
+        assertEquals(2, optimized.getOps().size());
+        assertTrue(opNames(optimized).contains("swish"));
+
+        validate(sd, optimized, Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 3, 4)), "out");
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testFuseScalarChain(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable two = sd.constant("two", Nd4j.scalar(DataType.FLOAT, 2.0f));
+        SDVariable x = sd.math.tanh(in);
+        //Additive chain, then multiplicative chain: scalar ops and pairwise ops with a scalar constant
+        SDVariable added = x.sub(0.5).add(two).add(1.0);
+        added.div(8.0).mul(two).mul("out", 0.5);
+
+        SameDiff optimized = optimize(sd, "out");
+        assertEquals(3, optimized.getOps().size());
+        List<String> opNames = opNames(optimized);
+        assertTrue(opNames.contains("add_scalar"), opNames.toString());
+        assertTrue(opNames.contains("mul_scalar"), opNames.toString());
+
+        validate(sd, optimized, Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 3, 4)), "out");
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testNoScalarChainFusionForSharedIntermediate(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable shared = in.mul(2.0);
+        SDVariable a = shared.mul(3.0);
+        SDVariable b = shared.add(1.0);
+        a.add("out", b);
+
+        //The first multiplication is used twice, so it must remain
+        SameDiff optimized = optimize(sd, "out");
+        assertEquals(sd.getOps().size(), optimized.getOps().size());
+
+        validate(sd, optimized, Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 3, 4)), "out");
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testFuseLayerNorm(Nd4jBackend backend) {
+        for (double eps : new double[]{1e-6, 1e-3}) {
+            SameDiff sd = SameDiff.create();
+            SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 5, 8);
+            SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.FLOAT, 8));
+            SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.FLOAT, 8));
+            SDVariable d = in.sub(in.mean(true, -1));
+            SDVariable std = sd.math.sqrt(d.pow(2).mean(true, -1).add(eps));
+            d.div(std).mul(gamma).add("out", beta);
+
+            SameDiff optimized = optimize(sd, "out");
+            if (eps <= FusionOptimizations.LAYER_NORM_MAX_EPSILON_DEFAULT) {
+                assertEquals(1, optimized.getOps().size());
+                assertEquals("layer_norm", optimized.getOps().values().iterator().next().getOp().opName());
+            } else {
+                //Epsilon too large to be ignored: layer_norm has no epsilon
+                assertEquals(sd.getOps().size(), optimized.getOps().size());
+            }
+
+            validate(sd, optimized, Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 2, 5, 8)), "out");
+        }
+    }
+
+    private static SameDiff optimize(SameDiff sd, String output) {
+        return GraphOptimizer.optimize(sd, Collections.singletonList(output), Collections.singletonList(new FusionOptimizations()));
+    }
+
+    private static List<String> opNames(SameDiff sd) {
+        List<String> out = new ArrayList<>();
+        for (SameDiffOp op : sd.getOps().values()) {
+            out.add(op.getOp().opName());
+        }
+        return out;
+    }
+
+    /**
+     * Validate the optimized graph, with the output of the original (unoptimized) graph as the expected output
+     */
+    private static void validate(SameDiff original, SameDiff optimized, Map<String, INDArray> placeholders, String output) {
+        INDArray expected = original.outputSingle(placeholders, output);
+        TestCase tc = new TestCase(optimized)
+                .gradientCheck(false)
+                .placeholderValues(placeholders)
+                .expectedOutput(output, expected, 1e-4);
+        String err = OpValidation.validate(tc);
+        assertNull(err);
+    }
+}
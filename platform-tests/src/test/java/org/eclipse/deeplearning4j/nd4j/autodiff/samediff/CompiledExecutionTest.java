@@ -0,0 +1,123 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.nd4j.autodiff.samediff;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+public class CompiledExecutionTest extends BaseNd4jTestWithBackends {
+
+    @Override
+    public char ordering(){
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testCompiledExecutionMatchesInterpreted(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable z = in.mmul(w).add("z", b);
+        SDVariable out = sd.nn.softmax("out", z);
+        SDVariable unused = sd.math.exp("unused", z);
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 5, 4);
+        Map<String, INDArray> expected = sd.output(Collections.singletonMap("in", input), "out", "z");
+
+        sd.setEnableCompiledExecution(true);
+        for (int i = 0; i < 5; i++) {
+            INDArray in2 = Nd4j.rand(DataType.FLOAT, 5, 4);
+            INDArray exp2 = sd.outputSingle(Collections.singletonMap("in", in2), "out");
+            Map<String, INDArray> actual = sd.output(Collections.singletonMap("in", input), "out", "z");
+            assertEquals(expected, actual);
+            assertEquals(exp2, sd.outputSingle(Collections.singletonMap("in", in2), "out"));
+        }
+
+        InferenceSession is = sd.getSessions().get(Thread.currentThread().getId());
+        assertEquals(2, is.getCompiledExecutions().size());
+
+        //Different placeholder shape: separate compiled execution
+        INDArray input3 = Nd4j.rand(DataType.FLOAT, 2, 4);
+        Map<String, INDArray> ph = new HashMap<>();
+        ph.put("in", input3);
+        INDArray first = sd.outputSingle(ph, "out");
+        assertEquals(first, sd.outputSingle(ph, "out"));
+        assertEquals(3, is.getCompiledExecutions().size());
+
+        //Modifying the graph invalidates all compiled executions
+        sd.math.log("log", out);
+        assertEquals(first, sd.outputSingle(ph, "out"));
+        is = sd.getSessions().get(Thread.currentThread().getId());
+        assertEquals(1, is.getCompiledExecutions().size());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRewiringInvalidatesCompiledExecution(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 3));
+        in.mmul(w).add("z", b);
+        in.mmul(w).sub("z2", b);
+        sd.nn.softmax("out", sd.getVariable("z"));
+
+        sd.setEnableCompiledExecution(true);
+        Map<String, INDArray> ph = Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 5, 4));
+        sd.outputSingle(ph, "out");
+        sd.outputSingle(ph, "out");
+
+        //Rewire the softmax op to use z2 instead of z: same number of ops, but a different structure
+        SameDiffOp softmax = sd.getOps().get(sd.getVariables().get("out").getOutputOfOp());
+        long version = sd.getStructureVersion();
+        sd.replaceArgFor(0, sd.getVariable("z2"), softmax.getOp());
+        assertNotEquals(version, sd.getStructureVersion());
+
+        INDArray expected = Transforms.softmax(sd.outputSingle(ph, "z2"), true);
+        assertEquals(expected, sd.outputSingle(ph, "out"));
+    }
+}
@@ -33,6 +33,7 @@ import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.TrainingConfig;
 import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.array.LazyArrayHolder;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.graph.FlatConfiguration;
@@ -377,6 +378,49 @@ public class FlatBufferSerdeTest extends BaseNd4jTestWithBackends {
     }
 
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testMemoryMappedLoad(Nd4jBackend backend) throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.FLOAT, 1, 3));
+        SDVariable unused = sd.constant("unused", Nd4j.rand(DataType.DOUBLE, 5, 5));
+        SDVariable out = sd.nn().softmax("out", in.mmul(w).add(b), 1);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray expected = sd.outputSingle(Collections.singletonMap("in", inArr), "out");
+
+        File dir = testDir.toFile();
+        for (boolean mappable : new boolean[]{false, true}) {
+            File f = new File(dir, "samediff_" + mappable + ".fb");
+            sd.save(f, false, mappable);
+
+            //Files saved for memory mapping are still readable the standard way
+            SameDiff standard = SameDiff.load(f, false);
+            assertEquals(expected, standard.outputSingle(Collections.singletonMap("in", inArr), "out"));
+
+            SameDiff mapped = SameDiff.load(f, false, true);
+            LazyArrayHolder constants = (LazyArrayHolder) mapped.getConstantArrays();
+            LazyArrayHolder variables = (LazyArrayHolder) mapped.getVariablesArrays();
+            assertEquals(2, constants.numPending());
+            assertEquals(1, variables.numPending());
+            assertTrue(mapped.hasVariable("unused"));
+
+            assertEquals(expected, mapped.outputSingle(Collections.singletonMap("in", inArr), "out"));
+            assertTrue(constants.isMaterialized("b"));
+            assertTrue(variables.isMaterialized("w"));
+            assertFalse(constants.isMaterialized("unused"));
+            assertEquals(unused.getArr(), mapped.getArrForVarName("unused"));
+
+            //Arrays are copy-on-write: modifying them doesn't modify the file
+            mapped.getArrForVarName("w").assign(0);
+            SameDiff reloaded = SameDiff.load(f, false, true);
+            assertEquals(w.getArr(), reloaded.getArrForVarName("w"));
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
     public void pooling3DSerialization(Nd4jBackend backend) {
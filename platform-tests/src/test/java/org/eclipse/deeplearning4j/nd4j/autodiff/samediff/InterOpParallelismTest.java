@@ -0,0 +1,114 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.nd4j.autodiff.samediff;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+public class InterOpParallelismTest extends BaseNd4jTestWithBackends {
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testParallelBranchesMatchSequential(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 16);
+
+        //4 independent towers, concatenated, plus a second output from one of the towers
+        List<SDVariable> towers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            SDVariable w1 = sd.var("w1_" + i, Nd4j.rand(DataType.FLOAT, 16, 32));
+            SDVariable w2 = sd.var("w2_" + i, Nd4j.rand(DataType.FLOAT, 32, 8));
+            SDVariable h = sd.nn.tanh(in.mmul(w1));
+            towers.add(sd.nn.sigmoid("tower_" + i, h.mmul(w2)));
+        }
+        SDVariable concat = sd.concat(1, towers.toArray(new SDVariable[0]));
+        sd.nn.softmax("out", concat, 1);
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 10, 16);
+        Map<String, INDArray> ph = Collections.singletonMap("in", input);
+        Map<String, INDArray> expected = sd.output(ph, "out", "tower_2");
+
+        sd.setInterOpParallelism(4);
+        try {
+            for (int i = 0; i < 10; i++) {
+                Map<String, INDArray> actual = sd.output(ph, "out", "tower_2");
+                assertEquals(expected, actual);
+            }
+
+            //Different batch size and requested outputs
+            INDArray input2 = Nd4j.rand(DataType.FLOAT, 3, 16);
+            sd.setInterOpParallelism(1);
+            INDArray expected2 = sd.outputSingle(Collections.singletonMap("in", input2), "tower_1");
+            sd.setInterOpParallelism(2);
+            assertEquals(expected2, sd.outputSingle(Collections.singletonMap("in", input2), "tower_1"));
+        } finally {
+            sd.setInterOpParallelism(1);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testParallelExecutionFailure(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 5, 3));
+        SDVariable a = sd.math.exp(in);
+        SDVariable b = in.mmul(w);      //Shape mismatch: should fail
+        a.add("out", b.sum(true, 1));
+
+        sd.setInterOpParallelism(2);
+        try {
+            assertThrows(RuntimeException.class, () -> sd.outputSingle(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 2, 4)), "out"));
+
+            //Session should still be usable after a failure
+            INDArray out = sd.outputSingle(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 2, 4)), "in");
+            assertArrayEquals(new long[]{2, 4}, out.shape());
+        } finally {
+            sd.setInterOpParallelism(1);
+        }
+    }
+}
@@ -24,6 +24,8 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.ConcurrentArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassArrayPool;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
@@ -33,6 +35,12 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -141,4 +149,102 @@ public class MemoryMgrTest extends BaseNd4jTestWithBackends {
         assertEquals(2000, mmgr.getLruCacheValues().size());
     }
 
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassPoolCacheHit(Nd4jBackend backend) {
+        ConcurrentArrayCacheMemoryMgr mmgr = new ConcurrentArrayCacheMemoryMgr(new SizeClassArrayPool(1_000_000), true);
+        INDArray allocate = mmgr.allocate(false, DataType.FLOAT, 3, 4);
+        long relevantAddress = allocate.data().address();
+        mmgr.release(allocate);
+        assertEquals(48, mmgr.getPool().getCurrentCacheBytes());
+
+        //Same length, different shape: should reuse the same buffer
+        INDArray allocate2 = mmgr.allocate(false, DataType.FLOAT, 2, 6);
+        assertEquals(relevantAddress, allocate2.data().address());
+        assertArrayEquals(new long[]{2, 6}, allocate2.shape());
+        assertEquals(0, mmgr.getPool().getCurrentCacheBytes());
+
+        //Different data type: should not be a cache hit
+        mmgr.release(allocate2);
+        INDArray allocate3 = mmgr.allocate(false, DataType.INT, 3, 4);
+        assertNotEquals(relevantAddress, allocate3.data().address());
+
+        long hits = 0;
+        long misses = 0;
+        for (SizeClassArrayPool.BucketStats bs : mmgr.getPool().getStats()) {
+            assertEquals(64, bs.getSizeClassBytes());
+            hits += bs.getHits();
+            misses += bs.getMisses();
+        }
+        assertEquals(1, hits);
+        assertEquals(2, misses);
+        mmgr.close();
+        assertEquals(0, mmgr.getPool().getCurrentCacheBytes());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassPoolEviction(Nd4jBackend backend) {
+        SizeClassArrayPool pool = new SizeClassArrayPool(1000);
+        ConcurrentArrayCacheMemoryMgr mmgr = new ConcurrentArrayCacheMemoryMgr(pool, true);
+
+        INDArray[] arrays = new INDArray[20];
+        for( int i = 0; i < arrays.length; i++) {
+            arrays[i] = Nd4j.create(DataType.FLOAT, 25);        //100 bytes each
+        }
+
+        for( int i = 0; i < 10; i++) {
+            mmgr.release(arrays[i]);
+        }
+        assertEquals(1000, pool.getCurrentCacheBytes());
+        assertEquals(10, pool.getCachedArrayCount());
+
+        //Store is full: oldest released arrays should be closed first
+        for( int i = 10; i < 20; i++) {
+            mmgr.release(arrays[i]);
+            for( int j = 0; j < 10; j++) {
+                assertEquals(j <= i - 10, arrays[j].wasClosed());
+            }
+        }
+        assertEquals(1000, pool.getCurrentCacheBytes());
+        assertEquals(10, pool.getStats().get(0).getEvictions());
+        assertThrows(IllegalStateException.class, () -> mmgr.release(arrays[15]));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassPoolConcurrentSessions(Nd4jBackend backend) throws Exception {
+        SizeClassArrayPool pool = new SizeClassArrayPool(100_000);
+        int nThreads = 8;
+        ExecutorService exec = Executors.newFixedThreadPool(nThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for( int t = 0; t < nThreads; t++) {
+            futures.add(exec.submit(() -> {
+                ConcurrentArrayCacheMemoryMgr mmgr = new ConcurrentArrayCacheMemoryMgr(pool, false);
+                for( int i = 0; i < 200; i++) {
+                    INDArray a = mmgr.allocate(false, DataType.FLOAT, 16, 16);
+                    INDArray b = mmgr.allocate(false, DataType.DOUBLE, 10);
+                    a.assign(i);
+                    assertEquals(i, a.getDouble(15, 15), 0.0);
+                    mmgr.release(a);
+                    mmgr.release(b);
+                }
+                mmgr.close();
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        exec.shutdown();
+        assertTrue(exec.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertTrue(pool.getCurrentCacheBytes() <= 100_000);
+        long hits = 0;
+        for (SizeClassArrayPool.BucketStats bs : pool.getStats()) {
+            hits += bs.getHits();
+        }
+        assertTrue(hits > 0);
+    }
+
 }
@@ -0,0 +1,157 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.eclipse.deeplearning4j.nd4j.autodiff.samediff;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.memory.MemoryPlan;
+import org.nd4j.autodiff.samediff.internal.memory.MemoryPlanner;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+@Tag(TagNames.WORKSPACES)
+public class MemoryPlannerTest extends BaseNd4jTestWithBackends {
+
+    @Override
+    public char ordering(){
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testGreedyBySizeOffsets(Nd4jBackend backend) {
+        //Chain of 3 arrays a, b, c: each released after the next one is allocated
+        List<MemoryPlan.Allocation> l = new ArrayList<>();
+        l.add(new MemoryPlan.Allocation(0, DataType.FLOAT, new long[]{64}, 'c', 64, 0, true));
+        l.add(new MemoryPlan.Allocation(1, DataType.FLOAT, new long[]{32}, 'c', 32, 1, true));
+        l.add(new MemoryPlan.Allocation(2, DataType.FLOAT, new long[]{64}, 'c', 64, 3, true));
+        l.add(new MemoryPlan.Allocation(3, DataType.FLOAT, new long[]{16}, 'c', 16, 5, false));     //Returned to user
+        l.add(new MemoryPlan.Allocation(4, DataType.FLOAT, new long[]{8}, 'c', 8, 6, true));        //Never released
+        l.get(0).setEnd(2);
+        l.get(1).setEnd(4);
+        l.get(2).setEnd(7);
+
+        MemoryPlan p = MemoryPlanner.plan("test", l);
+        assertTrue(l.get(0).isPlanned());
+        assertFalse(l.get(3).isPlanned());
+        assertFalse(l.get(4).isPlanned());
+
+        //a and c don't overlap in time: should share the same arena space. b overlaps with both
+        assertEquals(l.get(0).getOffset(), l.get(2).getOffset());
+        assertTrue(l.get(1).getOffset() >= 64);
+        assertEquals(96, (long) p.getArenaLengths().get(DataType.FLOAT));
+        assertEquals(96 * 4, p.getArenaBytes());
+        assertEquals(160 * 4, p.getUnplannedBytes());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testPlannedInferenceMatchesUnplanned(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 10);
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 10, 20));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.FLOAT, 20));
+        SDVariable w2 = sd.var("w2", Nd4j.rand(DataType.FLOAT, 20, 20));
+        SDVariable b2 = sd.var("b2", Nd4j.rand(DataType.FLOAT, 20));
+        SDVariable w3 = sd.var("w3", Nd4j.rand(DataType.FLOAT, 20, 5));
+        SDVariable l1 = sd.nn.tanh(in.mmul(w1).add(b1));
+        SDVariable l2 = sd.nn.relu(l1.mmul(w2).add(b2), 0.0);
+        SDVariable out = sd.nn.softmax("out", l2.mmul(w3));
+        assertTrue(MemoryPlanner.supportsPlanning(sd));
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 8, 10);
+        INDArray expected = sd.outputSingle(Collections.singletonMap("in", input), "out");
+
+        sd.setEnableMemoryPlanning(true);
+        for (int i = 0; i < 5; i++) {
+            INDArray actual = sd.outputSingle(Collections.singletonMap("in", input), "out");
+            assertEquals(expected, actual);
+        }
+
+        Map<String, MemoryPlan> plans = sd.getMemoryPlans();
+        assertEquals(1, plans.size());
+        MemoryPlan plan = plans.values().iterator().next();
+        assertTrue(plan.getArenaBytes() > 0);
+        assertTrue(plan.getArenaBytes() < plan.getUnplannedBytes());
+
+        //Different placeholder shape: separate plan
+        INDArray input2 = Nd4j.rand(DataType.FLOAT, 3, 10);
+        sd.setEnableMemoryPlanning(false);
+        INDArray expected2 = sd.outputSingle(Collections.singletonMap("in", input2), "out");
+        sd.setEnableMemoryPlanning(true);
+        sd.outputSingle(Collections.singletonMap("in", input), "out");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected2, sd.outputSingle(Collections.singletonMap("in", input2), "out"));
+        }
+        assertEquals(2, sd.getMemoryPlans().size());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testPlanningWithViewOps(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 20);
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 20, 20));
+        SDVariable w2 = sd.var("w2", Nd4j.rand(DataType.FLOAT, 20, 20));
+        SDVariable z = sd.nn.tanh(in.mmul(w1));
+
+        //Reshape and transpose outputs may be views of the tanh output: it must stay in use until they are released,
+        // while other arrays (the sigmoid output) are allocated
+        SDVariable t = sd.transpose(z.reshape(-1, 4, 5));
+        SDVariable u = sd.nn.sigmoid(in.mmul(w2));
+        sd.nn.softmax("out", t.sum(0, 1).add(u.sum(1)));
+        assertTrue(MemoryPlanner.supportsPlanning(sd));
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 8, 20);
+        INDArray expected = sd.outputSingle(Collections.singletonMap("in", input), "out");
+
+        sd.setEnableMemoryPlanning(true);
+        assertEquals(expected, sd.outputSingle(Collections.singletonMap("in", input), "out"));
+        assertEquals(1, sd.getMemoryPlans().size());
+        MemoryPlan plan = sd.getMemoryPlans().values().iterator().next();
+        assertTrue(plan.getArenaBytes() > 0);
+
+        //The plan is replayed without diverging from it (a diverged plan would be discarded)
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, sd.outputSingle(Collections.singletonMap("in", input), "out"));
+            assertSame(plan, sd.getMemoryPlans().values().iterator().next());
+        }
+    }
+}
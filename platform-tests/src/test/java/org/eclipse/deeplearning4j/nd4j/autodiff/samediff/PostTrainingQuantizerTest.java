@@ -0,0 +1,138 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.nd4j.autodiff.samediff;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.quantize.CalibrationListener;
+import org.nd4j.autodiff.samediff.quantize.PostTrainingQuantizer;
+import org.nd4j.autodiff.samediff.quantize.QuantizationConfig;
+import org.nd4j.autodiff.samediff.quantize.QuantizedArray;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+public class PostTrainingQuantizerTest extends BaseNd4jTestWithBackends {
+
+    @TempDir
+    Path testDir;
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testQuantizeArray(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray w = Nd4j.randn(DataType.FLOAT, 20, 6);
+        w.getColumn(2).muli(10);     //Much larger range for one channel
+        w.getColumn(5).assign(0);    //All zero channel
+
+        for (DataType t : new DataType[]{DataType.INT8, DataType.UINT8}) {
+            QuantizedArray q = PostTrainingQuantizer.quantizeArray(w, 1, t);
+            assertEquals(t, q.getValues().dataType());
+            assertArrayEquals(new long[]{1, 6}, q.getScale().shape());
+            assertEquals(t == DataType.UINT8, q.getZeroPoint() != null);
+
+            //Error is at most half a quantization step, in every channel
+            INDArray err = Transforms.abs(q.dequantize().sub(w)).max(0);
+            INDArray halfStep = q.getScale().reshape(6).mul(0.5001);
+            for (int i = 0; i < 6; i++) {
+                assertTrue(err.getDouble(i) <= halfStep.getDouble(i), "Error " + err + " vs half step " + halfStep);
+            }
+            assertEquals(0.0, q.dequantize().getColumn(5).maxNumber().doubleValue(), 0.0);
+
+            QuantizedArray perTensor = PostTrainingQuantizer.quantizeArray(w, -1, t);
+            assertArrayEquals(new long[]{1, 1}, perTensor.getScale().shape());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testQuantizeGraph(Nd4jBackend backend) throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 64);
+        SDVariable w1 = sd.var("w1", Nd4j.randn(DataType.FLOAT, 64, 128).muli(0.1));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.FLOAT, 128));
+        SDVariable w2 = sd.var("w2", Nd4j.randn(DataType.FLOAT, 128, 32).muli(0.1));
+        SDVariable h = sd.nn.relu(in.mmul(w1).add(b1), 0.0);
+        sd.nn.softmax("out", h.mmul(w2), 1);
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 16, 64);
+        Map<String, INDArray> ph = Collections.singletonMap("in", input);
+        INDArray expected = sd.outputSingle(ph, "out");
+
+        CalibrationListener l = new CalibrationListener();
+        sd.output(ph, Collections.singletonList(l), "out");
+        Map<String, double[]> ranges = l.getRanges();
+        assertEquals(2, ranges.size());
+        assertEquals(input.minNumber().doubleValue(), ranges.get("in")[0], 1e-6);
+        assertEquals(input.maxNumber().doubleValue(), ranges.get("in")[1], 1e-6);
+
+        for (boolean activations : new boolean[]{false, true}) {
+            QuantizationConfig c = QuantizationConfig.builder().quantizeActivations(activations).build();
+            SameDiff quantized = PostTrainingQuantizer.quantize(sd, c, ranges);
+
+            assertFalse(quantized.hasVariable("w1"));
+            assertFalse(quantized.hasVariable("w2"));
+            assertTrue(quantized.hasVariable("b1"));   //Too small to quantize
+            assertEquals(VariableType.CONSTANT, quantized.getVariable("w1_quantized").getVariableType());
+            assertEquals(DataType.INT8, quantized.getVariable("w1_quantized").getArr().dataType());
+
+            INDArray actual = quantized.outputSingle(ph, "out");
+            assertTrue(expected.equalsWithEps(actual, 0.02), "Expected:\n" + expected + "\nActual:\n" + actual);
+
+            //Quantized weights are stored in the saved model
+            File f = new File(testDir.toFile(), "quantized_" + activations + ".fb");
+            quantized.save(f, false);
+            SameDiff restored = SameDiff.load(f, false);
+            assertEquals(DataType.INT8, restored.getVariable("w1_quantized").getArr().dataType());
+            assertEquals(actual, restored.outputSingle(ph, "out"));
+        }
+
+        //Original graph should be unchanged
+        assertEquals(DataType.FLOAT, sd.getVariable("w1").getArr().dataType());
+        assertEquals(expected, sd.outputSingle(ph, "out"));
+    }
+}
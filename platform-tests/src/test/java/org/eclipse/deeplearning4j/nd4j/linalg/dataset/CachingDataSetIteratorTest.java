@@ -38,6 +38,7 @@ import org.nd4j.linalg.dataset.api.iterator.SamplingDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.cache.DataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InFileDataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InMemoryDataSetCache;
+import org.nd4j.linalg.dataset.api.iterator.cache.LruSpillingDataSetCache;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
@@ -76,6 +77,25 @@ public class CachingDataSetIteratorTest extends BaseNd4jTestWithBackends {
         FileUtils.deleteDirectory(cacheDir.toFile());
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testLruSpilling(Nd4jBackend backend) throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        //Each DataSet is about 4KB: only 2 of the 5 fit in memory, the rest are spilled to disk
+        try (LruSpillingDataSetCache cache = new LruSpillingDataSetCache(cacheDir, 10_000)) {
+            runDataSetTest(cache);
+
+            assertTrue(cache.getResidentBytes() <= 10_000);
+            assertTrue(cache.getSpills() > 0);
+            assertTrue(cache.getSpilledBytes() > 0);
+            assertTrue(cache.getMemoryHits() + cache.getDiskHits() > 0);
+            assertEquals(0, cache.getMisses());
+            assertTrue(cache.getHitRate() >= 0.0 && cache.getHitRate() <= 1.0);
+        }
+
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
     private void runDataSetTest(DataSetCache cache) {
         int rows = 500;
         int inputColumns = 100;
@@ -0,0 +1,209 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.eclipse.deeplearning4j.nd4j.linalg.dataset;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.DataSetShard;
+import org.nd4j.linalg.dataset.DataSetShardWriter;
+import org.nd4j.linalg.dataset.ShardedDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.NDARRAY_ETL)
+@NativeTag
+@Tag(TagNames.FILE_IO)
+public class ShardedDataSetIteratorTest extends BaseNd4jTestWithBackends {
+
+    @TempDir Path testDir;
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRoundTrip(Nd4jBackend backend) throws Exception {
+        DataSet all = new IrisDataSetIterator(150, 150).next();
+        File dir = testDir.toFile();
+        try (DataSetShardWriter w = new DataSetShardWriter(dir, 4096, DataSetShardWriter.DEFAULT_PATTERN)) {
+            w.write(new IrisDataSetIterator(32, 150));
+            assertEquals(150, w.getNumExamples());
+        }
+
+        ShardedDataSetIterator iter = new ShardedDataSetIterator(dir, 20);
+        assertEquals(150, iter.totalExamples());
+        assertEquals(4, iter.inputColumns());
+        assertEquals(3, iter.totalOutcomes());
+        List<DataSet> list = new ArrayList<>();
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            assertEquals(list.size() < 7 ? 20 : 10, ds.numExamples());
+            list.add(ds);
+        }
+        assertEquals(8, list.size());
+        assertEquals(all, DataSet.merge(list));
+
+        iter.reset();
+        assertEquals(list.get(0), iter.next());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testShuffleMultipleShards(Nd4jBackend backend) throws Exception {
+        //Time series with masks; the example index is stored in every value so rows can be matched after shuffling
+        int n = 100;
+        INDArray f = Nd4j.arange(n).castTo(DataType.FLOAT).reshape(n, 1, 1).repeat(1, 3).repeat(2, 5);
+        INDArray l = Nd4j.arange(n).castTo(DataType.DOUBLE).reshape(n, 1, 1).repeat(2, 5);
+        INDArray fm = Nd4j.arange(n).castTo(DataType.FLOAT).reshape(n, 1).repeat(1, 5);
+        INDArray lm = fm.dup();
+
+        File dir = testDir.toFile();
+        DataSetShardWriter w = new DataSetShardWriter(dir, 4096, "data-%d.shard");
+        w.write(new DataSet(f, l, fm, lm));
+        w.close();
+        assertTrue(w.getShardFiles().size() > 1);
+        long count = 0;
+        for (File shard : w.getShardFiles()) {
+            DataSetShard s = new DataSetShard(shard);
+            assertArrayEquals(new long[]{3, 5}, s.exampleShape(DataSetShard.FEATURES));
+            assertEquals(DataType.DOUBLE, s.dataType(DataSetShard.LABELS));
+            assertTrue(s.hasArray(DataSetShard.LABELS_MASK));
+            count += s.getNumExamples();
+        }
+        assertEquals(n, count);
+
+        ShardedDataSetIterator iter = new ShardedDataSetIterator(w.getShardFiles(), 16, true, 12345);
+        List<Integer> firstEpoch = null;
+        for (int epoch = 0; epoch < 2; epoch++) {
+            List<Integer> order = new ArrayList<>();
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                assertArrayEquals(new long[]{ds.numExamples(), 3, 5}, ds.getFeatures().shape());
+                for (int i = 0; i < ds.numExamples(); i++) {
+                    int idx = ds.getFeaturesMaskArray().getInt(i, 0);
+                    assertEquals(f.getRow(idx), ds.getFeatures().getRow(i));
+                    assertEquals(l.getRow(idx), ds.getLabels().getRow(i));
+                    assertEquals(lm.getRow(idx), ds.getLabelsMaskArray().getRow(i));
+                    order.add(idx);
+                }
+            }
+            Set<Integer> unique = new HashSet<>(order);
+            assertEquals(n, unique.size());
+            assertEquals(n, order.size());
+            if (firstEpoch == null) {
+                firstEpoch = order;
+            } else {
+                assertNotEquals(firstEpoch, order);
+            }
+            iter.reset();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testMaxShardSize(Nd4jBackend backend) throws Exception {
+        //Records are not a multiple of the alignment: the padding before the index must count towards the shard size
+        for (int maxBytes = 200; maxBytes <= 400; maxBytes += 8) {
+            File dir = testDir.resolve("max-" + maxBytes).toFile();
+            DataSetShardWriter w = new DataSetShardWriter(dir, maxBytes, DataSetShardWriter.DEFAULT_PATTERN);
+            w.write(new IrisDataSetIterator(32, 150));
+            w.close();
+            long count = 0;
+            for (File f : w.getShardFiles()) {
+                assertTrue(f.length() <= maxBytes, "Shard of " + f.length() + " bytes exceeds maximum of " + maxBytes);
+                count += new DataSetShard(f).getNumExamples();
+            }
+            assertEquals(150, count);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testMixedByteOrder(Nd4jBackend backend) throws Exception {
+        DataSet all = new IrisDataSetIterator(150, 150).next();
+        File dir = testDir.toFile();
+        DataSetShardWriter w = new DataSetShardWriter(dir, 2048, DataSetShardWriter.DEFAULT_PATTERN);
+        w.write(all);
+        w.close();
+        assertTrue(w.getShardFiles().size() > 2);
+
+        //Convert every second shard to the non-native byte order, as if written on another machine
+        for (int i = 1; i < w.getShardFiles().size(); i += 2) {
+            swapByteOrder(w.getShardFiles().get(i));
+            assertNotEquals(ByteOrder.nativeOrder(), new DataSetShard(w.getShardFiles().get(i)).getByteOrder());
+        }
+
+        ShardedDataSetIterator iter = new ShardedDataSetIterator(dir, 150);
+        assertEquals(all, iter.next());
+    }
+
+    private static void swapByteOrder(File file) throws Exception {
+        DataSetShard shard = new DataSetShard(file);
+        ByteBuffer bb = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        ByteOrder from = shard.getByteOrder();
+        ByteOrder to = from == ByteOrder.LITTLE_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        //Header: byte order flag at position 12, index offset at position 24 (big endian)
+        bb.put(12, (byte) (to == ByteOrder.LITTLE_ENDIAN ? 0 : 1));
+        int indexOffset = (int) bb.order(ByteOrder.BIG_ENDIAN).getLong(24);
+        for (int e = 0; e < shard.getNumExamples(); e++) {
+            int pos = indexOffset + 8 * e;
+            long offset = bb.order(from).getLong(pos);
+            bb.order(to).putLong(pos, offset);
+            for (int a = 0; a < DataSetShard.NUM_ARRAYS; a++) {
+                if (!shard.hasArray(a))
+                    continue;
+                int width = shard.dataType(a).width();
+                for (int j = 0; j < shard.exampleBytes(a); j += width) {
+                    for (int k = 0; k < width / 2; k++) {
+                        byte b = bb.get((int) offset + j + k);
+                        bb.put((int) offset + j + k, bb.get((int) offset + j + width - 1 - k));
+                        bb.put((int) offset + j + width - 1 - k, b);
+                    }
+                }
+                offset += shard.exampleBytes(a);
+            }
+        }
+        Files.write(file.toPath(), bb.array());
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+}